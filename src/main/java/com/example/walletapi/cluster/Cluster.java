@@ -0,0 +1,246 @@
+package com.example.walletapi.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.walletapi.exception.BadRequestException;
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * The nodes sharing the wallets, and which of them owns which wallet (see
+ * {@link ConsistentHashRing}). Every wallet is only ever loaded and changed by
+ * its owner: requests for a wallet are forwarded to its owner (see
+ * {@link ClusterRoutingFilter}), and transfers to a wallet on another node are
+ * made with {@link RemoteRecipient}.
+ *
+ * Without any nodes configured this is a single node owning every wallet, which
+ * is the default.
+ */
+@Component
+public class Cluster {
+
+	/**
+	 * Header carrying the shared secret on calls between nodes.
+	 */
+	public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+	/**
+	 * Header set on requests forwarded to the owning node, so they're never
+	 * forwarded again (eg. while nodes disagree about the ring).
+	 */
+	public static final String FORWARDED_HEADER = "X-Wallet-Forwarded-By";
+
+	/**
+	 * Where the endpoints only other nodes may call are, see
+	 * {@link ClusterController}.
+	 */
+	public static final String INTERNAL_PATH = "/api/wallet/v1/internal";
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+	/**
+	 * The base URLs of all nodes, including this one.
+	 */
+	@Value("${wallet.api.cluster.nodes:}")
+	private List<String> nodes;
+
+	/**
+	 * The base URL of this node, exactly as in the list of nodes.
+	 */
+	@Value("${wallet.api.cluster.self:}")
+	private String self;
+
+	@Value("${wallet.api.cluster.virtual-nodes:128}")
+	private int virtualNodes;
+
+	@Value("${wallet.api.cluster.secret:}")
+	private String secret;
+
+	/**
+	 * How long (ms) to wait for another node to connect and to answer.
+	 */
+	@Value("${wallet.api.cluster.timeout:5000}")
+	private long timeout;
+
+	private ConsistentHashRing ring;
+	private HttpClient httpClient;
+
+	public Cluster() {
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). No nodes means a
+	 * single node owning every wallet.
+	 */
+	public Cluster(List<String> nodes, String self, String secret) {
+		this.nodes = nodes;
+		this.self = self;
+		this.virtualNodes = 128;
+		this.secret = secret;
+		this.timeout = 5000;
+		this.init();
+	}
+
+	@PostConstruct
+	public void init() {
+		List<String> _nodes = this.nodes == null ? List.of()
+				: this.nodes.stream().map(Cluster::normalize).filter(node -> !node.isEmpty()).distinct().toList();
+		if (_nodes.isEmpty()) {
+			return;
+		}
+		this.self = normalize(this.self);
+		if (!_nodes.contains(this.self)) {
+			throw new IllegalStateException("wallet.api.cluster.self (" + this.self
+					+ ") must be one of wallet.api.cluster.nodes " + _nodes);
+		}
+		if (this.secret == null || this.secret.isEmpty()) {
+			throw new IllegalStateException("wallet.api.cluster.secret is required when running in a cluster");
+		}
+		this.ring = new ConsistentHashRing(_nodes, this.virtualNodes);
+		// Plain HTTP/1.1, nodes don't speak HTTP/2 without TLS
+		this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(this.timeout)).build();
+		this.logger.info("Running as {} in a cluster of {} nodes: {}", this.self, _nodes.size(), _nodes);
+	}
+
+	private static String normalize(String node) {
+		String _node = node == null ? "" : node.trim();
+		return _node.endsWith("/") ? _node.substring(0, _node.length() - 1) : _node;
+	}
+
+	/**
+	 * Checks if there is more than this node.
+	 */
+	public boolean isEnabled() {
+		return this.ring != null;
+	}
+
+	/**
+	 * Checks if this node owns a wallet. Always true when not in a cluster.
+	 */
+	public boolean isLocal(UUID walletId) {
+		return this.ring == null || this.self.equals(this.ring.getOwner(walletId));
+	}
+
+	/**
+	 * Gets the base URL of the node owning a wallet.
+	 */
+	public String getOwner(UUID walletId) {
+		return this.ring == null ? this.self : this.ring.getOwner(walletId);
+	}
+
+	public String getSelf() {
+		return this.self;
+	}
+
+	public List<String> getNodes() {
+		return this.ring == null ? List.of() : this.ring.getNodes();
+	}
+
+	public HttpClient getHttpClient() {
+		return this.httpClient;
+	}
+
+	public Duration getTimeout() {
+		return Duration.ofMillis(this.timeout);
+	}
+
+	/**
+	 * Checks the secret another node sent. Compared in constant time so it can't
+	 * be guessed byte by byte.
+	 */
+	public boolean isTrusted(String secret) {
+		return this.ring != null && secret != null && MessageDigest.isEqual(
+				this.secret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Calls the internal API of another node.
+	 *
+	 * @param node The base URL of the node
+	 * @param path The path below {@link #INTERNAL_PATH}
+	 * @param body Sent as JSON with a POST, or null for a GET
+	 * @throws IOException if the node couldn't be reached or didn't answer in
+	 *                     time. It may still have gotten the request.
+	 */
+	public HttpResponse<byte[]> call(String node, String path, Object body) throws IOException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + INTERNAL_PATH + path))
+				.timeout(this.getTimeout())
+				.header(SECRET_HEADER, this.secret)
+				.header("Accept", "application/json");
+		if (body == null) {
+			request.GET();
+		} else {
+			request.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofByteArray(this.objectMapper.writeValueAsBytes(body)));
+		}
+		try {
+			return this.httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while calling " + node, e);
+		}
+	}
+
+	/**
+	 * Reads the JSON body of a successful answer from another node.
+	 */
+	public <T> T read(HttpResponse<byte[]> response, Class<T> type) throws IOException {
+		return this.objectMapper.readValue(response.body(), type);
+	}
+
+	/**
+	 * Turns an error answered by another node back into the exception which
+	 * caused it, so the client gets the same answer it would have gotten from
+	 * that node.
+	 */
+	public ResponseStatusException toException(String node, HttpResponse<byte[]> response) {
+		String message = "Node " + node + " answered " + response.statusCode();
+		try {
+			JsonNode error = this.objectMapper.readTree(response.body());
+			if (error != null && error.hasNonNull("message")) {
+				message = error.get("message").asText();
+			}
+		} catch (IOException e) {
+			// Not one of our error responses, go with the status
+		}
+		HttpStatus status = HttpStatus.resolve(response.statusCode());
+		if (status == HttpStatus.NOT_FOUND) {
+			return new NotFoundException(message);
+		} else if (status == HttpStatus.CONFLICT) {
+			return new ResourceConflictException(message);
+		} else if (status == HttpStatus.BAD_REQUEST) {
+			return new BadRequestException(message);
+		} else if (status == HttpStatus.UNAUTHORIZED || status == HttpStatus.FORBIDDEN) {
+			this.logger.error("Node {} rejected our secret, check wallet.api.cluster.secret", node);
+			return new ServerErrorException("The cluster is misconfigured");
+		}
+		return new ServiceUnavailableException(message);
+	}
+}
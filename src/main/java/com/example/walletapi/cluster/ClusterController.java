@@ -0,0 +1,80 @@
+package com.example.walletapi.cluster;
+
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.walletapi.cluster.ClusterTransfers.Status;
+import com.example.walletapi.cluster.ClusterTransfers.TransferMessage;
+import com.example.walletapi.cluster.ClusterTransfers.TransferStatus;
+import com.example.walletapi.exception.ForbiddenException;
+
+/**
+ * The endpoints other nodes use to make transfers to the wallets of this node,
+ * see {@link ClusterTransfers}. Only callers with the cluster secret are let
+ * through, so with clustering off nobody is.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RestController
+@RequestMapping(Cluster.INTERNAL_PATH)
+public class ClusterController {
+
+	private final Cluster cluster;
+	private final ClusterTransfers transfers;
+
+	@Autowired
+	public ClusterController(Cluster cluster, ClusterTransfers transfers) {
+		this.cluster = cluster;
+		this.transfers = transfers;
+	}
+
+	@PostMapping("/transfers/prepare")
+	public TransferStatus prepare(@RequestHeader(name = Cluster.SECRET_HEADER, required = false) String secret,
+			@RequestBody TransferMessage message) {
+		this.checkSecret(secret);
+		this.transfers.prepare(message);
+		return new TransferStatus(message.id(), Status.PREPARED);
+	}
+
+	@PostMapping("/transfers/commit")
+	public TransferStatus commit(@RequestHeader(name = Cluster.SECRET_HEADER, required = false) String secret,
+			@RequestBody TransferMessage message) {
+		this.checkSecret(secret);
+		this.transfers.commit(message);
+		return new TransferStatus(message.id(), Status.COMMITTED);
+	}
+
+	@PostMapping("/transfers/abort")
+	public TransferStatus abort(@RequestHeader(name = Cluster.SECRET_HEADER, required = false) String secret,
+			@RequestBody TransferMessage message) {
+		this.checkSecret(secret);
+		this.transfers.abort(message.id());
+		return new TransferStatus(message.id(), Status.ABORTED);
+	}
+
+	/**
+	 * The outcome of a transfer sent from a wallet on this node.
+	 */
+	@GetMapping("/transfers/{transferId}")
+	public TransferStatus getStatus(@RequestHeader(name = Cluster.SECRET_HEADER, required = false) String secret,
+			@PathVariable UUID transferId, @RequestParam UUID sender,
+			@RequestParam(defaultValue = "0") long prepared) {
+		this.checkSecret(secret);
+		return new TransferStatus(transferId, this.transfers.getStatus(transferId, sender, prepared));
+	}
+
+	private void checkSecret(String secret) {
+		if (!this.cluster.isTrusted(secret)) {
+			throw new ForbiddenException("Only other nodes of the cluster may call this");
+		}
+	}
+}
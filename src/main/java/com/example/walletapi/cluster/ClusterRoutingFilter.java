@@ -0,0 +1,211 @@
+package com.example.walletapi.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.security.JwtUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Forwards requests for wallets owned by another node to that node, and copies
+ * its answer back, so clients can send any request to any node (or to a plain
+ * load balancer in front of them).
+ *
+ * The wallet of a protected request is the one in its JWT, so this has to run
+ * after {@link com.example.walletapi.security.JwtAuthFilter}. The owner checks
+ * the JWT again, which is why all nodes need the same jwt.secret. The only
+ * public request for a particular wallet is /access, whose wallet is in the
+ * body. Wallets are always created on the node receiving the request.
+ *
+ * Responses are streamed, so event streams work through it too. Only done for
+ * Spring MVC, with the "reactive" profile every node only serves its own
+ * wallets.
+ *
+ * Added to the security chains by
+ * {@link com.example.walletapi.security.SecurityConfig}.
+ */
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+	/**
+	 * Headers which only make sense for one connection, and those the HTTP client
+	 * sets itself.
+	 */
+	private static final Set<String> NOT_FORWARDED = Set.of("connection", "keep-alive", "proxy-authenticate",
+			"proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade", "host", "content-length",
+			"expect");
+
+	// Not "logger", which would hide the commons-logging logger of
+	// OncePerRequestFilter (which can't do parameterized messages)
+	private static final Logger log = LoggerFactory.getLogger(ClusterRoutingFilter.class);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Cluster cluster;
+	private final JwtUtil jwtUtil;
+
+	public ClusterRoutingFilter(Cluster cluster, JwtUtil jwtUtil) {
+		this.cluster = cluster;
+		this.jwtUtil = jwtUtil;
+	}
+
+	@Override
+	protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+			@NonNull FilterChain filterChain) throws ServletException, IOException {
+		if (!this.cluster.isEnabled() || request.getHeader(Cluster.FORWARDED_HEADER) != null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		String uri = request.getRequestURI();
+		UUID walletId = null;
+		if (uri.startsWith("/api/wallet/v1/protected")) {
+			walletId = this.jwtUtil.getAuthenticatedUser(UUID.class);
+		} else if (uri.equals("/api/wallet/v1/public/access")) {
+			BufferedRequest buffered = new BufferedRequest(request);
+			request = buffered;
+			walletId = this.readWalletId(buffered.body);
+		}
+		if (walletId == null || this.cluster.isLocal(walletId)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		this.forward(request, response, this.cluster.getOwner(walletId), walletId);
+	}
+
+	/**
+	 * Reads the wallet ID from the body of an /access request. Anything invalid is
+	 * left for the controller to reject.
+	 */
+	private UUID readWalletId(byte[] body) {
+		try {
+			JsonNode walletId = this.objectMapper.readTree(body).get("walletId");
+			return walletId == null ? null : UUID.fromString(walletId.asText());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private void forward(HttpServletRequest request, HttpServletResponse response, String node, UUID walletId)
+			throws IOException {
+		String query = request.getQueryString();
+		URI target = URI.create(node + request.getRequestURI() + (query == null ? "" : "?" + query));
+		byte[] body = request.getInputStream().readAllBytes();
+		// No timeout for the answer, event streams stay open for minutes
+		HttpRequest.Builder forwarded = HttpRequest.newBuilder(target).method(request.getMethod(),
+				body.length == 0 ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+		for (String name : Collections.list(request.getHeaderNames())) {
+			if (!NOT_FORWARDED.contains(name.toLowerCase())) {
+				for (String value : Collections.list(request.getHeaders(name))) {
+					forwarded.header(name, value);
+				}
+			}
+		}
+		forwarded.header(Cluster.FORWARDED_HEADER, this.cluster.getSelf());
+
+		HttpResponse<InputStream> answer;
+		try {
+			answer = this.cluster.getHttpClient().send(forwarded.build(), HttpResponse.BodyHandlers.ofInputStream());
+		} catch (IOException | InterruptedException e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			log.warn("Failed to forward {} {} to {}: {}", request.getMethod(), request.getRequestURI(), node,
+					e.toString());
+			throw new ServiceUnavailableException("The node of wallet " + walletId
+					+ " can't be reached right now, please try again later");
+		}
+		log.debug("Forwarded {} {} to {}, got {}", request.getMethod(), request.getRequestURI(), node,
+				answer.statusCode());
+
+		response.setStatus(answer.statusCode());
+		for (Map.Entry<String, List<String>> header : answer.headers().map().entrySet()) {
+			if (!NOT_FORWARDED.contains(header.getKey().toLowerCase()) && !header.getKey().startsWith(":")) {
+				for (String value : header.getValue()) {
+					response.addHeader(header.getKey(), value);
+				}
+			}
+		}
+		try (InputStream in = answer.body()) {
+			OutputStream out = response.getOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				if (in.available() == 0) {
+					// Whatever has arrived goes out right away (eg. events)
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// Usually the client going away in the middle of an event stream
+			log.debug("Stopped forwarding {} from {}: {}", request.getRequestURI(), node, e.toString());
+		}
+	}
+
+	/**
+	 * A request whose body has been read, and can be read again.
+	 */
+	private static class BufferedRequest extends HttpServletRequestWrapper {
+		private final byte[] body;
+
+		private BufferedRequest(HttpServletRequest request) throws IOException {
+			super(request);
+			this.body = request.getInputStream().readAllBytes();
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream in = new ByteArrayInputStream(this.body);
+			return new ServletInputStream() {
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener listener) {
+					throw new UnsupportedOperationException("The body has already been read");
+				}
+			};
+		}
+	}
+}
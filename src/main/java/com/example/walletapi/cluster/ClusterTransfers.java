@@ -0,0 +1,471 @@
+package com.example.walletapi.cluster;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The receiving side of transfers between wallets on different nodes.
+ *
+ * The sending node (the coordinator) drives each transfer, see
+ * {@link RemoteRecipient}:
+ * <ol>
+ * <li>It reserves the funds of the sender, like for any transfer.</li>
+ * <li>It asks the recipient's node to {@link #prepare} the credit, which checks
+ * the recipient exists and remembers the transfer, but doesn't credit it
+ * yet.</li>
+ * <li>If that fails the reservation is reverted (and the prepared transfer
+ * {@link #abort}ed). Otherwise the transfer is appended to the sender's ledger,
+ * which is the point of no return, and the recipient's node is told to
+ * {@link #commit}, which credits the recipient.</li>
+ * </ol>
+ * The sender's ledger decides the outcome: a transfer is committed if and only
+ * if it's in there. So if the commit gets lost (or the coordinator dies before
+ * sending it) the transfer stays prepared, and after resolve-after a background
+ * thread asks the coordinator for the outcome (see {@link #getStatus}) and
+ * commits or aborts accordingly. Commits carry the whole transfer and are
+ * idempotent, so they can be repeated, even after this node has restarted.
+ *
+ * Prepared transfers are written to wallet.data.dir/cluster-transfers before
+ * the coordinator is told they're prepared, so a commit that gets lost while
+ * this node is down is still resolved once it's back. The file of a committed
+ * transfer is only deleted after the retention time, long after the credit has
+ * been saved, and until then a restart re-checks the recipient's ledger before
+ * crediting again.
+ */
+@Component
+public class ClusterTransfers {
+
+	public enum Status {
+		PREPARED, COMMITTED, ABORTED, UNKNOWN
+	}
+
+	/**
+	 * A transfer as it's sent between nodes.
+	 *
+	 * @param coordinator The node of the sender, which knows the outcome
+	 * @param prepared    When (epoch ms, by the coordinator's clock) the transfer
+	 *                    was prepared, so neither ledger has it before then. 0 if
+	 *                    unknown (eg. written by an older version).
+	 */
+	public record TransferMessage(UUID id, UUID sender, UUID recipient, BigDecimal amount, String coordinator,
+			long prepared) {
+
+		public TransferMessage(UUID id, UUID sender, UUID recipient, BigDecimal amount, String coordinator) {
+			this(id, sender, recipient, amount, coordinator, System.currentTimeMillis());
+		}
+
+		public static TransferMessage of(TransferInterface transfer, String coordinator) {
+			return new TransferMessage(transfer.getId(), transfer.getSender(), transfer.getRecipient(),
+					transfer.getAmount(), coordinator);
+		}
+	}
+
+	public record TransferStatus(UUID id, Status status) {
+	}
+
+	/**
+	 * What this node knows about a transfer it's receiving.
+	 */
+	private static class Entry {
+		private final TransferMessage message;
+		private final long since = System.currentTimeMillis();
+		private Status status;
+		/**
+		 * Whether the recipient may already have been credited, so the ledger has to
+		 * be checked before committing.
+		 */
+		private boolean recovered;
+
+		private Entry(TransferMessage message, Status status) {
+			this.message = message;
+			this.status = status;
+		}
+	}
+
+	private static final String SUFFIX = ".json";
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final ConcurrentMap<UUID, Entry> transfers = new ConcurrentHashMap<>();
+
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+	private final Cluster cluster;
+	private final WalletServiceInterface walletService;
+	private final TransferFactoryInterface transferFactory;
+
+	/**
+	 * How long (ms) a transfer may stay prepared before the coordinator is asked
+	 * what became of it. Has to be well above the time a coordinator needs to
+	 * append to the sender's ledger once the transfer is prepared.
+	 */
+	@Value("${wallet.api.cluster.resolve-after:30000}")
+	private long resolveAfter;
+
+	/**
+	 * How long (ms) to remember committed and aborted transfers.
+	 */
+	@Value("${wallet.api.cluster.retention:600000}")
+	private long retention;
+
+	/**
+	 * How far (ms) the clocks of the nodes may be apart. Looking for a transfer in
+	 * a ledger stops at entries older than when it was prepared by this much.
+	 */
+	@Value("${wallet.api.cluster.clock-skew:60000}")
+	private long clockSkew = 60000;
+
+	/**
+	 * Where prepared transfers are kept, or null to keep them only in memory.
+	 */
+	private final Path dir;
+
+	private ScheduledExecutorService resolver;
+
+	@Autowired
+	public ClusterTransfers(Cluster cluster, WalletServiceInterface walletService,
+			TransferFactoryInterface transferFactory, @Value("${wallet.data.dir:./test_data}") String walletDataDir) {
+		this.cluster = cluster;
+		this.walletService = walletService;
+		this.transferFactory = transferFactory;
+		this.dir = Paths.get(walletDataDir, "cluster-transfers");
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). Nothing is resolved
+	 * until {@link #resolve()} is called, and nothing is recovered until
+	 * {@link #recover()} is.
+	 *
+	 * @param dir Where to keep prepared transfers, or null to keep them only in
+	 *            memory
+	 */
+	public ClusterTransfers(Cluster cluster, WalletServiceInterface walletService,
+			TransferFactoryInterface transferFactory, long resolveAfter, long retention, Path dir) {
+		this.cluster = cluster;
+		this.walletService = walletService;
+		this.transferFactory = transferFactory;
+		this.resolveAfter = resolveAfter;
+		this.retention = retention;
+		this.dir = dir;
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests), keeping prepared
+	 * transfers only in memory.
+	 */
+	public ClusterTransfers(Cluster cluster, WalletServiceInterface walletService,
+			TransferFactoryInterface transferFactory, long resolveAfter, long retention) {
+		this(cluster, walletService, transferFactory, resolveAfter, retention, null);
+	}
+
+	@PostConstruct
+	public void start() {
+		if (!this.cluster.isEnabled()) {
+			return;
+		}
+		this.recover();
+		this.resolver = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "cluster-transfer-resolver");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = Math.max(1000, this.resolveAfter / 3);
+		this.resolver.scheduleWithFixedDelay(this::resolve, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (this.resolver != null) {
+			this.resolver.shutdownNow();
+		}
+	}
+
+	/**
+	 * Phase one: checks that the recipient exists here and remembers the transfer.
+	 * Repeating it is harmless.
+	 *
+	 * @throws NotFoundException         if the recipient doesn't exist
+	 * @throws ResourceConflictException if the transfer has already been aborted,
+	 *                                   or the recipient isn't on this node
+	 */
+	public void prepare(TransferMessage message) throws NotFoundException, ResourceConflictException {
+		this.getRecipient(message);
+		Entry prepared = new Entry(message, Status.PREPARED);
+		Entry entry = this.transfers.putIfAbsent(message.id(), prepared);
+		if (entry != null && entry.status == Status.ABORTED) {
+			throw new ResourceConflictException("Transfer " + message.id() + " has already been aborted");
+		}
+		if (entry == null) {
+			try {
+				// Before answering, since the coordinator may commit as soon as it has
+				this.persist(message);
+			} catch (IOException e) {
+				this.transfers.remove(message.id(), prepared);
+				this.logger.error("Failed to store prepared transfer {}", message.id(), e);
+				throw new ServerErrorException("Failed to store transfer " + message.id());
+			}
+		}
+		this.logger.debug("Prepared transfer {} from {}", message.id(), message.coordinator());
+	}
+
+	/**
+	 * Phase two: credits the recipient, unless that has already been done.
+	 *
+	 * @throws ResourceConflictException if the transfer has been aborted
+	 */
+	public void commit(TransferMessage message) throws NotFoundException, ResourceConflictException {
+		WalletInterface recipient = this.getRecipient(message);
+		boolean[] credited = { false };
+		this.transfers.compute(message.id(), (id, entry) -> {
+			if (entry == null) {
+				// Never prepared, or forgotten since (eg. by a restart), so it may already
+				// have been credited
+				entry = new Entry(message, Status.PREPARED);
+				entry.recovered = true;
+			}
+			if (entry.recovered && entry.status == Status.PREPARED) {
+				entry.recovered = false;
+				if (this.isInLedger(recipient, id, message.prepared())) {
+					entry.status = Status.COMMITTED;
+				}
+			}
+			if (entry.status == Status.ABORTED) {
+				throw new ResourceConflictException("Transfer " + id + " has already been aborted");
+			}
+			if (entry.status == Status.PREPARED) {
+				// Credited while holding the entry, so repeated commits wait for this one
+				this.walletService.receiveMoney(recipient.getId(), this.transferFactory.fromSendRequest(id,
+						message.sender(), message.recipient(), message.amount()));
+				entry.status = Status.COMMITTED;
+				credited[0] = true;
+			}
+			return entry;
+		});
+		if (credited[0]) {
+			this.logger.debug("Committed transfer {} from {}", message.id(), message.coordinator());
+		}
+	}
+
+	/**
+	 * Forgets a prepared transfer, and makes sure it's never committed.
+	 *
+	 * @throws ResourceConflictException if it's already been committed
+	 */
+	public void abort(UUID transferId) throws ResourceConflictException {
+		this.transfers.compute(transferId, (id, entry) -> {
+			if (entry == null) {
+				return new Entry(null, Status.ABORTED);
+			}
+			if (entry.status == Status.COMMITTED) {
+				throw new ResourceConflictException("Transfer " + id + " has already been committed");
+			}
+			entry.status = Status.ABORTED;
+			return entry;
+		});
+		this.forget(transferId);
+		this.logger.debug("Aborted transfer {}", transferId);
+	}
+
+	/**
+	 * Answers a participant asking what became of a transfer sent from here:
+	 * committed if it's in the sender's ledger, else unknown.
+	 *
+	 * @param prepared When the transfer was prepared (see
+	 *                 {@link TransferMessage#prepared()}), or 0 if unknown
+	 */
+	public Status getStatus(UUID transferId, UUID senderWalletId, long prepared) throws NotFoundException {
+		if (!this.cluster.isLocal(senderWalletId)) {
+			throw new NotFoundException("Wallet " + senderWalletId + " isn't on node " + this.cluster.getSelf());
+		}
+		WalletInterface sender = this.walletService.getWalletUnathenticated(senderWalletId);
+		return this.isInLedger(sender, transferId, prepared) ? Status.COMMITTED : Status.UNKNOWN;
+	}
+
+	/**
+	 * Gets the number of transfers which are prepared but not yet committed or
+	 * aborted.
+	 */
+	public int getPrepared() {
+		return (int) this.transfers.values().stream().filter(entry -> entry.status == Status.PREPARED).count();
+	}
+
+	/**
+	 * Asks the coordinators of transfers prepared for longer than resolve-after
+	 * how they ended, and forgets finished transfers after the retention time.
+	 */
+	public void resolve() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<UUID, Entry> e : this.transfers.entrySet()) {
+			Entry entry = e.getValue();
+			try {
+				if (entry.status == Status.PREPARED && now - entry.since > this.resolveAfter) {
+					this.resolve(entry.message);
+				} else if (entry.status != Status.PREPARED && now - entry.since > this.retention) {
+					if (this.transfers.remove(e.getKey(), entry)) {
+						this.forget(e.getKey());
+					}
+				}
+			} catch (Exception ex) {
+				// Never let an exception kill the scheduled task, try again next time
+				this.logger.warn("Failed to resolve transfer {}: {}", e.getKey(), ex.toString());
+			}
+		}
+	}
+
+	private void resolve(TransferMessage message) throws IOException {
+		HttpResponse<byte[]> response = this.cluster.call(message.coordinator(), "/transfers/" + message.id()
+				+ "?sender=" + message.sender() + "&prepared=" + message.prepared(), null);
+		if (response.statusCode() != 200) {
+			throw this.cluster.toException(message.coordinator(), response);
+		}
+		Status status = this.cluster.read(response, TransferStatus.class).status();
+		this.logger.info("Transfer {} was left prepared, {} says it's {}", message.id(), message.coordinator(),
+				status);
+		if (status == Status.COMMITTED) {
+			this.commit(message);
+		} else if (status == Status.UNKNOWN) {
+			this.abort(message.id());
+		}
+	}
+
+	/**
+	 * Reloads the transfers which were prepared or committed when this node
+	 * stopped. They're all taken as prepared, and resolved with their coordinator
+	 * after resolve-after, checking the recipient's ledger before crediting.
+	 */
+	public void recover() {
+		if (this.dir == null || !Files.isDirectory(this.dir)) {
+			return;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "*" + SUFFIX)) {
+			for (Path file : files) {
+				try {
+					TransferMessage message = this.objectMapper.readValue(file.toFile(), TransferMessage.class);
+					Entry entry = new Entry(message, Status.PREPARED);
+					entry.recovered = true;
+					this.transfers.putIfAbsent(message.id(), entry);
+				} catch (IOException e) {
+					this.logger.error("Failed to read prepared transfer {}", file, e);
+				}
+			}
+		} catch (IOException e) {
+			this.logger.error("Failed to list prepared transfers in {}", this.dir, e);
+		}
+		this.logger.info("Recovered {} prepared transfers", this.getPrepared());
+	}
+
+	/**
+	 * Writes a prepared transfer to disk, atomically and durably.
+	 */
+	private void persist(TransferMessage message) throws IOException {
+		if (this.dir == null) {
+			return;
+		}
+		Files.createDirectories(this.dir);
+		Path path = this.dir.resolve(message.id() + SUFFIX);
+		Path temp = this.dir.resolve(message.id() + SUFFIX + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(this.objectMapper.writeValueAsBytes(message));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+		try (FileChannel channel = FileChannel.open(this.dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Flushing a directory isn't supported everywhere, left to the OS then
+		}
+	}
+
+	private void forget(UUID transferId) {
+		if (this.dir == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(this.dir.resolve(transferId + SUFFIX));
+		} catch (IOException e) {
+			this.logger.warn("Failed to delete prepared transfer {}: {}", transferId, e.toString());
+		}
+	}
+
+	private WalletInterface getRecipient(TransferMessage message) throws NotFoundException {
+		if (!this.cluster.isLocal(message.recipient())) {
+			// The nodes disagree about the ring
+			throw new ResourceConflictException("Wallet " + message.recipient() + " isn't on node "
+					+ this.cluster.getSelf());
+		}
+		return this.walletService.getWalletUnathenticated(message.recipient());
+	}
+
+	/**
+	 * Looks for a transfer in a ledger, newest first since that's where transfers
+	 * being resolved are. Entries older than when the transfer was prepared (less
+	 * the clock skew) can't be it, so the scan stops there rather than paging in
+	 * the whole history of a busy wallet.
+	 *
+	 * @param prepared When the transfer was prepared, or 0 to look through the
+	 *                 whole ledger
+	 */
+	private boolean isInLedger(WalletInterface wallet, UUID transferId, long prepared) {
+		long oldest = prepared > 0 ? prepared - this.clockSkew : Long.MIN_VALUE;
+		int chunk = 512;
+		long to = wallet.getLedgerSequence();
+		while (to > 0) {
+			long from = Math.max(0, to - chunk);
+			List<TransferInterface> entries = wallet.getLedger(from, (int) (to - from));
+			boolean older = false;
+			for (TransferInterface transfer : entries) {
+				if (transferId.equals(transfer.getId())) {
+					return true;
+				}
+				older |= transfer.getTimestamp() < oldest;
+			}
+			if (older) {
+				// Entries are appended in (nearly) timestamp order, so the rest are older
+				return false;
+			}
+			to = from;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,98 @@
+package com.example.walletapi.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Decides which node owns a wallet by consistent hashing of the wallet ID.
+ *
+ * Every node is placed on a ring of 64-bit hashes at {@code virtualNodes}
+ * points, and a wallet belongs to the first node at or after the hash of its ID
+ * (wrapping around). The many points per node even out the share each node
+ * gets, and adding or removing a node only moves the wallets next to its
+ * points, about 1/N of them, instead of reshuffling everything like
+ * {@code hash % N} would.
+ *
+ * Immutable, so it can be shared by any number of threads.
+ */
+public class ConsistentHashRing {
+
+	private final NavigableMap<Long, String> ring = new TreeMap<>();
+	private final List<String> nodes;
+
+	/**
+	 * @param nodes        The nodes, eg. their base URLs. Every node of a cluster
+	 *                     must be given the same ones (in any order).
+	 * @param virtualNodes The number of points per node on the ring.
+	 */
+	public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("A ring needs at least one node");
+		}
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("Every node needs at least one point on the ring, got "
+					+ virtualNodes);
+		}
+		this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+		for (String node : this.nodes) {
+			for (int i = 0; i < virtualNodes; i++) {
+				// On the very unlikely collision the node sorting first keeps the point,
+				// so every node still agrees on who owns what
+				this.ring.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+			}
+		}
+	}
+
+	/**
+	 * Gets the node owning a wallet.
+	 */
+	public String getOwner(UUID walletId) {
+		Map.Entry<Long, String> entry = this.ring.ceilingEntry(hash(walletId));
+		return entry != null ? entry.getValue() : this.ring.firstEntry().getValue();
+	}
+
+	public List<String> getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Hashes a point of a node. MD5 is only used since it spreads similar strings
+	 * (like "node#1" and "node#2") evenly and every JVM has it.
+	 */
+	static long hash(String point) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(point.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; i++) {
+				hash = (hash << 8) | (digest[i] & 0xff);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is missing from this JVM", e);
+		}
+	}
+
+	/**
+	 * Hashes a wallet ID. Random UUIDs are already well spread except for the
+	 * version and variant bits, so mixing the two halves is enough (the finalizer
+	 * of MurmurHash3).
+	 */
+	static long hash(UUID walletId) {
+		long h = walletId.getMostSignificantBits() ^ Long.rotateLeft(walletId.getLeastSignificantBits(), 32);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
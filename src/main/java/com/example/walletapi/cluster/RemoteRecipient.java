@@ -0,0 +1,116 @@
+package com.example.walletapi.cluster;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.walletapi.cluster.ClusterTransfers.TransferMessage;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.RecipientInterface;
+import com.example.walletapi.model.TransferInterface;
+
+/**
+ * Stands in for a wallet on another node as the recipient of a transfer, see
+ * {@link ClusterTransfers} for the protocol.
+ *
+ * {@link #receiveMoney} is called by the sending wallet once it has reserved
+ * the funds, and prepares the credit on the other node. If it throws the
+ * sending wallet reverts the reservation, otherwise it appends the transfer to
+ * its ledger, after which {@link #commit()} has to be called. Used for a single
+ * transfer.
+ */
+public class RemoteRecipient implements RecipientInterface {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final Cluster cluster;
+	private final String node;
+	private final UUID id;
+
+	private TransferMessage prepared;
+
+	public RemoteRecipient(Cluster cluster, String node, UUID id) {
+		this.cluster = cluster;
+		this.node = node;
+		this.id = id;
+	}
+
+	public UUID getId() {
+		return this.id;
+	}
+
+	public String getNode() {
+		return this.node;
+	}
+
+	/**
+	 * Prepares the credit on the recipient's node, and validates the transfer.
+	 *
+	 * @throws ServiceUnavailableException if the node can't be reached. Anything
+	 *                                     the node answers with is thrown as the
+	 *                                     same exception it threw there.
+	 */
+	public void receiveMoney(TransferInterface transfer) {
+		if (this.prepared != null) {
+			throw new IllegalStateException("A RemoteRecipient is only used for a single transfer");
+		}
+		TransferMessage message = TransferMessage.of(transfer, this.cluster.getSelf());
+		HttpResponse<byte[]> response;
+		try {
+			response = this.cluster.call(this.node, "/transfers/prepare", message);
+		} catch (IOException e) {
+			// It may have been prepared anyway
+			this.abort(message);
+			throw new ServiceUnavailableException("The node of wallet " + this.id
+					+ " can't be reached right now, please try again later");
+		}
+		if (response.statusCode() != 200) {
+			if (response.statusCode() >= 500) {
+				this.abort(message);
+			}
+			throw this.cluster.toException(this.node, response);
+		}
+		transfer.validate();
+		this.prepared = message;
+	}
+
+	/**
+	 * Tells the recipient's node to credit the prepared transfer. Call once the
+	 * transfer is in the sender's ledger. If the node can't be told now it'll ask
+	 * later, so this never throws.
+	 */
+	public void commit() {
+		if (this.prepared == null) {
+			throw new IllegalStateException("Nothing has been prepared");
+		}
+		try {
+			HttpResponse<byte[]> response = this.cluster.call(this.node, "/transfers/commit", this.prepared);
+			if (response.statusCode() != 200) {
+				this.logger.error("Node {} failed to commit transfer {}: {}", this.node, this.prepared.id(),
+						this.cluster.toException(this.node, response).getReason());
+			}
+		} catch (IOException e) {
+			this.logger.warn("Failed to commit transfer {} on node {}, it'll be resolved by that node later",
+					this.prepared.id(), this.node, e);
+		}
+	}
+
+	/**
+	 * Tells the recipient's node to forget a transfer which may have been
+	 * prepared. Done in the background, and if it fails the node will find out
+	 * anyway when it asks.
+	 */
+	private void abort(TransferMessage message) {
+		CompletableFuture.runAsync(() -> {
+			try {
+				this.cluster.call(this.node, "/transfers/abort", message);
+			} catch (IOException e) {
+				this.logger.debug("Failed to abort transfer {} on node {}", message.id(), this.node, e);
+			}
+		});
+	}
+}
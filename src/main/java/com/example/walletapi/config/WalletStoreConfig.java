@@ -0,0 +1,37 @@
+package com.example.walletapi.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.walletapi.store.WalletStoreInterface;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+import com.example.walletapi.store.impl.MVStoreWalletStore;
+
+/**
+ * Picks where wallets are persisted with wallet.api.store.type: "json" for a
+ * JSON file per wallet (see {@link JsonFileWalletStore}) or "mvstore" for an
+ * embedded key-value store (see {@link MVStoreWalletStore}). Both keep their
+ * data in wallet.data.dir.
+ */
+@Configuration
+public class WalletStoreConfig {
+
+	@Bean(destroyMethod = "close")
+	public WalletStoreInterface walletStore(@Value("${wallet.api.store.type:json}") String type,
+			@Value("${wallet.data.dir:./test_data}") String walletDataDir,
+			@Value("${wallet.api.store.mvstore.cache-size:16}") int cacheSize,
+			@Value("${wallet.api.store.mvstore.compress:true}") boolean compress,
+			@Value("${wallet.api.store.mvstore.commit-delay:100}") int commitDelay) throws IOException {
+		if ("json".equalsIgnoreCase(type)) {
+			return new JsonFileWalletStore(Path.of(walletDataDir));
+		} else if ("mvstore".equalsIgnoreCase(type)) {
+			return new MVStoreWalletStore(Path.of(walletDataDir, "wallets.mv.db"), cacheSize, compress,
+					commitDelay);
+		}
+		throw new IllegalArgumentException("Unknown wallet store '" + type + "', use 'json' or 'mvstore'");
+	}
+}
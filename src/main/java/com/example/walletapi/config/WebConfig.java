@@ -0,0 +1,62 @@
+package com.example.walletapi.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.example.walletapi.serialization.LedgerChunkCache;
+import com.example.walletapi.serialization.LedgerResponseHttpMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Web configuration for the application.
+ * 
+ * Any HttpMessageConverter beans declared here are picked up by Spring Boot
+ * and put in front of the default converters (replacing any default converter
+ * of the same class).
+ * 
+ * Besides JSON, all endpoints can respond with CBOR ("Accept:
+ * application/cbor") or Smile ("Accept: application/x-jackson-smile"), which
+ * are cheaper to produce and smaller for UUIDs and decimals. Large responses
+ * are also compressed, see server.compression.* in application.properties.
+ * 
+ * Only used by Spring MVC, the "reactive" profile only serves JSON (see
+ * {@link com.example.walletapi.reactive.WalletRouter}).
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Configuration
+public class WebConfig {
+
+	/**
+	 * Writes ledgers as JSON using pre-serialized blocks, see
+	 * {@link LedgerResponseHttpMessageConverter}. Uses the ObjectMapper configured
+	 * by Spring Boot so the output is the same as for the other responses.
+	 */
+	@Bean
+	public LedgerResponseHttpMessageConverter ledgerResponseHttpMessageConverter(ObjectMapper objectMapper,
+			LedgerChunkCache ledgerChunkCache) {
+		return new LedgerResponseHttpMessageConverter(objectMapper, ledgerChunkCache);
+	}
+
+	/**
+	 * The builder injected here is the one Spring Boot configures with the
+	 * spring.jackson.* properties, so CBOR gets the same settings as JSON.
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+	/**
+	 * Same as {@link #cborHttpMessageConverter} but for Smile.
+	 */
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+	}
+}
@@ -6,35 +6,133 @@ import com.example.walletapi.dto.requests.TransferRequestDto;
 import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.LedgerResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.BadRequestException;
 import com.example.walletapi.exception.NotFoundException;
 import com.example.walletapi.exception.ServerErrorException;
 import com.example.walletapi.security.JwtUtil;
+import com.example.walletapi.service.WalletEventHubInterface;
 import com.example.walletapi.service.WalletServiceInterface;
+import com.example.walletapi.util.EtagUtil;
+import com.example.walletapi.dto.responses.WalletEventDto;
 import com.example.walletapi.model.WalletInterface;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * REST Controller for authenticated operations on a wallet.
  */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 @RequestMapping("/api/wallet/v1/protected")
 public class WalletControllerProtected {
 
+	/**
+	 * The documentation served by /help (also by the "reactive" profile).
+	 */
+	public static final String DOCUMENTATION = """
+			Wallet API Documentation
+			======================
+
+			Protected Endpoints:
+
+			All endpoints respond with JSON by default, or with CBOR or Smile if the
+			Accept header asks for application/cbor or application/x-jackson-smile.
+			Large responses are gzipped if the client sends Accept-Encoding: gzip.
+
+			""" + WalletControllerProtected.ENDPOINTS;
+
+	/**
+	 * The documentation served by the reactive stack, which only speaks JSON.
+	 */
+	public static final String REACTIVE_DOCUMENTATION = """
+			Wallet API Documentation
+			======================
+
+			Protected Endpoints:
+
+			All endpoints respond with JSON. Large responses are gzipped if the
+			client sends Accept-Encoding: gzip.
+
+			""" + WalletControllerProtected.ENDPOINTS;
+
+	private static final String ENDPOINTS = """
+			GET /api/wallet/v1/help
+				Returns this documentation.
+
+			GET /api/wallet/v1/balance
+				Gets the balance of a wallet.
+				Requires: JWT token in Authorization header
+				Returns: { walletId: UUID, balance: BigDecimal, timestamp: Long }
+				Supports If-None-Match with the returned ETag (304 if unchanged)
+
+			GET /api/wallet/v1/transactions?since=<sequence>
+				Gets the transaction history of a wallet. If 'since' is given only
+				entries appended after that position are returned. Use the returned
+				'sequence' as 'since' on the next request. If the returned 'sequence'
+				is lower than the 'since' you sent you should fetch the whole ledger
+				again.
+				Requires: JWT token in Authorization header
+				Returns: { transfers: Array<Transfer>, timestamp: Long, sequence: Long }
+				Supports If-None-Match with the returned ETag (304 if unchanged)
+
+			GET /api/wallet/v1/events
+				Subscribes to changes of a wallet as Server-Sent Events, use instead
+				of polling /balance. Bursts of changes are coalesced into a single
+				event, so use 'sequence' with /transactions?since= to get the new
+				transfers. The stream is closed after a while (or if the client is too
+				slow to keep up) and the client should then reconnect.
+				Requires: JWT token in Authorization header
+				Returns: event 'wallet' { walletId: UUID, balance: BigDecimal, sequence: Long, timestamp: Long }
+
+			POST /api/wallet/v1/deposit
+				Deposits money into a wallet.
+				Requires: JWT token in Authorization header
+				Body: { amount: BigDecimal, token: String }
+				Returns: { walletId: UUID, balance: BigDecimal, timestamp: Long }
+
+			POST /api/wallet/v1/transfer
+				Sends money to another wallet.
+				Requires: JWT token in Authorization header
+				Body: { destinationWalletId: UUID, amount: BigDecimal }
+				Returns: { transferId: UUID,recipientWalletId:UUID, amount: BigDecimal, remainingBalance: BigDecimal, timestamp: Long }
+
+			""";
+
 	private final WalletServiceInterface walletService;
+	private final WalletEventHubInterface eventHub;
 	private final JwtUtil jwtUtil;
 
 	private final Logger logger;
 
+	/**
+	 * How long (in milliseconds) an event stream stays open before the client has
+	 * to reconnect.
+	 */
+	@Value("${wallet.api.events.stream-timeout:300000}")
+	private long eventStreamTimeout;
+
 	@Autowired
-	public WalletControllerProtected(WalletServiceInterface walletService, JwtUtil jwtUtil) {
+	public WalletControllerProtected(WalletServiceInterface walletService, WalletEventHubInterface eventHub,
+			JwtUtil jwtUtil) {
 		this.walletService = walletService;
+		this.eventHub = eventHub;
 		this.jwtUtil = jwtUtil;
 		this.logger = LoggerFactory.getLogger(this.getClass());
 	}
@@ -46,38 +144,7 @@ public class WalletControllerProtected {
 	 */
 	@GetMapping("/help")
 	public String getDocumentation() {
-		return """
-				Wallet API Documentation
-				======================
-
-				Protected Endpoints:
-
-				GET /api/wallet/v1/help
-					Returns this documentation.
-
-				GET /api/wallet/v1/balance
-					Gets the balance of a wallet.
-					Requires: JWT token in Authorization header
-					Returns: { walletId: UUID, balance: BigDecimal, timestamp: Long }
-
-				GET /api/wallet/v1/ledger
-					Gets the transaction history of a wallet.
-					Requires: JWT token in Authorization header
-					Returns: { transfers: Array<Transfer>, timestamp: Long}
-
-				POST /api/wallet/v1/deposit
-					Deposits money into a wallet.
-					Requires: JWT token in Authorization header
-					Body: { amount: BigDecimal, token: String }
-					Returns: { walletId: UUID, balance: BigDecimal, timestamp: Long }
-
-				POST /api/wallet/v1/transfer
-					Sends money to another wallet.
-					Requires: JWT token in Authorization header
-					Body: { destinationWalletId: UUID, amount: BigDecimal }
-					Returns: { transferId: UUID,recipientWalletId:UUID, amount: BigDecimal, remainingBalance: BigDecimal, timestamp: Long }
-
-				""";
+		return DOCUMENTATION;
 	}
 
 	/**
@@ -89,11 +156,7 @@ public class WalletControllerProtected {
 	 * 
 	 */
 	private WalletInterface getWallet() {
-		UUID walletId = jwtUtil.getAuthenticatedUser(UUID.class);
-		if (walletId == null) {
-			logger.error("BUGBUG: The security filter chain failed to set a wallet ID on the security context.");
-			throw new ServerErrorException(66645);
-		}
+		UUID walletId = this.getWalletId();
 		try {
 			return walletService.getWalletUnathenticated(walletId);
 		} catch (NotFoundException e) {
@@ -102,40 +165,118 @@ public class WalletControllerProtected {
 		}
 	}
 
+	/**
+	 * Gets the ID of the authenticated wallet, without looking the wallet up.
+	 * 
+	 * @throws ServerErrorException BUG 66645 if the security filter chain failed to
+	 *                              set a wallet ID on the security context
+	 */
+	private UUID getWalletId() {
+		UUID walletId = jwtUtil.getAuthenticatedUser(UUID.class);
+		if (walletId == null) {
+			logger.error("BUGBUG: The security filter chain failed to set a wallet ID on the security context.");
+			throw new ServerErrorException(66645);
+		}
+		return walletId;
+	}
+
+	/**
+	 * Responds with 304 if the client already has the current state of the
+	 * wallet, else with the body produced by the supplier.
+	 * 
+	 * @param resource See {@link EtagUtil#walletEtag}
+	 * @param since    See {@link EtagUtil#walletEtag}
+	 */
+	private <T> ResponseEntity<T> conditionalGet(WebRequest request, WalletInterface wallet, String resource,
+			Long since, Supplier<T> body) {
+		String etag = EtagUtil.walletEtag(wallet, resource, since, request.getHeader(HttpHeaders.ACCEPT));
+		// "no-cache" means clients may store the response but must revalidate it,
+		// which is exactly what we want. Without it Spring Security adds "no-store".
+		CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+		if (request.checkNotModified(etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+					.varyBy(HttpHeaders.ACCEPT).build();
+		}
+		return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT)
+				.body(body.get());
+	}
+
 	/**
 	 * Get wallet balance.
 	 * 
-	 * @param walletId The ID of the wallet
-	 * @return A {@link BalanceResponseDto} containing the wallet balance
+	 * @return A {@link BalanceResponseDto} containing the wallet balance, or 304
+	 *         if it hasn't changed since the ETag sent in If-None-Match
 	 */
 	@GetMapping("/balance")
-	public ResponseEntity<BalanceResponseDto> getBalance() {
-		return ResponseEntity.ok(getWallet().getBalanceDto());
+	public ResponseEntity<BalanceResponseDto> getBalance(WebRequest request) {
+		WalletInterface wallet = getWallet();
+		return conditionalGet(request, wallet, "balance", null, wallet::getBalanceDto);
 	}
 
 	/**
 	 * Get wallet transactions.
 	 * 
-	 * @param walletId The ID of the wallet
-	 * @return List of transactions for the wallet
+	 * @param since Optional. The ledger position the client already has, in which
+	 *              case only newer entries are returned.
+	 * @return List of transactions for the wallet, or 304 if it hasn't changed
+	 *         since the ETag sent in If-None-Match
 	 */
 	@GetMapping("/transactions")
-	public ResponseEntity<LedgerResponseDto> getTransactions() {
-		return ResponseEntity.ok(getWallet().getLedgerDto());
+	public ResponseEntity<LedgerResponseDto> getTransactions(@RequestParam(required = false) Long since,
+			WebRequest request) {
+		if (since != null && since < 0) {
+			throw new BadRequestException("The 'since' parameter must be a ledger position >= 0");
+		}
+		WalletInterface wallet = getWallet();
+		return conditionalGet(request, wallet, "transactions", since,
+				() -> since == null ? wallet.getLedgerDto() : wallet.getLedgerDto(since));
+	}
+
+	/**
+	 * Subscribe to changes of the wallet.
+	 * 
+	 * @return A stream of {@link WalletEventDto}
+	 */
+	@GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter getEvents() {
+		WalletInterface wallet = getWallet();
+		SseEmitter emitter = new SseEmitter(this.eventStreamTimeout);
+		WalletEventHubInterface.Subscription subscription = this.eventHub.subscribe(wallet,
+				new WalletEventHubInterface.Subscriber() {
+					@Override
+					public void send(WalletEventDto event) throws IOException {
+						emitter.send(SseEmitter.event().name("wallet").id(Long.toString(event.getSequence()))
+								.data(event, MediaType.APPLICATION_JSON));
+					}
+
+					@Override
+					public void close() {
+						emitter.complete();
+					}
+				});
+		emitter.onCompletion(subscription::cancel);
+		emitter.onTimeout(subscription::cancel);
+		emitter.onError(e -> subscription.cancel());
+		return emitter;
 	}
 
 	/**
 	 * Send money to another wallet
 	 * 
+	 * The transfer is made on a service thread, so the request thread is released
+	 * while it waits.
+	 * 
 	 * @param transferRequestDto The transfer details
 	 * 
 	 * @return The completed transfer details
 	 */
 	@PostMapping("/transfer")
-	public ResponseEntity<TransferResponseDto> transfer(@Valid @RequestBody TransferRequestDto transferRequestDto) {
-		WalletInterface wallet = getWallet();
-		return ResponseEntity.ok(walletService.sendMoney(
-				wallet.getId(), transferRequestDto.getDestinationWalletId(), transferRequestDto.getAmount()));
+	public CompletableFuture<ResponseEntity<TransferResponseDto>> transfer(
+			@Valid @RequestBody TransferRequestDto transferRequestDto) {
+		// The service looks up (and if needed loads) the wallet, so only the ID is
+		// taken from the security context here
+		return walletService.sendMoneyAsync(this.getWalletId(), transferRequestDto.getDestinationWalletId(),
+				transferRequestDto.getAmount()).thenApply(ResponseEntity::ok);
 	}
 
 	/**
@@ -146,9 +287,9 @@ public class WalletControllerProtected {
 	 * @return The completed transfer details
 	 */
 	@PostMapping("/deposit")
-	public ResponseEntity<BalanceResponseDto> deposit(@Valid @RequestBody DepositRequestDto transferRequestDto) {
-		WalletInterface wallet = getWallet();
-		return ResponseEntity.ok(walletService.depositMoney(wallet.getId(), transferRequestDto.getAmount(),
-				transferRequestDto.getToken()));
+	public CompletableFuture<ResponseEntity<BalanceResponseDto>> deposit(
+			@Valid @RequestBody DepositRequestDto transferRequestDto) {
+		return walletService.depositMoneyAsync(this.getWalletId(), transferRequestDto.getAmount(),
+				transferRequestDto.getToken()).thenApply(ResponseEntity::ok);
 	}
 }
\ No newline at end of file
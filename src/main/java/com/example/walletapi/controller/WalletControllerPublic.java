@@ -7,19 +7,55 @@ import com.example.walletapi.security.JwtUtil;
 import com.example.walletapi.service.WalletServiceInterface;
 import com.example.walletapi.model.WalletInterface;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * REST Controller for wallet operations.
  */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 @RequestMapping("/api/wallet/v1/public")
 public class WalletControllerPublic {
 
+	/**
+	 * The documentation served by /help (also by the "reactive" profile).
+	 */
+	public static final String DOCUMENTATION = """
+			Wallet API Documentation
+			======================
+
+			Public Endpoints:
+
+			GET /api/wallet/v1/help
+				Returns this documentation.
+
+			POST /api/wallet/v1/create
+				Creates a new wallet.
+				Requires: { password: String }
+				Returns: { walletId: UUID, token: JWT }
+
+			PUT /api/wallet/v1/access
+				Get the access token for an existing wallet
+				Requires: { walletId: UUID, password: String }
+				Returns: { walletId: UUID, token: JWT }
+
+
+			Usage:
+			======
+			These endpoints don't require authentication. You don't need to set any
+			particular headers. Request bodies should be json formated strings.
+
+			The '/access' and '/create' endpoints return a token which should be set
+			on the Authorization header ("Bearer <token>") of any requests to protected
+			endpoints '/protected/**'.
+			""";
+
 	private final WalletServiceInterface walletService;
 	private final JwtUtil jwtUtil;
 
@@ -36,35 +72,7 @@ public class WalletControllerPublic {
 	 */
 	@GetMapping("/help")
 	public String getDocumentation() {
-		return """
-				Wallet API Documentation
-				======================
-
-				Public Endpoints:
-
-				GET /api/wallet/v1/help
-					Returns this documentation.
-
-				POST /api/wallet/v1/create
-					Creates a new wallet.
-					Requires: { password: String }
-					Returns: { walletId: UUID, token: JWT }
-
-				PUT /api/wallet/v1/access
-					Get the access token for an existing wallet
-					Requires: { walletId: UUID, password: String }
-					Returns: { walletId: UUID, token: JWT }
-
-
-				Usage:
-				======
-				These endpoints don't require authentication. You don't need to set any
-				particular headers. Request bodies should be json formated strings.
-
-				The '/access' and '/create' endpoints return a token which should be set
-				on the Authorization header ("Bearer <token>") of any requests to protected
-				endpoints '/protected/**'.
-				""";
+		return DOCUMENTATION;
 	}
 
 	/**
@@ -74,10 +82,12 @@ public class WalletControllerPublic {
 	 *         and a JWT token to access it
 	 */
 	@PostMapping("/create")
-	public ResponseEntity<WalletAccessResponseDto> createWallet(@RequestBody CreateWalletRequestDto request) {
-		WalletInterface wallet = walletService.createWallet(request.getPassword());
-		return new ResponseEntity<WalletAccessResponseDto>(createWalletAccessResponseDto(wallet), HttpStatus.CREATED);
-
+	public CompletableFuture<ResponseEntity<WalletAccessResponseDto>> createWallet(
+			@RequestBody CreateWalletRequestDto request) {
+		// Hashing the password is slow (on purpose), so it's done on a service thread
+		return walletService.createWalletAsync(request.getPassword()).thenApply(
+				wallet -> new ResponseEntity<WalletAccessResponseDto>(createWalletAccessResponseDto(wallet),
+						HttpStatus.CREATED));
 	}
 
 	/**
@@ -90,9 +100,11 @@ public class WalletControllerPublic {
 	 *         and a JWT token to access it
 	 */
 	@PutMapping("/access")
-	public ResponseEntity<WalletAccessResponseDto> getToken(@RequestBody WalletAccessRequestDto request) {
-		WalletInterface wallet = walletService.getWallet(request.getWalletId(), request.getPassword());
-		return new ResponseEntity<WalletAccessResponseDto>(createWalletAccessResponseDto(wallet), HttpStatus.OK);
+	public CompletableFuture<ResponseEntity<WalletAccessResponseDto>> getToken(
+			@RequestBody WalletAccessRequestDto request) {
+		return walletService.getWalletAsync(request.getWalletId(), request.getPassword()).thenApply(
+				wallet -> new ResponseEntity<WalletAccessResponseDto>(createWalletAccessResponseDto(wallet),
+						HttpStatus.OK));
 	}
 
 	/**
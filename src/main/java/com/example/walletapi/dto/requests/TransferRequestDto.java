@@ -1,6 +1,5 @@
 package com.example.walletapi.dto.requests;
 
-import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import java.math.BigDecimal;
@@ -11,7 +10,7 @@ import java.util.UUID;
  */
 public class TransferRequestDto {
 
-	@NotBlank(message = "Destination wallet ID is required")
+	@NotNull(message = "Destination wallet ID is required")
 	private UUID destinationWalletId;
 
 	@NotNull(message = "Transfer amount is required")
@@ -3,9 +3,10 @@ package com.example.walletapi.dto.requests;
 import java.util.UUID;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 
 public class WalletAccessRequestDto {
-	@NotBlank(message = "Wallet ID is required")
+	@NotNull(message = "Wallet ID is required")
 	private UUID walletId;
 	@NotBlank(message = "Password is required")
 	private String password;
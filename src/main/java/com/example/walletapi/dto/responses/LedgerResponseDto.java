@@ -1,12 +1,15 @@
 package com.example.walletapi.dto.responses;
 
 import java.util.List;
+import java.util.UUID;
 
 import com.example.walletapi.model.TransferInterface;
 
 public class LedgerResponseDto {
+	private final String walletId;
 	private final List<TransferInterface> transfers;
 	private final long timestamp;
+	private final long sequence;
 
 	/**
 	 * Constructor for LedgerResponseDto
@@ -14,8 +17,28 @@ public class LedgerResponseDto {
 	 * @param transfers The list of transfers to be added to the ledger
 	 */
 	public LedgerResponseDto(List<TransferInterface> transfers, long timestamp) {
+		this(null, transfers, timestamp, transfers.size());
+	}
+
+	/**
+	 * Constructor for LedgerResponseDto
+	 * 
+	 * @param id        The ID of the wallet the ledger belongs to
+	 * @param transfers The entries of the ledger after position (sequence -
+	 *                  transfers.size()), in order
+	 * @param sequence  The position of the last entry in the ledger, which the
+	 *                  client should send as "since" on its next request to only
+	 *                  get newer entries
+	 */
+	public LedgerResponseDto(UUID id, List<TransferInterface> transfers, long timestamp, long sequence) {
+		this.walletId = id == null ? null : id.toString();
 		this.transfers = transfers;
 		this.timestamp = timestamp;
+		this.sequence = sequence;
+	}
+
+	public String getWalletId() {
+		return walletId;
 	}
 
 	public List<TransferInterface> getTransfers() {
@@ -25,4 +48,8 @@ public class LedgerResponseDto {
 	public long getTimestamp() {
 		return timestamp;
 	}
+
+	public long getSequence() {
+		return sequence;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.example.walletapi.dto.responses;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * DTO for events pushed to subscribers when a wallet changes.
+ * 
+ * Events are coalesced, so a single event can represent several transfers. Use
+ * the sequence with the "since" parameter of the transactions endpoint to fetch
+ * the new transfers.
+ */
+public class WalletEventDto {
+	private final String walletId;
+	private final BigDecimal balance;
+	private final long sequence;
+	private final long timestamp;
+
+	public WalletEventDto(UUID id, BigDecimal balance, long sequence, long timestamp) {
+		this.walletId = id.toString();
+		this.balance = balance;
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+	}
+
+	public String getWalletId() {
+		return walletId;
+	}
+
+	public BigDecimal getBalance() {
+		return balance;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
@@ -0,0 +1,10 @@
+package com.example.walletapi.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class BadRequestException extends ResponseStatusException {
+	public BadRequestException(String message) {
+		super(HttpStatus.BAD_REQUEST, message);
+	}
+}
@@ -50,29 +50,30 @@ public class FilterChainExceptionHandler extends OncePerRequestFilter {
 		// Wrap the remainder of the chain in a try-block so we can handle all the
 		// exceptions....
 		try {
-			getLogger().info("FilterChainExceptionHandler: PASSING REQUEST DOWN THE CHAIN...");
+			getLogger().trace("FilterChainExceptionHandler: PASSING REQUEST DOWN THE CHAIN...");
 			filterChain.doFilter(request, response);
 
 		} catch (ResponseStatusException ex) {
 			// These are the errors this filter is expected to catch...
-			getLogger().info("Correctly caught " + ex.getClass().getName() + ". Responding with " + ex
-					.getStatusCode().value() + " to user. The actual error reads:" + ex.getMessage(), ex);
+			// Happens for every rejected request (bad JWT etc), so keep it out of the INFO log
+			getLogger().debug("Correctly caught {}. Responding with {} to user. The actual error reads: {}",
+					ex.getClass().getName(), ex.getStatusCode().value(), ex.getMessage(), ex);
 			setErrorResponse(response, ex.getStatusCode().value(), ex.getReason(), request.getRequestURI());
 			return;
 
 		} catch (AuthenticationException | AccessDeniedException ex) {
 			// These errors are meant to be handled by security.AuthErrorResponse
-			getLogger().error("BUGBUG: Caught a " + ex.getClass().getName()
-					+ ", these should already have been handled by security.AuthErrorResponse. You may"
-					+ "have registered this filter in the wrong place. Rethrowing the error hoping it "
-					+ "will be caught by the next filter in the chain...");
+			getLogger().error("BUGBUG: Caught a {}, these should already have been handled by "
+					+ "security.AuthErrorResponse. You may have registered this filter in the wrong place. "
+					+ "Rethrowing the error hoping it will be caught by the next filter in the chain...",
+					ex.getClass().getName());
 			throw ex;
 
 		} catch (Exception ex) {
 			// These are unexpected errors which shouldn't happen, but this filter is still
 			// meant too catch them...
-			getLogger().error(
-					"Uncaught error in filter chain. Returning 500 to user. The error reads:" + ex.getMessage(), ex);
+			getLogger().error("Uncaught error in filter chain. Returning 500 to user. The error reads: {}",
+					ex.getMessage(), ex);
 			// Send a generic 500 error response to the client
 			setErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
 					"An internal server error occurred. Please try again later.", request.getRequestURI());
@@ -0,0 +1,72 @@
+package com.example.walletapi.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+
+import com.example.walletapi.exception.ControllerExceptionHandler.ErrorResponseMap;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux version of {@link ControllerExceptionHandler}, so errors look the
+ * same with the "reactive" profile. Runs before Spring Boot's default handler.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Component
+@Order(-2)
+public class ReactiveExceptionHandler implements WebExceptionHandler {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final ObjectMapper objectMapper;
+
+	public ReactiveExceptionHandler(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
+		if (ex instanceof ResponseStatusException responseStatusException) {
+			return this.respond(exchange, responseStatusException.getStatusCode(), responseStatusException.getReason());
+		}
+		// Same as for MVC, anything else wasn't meant for the client
+		this.logger.error("Uncaught exception. Replacing with a '500 Internal Server Error'.", ex);
+		return this.respond(exchange, HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
+	}
+
+	/**
+	 * Responds with an {@link ErrorResponseMap}, unless the response has already
+	 * been started.
+	 */
+	public Mono<Void> respond(ServerWebExchange exchange, HttpStatusCode status, String message) {
+		ServerHttpResponse response = exchange.getResponse();
+		if (response.isCommitted()) {
+			return Mono.empty();
+		}
+		ErrorResponseMap body = new ErrorResponseMap(status.value(), message,
+				exchange.getRequest().getPath().value());
+		byte[] bytes;
+		try {
+			bytes = this.objectMapper.writeValueAsBytes(body);
+		} catch (JsonProcessingException e) {
+			return Mono.error(e);
+		}
+		response.setStatusCode(status);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		DataBuffer buffer = response.bufferFactory().wrap(bytes);
+		return response.writeWith(Mono.just(buffer));
+	}
+}
@@ -0,0 +1,10 @@
+package com.example.walletapi.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class ServiceUnavailableException extends ResponseStatusException {
+	public ServiceUnavailableException(String message) {
+		super(HttpStatus.SERVICE_UNAVAILABLE, message);
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.walletapi.logging;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Decides once per request whether {@link SamplingTurboFilter} keeps its log
+ * events, and puts that in the MDC while the request is on a thread. Runs
+ * before everything else, including security, and again for async dispatches
+ * so the continuation of a request is logged like its start.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LogSamplingFilter extends OncePerRequestFilter {
+
+	private static final String ATTRIBUTE = LogSamplingFilter.class.getName() + ".sampled";
+
+	private final int rate;
+
+	/**
+	 * @param rate Sample 1 in this many requests
+	 */
+	public LogSamplingFilter(@Value("${wallet.api.logging.sample-rate:100}") int rate) {
+		this.rate = Math.max(1, rate);
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+			@NonNull FilterChain filterChain) throws ServletException, IOException {
+		String sampled = (String) request.getAttribute(ATTRIBUTE);
+		if (sampled == null) {
+			sampled = Boolean.toString(ThreadLocalRandom.current().nextInt(this.rate) == 0);
+			request.setAttribute(ATTRIBUTE, sampled);
+		}
+		MDC.put(SamplingTurboFilter.MDC_KEY, sampled);
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			MDC.remove(SamplingTurboFilter.MDC_KEY);
+		}
+	}
+}
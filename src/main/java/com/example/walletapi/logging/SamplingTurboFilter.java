@@ -0,0 +1,100 @@
+package com.example.walletapi.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Lets through the log events of only 1 in {@code rate} requests from the given
+ * loggers, so per-request logging can stay on in production without logging
+ * every request.
+ *
+ * Whether a request is sampled is decided once, by {@link LogSamplingFilter},
+ * so a request is either logged completely or not at all. Events logged outside
+ * a request (or on the reactive stack, which has no MDC) are sampled one by
+ * one instead. Being a turbo filter it runs before the event (or even its
+ * message) is created, so a sampled-out event costs an MDC lookup and a few
+ * string comparisons. Events above {@code maxLevel} (by default WARN and ERROR)
+ * are never sampled out.
+ *
+ * Configured in logback-spring.xml, eg:
+ *
+ * <pre>
+ * &lt;turboFilter class="com.example.walletapi.logging.SamplingTurboFilter"&gt;
+ *   &lt;loggers&gt;com.example.walletapi.security,com.example.walletapi.exception&lt;/loggers&gt;
+ *   &lt;rate&gt;100&lt;/rate&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+	/**
+	 * The MDC key saying whether the current request is sampled, "true" or
+	 * "false".
+	 */
+	public static final String MDC_KEY = "sampled";
+
+	private String[] prefixes = new String[0];
+	private int rate = 100;
+	private Level maxLevel = Level.INFO;
+
+	/**
+	 * @param loggers Comma separated logger names. Child loggers are sampled too.
+	 */
+	public void setLoggers(String loggers) {
+		List<String> _prefixes = new ArrayList<>();
+		for (String logger : loggers.split(",")) {
+			if (!logger.isBlank()) {
+				_prefixes.add(logger.trim());
+			}
+		}
+		this.prefixes = _prefixes.toArray(new String[0]);
+	}
+
+	/**
+	 * @param rate Let through 1 in this many events. 1 lets everything through.
+	 */
+	public void setRate(int rate) {
+		this.rate = Math.max(1, rate);
+	}
+
+	/**
+	 * @param maxLevel The highest level which is sampled.
+	 */
+	public void setMaxLevel(String maxLevel) {
+		this.maxLevel = Level.toLevel(maxLevel, Level.INFO);
+	}
+
+	@Override
+	public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params,
+			Throwable t) {
+		if (!this.isStarted() || level == null || level.toInt() > this.maxLevel.toInt() || this.rate == 1
+				|| !this.matches(logger.getName())) {
+			return FilterReply.NEUTRAL;
+		}
+		String sampled = MDC.get(MDC_KEY);
+		if (sampled != null) {
+			return Boolean.parseBoolean(sampled) ? FilterReply.NEUTRAL : FilterReply.DENY;
+		}
+		return ThreadLocalRandom.current().nextInt(this.rate) == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+	}
+
+	private boolean matches(String name) {
+		for (int i = 0; i < this.prefixes.length; i++) {
+			String prefix = this.prefixes[i];
+			if (name.startsWith(prefix)
+					&& (name.length() == prefix.length() || name.charAt(prefix.length()) == '.')) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
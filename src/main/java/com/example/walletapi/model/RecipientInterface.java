@@ -0,0 +1,23 @@
+package com.example.walletapi.model;
+
+import java.util.UUID;
+
+/**
+ * What a wallet sending money needs of the recipient, so the recipient doesn't
+ * have to be a wallet held by this instance (eg. it can be on another node, see
+ * {@link com.example.walletapi.cluster.RemoteRecipient}).
+ */
+public interface RecipientInterface {
+	/**
+	 * Get the ID of the recipient's wallet.
+	 */
+	UUID getId();
+
+	/**
+	 * Receive money from another wallet. If this throws the sender reverts the
+	 * transfer.
+	 *
+	 * @param transfer The transfer to receive.
+	 */
+	void receiveMoney(TransferInterface transfer);
+}
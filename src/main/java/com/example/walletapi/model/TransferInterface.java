@@ -45,6 +45,12 @@ public interface TransferInterface extends Serializable {
 		 */
 		TransferInterface fromSendRequest(UUID sender, UUID receiver, BigDecimal amount);
 
+		/**
+		 * Same as {@link #fromSendRequest(UUID, UUID, BigDecimal)} but with a given
+		 * ID, eg. for the receiving side of a transfer sent from another node.
+		 */
+		TransferInterface fromSendRequest(UUID id, UUID sender, UUID receiver, BigDecimal amount);
+
 		/**
 		 * Should return a TransferInterface object from a Map of String keys and
 		 * Serializable values.
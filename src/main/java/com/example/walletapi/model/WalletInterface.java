@@ -1,5 +1,6 @@
 package com.example.walletapi.model;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.List;
@@ -9,10 +10,12 @@ import java.util.UUID;
 import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.LedgerResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.BadRequestException;
 import com.example.walletapi.exception.InsufficientFundsException;
 import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.exception.ServiceUnavailableException;
 
-public interface WalletInterface extends Serializable {
+public interface WalletInterface extends RecipientInterface, Serializable {
 	/**
 	 * Get the ID of the wallet.
 	 */
@@ -29,39 +32,93 @@ public interface WalletInterface extends Serializable {
 	 */
 	String getPassword();
 
+	/**
+	 * Get a number which changes every time the balance or the ledger changes.
+	 * Read it before reading the balance or ledger.
+	 */
+	long getVersion();
+
 	/**
 	 * Get the current balance along with a timestamp when it was valid.
 	 * 
-	 * @throws ResourceConflictException if the balance is being updated by another
-	 *                                   thread.
+	 * @throws ResourceConflictException   if the balance is being updated by
+	 *                                     another thread.
+	 * @throws ServiceUnavailableException if this instance is a replica which is
+	 *                                     too far behind (see
+	 *                                     {@link ReadClockInterface})
 	 */
-	BalanceResponseDto getBalanceDto() throws ResourceConflictException;
+	BalanceResponseDto getBalanceDto() throws ResourceConflictException, ServiceUnavailableException;
 
 	/**
 	 * Get a snapshot of the transaction history for this wallet as a regular
-	 * list (as opposed to a ConcurrentLinkedQueue which is how it's stored
-	 * internally).
+	 * list (as opposed to a ConcurrentSkipListMap which is how it's stored
+	 * internally). Entries evicted from memory (see {@link #evictLedger(long)})
+	 * are paged back in a page at a time as the list is read, which throws a
+	 * {@link com.example.walletapi.exception.ServerErrorException} if they can't
+	 * be.
 	 */
 	List<TransferInterface> getLedger();
 
+	/**
+	 * Get the sequence of the last entry appended to the ledger. The ledger is
+	 * append-only so this is also the number of entries in it.
+	 */
+	long getLedgerSequence();
+
+	/**
+	 * Get a snapshot of a range of the ledger, ie. at most {@code limit} entries
+	 * appended after a given position. Only copies the entries in the range, so
+	 * it's cheap to walk a long ledger in chunks.
+	 * 
+	 * @param since The position (sequence) to start after, 0 for the beginning
+	 * @param limit The maximum number of entries to return
+	 */
+	List<TransferInterface> getLedger(long since, int limit);
+
 	/**
 	 * Get a snapshot of the transaction history for this wallet along with a
-	 * timestamp when it was valid.
+	 * timestamp when it was valid. Like {@link #getLedger()} evicted entries are
+	 * paged in as the transfers are read.
 	 * 
-	 * @throws ResourceConflictException if the ledger is being updated by another
-	 *                                   thread.
+	 * @throws ResourceConflictException   if the ledger is being updated by
+	 *                                     another thread.
+	 * @throws ServiceUnavailableException if this instance is a replica which is
+	 *                                     too far behind
 	 */
-	LedgerResponseDto getLedgerDto() throws ResourceConflictException;
+	LedgerResponseDto getLedgerDto() throws ResourceConflictException, ServiceUnavailableException;
+
+	/**
+	 * Get the entries appended to the ledger after a given position along with
+	 * the position of the last entry and a timestamp when it was valid.
+	 * 
+	 * @param since The position (sequence) the caller already has, 0 for the whole
+	 *              ledger
+	 * @throws ResourceConflictException   if the ledger is being updated by
+	 *                                     another thread.
+	 * @throws ServiceUnavailableException if this instance is a replica which is
+	 *                                     too far behind
+	 */
+	LedgerResponseDto getLedgerDto(long since) throws ResourceConflictException, ServiceUnavailableException;
 
 	/**
 	 * Create a transfer to send money to a destination wallet.
 	 * 
-	 * @param destination The destination wallet ID.
+	 * @param destination The destination wallet, here or elsewhere.
 	 * @param amount      The amount to send.
 	 * @return The transfer that was added to the ledger.
 	 * @throws InsufficientFundsException if the balance is insufficient.
+	 * @throws BadRequestException        if the destination is this wallet.
+	 */
+	TransferResponseDto sendMoney(RecipientInterface destination, BigDecimal amount)
+			throws InsufficientFundsException, ResourceConflictException;
+
+	/**
+	 * Like {@link #sendMoney}, but never blocks or sleeps: a race for the balance
+	 * lost to another thread is retried right away. For threads making transfers
+	 * on behalf of others (eg. the transfer pipeline), which would hold up all of
+	 * them by waiting.
 	 */
-	TransferResponseDto sendMoney(WalletInterface destination, BigDecimal amount)
+	TransferResponseDto sendMoneyWithoutWaiting(RecipientInterface destination, BigDecimal amount)
 			throws InsufficientFundsException, ResourceConflictException;
 
 	/**
@@ -71,6 +128,147 @@ public interface WalletInterface extends Serializable {
 	 */
 	void receiveMoney(TransferInterface transfer);
 
+	/**
+	 * Appends entries which were appended to this wallet's ledger somewhere else
+	 * (eg. on the primary this wallet is replicated from), and applies their
+	 * amounts to the balance. Entries the ledger already has are skipped, so the
+	 * same entries can be replayed again.
+	 * 
+	 * @param since   The sequence of the entry before the first one given
+	 * @param entries Validated transfers, in ledger order
+	 * @return The ledger sequence afterwards
+	 * @throws IllegalStateException if entries are missing between the end of the
+	 *                               ledger and {@code since}
+	 */
+	long replayLedger(long since, List<TransferInterface> entries) throws IllegalStateException;
+
+	/**
+	 * Drops the oldest entries of the ledger from memory, up to a given position,
+	 * once they're stored. Reads of the ledger page them back in from the
+	 * wallet's {@link ColdLedgerInterface}, so this only changes how much memory
+	 * the wallet takes. Only validated entries are dropped, and nothing is if the
+	 * wallet has no cold ledger.
+	 * 
+	 * @param upTo The sequence of the last entry which may be dropped
+	 * @return The sequence of the last entry not in memory, 0 if they all are
+	 */
+	long evictLedger(long upTo);
+
+	/**
+	 * Gets notified when the state of a wallet changes. Implementations are
+	 * called synchronously on the thread changing the wallet so they must be
+	 * quick and must not throw.
+	 */
+	public interface WalletListenerInterface {
+
+		/**
+		 * Called after a transfer has been appended to the ledger of a wallet.
+		 * 
+		 * @param wallet   The wallet whose ledger was appended to
+		 * @param transfer The transfer which was appended
+		 * @param sequence The position of the transfer in the ledger
+		 * @param balance  The balance of the wallet after the append
+		 */
+		default void onTransferAppended(WalletInterface wallet, TransferInterface transfer, long sequence,
+				BigDecimal balance) {
+		}
+
+		/**
+		 * Called when the balance of a wallet changed without anything being
+		 * appended to its ledger, eg. when a reservation is reverted.
+		 * 
+		 * @param wallet  The wallet whose balance changed
+		 * @param balance The new balance
+		 */
+		default void onBalanceChanged(WalletInterface wallet, BigDecimal balance) {
+		}
+
+		/**
+		 * Called every time a wallet fails to reserve funds for a transfer because
+		 * another thread changed the balance at the same time, ie. right before it
+		 * backs off and retries.
+		 * 
+		 * @param wallet The sending wallet
+		 */
+		default void onReservationRetry(WalletInterface wallet) {
+		}
+
+		/**
+		 * Called when a transfer has been completed, ie. it's in both ledgers and
+		 * both balances have been updated. Durations are passed as primitives so
+		 * nothing has to be allocated to report them.
+		 * 
+		 * @param sender       The sending wallet
+		 * @param transfer     The transfer
+		 * @param retries      How many times reserving the funds had to be retried
+		 * @param reserveNanos Time spent reserving the funds (incl. retries)
+		 * @param receiveNanos Time spent by the recipient receiving and validating
+		 * @param appendNanos  Time spent appending to the sending ledger
+		 */
+		default void onTransferCompleted(WalletInterface sender, TransferInterface transfer, int retries,
+				long reserveNanos, long receiveNanos, long appendNanos) {
+		}
+
+		/**
+		 * Called when a transfer failed after the funds had been reserved, and the
+		 * reservation was therefore reverted.
+		 * 
+		 * @param sender   The sending wallet
+		 * @param transfer The transfer which failed
+		 * @param cause    Why it failed
+		 */
+		default void onTransferReverted(WalletInterface sender, TransferInterface transfer, Exception cause) {
+		}
+	}
+
+	/**
+	 * Decides how hard a wallet is being contended, and therefore how it should
+	 * reserve funds when sending money.
+	 */
+	public interface ContentionPolicyInterface {
+
+		/**
+		 * Checks if a wallet is so contended that sends from it should be serialized
+		 * (queued on a lock) instead of optimistically retried with back-off.
+		 * 
+		 * Called on every send, so it has to be cheap.
+		 * 
+		 * @param walletId The sending wallet
+		 */
+		boolean isHighContention(UUID walletId);
+	}
+
+	/**
+	 * Tells as of when the state of the wallets is current, which is the
+	 * timestamp of balances and ledgers (see {@link #getBalanceDto()}). Usually
+	 * now, but a replica is only as current as its last sync with the primary.
+	 */
+	public interface ReadClockInterface {
+
+		/**
+		 * Called every time a balance or ledger is read, so it has to be cheap.
+		 *
+		 * @return The time (epoch ms) the wallets are known to be current as of
+		 * @throws ServiceUnavailableException if they are too stale to be read
+		 */
+		long getReadTimestamp() throws ServiceUnavailableException;
+	}
+
+	/**
+	 * Where a wallet pages the entries it evicted from memory back in from (see
+	 * {@link WalletInterface#evictLedger(long)}).
+	 */
+	public interface ColdLedgerInterface {
+
+		/**
+		 * Loads at most {@code limit} entries appended after position {@code since},
+		 * in order.
+		 *
+		 * @throws IOException if they can't be read
+		 */
+		List<TransferInterface> loadLedger(UUID walletId, long since, int limit) throws IOException;
+	}
+
 	public interface WalletFactoryInterface {
 		WalletInterface fromMap(Map<String, Serializable> data);
 
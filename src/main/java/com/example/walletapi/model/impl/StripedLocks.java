@@ -0,0 +1,90 @@
+package com.example.walletapi.model.impl;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of locks shared by all wallets, used to lock both wallets of a
+ * transfer at once (see {@link Wallet#sendMoney}). Keeping a lock per wallet
+ * would cost memory for every wallet ever loaded, while a few thousand stripes
+ * are enough to make it unlikely that two unrelated transfers share one.
+ *
+ * To never deadlock, the two stripes of a transfer are always taken in the same
+ * global order (lowest index first), and only once if both wallets map to the
+ * same stripe.
+ */
+public class StripedLocks {
+
+	private final ReentrantLock[] locks;
+	private final int mask;
+
+	/**
+	 * @param stripes The number of locks, rounded up to a power of two.
+	 */
+	public StripedLocks(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes) - 1) << 1;
+		size = Math.max(1, size);
+		this.locks = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.locks[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	public int getStripes() {
+		return this.locks.length;
+	}
+
+	int stripe(UUID walletId) {
+		// UUIDs are random, but spread the bits anyway in case someone uses
+		// sequential ones (like the bank wallet)
+		long h = walletId.getMostSignificantBits() ^ walletId.getLeastSignificantBits();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h & this.mask;
+	}
+
+	/**
+	 * Locks the stripes of both wallets, waiting at most until the timeout.
+	 *
+	 * @param timeout The time (in epoch milliseconds) to give up at
+	 * @return True if both were locked, in which case {@link #unlock} must be
+	 *         called with the same wallets
+	 */
+	public boolean lock(UUID a, UUID b, long timeout) throws InterruptedException {
+		int first = this.stripe(a);
+		int second = this.stripe(b);
+		if (first > second) {
+			int swap = first;
+			first = second;
+			second = swap;
+		}
+		if (!this.locks[first].tryLock(Math.max(0, timeout - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		if (first == second) {
+			return true;
+		}
+		boolean locked = false;
+		try {
+			locked = this.locks[second].tryLock(Math.max(0, timeout - System.currentTimeMillis()),
+					TimeUnit.MILLISECONDS);
+		} finally {
+			if (!locked) {
+				this.locks[first].unlock();
+			}
+		}
+		return locked;
+	}
+
+	public void unlock(UUID a, UUID b) {
+		int first = this.stripe(a);
+		int second = this.stripe(b);
+		this.locks[first].unlock();
+		if (first != second) {
+			this.locks[second].unlock();
+		}
+	}
+}
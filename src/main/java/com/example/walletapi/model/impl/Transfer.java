@@ -56,9 +56,10 @@ public class Transfer implements TransferInterface {
 	}
 
 	public BigDecimal getAmount(UUID asWho) {
-		if (this.sender == asWho) {
+		// Compare by value, UUIDs parsed from stored ledgers are never the same instance
+		if (Objects.equals(this.sender, asWho)) {
 			return this.amount.negate();
-		} else if (this.recipient == asWho) {
+		} else if (Objects.equals(this.recipient, asWho)) {
 			return this.amount;
 		} else {
 			throw new IllegalArgumentException("Invalid UUID. Please use sender or recipient UUID.");
@@ -89,7 +90,9 @@ public class Transfer implements TransferInterface {
 		}
 
 		public TransferInterface fromMap(Map<String, Serializable> data) throws IllegalArgumentException {
-			if (!data.containsKey("timestamp") || !(data.get("timestamp") instanceof Long)) {
+			// JSON doesn't say which type a number is, so take any number (eg. small
+			// timestamps are read as Integer, and amounts as Integer or Double)
+			if (!data.containsKey("timestamp") || !(data.get("timestamp") instanceof Number)) {
 				throw new IllegalArgumentException("Transfer is missing timestamp (Long), i.e. it was never validated");
 			}
 			if (!data.containsKey("id") || !(data.get("id") instanceof String)) {
@@ -104,7 +107,7 @@ public class Transfer implements TransferInterface {
 			if (!data.containsKey("recipient") || !(data.get("recipient") instanceof String)) {
 				throw new IllegalArgumentException("Transfer data is missing recipient (String UUID).");
 			}
-			if (!data.containsKey("amount") || !(data.get("amount") instanceof BigDecimal)) {
+			if (!data.containsKey("amount") || !(data.get("amount") instanceof Number)) {
 				throw new IllegalArgumentException("Transfer data is missing amount (BigDecimal).");
 			}
 
@@ -117,8 +120,8 @@ public class Transfer implements TransferInterface {
 						UUID.fromString(idStr),
 						senderStr == null ? null : UUID.fromString(senderStr), // Handle nullable sender
 						UUID.fromString(recipientStr),
-						(BigDecimal) data.get("amount"),
-						(Long) data.get("timestamp"));
+						toBigDecimal((Number) data.get("amount")),
+						((Number) data.get("timestamp")).longValue());
 			} catch (IllegalArgumentException e) { // Catch UUID.fromString errors
 				throw new IllegalArgumentException("Invalid UUID string in transfer data: " + e.getMessage(), e);
 			} catch (Exception e) {
@@ -126,11 +129,24 @@ public class Transfer implements TransferInterface {
 			}
 		}
 
+		private static BigDecimal toBigDecimal(Number number) {
+			if (number instanceof BigDecimal) {
+				return (BigDecimal) number;
+			}
+			// Via the string so a Double becomes what it was written as, eg. 0.1 and not
+			// 0.1000000000000000055511151231257827
+			return new BigDecimal(number.toString());
+		}
+
 		public TransferInterface fromSendRequest(UUID sender, UUID receiver, BigDecimal amount) {
 			return new Transfer(
 					UUID.randomUUID(), sender, receiver, amount, 0);
 		}
 
+		public TransferInterface fromSendRequest(UUID id, UUID sender, UUID receiver, BigDecimal amount) {
+			return new Transfer(id, sender, receiver, amount, 0);
+		}
+
 		/**
 		 * Returns an iterator that yields TransferInterface objects from
 		 * "raw ledger data", ie. a List of Maps which has been deserialized
@@ -161,8 +177,7 @@ public class Transfer implements TransferInterface {
 										.get(i); // throws if cast fails
 								return fromMap(mapItem);
 							} catch (Exception e) {
-								this.logger.warn(
-										"Failed to deserialize transfer at index " + i + ": " + e.getMessage());
+								this.logger.warn("Failed to deserialize transfer at index {}: {}", i, e.getMessage());
 								return null;
 							}
 						})
@@ -3,29 +3,49 @@ package com.example.walletapi.model.impl;
 import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.LedgerResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.BadRequestException;
 import com.example.walletapi.exception.InsufficientFundsException;
+import com.example.walletapi.exception.NotFoundException;
 import com.example.walletapi.exception.ResourceConflictException;
 import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.RecipientInterface;
 import com.example.walletapi.model.TransferInterface;
 import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
 import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.ColdLedgerInterface;
+import com.example.walletapi.model.WalletInterface.ContentionPolicyInterface;
+import com.example.walletapi.model.WalletInterface.ReadClockInterface;
+import com.example.walletapi.model.WalletInterface.WalletListenerInterface;
+import com.example.walletapi.monitoring.jfr.JfrSupport;
+import com.example.walletapi.monitoring.jfr.TransferEvent;
 import com.example.walletapi.util.CastUtil;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
 
 /**
  * Represents a wallet which holds a balance and can initiate transfers.
@@ -66,10 +86,78 @@ public class Wallet implements WalletInterface {
 	 */
 	private final AtomicReference<BigDecimal> balance = new AtomicReference<>(BigDecimal.ZERO);
 
-	private final ConcurrentLinkedQueue<TransferInterface> ledger = new ConcurrentLinkedQueue<>();
+	/**
+	 * The ledger of the wallet, keyed by the sequence in which the transfers were
+	 * appended (starting at 1). The ledger is append-only, so the sequence of an
+	 * entry is also its position in the ledger, which is what lets clients ask for
+	 * "everything after position X" (see {@link #getLedgerDto(long)}).
+	 * 
+	 * Entries up to {@link #evictedSequence} have been dropped from memory, and
+	 * are paged back in from {@link #coldLedger} when read.
+	 */
+	private final ConcurrentSkipListMap<Long, TransferInterface> ledger = new ConcurrentSkipListMap<>();
+
+	/**
+	 * The sequence of the last entry dropped from memory, see
+	 * {@link #evictLedger(long)}. Only written while holding the eviction lock,
+	 * and before the entries are removed from the ledger.
+	 */
+	private volatile long evictedSequence = 0;
+
+	private final Object evictionLock = new Object();
+
+	/**
+	 * Where evicted entries are paged back in from. Null if entries are never
+	 * evicted.
+	 */
+	private final ColdLedgerInterface coldLedger;
+
+	/**
+	 * The sequence of the last entry appended to the ledger. Only written while
+	 * holding the ledger lock (see {@link #appendToLedger(TransferInterface)}), and
+	 * only after the entry has been put in the ledger, so any reader which has read
+	 * this value is guaranteed to see all entries up to and including it.
+	 */
+	private volatile long ledgerSequence = 0;
+
+	/**
+	 * Bumped every time the balance or the ledger changes, so callers can tell if
+	 * anything has changed without looking at either (see {@link #getVersion()}).
+	 */
+	private final AtomicLong version = new AtomicLong();
 
 	private final TransferFactoryInterface transferFactory;
 
+	/**
+	 * Gets notified of all changes to this wallet. Never null, see
+	 * {@link WalletFactory} for how multiple listeners are combined.
+	 */
+	private final WalletListenerInterface listener;
+
+	/**
+	 * Decides if sends from this wallet should be serialized. Never null.
+	 */
+	private final ContentionPolicyInterface contentionPolicy;
+
+	/**
+	 * Serializes the reservation of funds when this wallet is highly contended,
+	 * see {@link ContentionPolicyInterface}. Fair, so a busy wallet's senders are
+	 * served in order and none of them time out while others barge ahead.
+	 */
+	private final ReentrantLock reservationLock = new ReentrantLock(true);
+
+	/**
+	 * Shared by all wallets when transfers are made while holding both wallets'
+	 * locks instead of optimistically, see {@link #sendMoneyLocked}. Null for the
+	 * optimistic engine.
+	 */
+	private final StripedLocks transferLocks;
+
+	/**
+	 * Gives the timestamp of balances and ledgers. Never null.
+	 */
+	private final ReadClockInterface readClock;
+
 	/**
 	 * Protected constructor used by the WalletFactory
 	 * 
@@ -81,20 +169,77 @@ public class Wallet implements WalletInterface {
 	 */
 	protected Wallet(TransferFactoryInterface transferFactory, UUID id, String password,
 			Iterator<TransferInterface> ledger) {
+		this(transferFactory, id, password, ledger, WalletFactory.NO_LISTENER, WalletFactory.NO_CONTENTION, null,
+				WalletFactory.NOW, null);
+	}
+
+	/**
+	 * Protected constructor used by the WalletFactory
+	 * 
+	 * @param transferFactory The TransferFactoryInterface to be used.
+	 * @param id              The ID of the wallet.
+	 * @param password        The password of the wallet.
+	 * @param ledger          Optional for new wallets. The ledger of the wallet.
+	 *                        The balance will be calculated from this
+	 * @param listener        Gets notified of changes to the wallet. Not notified
+	 *                        about the initial ledger.
+	 * @param policy          Decides how to reserve funds when sending money.
+	 * @param transferLocks   If not null, transfers lock both wallets instead of
+	 *                        reserving funds optimistically.
+	 * @param readClock       Gives the timestamp of balances and ledgers.
+	 * @param coldLedger      Where entries evicted from memory are paged back in
+	 *                        from. If null, entries are never evicted.
+	 */
+	protected Wallet(TransferFactoryInterface transferFactory, UUID id, String password,
+			Iterator<TransferInterface> ledger, WalletListenerInterface listener, ContentionPolicyInterface policy,
+			StripedLocks transferLocks, ReadClockInterface readClock, ColdLedgerInterface coldLedger) {
+		this(transferFactory, id, password, 0, null, ledger, listener, policy, transferLocks, readClock,
+				coldLedger);
+	}
+
+	/**
+	 * Protected constructor used by the WalletFactory for wallets of which only
+	 * the end of the ledger is loaded, the rest being paged in from the cold
+	 * ledger as if it had been evicted.
+	 * 
+	 * @param ledgerSince The position the given ledger starts after. 0 if it's the
+	 *                    whole ledger.
+	 * @param balance     The balance, or null to sum it from the ledger (which
+	 *                    then has to be the whole ledger).
+	 * @throws IllegalArgumentException if the ledger doesn't start at 0 but
+	 *                                  there's no cold ledger to page the rest
+	 *                                  in from
+	 */
+	protected Wallet(TransferFactoryInterface transferFactory, UUID id, String password, long ledgerSince,
+			BigDecimal balance, Iterator<TransferInterface> ledger, WalletListenerInterface listener,
+			ContentionPolicyInterface policy, StripedLocks transferLocks, ReadClockInterface readClock,
+			ColdLedgerInterface coldLedger) throws IllegalArgumentException {
+		if (ledgerSince > 0 && coldLedger == null) {
+			throw new IllegalArgumentException("The ledger of wallet " + id + " starts after " + ledgerSince
+					+ " but there's nowhere to page the rest in from");
+		}
 		this.transferFactory = transferFactory;
+		this.coldLedger = coldLedger;
+		this.readClock = readClock;
+		this.listener = listener;
+		this.contentionPolicy = policy;
+		this.transferLocks = transferLocks;
 		this.id = id;
 		this.password = password;
+		// Entries before the given ledger are in the cold ledger already
+		this.evictedSequence = ledgerSince;
+		this.ledgerSequence = ledgerSince;
+		BigDecimal _balance = BigDecimal.ZERO;
 		if (ledger != null) {
 			// Add all transfers to our threadsafe ledger, and sum the amounts to get our
 			// balance
-			BigDecimal _balance = BigDecimal.ZERO;
 			while (ledger.hasNext()) {
 				TransferInterface transfer = ledger.next();
-				this.ledger.add(transfer);
+				this.appendToLedger(transfer);
 				_balance = _balance.add(transfer.getAmount(id)); // get the signed amount
 			}
-			this.balance.set(_balance);
 		}
+		this.balance.set(balance != null ? balance : _balance);
 	}
 
 	private Logger getLogger() {
@@ -133,6 +278,7 @@ public class Wallet implements WalletInterface {
 	 *                                   threads so we can't get a lock for long
 	 *                                   enough to get a consistent balance.
 	 */
+	@JsonIgnore // not part of the saved wallet, and may throw on a stale replica
 	public BalanceResponseDto getBalanceDto() throws ResourceConflictException {
 
 		// long timeout = System.currentTimeMillis() + this.maxConcurrentRetriesTimeout;
@@ -141,7 +287,7 @@ public class Wallet implements WalletInterface {
 		BigDecimal _balance;
 		while (System.currentTimeMillis() < timeout) {
 			_balance = this.getBalance();
-			timestamp = System.currentTimeMillis();
+			timestamp = this.readClock.getReadTimestamp();
 			if (_balance.compareTo(this.getBalance()) == 0) {
 				return new BalanceResponseDto(this.id, _balance, timestamp);
 			}
@@ -152,11 +298,133 @@ public class Wallet implements WalletInterface {
 
 	/**
 	 * Retrieves a snapshot of the transaction history for this wallet as a regular
-	 * list (as opposed to a ConcurrentLinkedQueue which is how it's stored
+	 * list (as opposed to a ConcurrentSkipListMap which is how it's stored
 	 * internally).
 	 */
 	public List<TransferInterface> getLedger() {
-		return new ArrayList<>(this.ledger);
+		return this.readLedger(0, this.ledgerSequence);
+	}
+
+	/**
+	 * Retrieves at most {@code limit} entries appended after position
+	 * {@code since}. Like {@link #getLedgerDto(long)} it never has to retry,
+	 * everything up to the sequence we read is guaranteed to be there.
+	 */
+	public List<TransferInterface> getLedger(long since, int limit) {
+		if (since < 0 || limit < 0) {
+			throw new IllegalArgumentException("Ledger position and limit cannot be negative, got " + since
+					+ " and " + limit);
+		}
+		long to = Math.min(this.ledgerSequence, since + limit);
+		if (since >= to) {
+			return new ArrayList<>();
+		}
+		return this.readLedger(since, to);
+	}
+
+	/**
+	 * Reads the entries after {@code since} up to and including {@code to}, from
+	 * memory, and from the cold ledger as far as they've been evicted. Evicted
+	 * entries are only paged in as the returned list is read (see
+	 * {@link PagedLedger}). If entries are evicted while reading, the read is
+	 * retried.
+	 */
+	private List<TransferInterface> readLedger(long since, long to) {
+		while (true) {
+			long evicted = this.evictedSequence;
+			long hotFrom = Math.max(since, Math.min(to, evicted));
+			List<TransferInterface> hot = new ArrayList<>((int) Math.min(to - hotFrom, 1024));
+			if (to > hotFrom) {
+				hot.addAll(this.ledger.subMap(hotFrom, false, to, true).values());
+			}
+			if (hot.size() == to - hotFrom) {
+				return hotFrom == since ? hot : new PagedLedger(since, (int) (hotFrom - since), hot);
+			} else if (this.evictedSequence == evicted) {
+				throw new ServerErrorException("The ledger of wallet " + this.id + " is missing entries");
+			}
+			// Evicted after we looked, they're in the cold ledger now
+		}
+	}
+
+	/**
+	 * A range of the ledger starting with evicted entries, which are paged in from
+	 * the cold ledger a page at a time as the list is read, so reading a long
+	 * ledger front to back never holds more than a page of it. Not thread-safe.
+	 */
+	private class PagedLedger extends AbstractList<TransferInterface> {
+
+		private static final int PAGE_SIZE = 512;
+
+		private final long since;
+		private final int cold;
+		private final List<TransferInterface> hot;
+
+		private List<TransferInterface> page = List.of();
+		private int pageStart;
+
+		/**
+		 * @param since The position to start after
+		 * @param cold  How many entries after it are read from the cold ledger
+		 * @param hot   The entries after those
+		 */
+		private PagedLedger(long since, int cold, List<TransferInterface> hot) {
+			this.since = since;
+			this.cold = cold;
+			this.hot = hot;
+		}
+
+		/**
+		 * @throws ServerErrorException if evicted entries can't be paged back in
+		 */
+		@Override
+		public TransferInterface get(int index) throws ServerErrorException {
+			Objects.checkIndex(index, this.size());
+			if (index >= this.cold) {
+				return this.hot.get(index - this.cold);
+			}
+			if (index < this.pageStart || index >= this.pageStart + this.page.size()) {
+				int start = index - index % PAGE_SIZE;
+				int limit = Math.min(PAGE_SIZE, this.cold - start);
+				List<TransferInterface> entries;
+				try {
+					entries = Wallet.this.coldLedger.loadLedger(Wallet.this.id, this.since + start, limit);
+				} catch (IOException e) {
+					Wallet.this.getLogger().warn("Failed to page in the ledger of wallet {}", Wallet.this.id, e);
+					throw new ServerErrorException("Failed to read the ledger of wallet " + Wallet.this.id);
+				}
+				if (entries.size() != limit) {
+					throw new ServerErrorException("Entries " + (this.since + start + 1) + " to "
+							+ (this.since + start + limit) + " of the ledger of wallet " + Wallet.this.id
+							+ " are missing from the store");
+				}
+				this.page = entries;
+				this.pageStart = start;
+			}
+			return this.page.get(index - this.pageStart);
+		}
+
+		@Override
+		public int size() {
+			return this.cold + this.hot.size();
+		}
+	}
+
+	/**
+	 * Gets the sequence of the last entry appended to the ledger, ie. the number of
+	 * entries in the ledger.
+	 */
+	public long getLedgerSequence() {
+		return this.ledgerSequence;
+	}
+
+	/**
+	 * Gets a number which changes every time the balance or the ledger changes.
+	 * 
+	 * Read this BEFORE reading the balance or ledger, that way whatever you read
+	 * afterwards is at least as new as the version.
+	 */
+	public long getVersion() {
+		return this.version.get();
 	}
 
 	/**
@@ -164,26 +432,52 @@ public class Wallet implements WalletInterface {
 	 * timestamp when it was valid.
 	 * 
 	 */
+	@JsonIgnore
 	public LedgerResponseDto getLedgerDto() throws ResourceConflictException {
-		// Don't run for longer than the timeout...
-		// long timeout = System.currentTimeMillis() + this.maxConcurrentRetriesTimeout;
-		long timeout = System.currentTimeMillis() + 1000;
-		while (System.currentTimeMillis() < timeout) {
-			int len = this.ledger.size();
-			long timestamp = System.currentTimeMillis();
-			List<TransferInterface> _ledger = new ArrayList<>(this.ledger);
-			if (len == _ledger.size()) {
-				// It's enough to just check the size since we never remove anything from the
-				// ledger, money is simply returned with a second entry if something goes wrong.
-				return new LedgerResponseDto(_ledger, timestamp);
-			}
-			this.sleep("getting ledger");
+		return this.getLedgerDto(0);
+	}
 
+	/**
+	 * Gets the entries appended to the ledger after a given position, along with
+	 * the position of the last entry and a timestamp when it was valid.
+	 * 
+	 * Since the ledger is append-only and {@link #ledgerSequence} is only bumped
+	 * after an entry has been added we don't need to retry here, everything up to
+	 * the sequence we read is guaranteed to be there.
+	 * 
+	 * @param since The position the client already has, 0 for the whole ledger. If
+	 *              it's ahead of the ledger (eg. because the server lost entries
+	 *              which were never persisted) nothing is returned and the client
+	 *              can tell from the returned sequence that it needs to resync.
+	 */
+	public LedgerResponseDto getLedgerDto(long since) throws ResourceConflictException {
+		if (since < 0) {
+			throw new IllegalArgumentException("Ledger position cannot be negative, got " + since);
 		}
-		throw new ResourceConflictException(
-				"Failed to get a snapshot of the ledger for wallet " + this.id
-						+ " as a result of concurrent modification");
+		long sequence = this.ledgerSequence;
+		long timestamp = this.readClock.getReadTimestamp();
+		if (since >= sequence) {
+			return new LedgerResponseDto(this.id, new ArrayList<>(), timestamp, sequence);
+		}
+		return new LedgerResponseDto(this.id, this.readLedger(since, sequence), timestamp, sequence);
+	}
 
+	/**
+	 * Appends a transfer to the ledger and assigns it the next sequence.
+	 * 
+	 * The lock is only held for the put itself so it's very short, and readers
+	 * never take it.
+	 * 
+	 * @return The sequence assigned to the transfer
+	 */
+	private long appendToLedger(TransferInterface transfer) {
+		synchronized (this.ledger) {
+			long sequence = this.ledgerSequence + 1;
+			this.ledger.put(sequence, transfer);
+			this.ledgerSequence = sequence;
+			this.version.incrementAndGet();
+			return sequence;
+		}
 	}
 
 	private void sleep(String what) throws ServerErrorException {
@@ -199,75 +493,266 @@ public class Wallet implements WalletInterface {
 	/**
 	 * Create a transfer to send money to a destination wallet.
 	 * 
-	 * @param destination The destination wallet ID.
+	 * @param destination The destination wallet, here or elsewhere.
 	 * @param amount      The amount to send.
 	 * @return The transfer that was added to the ledger.
 	 * @throws InsufficientFundsException if the balance is insufficient.
+	 * @throws BadRequestException        if the destination is this wallet.
 	 */
-	public TransferResponseDto sendMoney(WalletInterface destination, BigDecimal amount)
+	public TransferResponseDto sendMoney(RecipientInterface destination, BigDecimal amount)
 			throws InsufficientFundsException, ResourceConflictException {
+		this.checkRecipient(destination);
+		// Wallets of other kinds (eg. remote ones) can't be locked along with ours
+		if (this.transferLocks != null && destination instanceof Wallet) {
+			return this.sendMoneyLocked((Wallet) destination, amount);
+		}
+		return this.sendMoneyOptimistic(destination, amount, true);
+	}
+
+	/**
+	 * Like {@link #sendMoney}, but without ever waiting: no locks are taken, and a
+	 * race for the balance lost to another thread is retried right away instead
+	 * of after backing off.
+	 */
+	public TransferResponseDto sendMoneyWithoutWaiting(RecipientInterface destination, BigDecimal amount)
+			throws InsufficientFundsException, ResourceConflictException {
+		this.checkRecipient(destination);
+		return this.sendMoneyOptimistic(destination, amount, false);
+	}
 
+	private void checkRecipient(RecipientInterface destination) throws BadRequestException {
+		// A transfer to ourselves would end up in our ledger twice, as two debits
+		if (this.id.equals(destination.getId())) {
+			throw new BadRequestException("Cannot transfer money from wallet " + this.id + " to itself");
+		}
+	}
+
+	/**
+	 * Reserves the funds with a compare-and-set on the balance, then lets the
+	 * destination receive the transfer, reverting the balance if it can't.
+	 *
+	 * @param wait Whether to back off after losing a race for the balance (and to
+	 *             queue up on the reservation lock of heavily contended wallets),
+	 *             rather than spin
+	 */
+	private TransferResponseDto sendMoneyOptimistic(RecipientInterface destination, BigDecimal amount,
+			boolean wait) throws InsufficientFundsException, ResourceConflictException {
 		// In case multiple threads are trying to send money from the same wallet
 		// it will prevent us from updating the atomic reference, so keep trying
 		// until we timeout, or run out of money, or succeed
 		BigDecimal _balance;
 		BigDecimal _remainingBalance;
+		int retries = 0;
+		TransferEvent event = new TransferEvent();
+		event.begin();
+		long started = System.nanoTime();
 		// long timeout = System.currentTimeMillis() + this.maxConcurrentRetriesTimeout;
 		long timeout = System.currentTimeMillis() + 1000;
-		while (true) {
-			if (System.currentTimeMillis() > timeout) {
-				throw new ResourceConflictException(
-						"Failed to send " + amount + " to wallet " + destination.getId()
-								+ " as a result of concurrent modification on wallet " + this.id);
-			}
 
-			// Check if the balance is sufficient else throw an exception
-			_balance = this.balance.get();
-			if (_balance.compareTo(amount) < 0) {
-				throw new InsufficientFundsException("Cannot transfer " + amount + " to wallet " + destination.getId()
-						+ " since the balance of wallet " + this.id + " is only " + _balance);
+		// If the wallet is known to be heavily contended the back-off below just
+		// wastes time and causes retry storms, so instead senders queue up on a lock
+		// and only race with incoming transfers, which never hold on to the balance
+		boolean serialized = wait && this.contentionPolicy.isHighContention(this.id);
+		if (serialized && !this.lockReservations(timeout)) {
+			this.commitTransferEvent(event, destination, amount, retries, TransferEvent.CONFLICT);
+			throw this.concurrentModification(destination, amount);
+		}
+		try {
+			while (true) {
+				if (System.currentTimeMillis() > timeout) {
+					this.commitTransferEvent(event, destination, amount, retries, TransferEvent.CONFLICT);
+					throw this.concurrentModification(destination, amount);
+				}
+
+				// Check if the balance is sufficient else throw an exception
+				_balance = this.balance.get();
+				if (_balance.compareTo(amount) < 0) {
+					this.commitTransferEvent(event, destination, amount, retries, TransferEvent.INSUFFICIENT_FUNDS);
+					throw new InsufficientFundsException("Cannot transfer " + amount + " to wallet "
+							+ destination.getId() + " since the balance of wallet " + this.id + " is only " + _balance);
+				}
+				// Try to update the balance, and if we succeed, break out of the loop
+				_remainingBalance = _balance.subtract(amount);
+				if (this.balance.compareAndSet(_balance, _remainingBalance)) {
+					this.version.incrementAndGet();
+					break;
+				}
+				retries++;
+				this.listener.onReservationRetry(this);
+				if (serialized || !wait) {
+					Thread.onSpinWait();
+				} else {
+					this.sleep("sending money");
+				}
 			}
-			// Try to update the balance, and if we succeed, break out of the loop
-			_remainingBalance = _balance.subtract(amount);
-			if (this.balance.compareAndSet(_balance, _remainingBalance)) {
-				break;
+		} finally {
+			if (serialized) {
+				this.reservationLock.unlock();
 			}
-			this.sleep("sending money");
 		}
 
 		// Now we have allocated the money which means nobody can double spend it,
 		// therefore creating and adding the transfers to the sending and receiving
-		// ledgers doesn't have to be atomic. However, if any of these operations
-		// fail, we need to revert what's been done so far.
+		// ledgers doesn't have to be atomic. We let the destination receive (and
+		// validate) the transfer first and only then add it to our own ledger, that
+		// way the only thing we ever have to revert is the balance and our ledger
+		// stays append-only.
+		long reserved = System.nanoTime();
 		TransferInterface transfer = this.transferFactory.fromSendRequest(this.id, destination.getId(), amount);
 		try {
-			this.ledger.add(transfer);
-			try {
-				destination.receiveMoney(transfer); // This will also validate the transfer
-			} catch (Exception e) {
-				this.getLogger()
-						.error("Failed to add transfer to receiving ledger after having added it "
-								+ "to sender, reverting both sending ledger and balance.", e);
-				this.ledger.remove(transfer);
-				throw new Exception("AAA");
-
-			}
+			destination.receiveMoney(transfer); // This will also validate the transfer
 		} catch (Exception e) {
-			if (!e.getMessage().equals("AAA")) {
-				this.getLogger()
-						.error("Failed to add transfer to ledger after having allocated money. "
-								+ "Reverting the balance.", e);
+			// A recipient on another node can fail for reasons the client should know
+			// about, eg. it doesn't exist or its node is down. Those aren't bugs.
+			boolean remoteFailure = e instanceof NotFoundException || e instanceof ServiceUnavailableException;
+			if (remoteFailure) {
+				this.getLogger().debug("Recipient {} rejected the transfer, reverting the balance: {}",
+						destination.getId(), e.getMessage());
+			} else {
+				this.getLogger().error("Failed to add transfer to receiving ledger after having allocated money. "
+						+ "Reverting the balance.", e);
+			}
+			this.listener.onTransferReverted(this, transfer, e);
+			BigDecimal _balanceAfterRevert = this.balance.updateAndGet(b -> b.add(amount));
+			this.version.incrementAndGet();
+			this.listener.onBalanceChanged(this, _balanceAfterRevert);
+			this.commitTransferEvent(event, destination, amount, retries, TransferEvent.FAILED);
+			if (remoteFailure) {
+				throw (ResponseStatusException) e;
 			}
-			this.balance.getAndUpdate(b -> b.add(amount));
-			throw new ResourceConflictException(
-					"Failed to send " + amount + " to wallet " + destination.getId()
-							+ " as a result of concurrent modification on wallet " + this.id);
+			throw this.concurrentModification(destination, amount);
 		}
+		long received = System.nanoTime();
+		long sequence = this.appendToLedger(transfer);
+		long appended = System.nanoTime();
+		this.listener.onTransferAppended(this, transfer, sequence, this.balance.get());
+		this.listener.onTransferCompleted(this, transfer, retries, reserved - started, received - reserved,
+				appended - received);
+		this.commitTransferEvent(event, destination, amount, retries, TransferEvent.COMPLETED);
 
 		return new TransferResponseDto(transfer, _remainingBalance);
 
 	}
 
+	/**
+	 * Sends money while holding the locks of both wallets, so the debit, the
+	 * credit and both ledger appends happen as one step as far as other transfers
+	 * are concerned. Nothing can fail once the first change has been made, so
+	 * there is nothing to revert, and since senders queue up on the locks instead
+	 * of racing each other there are no retries either.
+	 * 
+	 * Readers don't take the locks, so they can still see a transfer in one
+	 * wallet and not yet in the other. Within each wallet though, the balance is
+	 * debited before the ledger is appended to and credited after, so like with
+	 * the optimistic engine a balance is never ahead of its ledger.
+	 */
+	private TransferResponseDto sendMoneyLocked(Wallet destination, BigDecimal amount)
+			throws InsufficientFundsException, ResourceConflictException {
+		TransferEvent event = new TransferEvent();
+		event.begin();
+		long started = System.nanoTime();
+		long timeout = System.currentTimeMillis() + 1000;
+		if (!this.lockTransfer(destination, timeout)) {
+			this.commitTransferEvent(event, destination, amount, 0, TransferEvent.CONFLICT);
+			throw this.concurrentModification(destination, amount);
+		}
+		TransferInterface transfer;
+		BigDecimal _remainingBalance;
+		long sequence;
+		long recipientSequence;
+		BigDecimal recipientBalance;
+		long locked;
+		long received;
+		long appended;
+		try {
+			locked = System.nanoTime();
+			// Validated before anything is changed, rather than once the transfer is in
+			// both ledgers like in sendMoney(), since from here on nothing may fail. As
+			// both appends happen while holding the locks it makes no difference.
+			transfer = this.transferFactory.fromSendRequest(this.id, destination.getId(), amount).validate();
+			// Other locked transfers can't touch the balance now, but credits and sends
+			// to wallets which aren't ours (which are made optimistically) still can,
+			// so this can fail, but never for long
+			BigDecimal _balance;
+			do {
+				_balance = this.balance.get();
+				if (_balance.compareTo(amount) < 0) {
+					this.commitTransferEvent(event, destination, amount, 0, TransferEvent.INSUFFICIENT_FUNDS);
+					throw new InsufficientFundsException("Cannot transfer " + amount + " to wallet "
+							+ destination.getId() + " since the balance of wallet " + this.id + " is only "
+							+ _balance);
+				}
+				_remainingBalance = _balance.subtract(amount);
+			} while (!this.balance.compareAndSet(_balance, _remainingBalance));
+			this.version.incrementAndGet();
+			recipientSequence = destination.appendToLedger(transfer);
+			received = System.nanoTime();
+			sequence = this.appendToLedger(transfer);
+			recipientBalance = destination.balance.updateAndGet(b -> b.add(amount));
+			destination.version.incrementAndGet();
+			appended = System.nanoTime();
+		} finally {
+			this.transferLocks.unlock(this.id, destination.getId());
+		}
+		// Notify outside the locks so slow listeners don't hold up other transfers
+		destination.listener.onTransferAppended(destination, transfer, recipientSequence, recipientBalance);
+		this.listener.onTransferAppended(this, transfer, sequence, _remainingBalance);
+		this.listener.onTransferCompleted(this, transfer, 0, locked - started, received - locked,
+				appended - received);
+		this.commitTransferEvent(event, destination, amount, 0, TransferEvent.COMPLETED);
+		return new TransferResponseDto(transfer, _remainingBalance);
+	}
+
+	private boolean lockTransfer(RecipientInterface destination, long timeout) throws ServerErrorException {
+		try {
+			return this.transferLocks.lock(this.id, destination.getId(), timeout);
+		} catch (InterruptedException e) {
+			String msg = "Interrupted while waiting to lock wallets " + this.id + " and " + destination.getId();
+			this.getLogger().error(msg, e);
+			throw new ServerErrorException(msg);
+		}
+	}
+
+	/**
+	 * Waits for the reservation lock until the timeout.
+	 * 
+	 * @param timeout The time (in epoch milliseconds) to give up at
+	 * @return True if the lock was acquired
+	 */
+	private boolean lockReservations(long timeout) throws ServerErrorException {
+		try {
+			return this.reservationLock.tryLock(Math.max(0, timeout - System.currentTimeMillis()),
+					TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			String msg = "Interrupted while waiting to reserve funds for wallet " + this.id;
+			this.getLogger().error(msg, e);
+			throw new ServerErrorException(msg);
+		}
+	}
+
+	private ResourceConflictException concurrentModification(RecipientInterface destination, BigDecimal amount) {
+		return new ResourceConflictException("Failed to send " + amount + " to wallet " + destination.getId()
+				+ " as a result of concurrent modification on wallet " + this.id);
+	}
+
+	/**
+	 * Ends and commits a JFR transfer event. The fields are only filled in if the
+	 * event is going to be recorded, so this is next to free when JFR isn't running
+	 * or the transfer was faster than the configured threshold.
+	 */
+	private void commitTransferEvent(TransferEvent event, RecipientInterface destination, BigDecimal amount,
+			int retries, String outcome) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.sender = JfrSupport.hashWalletId(this.id);
+			event.recipient = JfrSupport.hashWalletId(destination.getId());
+			event.amountBucket = JfrSupport.amountBucket(amount);
+			event.retries = retries;
+			event.outcome = outcome;
+			event.commit();
+		}
+	}
+
 	/**
 	 * Receive money from another wallet.
 	 * 
@@ -276,7 +761,7 @@ public class Wallet implements WalletInterface {
 	public void receiveMoney(TransferInterface transfer) {
 
 		// First we we add the transfer (receipt) to the ledger...
-		this.ledger.add(transfer);
+		long sequence = this.appendToLedger(transfer);
 
 		// ...then we validate it since it now exists in both ledgers
 		transfer.validate();
@@ -284,22 +769,257 @@ public class Wallet implements WalletInterface {
 		// Finally we increase the balance so it can be spent (here we use
 		// getAndUpdate() instead of compareAndSet() because there is no risk
 		// of going below zero.
-		this.balance.getAndUpdate(balance -> balance.add(transfer.getAmount()));
+		BigDecimal _balance = this.balance.updateAndGet(balance -> balance.add(transfer.getAmount()));
+		this.version.incrementAndGet();
+
+		this.listener.onTransferAppended(this, transfer, sequence, _balance);
 
 	}
 
+	public long replayLedger(long since, List<TransferInterface> entries) throws IllegalStateException {
+		if (since > this.ledgerSequence) {
+			throw new IllegalStateException("Can't replay entries after " + since + " on wallet " + this.id
+					+ ", its ledger ends at " + this.ledgerSequence);
+		}
+		long sequence = since;
+		for (TransferInterface transfer : entries) {
+			if (++sequence <= this.ledgerSequence) {
+				continue;
+			}
+			long appended = this.appendToLedger(transfer);
+			BigDecimal _balance = this.balance.updateAndGet(balance -> balance.add(transfer.getAmount(this.id)));
+			this.version.incrementAndGet();
+			this.listener.onTransferAppended(this, transfer, appended, _balance);
+		}
+		return this.ledgerSequence;
+	}
+
+	public long evictLedger(long upTo) {
+		if (this.coldLedger == null) {
+			return this.evictedSequence;
+		}
+		synchronized (this.evictionLock) {
+			long evicted = this.evictedSequence;
+			long to = Math.min(upTo, this.ledgerSequence);
+			if (to <= evicted) {
+				return evicted;
+			}
+			long last = evicted;
+			for (Map.Entry<Long, TransferInterface> entry : this.ledger.subMap(evicted, false, to, true).entrySet()) {
+				if (entry.getValue().getTimestamp() == 0) {
+					break; // not validated yet, so not stored as it will be
+				}
+				last = entry.getKey();
+			}
+			if (last > evicted) {
+				this.evictedSequence = last;
+				this.ledger.headMap(last, true).clear();
+			}
+			return last;
+		}
+	}
+
 	@Component
 	public static class WalletFactory implements WalletFactoryInterface {
 
+		/**
+		 * Used for wallets when nobody is listening.
+		 */
+		static final WalletListenerInterface NO_LISTENER = new WalletListenerInterface() {
+		};
+
+		/**
+		 * Used for wallets when there is no contention policy, ie. every wallet
+		 * retries optimistically.
+		 */
+		static final ContentionPolicyInterface NO_CONTENTION = walletId -> false;
+
+		/**
+		 * Used for wallets when no read clock says otherwise, ie. wallets are always
+		 * current.
+		 */
+		static final ReadClockInterface NOW = System::currentTimeMillis;
+
 		private final TransferFactoryInterface transferFactory;
+		private final WalletListenerInterface listener;
+		private final ContentionPolicyInterface contentionPolicy;
+		private final ReadClockInterface readClock;
+		private final ColdLedgerInterface coldLedger;
 		private final Logger logger;
 
-		@Autowired
+		/**
+		 * How transfers are made: "optimistic" reserves funds with compare-and-set
+		 * and retries on conflict, "locking" locks both wallets (see
+		 * {@link StripedLocks}).
+		 */
+		@Value("${wallet.api.transfer.engine:optimistic}")
+		private String engine;
+
+		@Value("${wallet.api.transfer.lock-stripes:4096}")
+		private int lockStripes;
+
+		private StripedLocks transferLocks;
+
 		public WalletFactory(TransferFactoryInterface transferFactory) {
+			this(transferFactory, List.of(), List.of());
+		}
+
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners) {
+			this(transferFactory, listeners, List.of());
+		}
+
+		/**
+		 * @param transferFactory The TransferFactoryInterface to be used.
+		 * @param listeners       All listeners which should be notified of changes
+		 *                        to the wallets this factory creates.
+		 * @param policies        Contention policies. A wallet is considered highly
+		 *                        contended if any of them says so.
+		 */
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners,
+				List<ContentionPolicyInterface> policies) {
+			this(transferFactory, listeners, policies, List.of(), null, null);
+		}
+
+		/**
+		 * @param readClocks Give the timestamp of balances and ledgers. The oldest
+		 *                   timestamp any of them gives is used.
+		 */
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners,
+				List<ContentionPolicyInterface> policies, List<ReadClockInterface> readClocks) {
+			this(transferFactory, listeners, policies, readClocks, null, null);
+		}
+
+		/**
+		 * @param coldLedgers Where wallets page evicted ledger entries back in from.
+		 *                    The first one is used, if there is none the ledgers
+		 *                    stay in memory in full.
+		 */
+		@Autowired
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners,
+				List<ContentionPolicyInterface> policies, List<ReadClockInterface> readClocks,
+				List<ColdLedgerInterface> coldLedgers) {
+			this(transferFactory, listeners, policies, readClocks, null,
+					coldLedgers == null || coldLedgers.isEmpty() ? null : coldLedgers.get(0));
+		}
+
+		/**
+		 * @param transferLocks If not null, the wallets use the locking transfer
+		 *                      engine with these locks.
+		 */
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners,
+				List<ContentionPolicyInterface> policies, StripedLocks transferLocks) {
+			this(transferFactory, listeners, policies, List.of(), transferLocks, null);
+		}
+
+		public WalletFactory(TransferFactoryInterface transferFactory, List<WalletListenerInterface> listeners,
+				List<ContentionPolicyInterface> policies, List<ReadClockInterface> readClocks,
+				StripedLocks transferLocks, ColdLedgerInterface coldLedger) {
 			this.transferFactory = transferFactory;
+			this.listener = combine(listeners);
+			this.contentionPolicy = combinePolicies(policies);
+			this.readClock = combineClocks(readClocks);
+			this.transferLocks = transferLocks;
+			this.coldLedger = coldLedger;
 			this.logger = LoggerFactory.getLogger(this.getClass());
 		}
 
+		@PostConstruct
+		public void init() {
+			if ("locking".equalsIgnoreCase(this.engine)) {
+				this.transferLocks = new StripedLocks(this.lockStripes);
+				this.logger.info("Using the locking transfer engine with {} lock stripes",
+						this.transferLocks.getStripes());
+			} else if (this.engine != null && !"optimistic".equalsIgnoreCase(this.engine)) {
+				throw new IllegalArgumentException("Unknown transfer engine '" + this.engine
+						+ "', use 'optimistic' or 'locking'");
+			}
+		}
+
+		private static ContentionPolicyInterface combinePolicies(List<ContentionPolicyInterface> policies) {
+			if (policies == null || policies.isEmpty()) {
+				return NO_CONTENTION;
+			} else if (policies.size() == 1) {
+				return policies.get(0);
+			}
+			ContentionPolicyInterface[] all = policies.toArray(new ContentionPolicyInterface[0]);
+			return walletId -> {
+				for (int i = 0; i < all.length; i++) {
+					if (all[i].isHighContention(walletId)) {
+						return true;
+					}
+				}
+				return false;
+			};
+		}
+
+		private static ReadClockInterface combineClocks(List<ReadClockInterface> readClocks) {
+			if (readClocks == null || readClocks.isEmpty()) {
+				return NOW;
+			} else if (readClocks.size() == 1) {
+				return readClocks.get(0);
+			}
+			ReadClockInterface[] all = readClocks.toArray(new ReadClockInterface[0]);
+			return () -> {
+				long timestamp = Long.MAX_VALUE;
+				for (int i = 0; i < all.length; i++) {
+					timestamp = Math.min(timestamp, all[i].getReadTimestamp());
+				}
+				return timestamp;
+			};
+		}
+
+		/**
+		 * Combines listeners into one so the wallets only have to hold a single
+		 * reference. Iterates a plain array so notifying doesn't allocate.
+		 */
+		private static WalletListenerInterface combine(List<WalletListenerInterface> listeners) {
+			if (listeners == null || listeners.isEmpty()) {
+				return NO_LISTENER;
+			} else if (listeners.size() == 1) {
+				return listeners.get(0);
+			}
+			WalletListenerInterface[] all = listeners.toArray(new WalletListenerInterface[0]);
+			return new WalletListenerInterface() {
+				@Override
+				public void onTransferAppended(WalletInterface wallet, TransferInterface transfer, long sequence,
+						BigDecimal balance) {
+					for (int i = 0; i < all.length; i++) {
+						all[i].onTransferAppended(wallet, transfer, sequence, balance);
+					}
+				}
+
+				@Override
+				public void onBalanceChanged(WalletInterface wallet, BigDecimal balance) {
+					for (int i = 0; i < all.length; i++) {
+						all[i].onBalanceChanged(wallet, balance);
+					}
+				}
+
+				@Override
+				public void onReservationRetry(WalletInterface wallet) {
+					for (int i = 0; i < all.length; i++) {
+						all[i].onReservationRetry(wallet);
+					}
+				}
+
+				@Override
+				public void onTransferCompleted(WalletInterface sender, TransferInterface transfer, int retries,
+						long reserveNanos, long receiveNanos, long appendNanos) {
+					for (int i = 0; i < all.length; i++) {
+						all[i].onTransferCompleted(sender, transfer, retries, reserveNanos, receiveNanos,
+								appendNanos);
+					}
+				}
+
+				@Override
+				public void onTransferReverted(WalletInterface sender, TransferInterface transfer, Exception cause) {
+					for (int i = 0; i < all.length; i++) {
+						all[i].onTransferReverted(sender, transfer, cause);
+					}
+				}
+			};
+		}
+
 		@Override
 		public WalletInterface fromMap(Map<String, Serializable> data) {
 			try {
@@ -314,8 +1034,14 @@ public class Wallet implements WalletInterface {
 				Iterator<TransferInterface> ledger = this.transferFactory.getTransferIterator(data.get("ledger"));
 				// ^only throws if the key ledger exists but is not a list. may return null.
 
-				this.logger.info("Creating wallet from map with ID: " + id.toString());
-				return new Wallet(this.transferFactory, id, password, ledger);
+				// Only the end of the ledger may have been loaded (see
+				// WalletStoreInterface#load(UUID, long)), then the balance can't be summed
+				long ledgerSince = data.get("ledgerSince") instanceof Number since ? since.longValue() : 0;
+				BigDecimal balance = ledgerSince > 0 ? new BigDecimal(data.get("balance").toString()) : null;
+
+				this.logger.debug("Creating wallet from map with ID: {}", id);
+				return new Wallet(this.transferFactory, id, password, ledgerSince, balance, ledger, this.listener,
+						this.contentionPolicy, this.transferLocks, this.readClock, this.coldLedger);
 
 			} catch (IllegalArgumentException e) {
 				throw e;
@@ -330,8 +1056,9 @@ public class Wallet implements WalletInterface {
 				throw new IllegalArgumentException("Password is required to create a wallet");
 			}
 			UUID id = UUID.randomUUID();
-			this.logger.info("Creating new wallet with ID: " + id);
-			return new Wallet(this.transferFactory, id, password, null);
+			this.logger.debug("Creating new wallet with ID: {}", id);
+			return new Wallet(this.transferFactory, id, password, null, this.listener, this.contentionPolicy,
+					this.transferLocks, this.readClock, this.coldLedger);
 		}
 
 	}
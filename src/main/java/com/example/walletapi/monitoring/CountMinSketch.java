@@ -0,0 +1,102 @@
+package com.example.walletapi.monitoring;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates a weight per wallet in a fixed amount of memory, no matter how many
+ * wallets there are.
+ * 
+ * Every wallet is hashed to one counter in each of {@code depth} rows, and its
+ * estimate is the smallest of those counters. Collisions can only add to a
+ * counter, so estimates are never too low, and with {@code width} counters per
+ * row they are too high by at most ~2/width of the total weight (with
+ * probability 1 - 1/2^depth).
+ * 
+ * Adding is lock-free. {@link #decay()} halves all counters so the estimates
+ * reflect recent traffic rather than all-time traffic; it's not atomic with
+ * respect to concurrent adds, which only makes the estimates a little fuzzier.
+ */
+public class CountMinSketch {
+
+	private final int depth;
+	private final int width;
+	private final int mask;
+	private final AtomicLongArray counters;
+
+	/**
+	 * @param depth The number of rows, ie. independent hashes
+	 * @param width The number of counters per row, rounded up to a power of 2
+	 */
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1) {
+			throw new IllegalArgumentException("Depth and width must be positive, got " + depth + "x" + width);
+		}
+		this.depth = depth;
+		this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+		this.mask = this.width - 1;
+		this.counters = new AtomicLongArray(this.depth * this.width);
+	}
+
+	/**
+	 * Adds weight to a wallet and returns its new estimate.
+	 */
+	public long add(UUID walletId, long weight) {
+		long h1 = mix(walletId.getMostSignificantBits());
+		long h2 = mix(walletId.getLeastSignificantBits()) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++) {
+			long count = this.counters.addAndGet(this.index(row, h1, h2), weight);
+			estimate = Math.min(estimate, count);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Gets the estimated weight of a wallet.
+	 */
+	public long estimate(UUID walletId) {
+		long h1 = mix(walletId.getMostSignificantBits());
+		long h2 = mix(walletId.getLeastSignificantBits()) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++) {
+			estimate = Math.min(estimate, this.counters.get(this.index(row, h1, h2)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Halves all counters.
+	 */
+	public void decay() {
+		for (int i = 0; i < this.counters.length(); i++) {
+			this.counters.getAndUpdate(i, c -> c >>> 1);
+		}
+	}
+
+	public int getDepth() {
+		return this.depth;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Derives the hash of each row from two base hashes (Kirsch-Mitzenmacher), so
+	 * a UUID is only mixed twice no matter how deep the sketch is.
+	 */
+	private int index(int row, long h1, long h2) {
+		long h = h1 + row * h2;
+		return row * this.width + (int) ((h ^ (h >>> 32)) & this.mask);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,300 @@
+package com.example.walletapi.monitoring;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.ContentionPolicyInterface;
+import com.example.walletapi.model.WalletInterface.WalletListenerInterface;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Finds the wallets which are sending the most and failing to reserve funds the
+ * most, ie. the hot spots of the system.
+ *
+ * Every send adds 1 to the score of the sending wallet and every failed
+ * reservation adds {@code retry-weight}. Scores are kept in a count-min sketch,
+ * so any number of wallets can be scored in fixed memory, and the wallets with
+ * the highest scores are kept in a small min-heap. Since the heap is only
+ * touched by wallets which score above the lowest score in it, the vast majority
+ * of sends never take its lock. All scores are halved every
+ * {@code decay-interval} so they reflect what's happening now.
+ *
+ * When auto-mitigation is enabled, wallets scoring above the mitigation
+ * threshold are reported as highly contended (see
+ * {@link ContentionPolicyInterface}) until their score drops below half of it.
+ */
+@Component
+public class HotWalletDetector implements WalletListenerInterface, ContentionPolicyInterface {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * The number of wallets to keep track of.
+	 */
+	@Value("${wallet.api.hotspot.top-k:10}")
+	private int topK;
+
+	@Value("${wallet.api.hotspot.sketch-depth:4}")
+	private int sketchDepth;
+
+	@Value("${wallet.api.hotspot.sketch-width:2048}")
+	private int sketchWidth;
+
+	/**
+	 * How much a failed reservation counts compared to a send.
+	 */
+	@Value("${wallet.api.hotspot.retry-weight:10}")
+	private long retryWeight;
+
+	/**
+	 * How often (in milliseconds) all scores are halved.
+	 */
+	@Value("${wallet.api.hotspot.decay-interval:10000}")
+	private long decayInterval;
+
+	/**
+	 * If true, sends from wallets scoring at least {@link #mitigationThreshold}
+	 * are serialized instead of retried.
+	 */
+	@Value("${wallet.api.hotspot.auto-mitigate:false}")
+	private boolean autoMitigate;
+
+	@Value("${wallet.api.hotspot.mitigation-threshold:1000}")
+	private long mitigationThreshold;
+
+	private CountMinSketch sketch;
+
+	/**
+	 * The top wallets, lowest score first, along with an index of them. Both are
+	 * guarded by the heap.
+	 */
+	private PriorityQueue<Candidate> heap;
+	private Map<UUID, Candidate> candidates;
+
+	/**
+	 * The lowest score in the heap once it's full, so callers can skip the lock
+	 * when their wallet can't make it in anyway.
+	 */
+	private volatile long admissionScore = 0;
+
+	/**
+	 * The wallets currently being mitigated. Replaced, never modified, so it can be
+	 * read without locking.
+	 */
+	private volatile Set<UUID> mitigated = Set.of();
+
+	private ScheduledExecutorService decayer;
+
+	public HotWalletDetector() {
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). Nothing is decayed
+	 * until {@link #decay()} is called.
+	 */
+	public HotWalletDetector(int topK, int sketchDepth, int sketchWidth, long retryWeight, boolean autoMitigate,
+			long mitigationThreshold) {
+		this.topK = topK;
+		this.sketchDepth = sketchDepth;
+		this.sketchWidth = sketchWidth;
+		this.retryWeight = retryWeight;
+		this.autoMitigate = autoMitigate;
+		this.mitigationThreshold = mitigationThreshold;
+		this.init();
+	}
+
+	private void init() {
+		this.topK = Math.max(1, this.topK);
+		this.sketch = new CountMinSketch(this.sketchDepth, this.sketchWidth);
+		this.heap = new PriorityQueue<>(this.topK + 1, Comparator.comparingLong(c -> c.score));
+		this.candidates = new HashMap<>();
+	}
+
+	@PostConstruct
+	public void start() {
+		this.init();
+		this.decayer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "wallet-hotspot-decayer");
+			t.setDaemon(true);
+			return t;
+		});
+		this.decayer.scheduleWithFixedDelay(this::decay, this.decayInterval, this.decayInterval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (this.decayer != null) {
+			this.decayer.shutdownNow();
+		}
+	}
+
+	@Override
+	public void onReservationRetry(WalletInterface wallet) {
+		this.record(wallet.getId(), this.retryWeight);
+	}
+
+	@Override
+	public void onTransferCompleted(WalletInterface sender, TransferInterface transfer, int retries,
+			long reserveNanos, long receiveNanos, long appendNanos) {
+		this.record(sender.getId(), 1);
+	}
+
+	@Override
+	public void onTransferReverted(WalletInterface sender, TransferInterface transfer, Exception cause) {
+		this.record(sender.getId(), 1);
+	}
+
+	@Override
+	public boolean isHighContention(UUID walletId) {
+		Set<UUID> _mitigated = this.mitigated;
+		return !_mitigated.isEmpty() && _mitigated.contains(walletId);
+	}
+
+	/**
+	 * Adds weight to the score of a wallet.
+	 */
+	public void record(UUID walletId, long weight) {
+		long score = this.sketch.add(walletId, weight);
+		if (score < this.admissionScore) {
+			return;
+		}
+		synchronized (this.heap) {
+			Candidate candidate = this.candidates.get(walletId);
+			if (candidate != null) {
+				// The score is the heap key, so it has to be taken out to be updated
+				this.heap.remove(candidate);
+				candidate.score = score;
+				this.heap.add(candidate);
+			} else {
+				candidate = new Candidate(walletId, score);
+				this.heap.add(candidate);
+				this.candidates.put(walletId, candidate);
+				if (this.heap.size() > this.topK) {
+					this.candidates.remove(this.heap.poll().walletId);
+				}
+			}
+			this.admissionScore = this.heap.size() < this.topK ? 0 : this.heap.peek().score;
+		}
+	}
+
+	/**
+	 * Halves all scores and updates which wallets are mitigated.
+	 */
+	public void decay() {
+		try {
+			this.sketch.decay();
+			Set<UUID> _mitigated = new HashSet<>();
+			synchronized (this.heap) {
+				List<Candidate> all = new ArrayList<>(this.heap);
+				this.heap.clear();
+				this.candidates.clear();
+				for (Candidate candidate : all) {
+					// Judge by the score accumulated over the past interval, ie. before halving
+					if (this.autoMitigate && this.shouldMitigate(candidate)) {
+						_mitigated.add(candidate.walletId);
+					}
+					candidate.score = candidate.score >>> 1;
+					if (candidate.score == 0) {
+						continue; // gone quiet
+					}
+					this.heap.add(candidate);
+					this.candidates.put(candidate.walletId, candidate);
+				}
+				this.admissionScore = this.heap.size() < this.topK ? 0 : this.heap.peek().score;
+			}
+			this.updateMitigated(_mitigated);
+		} catch (Exception e) {
+			// Never let an exception kill the scheduled task
+			this.logger.error("Failed to decay hot wallet scores", e);
+		}
+	}
+
+	/**
+	 * Wallets start being mitigated at the threshold but only stop once they're
+	 * below half of it, so they don't flip back and forth on every decay.
+	 */
+	private boolean shouldMitigate(Candidate candidate) {
+		long threshold = this.mitigated.contains(candidate.walletId) ? this.mitigationThreshold / 2
+				: this.mitigationThreshold;
+		return candidate.score >= threshold;
+	}
+
+	private void updateMitigated(Set<UUID> _mitigated) {
+		Set<UUID> previous = this.mitigated;
+		for (UUID walletId : _mitigated) {
+			if (!previous.contains(walletId)) {
+				this.logger.info("Wallet {} is highly contended, serializing its sends", walletId);
+			}
+		}
+		for (UUID walletId : previous) {
+			if (!_mitigated.contains(walletId)) {
+				this.logger.info("Wallet {} is no longer highly contended", walletId);
+			}
+		}
+		this.mitigated = Set.copyOf(_mitigated);
+	}
+
+	/**
+	 * Gets the top wallets, highest score first.
+	 */
+	public List<HotWallet> getTop() {
+		List<HotWallet> top;
+		synchronized (this.heap) {
+			top = new ArrayList<>(this.heap.size());
+			for (Candidate candidate : this.heap) {
+				top.add(new HotWallet(candidate.walletId, candidate.score,
+						this.mitigated.contains(candidate.walletId)));
+			}
+		}
+		top.sort(Comparator.comparingLong(HotWallet::score).reversed());
+		return top;
+	}
+
+	/**
+	 * Gets the estimated score of any wallet, tracked or not.
+	 */
+	public long getScore(UUID walletId) {
+		return this.sketch.estimate(walletId);
+	}
+
+	public boolean isAutoMitigate() {
+		return this.autoMitigate;
+	}
+
+	public long getMitigationThreshold() {
+		return this.mitigationThreshold;
+	}
+
+	public record HotWallet(UUID walletId, long score, boolean mitigated) {
+	}
+
+	private static class Candidate {
+		private final UUID walletId;
+		private long score;
+
+		Candidate(UUID walletId, long score) {
+			this.walletId = walletId;
+			this.score = score;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.walletapi.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the {@link HotWalletDetector} at /actuator/hotwallets, and the score
+ * of any single wallet at /actuator/hotwallets/{walletId}. Wallets are listed
+ * with the hash they're tagged with in the metrics (see
+ * {@link WalletMetrics#walletTag(UUID)}).
+ */
+@Component
+@Endpoint(id = "hotwallets")
+public class HotWalletsEndpoint {
+
+	private final HotWalletDetector detector;
+
+	public HotWalletsEndpoint(HotWalletDetector detector) {
+		this.detector = detector;
+	}
+
+	@ReadOperation
+	public Map<String, Object> hotWallets() {
+		List<HotWalletDetector.HotWallet> top = this.detector.getTop();
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("autoMitigate", this.detector.isAutoMitigate());
+		response.put("mitigationThreshold", this.detector.getMitigationThreshold());
+		response.put("wallets", top.stream().map(wallet -> {
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("walletId", wallet.walletId());
+			entry.put("wallet", WalletMetrics.walletTag(wallet.walletId()));
+			entry.put("score", wallet.score());
+			entry.put("mitigated", wallet.mitigated());
+			return entry;
+		}).toList());
+		return response;
+	}
+
+	@ReadOperation
+	public Map<String, Object> wallet(@Selector String walletId) throws InvalidEndpointRequestException {
+		UUID id;
+		try {
+			id = UUID.fromString(walletId);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidEndpointRequestException("Invalid wallet ID " + walletId, "Invalid wallet ID");
+		}
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("walletId", id);
+		response.put("wallet", WalletMetrics.walletTag(id));
+		response.put("score", this.detector.getScore(id));
+		response.put("mitigated", this.detector.isHighContention(id));
+		return response;
+	}
+}
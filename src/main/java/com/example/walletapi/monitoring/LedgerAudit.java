@@ -0,0 +1,444 @@
+package com.example.walletapi.monitoring;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.example.walletapi.store.WalletStoreInterface;
+
+/**
+ * Proves (or disproves) that no money has been created or destroyed, across
+ * every wallet in memory and in the wallet store.
+ *
+ * All money comes from deposits (transfers without a sender, ie. the bank's
+ * initial deposit) and every other transfer must be in exactly two ledgers:
+ * once as a debit in the sender's and once as a credit in the recipient's. So
+ * the audit checks that:
+ *
+ * <ul>
+ * <li>Exactly {@code bank.wallet.initial-deposit} has been deposited</li>
+ * <li>The multiset of transfers seen from the sending side equals the multiset
+ * seen from the receiving side</li>
+ * <li>No ledger contains a transfer twice, or one it's not part of, and every
+ * balance matches its ledger</li>
+ * <li>All balances add up to the initial deposit (reported separately, since
+ * it only holds while no transfers are in flight)</li>
+ * </ul>
+ *
+ * Wallets are audited in parallel on a fork-join pool using all cores, and
+ * nothing is kept per transfer or per wallet: each worker folds the wallets it
+ * audits into a small {@link Tally}, and the tallies are merged. The two sides
+ * of the transfers are compared as sums of 64-bit hashes (a multiset hash),
+ * which match if and only if both sides saw the same transfers, barring a
+ * collision. Stored wallets are streamed from the store rather than listed up
+ * front.
+ *
+ * Wallets in memory are audited as they are, and their stored copies (which
+ * may be behind) are skipped. Transfers validated within {@code settle-time} of the
+ * start are left out of the cross-check, since they may not have made it into
+ * the sender's ledger yet.
+ */
+@Component
+public class LedgerAudit {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Value("${bank.wallet.initial-deposit:1000000000}")
+	private BigDecimal initialDeposit;
+
+	/**
+	 * The number of threads to audit with, 0 for one per core.
+	 */
+	@Value("${wallet.api.audit.parallelism:0}")
+	private int parallelism;
+
+	/**
+	 * Transfers validated less than this many milliseconds before the audit
+	 * started are not cross-checked.
+	 */
+	@Value("${wallet.api.audit.settle-time:1000}")
+	private long settleTime;
+
+	/**
+	 * The maximum number of problems to describe in a report (all are counted).
+	 */
+	@Value("${wallet.api.audit.max-problems:100}")
+	private int maxProblems;
+
+	private final WalletServiceInterface walletService;
+	private final TransferFactoryInterface transferFactory;
+	private final WalletStoreInterface store;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile AuditReport lastReport;
+
+	@Autowired
+	public LedgerAudit(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			WalletStoreInterface store) {
+		this.walletService = walletService;
+		this.transferFactory = transferFactory;
+		this.store = store;
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests).
+	 */
+	public LedgerAudit(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			WalletStoreInterface store, BigDecimal initialDeposit, int parallelism, long settleTime, int maxProblems) {
+		this(walletService, transferFactory, store);
+		this.initialDeposit = initialDeposit;
+		this.parallelism = parallelism;
+		this.settleTime = settleTime;
+		this.maxProblems = maxProblems;
+	}
+
+	public boolean isRunning() {
+		return this.running.get();
+	}
+
+	/**
+	 * Gets the report of the last audit which completed, or null.
+	 */
+	public AuditReport getLastReport() {
+		return this.lastReport;
+	}
+
+	/**
+	 * Starts an audit in the background, unless one is already running.
+	 *
+	 * @return False if an audit was already running
+	 */
+	public boolean start() {
+		if (!this.running.compareAndSet(false, true)) {
+			return false;
+		}
+		Thread thread = new Thread(() -> {
+			try {
+				this.runAudit();
+			} catch (Exception e) {
+				this.logger.error("Audit failed", e);
+			} finally {
+				this.running.set(false);
+			}
+		}, "wallet-audit");
+		thread.setDaemon(true);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Audits all wallets and returns when done.
+	 */
+	public AuditReport runAudit() throws IOException, InterruptedException {
+		long started = System.currentTimeMillis();
+		long cutoff = started - this.settleTime;
+		int threads = this.parallelism > 0 ? this.parallelism : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<WalletInterface> inMemory = new ArrayList<>(this.walletService.getCachedWallets());
+			Set<UUID> inMemoryIds = new HashSet<>(inMemory.size() * 2);
+			for (WalletInterface wallet : inMemory) {
+				inMemoryIds.add(wallet.getId());
+			}
+			// Parallel streams run on whichever pool they're started from
+			Tally tally = pool.submit(() -> inMemory.parallelStream()
+					.collect(() -> new Tally(cutoff, this.maxProblems), (t, w) -> t.add(snapshot(w)), Tally::merge))
+					.get();
+			Tally onDisk = pool.submit(() -> this.auditDisk(inMemoryIds, cutoff)).get();
+			tally.merge(onDisk);
+
+			AuditReport report = tally.toReport(started, System.currentTimeMillis() - started, onDisk.wallets,
+					this.initialDeposit);
+			if (report.passed()) {
+				this.logger.info("Audit passed: {} wallets, {} ledger entries, {} transfers, {} ms", report.wallets(),
+						report.entries(), report.transfers(), report.durationMillis());
+			} else {
+				this.logger.error("Audit FAILED: {}", report);
+			}
+			this.lastReport = report;
+			return report;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Audit failed: " + e.getCause().getMessage(), e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reads a balance and ledger from the same point in time, if the wallet holds
+	 * still long enough.
+	 */
+	private static Snapshot snapshot(WalletInterface wallet) {
+		Snapshot snapshot = null;
+		for (int attempt = 0; attempt < 3; attempt++) {
+			// Read the version first, see WalletInterface#getVersion()
+			long version = wallet.getVersion();
+			long sequence = wallet.getLedgerSequence();
+			List<TransferInterface> ledger = wallet.getLedger(0, (int) Math.min(sequence, Integer.MAX_VALUE));
+			BigDecimal balance = wallet.getBalance();
+			boolean consistent = wallet.getVersion() == version;
+			snapshot = new Snapshot(wallet.getId(), balance, ledger, consistent);
+			if (consistent) {
+				break;
+			}
+		}
+		return snapshot;
+	}
+
+	private Tally auditDisk(Set<UUID> inMemoryIds, long cutoff) {
+		try (Stream<UUID> walletIds = this.store.walletIds()) {
+			return walletIds.parallel()
+					.filter(walletId -> !inMemoryIds.contains(walletId))
+					.collect(() -> new Tally(cutoff, this.maxProblems), this::auditStored, Tally::merge);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to list wallets in " + this.store.getLocation() + ": "
+					+ e.getMessage(), e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void auditStored(Tally tally, UUID walletId) {
+		Map<String, Serializable> data;
+		try {
+			data = this.store.load(walletId);
+		} catch (IOException e) {
+			tally.problem("Wallet " + walletId + " could not be read: " + e.getMessage());
+			return;
+		}
+		if (data == null) {
+			return; // removed since it was listed
+		}
+		if (!walletId.toString().equals(data.get("id"))) {
+			tally.problem("Wallet " + walletId + " is stored with the data of wallet " + data.get("id"));
+			return;
+		}
+		if (!(data.get("balance") instanceof Number)) {
+			tally.problem("Wallet " + walletId + " has no balance");
+			return;
+		}
+		List<TransferInterface> ledger = new ArrayList<>();
+		if (data.get("ledger") instanceof List<?> entries) {
+			for (int i = 0; i < entries.size(); i++) {
+				try {
+					ledger.add(this.transferFactory.fromMap((Map<String, Serializable>) entries.get(i)));
+				} catch (RuntimeException e) {
+					tally.problem("Entry " + i + " in the ledger of wallet " + walletId + " is invalid: "
+							+ e.getMessage());
+				}
+			}
+		}
+		tally.add(new Snapshot(walletId, new BigDecimal(data.get("balance").toString()), ledger, true));
+	}
+
+	/**
+	 * A wallet as read by the audit.
+	 *
+	 * @param consistent False if the balance and ledger may be from different
+	 *                   points in time, in which case they aren't compared
+	 */
+	private record Snapshot(UUID walletId, BigDecimal balance, List<TransferInterface> ledger,
+			boolean consistent) {
+	}
+
+	/**
+	 * The results of auditing some of the wallets. Not thread-safe, every worker
+	 * has its own and they're merged at the end.
+	 */
+	private static class Tally {
+		private final long cutoff;
+		private final int maxProblems;
+
+		private long wallets;
+		private long entries;
+		private long unsettledEntries;
+		private long unsettledWallets;
+		private BigDecimal minted = BigDecimal.ZERO;
+		private BigDecimal balanceTotal = BigDecimal.ZERO;
+
+		/**
+		 * Both sides of all transfers: how many, their total and the sum of their
+		 * hashes (wrapping around).
+		 */
+		private long sentCount;
+		private long receivedCount;
+		private BigDecimal sentTotal = BigDecimal.ZERO;
+		private BigDecimal receivedTotal = BigDecimal.ZERO;
+		private long sentHash;
+		private long receivedHash;
+
+		private long problemCount;
+		private final List<String> problems = new ArrayList<>();
+
+		Tally(long cutoff, int maxProblems) {
+			this.cutoff = cutoff;
+			this.maxProblems = maxProblems;
+		}
+
+		void problem(String problem) {
+			this.problemCount++;
+			if (this.problems.size() < this.maxProblems) {
+				this.problems.add(problem);
+			}
+		}
+
+		private void add(Snapshot wallet) {
+			UUID walletId = wallet.walletId();
+			this.wallets++;
+			this.balanceTotal = this.balanceTotal.add(wallet.balance());
+			BigDecimal ledgerSum = BigDecimal.ZERO;
+			Set<UUID> seen = new HashSet<>(wallet.ledger().size() * 2);
+			for (TransferInterface transfer : wallet.ledger()) {
+				this.entries++;
+				if (!seen.add(transfer.getId())) {
+					this.problem("Transfer " + transfer.getId() + " is in the ledger of wallet " + walletId
+							+ " more than once");
+				}
+				boolean sent = walletId.equals(transfer.getSender());
+				boolean received = walletId.equals(transfer.getRecipient());
+				if (!sent && !received) {
+					this.problem("Transfer " + transfer.getId() + " in the ledger of wallet " + walletId
+							+ " is between other wallets");
+					continue;
+				}
+				ledgerSum = ledgerSum.add(transfer.getAmount(walletId));
+				long timestamp = transfer.getTimestamp();
+				if (timestamp <= 0 || timestamp > this.cutoff) {
+					this.unsettledEntries++;
+					continue;
+				}
+				if (transfer.getSender() == null) {
+					this.minted = this.minted.add(transfer.getAmount()); // only in the recipient's ledger
+					continue;
+				}
+				long hash = hash(transfer);
+				if (sent) {
+					this.sentCount++;
+					this.sentTotal = this.sentTotal.add(transfer.getAmount());
+					this.sentHash += hash;
+				}
+				if (received) {
+					this.receivedCount++;
+					this.receivedTotal = this.receivedTotal.add(transfer.getAmount());
+					this.receivedHash += hash;
+				}
+			}
+			if (!wallet.consistent()) {
+				this.unsettledWallets++;
+			} else if (wallet.balance().compareTo(ledgerSum) != 0) {
+				this.problem("Balance of wallet " + walletId + " is " + wallet.balance() + " but its ledger adds up to "
+						+ ledgerSum);
+			}
+		}
+
+		private Tally merge(Tally other) {
+			this.wallets += other.wallets;
+			this.entries += other.entries;
+			this.unsettledEntries += other.unsettledEntries;
+			this.unsettledWallets += other.unsettledWallets;
+			this.minted = this.minted.add(other.minted);
+			this.balanceTotal = this.balanceTotal.add(other.balanceTotal);
+			this.sentCount += other.sentCount;
+			this.receivedCount += other.receivedCount;
+			this.sentTotal = this.sentTotal.add(other.sentTotal);
+			this.receivedTotal = this.receivedTotal.add(other.receivedTotal);
+			this.sentHash += other.sentHash;
+			this.receivedHash += other.receivedHash;
+			this.problemCount += other.problemCount;
+			for (String problem : other.problems) {
+				if (this.problems.size() >= this.maxProblems) {
+					break;
+				}
+				this.problems.add(problem);
+			}
+			return this;
+		}
+
+		private AuditReport toReport(long startedAt, long durationMillis, long walletsOnDisk,
+				BigDecimal expectedTotal) {
+			boolean transfersMatched = this.sentCount == this.receivedCount && this.sentHash == this.receivedHash
+					&& this.sentTotal.compareTo(this.receivedTotal) == 0;
+			// Nothing has been deposited at all until the bank wallet is first used
+			boolean conserved = this.minted.compareTo(expectedTotal) == 0
+					|| (this.minted.signum() == 0 && this.entries == 0);
+			boolean settled = this.unsettledWallets == 0 && (this.balanceTotal.compareTo(expectedTotal) == 0
+					|| (this.balanceTotal.signum() == 0 && this.entries == 0));
+			return new AuditReport(startedAt, durationMillis, this.wallets, walletsOnDisk, this.entries,
+					this.sentCount, this.unsettledEntries, expectedTotal, this.minted, this.balanceTotal,
+					transfersMatched, conserved, settled, transfersMatched && conserved && this.problemCount == 0,
+					this.problemCount, List.copyOf(this.problems));
+		}
+	}
+
+	/**
+	 * Hashes everything about a transfer which both ledgers must agree on.
+	 * Amounts are normalized since the same amount may have a different scale
+	 * after a round trip through JSON.
+	 */
+	private static long hash(TransferInterface transfer) {
+		long h = mix(transfer.getId().getMostSignificantBits());
+		h = mix(h ^ transfer.getId().getLeastSignificantBits());
+		h = mix(h ^ transfer.getSender().getMostSignificantBits());
+		h = mix(h ^ transfer.getSender().getLeastSignificantBits());
+		h = mix(h ^ transfer.getRecipient().getMostSignificantBits());
+		h = mix(h ^ transfer.getRecipient().getLeastSignificantBits());
+		return mix(h ^ transfer.getAmount().stripTrailingZeros().hashCode());
+	}
+
+	/**
+	 * 64-bit murmur3 finalizer.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * The result of an audit.
+	 *
+	 * @param transfers        Transfers cross-checked (counted once)
+	 * @param unsettledEntries Ledger entries too recent to cross-check
+	 * @param minted           The total of all deposits
+	 * @param transfersMatched True if every transfer is in both the sender's and
+	 *                         the recipient's ledger
+	 * @param conserved        True if exactly the expected total was deposited
+	 * @param settled          True if all balances add up to the expected total,
+	 *                         which is only the case while no transfers are in
+	 *                         flight
+	 * @param passed           True if the transfers matched, money was conserved
+	 *                         and no problems were found
+	 * @param problems         Descriptions of (at most max-problems of) the
+	 *                         problems found
+	 */
+	public record AuditReport(long startedAt, long durationMillis, long wallets, long walletsOnDisk, long entries,
+			long transfers, long unsettledEntries, BigDecimal expectedTotal, BigDecimal minted,
+			BigDecimal balanceTotal, boolean transfersMatched, boolean conserved, boolean settled, boolean passed,
+			long problemCount, List<String> problems) {
+	}
+}
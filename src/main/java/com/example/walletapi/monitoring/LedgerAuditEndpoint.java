@@ -0,0 +1,43 @@
+package com.example.walletapi.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the {@link LedgerAudit} at /actuator/audit. POST starts an audit in
+ * the background (unless one is running) and GET returns the last report. Not
+ * exposed over HTTP by default since an audit reads the whole store, and like
+ * the other actuator endpoints it needs the management user when it is (see
+ * {@link com.example.walletapi.security.SecurityConfig#actuatorFilterChain}).
+ */
+@Component
+@Endpoint(id = "audit")
+public class LedgerAuditEndpoint {
+
+	private final LedgerAudit audit;
+
+	public LedgerAuditEndpoint(LedgerAudit audit) {
+		this.audit = audit;
+	}
+
+	@ReadOperation
+	public Map<String, Object> report() {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("running", this.audit.isRunning());
+		response.put("lastReport", this.audit.getLastReport());
+		return response;
+	}
+
+	@WriteOperation
+	public Map<String, Object> start() {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("started", this.audit.start());
+		response.put("running", this.audit.isRunning());
+		return response;
+	}
+}
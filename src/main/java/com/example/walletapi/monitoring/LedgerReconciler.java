@@ -0,0 +1,377 @@
+package com.example.walletapi.monitoring;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.service.WalletServiceInterface;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Continuously checks that the balance of every wallet in memory matches the
+ * sum of its ledger (see {@link com.example.walletapi.model.impl.Wallet} for
+ * why they're kept separately).
+ *
+ * Runs on a single low-priority thread which wakes up every {@code interval}
+ * and works for at most {@code slice}, so it costs a bounded fraction of one
+ * core no matter how many wallets there are. Ledgers are summed in chunks, and
+ * since they're append-only every wallet keeps a watermark of how far it has
+ * been verified along with the sum up to there, so each entry is only ever
+ * summed once. Wallets are visited round-robin, and a slice which runs out of
+ * time in the middle of a ledger continues from there next time.
+ *
+ * The balance and ledger are only compared when the wallet's version didn't
+ * change while they were read, ie. they're from the same point in time. Even
+ * then a transfer can be in flight (funds reserved but not yet in the ledger,
+ * or in the ledger but not yet spendable), which only ever puts the balance
+ * behind the ledger. So a balance ahead of the ledger is drift straight away,
+ * while a balance behind it is only drift if the wallet stays like that for
+ * {@code confirm-after}.
+ */
+@Component
+public class LedgerReconciler {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Value("${wallet.api.reconciler.enabled:true}")
+	private boolean enabled;
+
+	/**
+	 * How often (in milliseconds) a slice is run.
+	 */
+	@Value("${wallet.api.reconciler.interval:100}")
+	private long interval;
+
+	/**
+	 * The maximum time (in milliseconds) spent in each slice.
+	 */
+	@Value("${wallet.api.reconciler.slice:5}")
+	private long slice;
+
+	/**
+	 * The number of ledger entries summed at a time.
+	 */
+	@Value("${wallet.api.reconciler.chunk-size:512}")
+	private int chunkSize;
+
+	/**
+	 * How long (in milliseconds) a balance has to stay behind its ledger before
+	 * it's considered drift.
+	 */
+	@Value("${wallet.api.reconciler.confirm-after:1000}")
+	private long confirmAfter;
+
+	private final WalletServiceInterface walletService;
+	private final MeterRegistry registry;
+
+	/**
+	 * Progress of every wallet seen. Only modified by the reconciler thread.
+	 */
+	private final ConcurrentMap<UUID, Watermark> watermarks = new ConcurrentHashMap<>();
+
+	/**
+	 * The wallets left in the current pass, and the wallet we're in the middle of
+	 * (if a slice ran out of time).
+	 */
+	private Iterator<WalletInterface> cursor;
+	private WalletInterface current;
+	private long pass = 0;
+	private long passStarted;
+
+	private volatile int driftingWallets = 0;
+	private volatile double totalDrift = 0;
+
+	private Counter entriesVerified;
+	private Counter driftDetected;
+	private Counter busy;
+	private Timer passTimer;
+
+	private ScheduledExecutorService executor;
+
+	@Autowired
+	public LedgerReconciler(WalletServiceInterface walletService, MeterRegistry registry) {
+		this.walletService = walletService;
+		this.registry = registry;
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). Nothing is reconciled
+	 * until {@link #runSlice()} is called.
+	 */
+	public LedgerReconciler(WalletServiceInterface walletService, MeterRegistry registry, int chunkSize,
+			long slice, long confirmAfter) {
+		this(walletService, registry);
+		this.chunkSize = chunkSize;
+		this.slice = slice;
+		this.confirmAfter = confirmAfter;
+		this.init();
+	}
+
+	private void init() {
+		this.chunkSize = Math.max(1, this.chunkSize);
+		this.entriesVerified = Counter.builder("wallet.reconciler.entries")
+				.description("Ledger entries summed by the reconciler").register(this.registry);
+		this.driftDetected = Counter.builder("wallet.reconciler.drift.detected")
+				.description("Times a wallet's balance was found not to match its ledger").register(this.registry);
+		this.busy = Counter.builder("wallet.reconciler.busy")
+				.description("Comparisons skipped because the wallet changed while being read")
+				.register(this.registry);
+		this.passTimer = Timer.builder("wallet.reconciler.pass")
+				.description("Time to reconcile every wallet in memory once").register(this.registry);
+		Gauge.builder("wallet.reconciler.drifting", this, r -> r.driftingWallets)
+				.description("Wallets whose balance currently doesn't match their ledger").register(this.registry);
+		Gauge.builder("wallet.reconciler.drift.amount", this, r -> r.totalDrift)
+				.description("Sum of the absolute differences between balance and ledger of drifting wallets")
+				.register(this.registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		this.init();
+		if (!this.enabled) {
+			return;
+		}
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "wallet-reconciler");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		this.executor.scheduleWithFixedDelay(this::runSlice, this.interval, this.interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reconciles wallets until the slice is used up or the pass is complete,
+	 * whichever comes first. A new pass starts on the next call.
+	 */
+	public void runSlice() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.slice);
+		try {
+			do {
+				if (this.current == null) {
+					if (this.cursor == null) {
+						this.cursor = this.walletService.getCachedWallets().iterator();
+						this.pass++;
+						this.passStarted = System.nanoTime();
+					}
+					if (!this.cursor.hasNext()) {
+						this.endPass();
+						return;
+					}
+					this.current = this.cursor.next();
+				}
+				if (this.reconcile(this.current, deadline)) {
+					this.current = null;
+				}
+			} while (System.nanoTime() < deadline);
+		} catch (Exception e) {
+			// Never let an exception kill the scheduled task, just move on
+			this.logger.error("Failed to reconcile wallet {}", this.current == null ? null : this.current.getId(),
+					e);
+			this.current = null;
+		}
+	}
+
+	private void endPass() {
+		this.passTimer.record(System.nanoTime() - this.passStarted, TimeUnit.NANOSECONDS);
+		this.cursor = null;
+		// Forget wallets which are no longer in memory
+		Iterator<Watermark> it = this.watermarks.values().iterator();
+		while (it.hasNext()) {
+			Watermark watermark = it.next();
+			if (watermark.pass != this.pass) {
+				this.forget(watermark);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Sums the unverified part of a wallet's ledger and, once it's caught up,
+	 * compares the sum to the balance.
+	 *
+	 * @return False if the deadline passed before the wallet was done
+	 */
+	private boolean reconcile(WalletInterface wallet, long deadline) {
+		Watermark watermark = this.watermarks.get(wallet.getId());
+		if (watermark == null || watermark.wallet != wallet) {
+			// First time we see it, or it has been reloaded and may have a different ledger
+			if (watermark != null) {
+				this.forget(watermark);
+			}
+			watermark = new Watermark(wallet);
+			this.watermarks.put(wallet.getId(), watermark);
+		}
+		watermark.pass = this.pass;
+		while (true) {
+			// Read the version first, see WalletInterface#getVersion()
+			long version = wallet.getVersion();
+			long sequence = wallet.getLedgerSequence();
+			if (watermark.sequence < sequence) {
+				List<TransferInterface> chunk = wallet.getLedger(watermark.sequence, this.chunkSize);
+				BigDecimal sum = watermark.sum;
+				for (TransferInterface transfer : chunk) {
+					sum = sum.add(transfer.getAmount(wallet.getId()));
+				}
+				watermark.sum = sum;
+				watermark.sequence += chunk.size();
+				this.entriesVerified.increment(chunk.size());
+				if (System.nanoTime() >= deadline) {
+					return false;
+				}
+				continue;
+			}
+			BigDecimal balance = wallet.getBalance();
+			if (wallet.getVersion() != version) {
+				// Changed while we were reading, try again next pass
+				this.busy.increment();
+				return true;
+			}
+			this.compare(watermark, version, balance);
+			return true;
+		}
+	}
+
+	private void compare(Watermark watermark, long version, BigDecimal balance) {
+		int cmp = balance.compareTo(watermark.sum);
+		if (cmp == 0) {
+			watermark.suspectVersion = -1;
+			this.setDrift(watermark, null);
+			return;
+		}
+		long now = System.nanoTime();
+		if (cmp > 0 || (watermark.suspectVersion == version
+				&& now - watermark.suspectSince >= TimeUnit.MILLISECONDS.toNanos(this.confirmAfter))) {
+			this.setDrift(watermark, balance.subtract(watermark.sum));
+		} else if (watermark.suspectVersion != version) {
+			// Possibly a transfer in flight, see if it's still like this later
+			watermark.suspectVersion = version;
+			watermark.suspectSince = now;
+		}
+	}
+
+	/**
+	 * Removes a wallet's drift from the totals, without claiming it was fixed.
+	 */
+	private void forget(Watermark watermark) {
+		if (watermark.drift != null) {
+			this.driftingWallets--;
+			this.totalDrift -= watermark.drift.abs().doubleValue();
+			watermark.drift = null;
+		}
+	}
+
+	private void setDrift(Watermark watermark, BigDecimal drift) {
+		BigDecimal previous = watermark.drift;
+		if (previous == null ? drift == null : drift != null && previous.compareTo(drift) == 0) {
+			return;
+		}
+		watermark.drift = drift;
+		UUID walletId = watermark.wallet.getId();
+		if (previous != null) {
+			this.driftingWallets--;
+			this.totalDrift -= previous.abs().doubleValue();
+		}
+		if (drift != null) {
+			this.driftingWallets++;
+			this.totalDrift += drift.abs().doubleValue();
+			this.driftDetected.increment();
+			this.logger.error("Balance of wallet {} is off by {} compared to its ledger of {} entries", walletId,
+					drift, watermark.sequence);
+		} else {
+			this.logger.info("Balance of wallet {} matches its ledger again", walletId);
+		}
+	}
+
+	/**
+	 * Gets the number of ledger entries of a wallet which have been verified, or 0
+	 * if it hasn't been seen yet.
+	 */
+	public long getVerifiedSequence(UUID walletId) {
+		Watermark watermark = this.watermarks.get(walletId);
+		return watermark == null ? 0 : watermark.sequence;
+	}
+
+	/**
+	 * Gets the difference between a wallet's balance and its ledger (balance minus
+	 * ledger), or null if there is no known drift.
+	 */
+	public BigDecimal getDrift(UUID walletId) {
+		Watermark watermark = this.watermarks.get(walletId);
+		return watermark == null ? null : watermark.drift;
+	}
+
+	/**
+	 * Gets the drift of all wallets which currently have any.
+	 */
+	public Map<UUID, BigDecimal> getDrifting() {
+		Map<UUID, BigDecimal> drifting = new HashMap<>();
+		for (Watermark watermark : this.watermarks.values()) {
+			BigDecimal drift = watermark.drift;
+			if (drift != null) {
+				drifting.put(watermark.wallet.getId(), drift);
+			}
+		}
+		return drifting;
+	}
+
+	/**
+	 * How far a wallet has been verified.
+	 */
+	private static class Watermark {
+		private final WalletInterface wallet;
+
+		/**
+		 * The number of entries summed, and their sum.
+		 */
+		private long sequence = 0;
+		private BigDecimal sum = BigDecimal.ZERO;
+
+		/**
+		 * The version at which the balance was first seen behind the ledger, and
+		 * when (nanoTime), or -1.
+		 */
+		private long suspectVersion = -1;
+		private long suspectSince;
+
+		private volatile BigDecimal drift;
+
+		/**
+		 * The last pass the wallet was seen in.
+		 */
+		private long pass;
+
+		Watermark(WalletInterface wallet) {
+			this.wallet = wallet;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.example.walletapi.monitoring;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.WalletListenerInterface;
+import com.example.walletapi.monitoring.jfr.JfrSupport;
+import com.example.walletapi.service.impl.TransferPipeline;
+import com.example.walletapi.service.impl.WriteBehind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Metrics for wallets and the transfer pipeline, exposed through
+ * /actuator/prometheus (and /actuator/metrics).
+ * 
+ * All meters are registered up front and kept in fields, so recording only
+ * increments counters and never has to look anything up or allocate. The
+ * per-wallet hot-spot gauges are refreshed periodically from the
+ * {@link HotWalletDetector} instead of being updated on every event.
+ */
+@Component
+public class WalletMetrics implements WalletListenerInterface {
+
+	private final MeterRegistry registry;
+
+	private final Timer lookupTimer;
+	private final Timer reserveTimer;
+	private final Timer receiveTimer;
+	private final Timer appendTimer;
+	private final Timer persistTimer;
+
+	private final Counter transfersCompleted;
+	private final Counter reservationRetries;
+	private final Counter reverts;
+	private final Counter conflicts;
+	private final Counter saveFailures;
+
+	/**
+	 * How often (in milliseconds) the hot-spot gauges are refreshed.
+	 */
+	@Value("${wallet.api.metrics.hot-wallets-refresh-interval:10000}")
+	private long hotWalletRefreshInterval;
+
+	private final HotWalletDetector hotWallets;
+	private MultiGauge hotWalletGauge;
+	private ScheduledExecutorService refresher;
+
+	@Autowired
+	public WalletMetrics(MeterRegistry registry, HotWalletDetector hotWallets) {
+		this.registry = registry;
+		this.hotWallets = hotWallets;
+		this.lookupTimer = this.stageTimer("lookup");
+		this.reserveTimer = this.stageTimer("reserve");
+		this.receiveTimer = this.stageTimer("receive");
+		this.appendTimer = this.stageTimer("append");
+		this.persistTimer = this.stageTimer("persist");
+		this.transfersCompleted = Counter.builder("wallet.transfers.completed")
+				.description("Transfers which made it into both ledgers").register(registry);
+		this.reservationRetries = Counter.builder("wallet.transfers.reservation.retries")
+				.description("Failed compare-and-set when reserving funds, each followed by a back-off sleep")
+				.register(registry);
+		this.reverts = Counter.builder("wallet.transfers.reverts")
+				.description("Transfers which failed after funds were reserved").register(registry);
+		this.conflicts = Counter.builder("wallet.transfers.conflicts")
+				.description("Transfers rejected with a ResourceConflictException").register(registry);
+		this.saveFailures = Counter.builder("wallet.persistence.save.failures")
+				.description("Wallets which failed to save (asynchronously)").register(registry);
+	}
+
+	private Timer stageTimer(String stage) {
+		return Timer.builder("wallet.transfer.stage").tag("stage", stage)
+				.description("Time spent in each stage of a transfer").register(this.registry);
+	}
+
+	@PostConstruct
+	public void start() {
+		this.hotWalletGauge = MultiGauge.builder("wallet.hotspot.score")
+				.description("Contention score (sends + weighted reservation retries, decaying) of the hottest wallets")
+				.register(this.registry);
+		this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "wallet-metrics-refresher");
+			t.setDaemon(true);
+			return t;
+		});
+		this.refresher.scheduleWithFixedDelay(this::refreshHotWallets, this.hotWalletRefreshInterval,
+				this.hotWalletRefreshInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.refresher.shutdownNow();
+	}
+
+	private void refreshHotWallets() {
+		List<MultiGauge.Row<?>> rows = this.hotWallets.getTop().stream()
+				.map(e -> MultiGauge.Row.of(Tags.of("wallet", walletTag(e.walletId())), e.score()))
+				.collect(Collectors.toList());
+		this.hotWalletGauge.register(rows, true);
+	}
+
+	/**
+	 * Identifies a wallet in metrics. The wallet ID is what it takes to get a
+	 * token for a wallet, so it's hashed like in the JFR events, see
+	 * {@link JfrSupport#hashWalletId(UUID)}. /actuator/hotwallets lists the hash
+	 * along with the ID.
+	 */
+	public static String walletTag(UUID walletId) {
+		return Long.toHexString(JfrSupport.hashWalletId(walletId));
+	}
+
+	/**
+	 * Reports the number of wallets held in memory.
+	 */
+	public void gaugeCachedWallets(Map<?, ?> wallets) {
+		Gauge.builder("wallet.cached", wallets, Map::size).description("Wallets held in memory")
+				.register(this.registry);
+	}
+
+	/**
+	 * Reports the number of transfers queued in the transfer pipeline.
+	 */
+	public void gaugePipelineBacklog(TransferPipeline pipeline) {
+		Gauge.builder("wallet.pipeline.backlog", pipeline, TransferPipeline::getBacklog)
+				.description("Transfers queued in the pipeline and not yet replied to").register(this.registry);
+	}
+
+	/**
+	 * Reports the number of wallets waiting to be saved, and how many saves were
+	 * coalesced with one already pending.
+	 */
+	public void gaugeWriteBehind(WriteBehind writeBehind) {
+		Gauge.builder("wallet.persistence.pending", writeBehind, WriteBehind::getPending)
+				.description("Wallets waiting to be saved, or being saved").register(this.registry);
+		FunctionCounter.builder("wallet.persistence.save.coalesced", writeBehind, WriteBehind::getCoalesced)
+				.description("Saves of a wallet which already had one pending").register(this.registry);
+	}
+
+	/**
+	 * Records the time spent looking up the wallets of a transfer (in memory or
+	 * on disk).
+	 */
+	public void recordLookup(long nanos) {
+		this.lookupTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the time spent saving a wallet.
+	 */
+	public void recordPersist(long nanos) {
+		this.persistTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordConflict() {
+		this.conflicts.increment();
+	}
+
+	public void recordSaveFailure() {
+		this.saveFailures.increment();
+	}
+
+	@Override
+	public void onReservationRetry(WalletInterface wallet) {
+		this.reservationRetries.increment();
+	}
+
+	@Override
+	public void onTransferCompleted(WalletInterface sender, TransferInterface transfer, int retries,
+			long reserveNanos, long receiveNanos, long appendNanos) {
+		this.transfersCompleted.increment();
+		this.reserveTimer.record(reserveNanos, TimeUnit.NANOSECONDS);
+		this.receiveTimer.record(receiveNanos, TimeUnit.NANOSECONDS);
+		this.appendTimer.record(appendNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void onTransferReverted(WalletInterface sender, TransferInterface transfer, Exception cause) {
+		this.reverts.increment();
+	}
+}
@@ -0,0 +1,24 @@
+package com.example.walletapi.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Parsing and verifying the JWT of a request to a protected endpoint.
+ */
+@Name("com.example.walletapi.JwtVerification")
+@Label("JWT Verification")
+@Category({ "Wallet API", "Security" })
+@Description("Parsing and verifying a JWT")
+@StackTrace(false)
+@Threshold("1 ms")
+public class JwtVerificationEvent extends Event {
+
+	@Label("Success")
+	public boolean success;
+}
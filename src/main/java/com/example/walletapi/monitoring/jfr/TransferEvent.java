@@ -0,0 +1,46 @@
+package com.example.walletapi.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A transfer from one wallet to another, from the start of the reservation
+ * until it's in both ledgers (or has failed).
+ */
+@Name("com.example.walletapi.Transfer")
+@Label("Transfer")
+@Category({ "Wallet API", "Transfers" })
+@Description("A transfer between two wallets")
+@StackTrace(false)
+@Threshold("10 ms")
+public class TransferEvent extends Event {
+
+	public static final String COMPLETED = "completed";
+	public static final String INSUFFICIENT_FUNDS = "insufficient-funds";
+	public static final String CONFLICT = "conflict";
+	public static final String FAILED = "failed";
+
+	@Label("Sender")
+	@Description("Salted hash of the sending wallet ID")
+	public long sender;
+
+	@Label("Recipient")
+	@Description("Salted hash of the receiving wallet ID")
+	public long recipient;
+
+	@Label("Amount Bucket")
+	@Description("Number of digits before the decimal point of the amount")
+	public int amountBucket;
+
+	@Label("Retries")
+	@Description("Number of times reserving the funds had to be retried")
+	public int retries;
+
+	@Label("Outcome")
+	public String outcome;
+}
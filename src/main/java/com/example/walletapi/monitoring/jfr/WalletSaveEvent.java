@@ -0,0 +1,31 @@
+package com.example.walletapi.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Saving a wallet to disk.
+ */
+@Name("com.example.walletapi.WalletSave")
+@Label("Wallet Save")
+@Category({ "Wallet API", "Persistence" })
+@Description("Saving a wallet to disk")
+@StackTrace(false)
+@Threshold("5 ms")
+public class WalletSaveEvent extends Event {
+
+	@Label("Wallet")
+	@Description("Salted hash of the wallet ID")
+	public long wallet;
+
+	@Label("Ledger Size")
+	public long ledgerSize;
+
+	@Label("Success")
+	public boolean success;
+}
@@ -0,0 +1,227 @@
+package com.example.walletapi.reactive;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.example.walletapi.controller.WalletControllerProtected;
+import com.example.walletapi.controller.WalletControllerPublic;
+import com.example.walletapi.dto.requests.CreateWalletRequestDto;
+import com.example.walletapi.dto.requests.DepositRequestDto;
+import com.example.walletapi.dto.requests.TransferRequestDto;
+import com.example.walletapi.dto.requests.WalletAccessRequestDto;
+import com.example.walletapi.dto.responses.BalanceResponseDto;
+import com.example.walletapi.dto.responses.LedgerResponseDto;
+import com.example.walletapi.dto.responses.WalletAccessResponseDto;
+import com.example.walletapi.dto.responses.WalletEventDto;
+import com.example.walletapi.exception.BadRequestException;
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.security.JwtUtil;
+import com.example.walletapi.service.WalletEventHubInterface;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.example.walletapi.util.EtagUtil;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Handles the requests routed by {@link WalletRouter}. Does the same as
+ * {@link WalletControllerPublic} and {@link WalletControllerProtected}, but
+ * never blocks the (few) event loop threads: everything slow is done by the
+ * async methods of the {@link WalletServiceInterface}, and wallets already in
+ * memory are used right away.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Component
+public class WalletHandler {
+
+	private final WalletServiceInterface walletService;
+	private final WalletEventHubInterface eventHub;
+	private final JwtUtil jwtUtil;
+	private final Validator validator;
+
+	@Value("${wallet.api.events.stream-timeout:300000}")
+	private long eventStreamTimeout;
+
+	/**
+	 * How many events may wait for a slow client before it's considered too slow
+	 * and dropped.
+	 */
+	@Value("${wallet.api.events.max-missed-events:50}")
+	private int maxMissedEvents;
+
+	public WalletHandler(WalletServiceInterface walletService, WalletEventHubInterface eventHub, JwtUtil jwtUtil,
+			Validator validator) {
+		this.walletService = walletService;
+		this.eventHub = eventHub;
+		this.jwtUtil = jwtUtil;
+		this.validator = validator;
+	}
+
+	public Mono<ServerResponse> getPublicDocumentation(ServerRequest request) {
+		return ServerResponse.ok().contentType(MediaType.TEXT_PLAIN).bodyValue(WalletControllerPublic.DOCUMENTATION);
+	}
+
+	public Mono<ServerResponse> getProtectedDocumentation(ServerRequest request) {
+		return ServerResponse.ok().contentType(MediaType.TEXT_PLAIN)
+				.bodyValue(WalletControllerProtected.REACTIVE_DOCUMENTATION);
+	}
+
+	public Mono<ServerResponse> createWallet(ServerRequest request) {
+		return this.body(request, CreateWalletRequestDto.class)
+				.flatMap(body -> Mono.fromFuture(() -> this.walletService.createWalletAsync(body.getPassword())))
+				.flatMap(wallet -> ServerResponse.status(HttpStatus.CREATED)
+						.bodyValue(this.createWalletAccessResponseDto(wallet)));
+	}
+
+	public Mono<ServerResponse> getToken(ServerRequest request) {
+		return this.body(request, WalletAccessRequestDto.class)
+				.flatMap(body -> Mono.fromFuture(
+						() -> this.walletService.getWalletAsync(body.getWalletId(), body.getPassword())))
+				.flatMap(wallet -> ServerResponse.ok().bodyValue(this.createWalletAccessResponseDto(wallet)));
+	}
+
+	public Mono<ServerResponse> getBalance(ServerRequest request) {
+		return this.getWallet().flatMap(wallet -> this.conditionalGet(request, wallet, "balance", null,
+				Mono.fromSupplier(wallet::getBalanceDto), BalanceResponseDto.class));
+	}
+
+	public Mono<ServerResponse> getTransactions(ServerRequest request) {
+		Long since;
+		try {
+			since = request.queryParam("since").map(Long::valueOf).orElse(null);
+		} catch (NumberFormatException e) {
+			return Mono.error(new BadRequestException("The 'since' parameter must be a ledger position >= 0"));
+		}
+		if (since != null && since < 0) {
+			return Mono.error(new BadRequestException("The 'since' parameter must be a ledger position >= 0"));
+		}
+		// Evicted entries are read from the store while encoding, which blocks, so
+		// that's done on boundedElastic rather than the event loop
+		return this.getWallet().flatMap(wallet -> this.conditionalGet(request, wallet, "transactions", since,
+				Mono.fromSupplier(() -> since == null ? wallet.getLedgerDto() : wallet.getLedgerDto(since))
+						.subscribeOn(Schedulers.boundedElastic()),
+				LedgerResponseDto.class));
+	}
+
+	/**
+	 * Streams changes of the wallet. Unlike the MVC version an open stream holds
+	 * no thread, only a small buffer: if the client doesn't read and more than
+	 * max-missed-events pile up, the hub drops it.
+	 */
+	public Mono<ServerResponse> getEvents(ServerRequest request) {
+		return this.getWallet().flatMap(wallet -> {
+			Sinks.Many<ServerSentEvent<WalletEventDto>> sink = Sinks.many().unicast()
+					.onBackpressureBuffer(Queues.<ServerSentEvent<WalletEventDto>>get(this.maxMissedEvents).get());
+			WalletEventHubInterface.Subscription subscription = this.eventHub.subscribe(wallet,
+					new WalletEventHubInterface.Subscriber() {
+						@Override
+						public void send(WalletEventDto event) throws IOException {
+							ServerSentEvent<WalletEventDto> sse = ServerSentEvent.builder(event).event("wallet")
+									.id(Long.toString(event.getSequence())).build();
+							if (sink.tryEmitNext(sse).isFailure()) {
+								throw new IOException("The client isn't keeping up");
+							}
+						}
+
+						@Override
+						public void close() {
+							sink.emitComplete(Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+						}
+					});
+			Flux<ServerSentEvent<WalletEventDto>> events = sink.asFlux()
+					.take(Duration.ofMillis(this.eventStreamTimeout))
+					.doFinally(signal -> subscription.cancel());
+			return ServerResponse.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(events, ServerSentEvent.class);
+		});
+	}
+
+	public Mono<ServerResponse> transfer(ServerRequest request) {
+		return this.body(request, TransferRequestDto.class)
+				.zipWith(this.getWalletId())
+				.flatMap(t -> Mono.fromFuture(() -> this.walletService.sendMoneyAsync(t.getT2(),
+						t.getT1().getDestinationWalletId(), t.getT1().getAmount())))
+				.flatMap(response -> ServerResponse.ok().bodyValue(response));
+	}
+
+	public Mono<ServerResponse> deposit(ServerRequest request) {
+		return this.body(request, DepositRequestDto.class)
+				.zipWith(this.getWalletId())
+				.flatMap(t -> Mono.fromFuture(() -> this.walletService.depositMoneyAsync(t.getT2(),
+						t.getT1().getAmount(), t.getT1().getToken())))
+				.flatMap(response -> ServerResponse.ok().bodyValue(response));
+	}
+
+	/**
+	 * Reads and validates the request body, like @Valid @RequestBody does for MVC.
+	 */
+	private <T> Mono<T> body(ServerRequest request, Class<T> type) {
+		return request.bodyToMono(type)
+				.switchIfEmpty(Mono.error(() -> new BadRequestException("A request body is required")))
+				.doOnNext(body -> {
+					Set<ConstraintViolation<T>> violations = this.validator.validate(body);
+					if (!violations.isEmpty()) {
+						throw new BadRequestException(violations.stream().map(ConstraintViolation::getMessage)
+								.sorted().collect(Collectors.joining(", ")));
+					}
+				});
+	}
+
+	/**
+	 * Gets the ID of the authenticated wallet from the security context.
+	 */
+	private Mono<UUID> getWalletId() {
+		return ReactiveSecurityContextHolder.getContext()
+				.map(context -> (UUID) context.getAuthentication().getPrincipal())
+				.switchIfEmpty(Mono.error(() -> new ServerErrorException(66645)));
+	}
+
+	private Mono<WalletInterface> getWallet() {
+		return this.getWalletId()
+				.flatMap(walletId -> Mono.fromFuture(() -> this.walletService.getWalletUnathenticatedAsync(walletId)))
+				.onErrorMap(NotFoundException.class, e -> new NotFoundException(
+						"It seems you have a valid token for a Wallet which no longer exists. "
+								+ "Please contact customer service to find out why."));
+	}
+
+	/**
+	 * Same as WalletControllerProtected#conditionalGet. The body is only
+	 * subscribed to (and encoded on the thread it's published on) if it's sent.
+	 */
+	private <T> Mono<ServerResponse> conditionalGet(ServerRequest request, WalletInterface wallet, String resource,
+			Long since, Mono<T> body, Class<T> type) {
+		String etag = EtagUtil.walletEtag(wallet, resource, since, request.headers().firstHeader(HttpHeaders.ACCEPT));
+		CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+		return request.checkNotModified(etag)
+				.flatMap(notModified -> ServerResponse.from(notModified).cacheControl(cacheControl)
+						.varyBy(HttpHeaders.ACCEPT).build())
+				.switchIfEmpty(Mono.defer(() -> ServerResponse.ok().eTag(etag).cacheControl(cacheControl)
+						.varyBy(HttpHeaders.ACCEPT).contentType(MediaType.APPLICATION_JSON).body(body, type)));
+	}
+
+	private WalletAccessResponseDto createWalletAccessResponseDto(WalletInterface wallet) {
+		UUID walletId = wallet.getId();
+		return new WalletAccessResponseDto(walletId, this.jwtUtil.generateToken(walletId.toString()));
+	}
+}
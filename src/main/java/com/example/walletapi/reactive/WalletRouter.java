@@ -0,0 +1,50 @@
+package com.example.walletapi.reactive;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Routes for the "reactive" profile, which serves the API with WebFlux on Netty
+ * instead of Spring MVC on Tomcat (so connections waiting for something, like
+ * event streams or slow clients, don't hold a thread each). The paths and
+ * responses are the same as for the MVC controllers, except that only JSON is
+ * served.
+ *
+ * Security is configured by
+ * {@link com.example.walletapi.security.ReactiveSecurityConfig}.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Configuration
+public class WalletRouter {
+
+	/**
+	 * Spring Boot would otherwise run WebFlux on Tomcat, since Tomcat is also on the
+	 * classpath (for the MVC stack).
+	 */
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	public RouterFunction<ServerResponse> walletRoutes(WalletHandler handler) {
+		return RouterFunctions.route()
+				.path("/api/wallet/v1/public", builder -> builder
+						.GET("/help", handler::getPublicDocumentation)
+						.POST("/create", handler::createWallet)
+						.PUT("/access", handler::getToken))
+				.path("/api/wallet/v1/protected", builder -> builder
+						.GET("/help", handler::getProtectedDocumentation)
+						.GET("/balance", handler::getBalance)
+						.GET("/transactions", handler::getTransactions)
+						.GET("/events", handler::getEvents)
+						.POST("/transfer", handler::transfer)
+						.POST("/deposit", handler::deposit))
+				.build();
+	}
+}
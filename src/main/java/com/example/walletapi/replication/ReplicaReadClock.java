@@ -0,0 +1,92 @@
+package com.example.walletapi.replication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.WalletInterface.ReadClockInterface;
+
+/**
+ * Dates balances and ledgers served by a standby or read replica (see
+ * {@link ReplicationStandby}) to when its wallets were last known to be in
+ * sync with the primary, rather than to now. Refuses reads once that's longer
+ * ago than wallet.api.replication.max-staleness, so clients never get a
+ * balance which is older than that without knowing.
+ *
+ * Does nothing on a primary.
+ */
+@Component
+public class ReplicaReadClock implements ReadClockInterface {
+
+	/**
+	 * How far (ms) a replica may fall behind the primary before it stops serving
+	 * reads, 0 for no limit.
+	 */
+	@Value("${wallet.api.replication.max-staleness:5000}")
+	private long maxStaleness;
+
+	private volatile boolean following;
+
+	/**
+	 * When (the primary's epoch ms) the wallets were last in sync, 0 until they
+	 * first were.
+	 */
+	private volatile long syncedAt;
+
+	public ReplicaReadClock() {
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests).
+	 */
+	public ReplicaReadClock(long maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+
+	@Override
+	public long getReadTimestamp() throws ServiceUnavailableException {
+		long now = System.currentTimeMillis();
+		if (!this.following) {
+			return now;
+		}
+		long asOf = this.syncedAt;
+		if (this.maxStaleness > 0 && now - asOf > this.maxStaleness) {
+			throw new ServiceUnavailableException(asOf == 0
+					? "This replica hasn't caught up with the primary yet, please try again later"
+					: "This replica is " + (now - asOf) + " ms behind the primary, please try again later");
+		}
+		return asOf;
+	}
+
+	/**
+	 * Gets how far (ms) the wallets are behind the primary, or -1 if they haven't
+	 * been in sync yet or this isn't a replica.
+	 */
+	public long getStaleness() {
+		long asOf = this.syncedAt;
+		return this.following && asOf > 0 ? Math.max(0, System.currentTimeMillis() - asOf) : -1;
+	}
+
+	/**
+	 * Called when the wallets start following a primary. They keep the
+	 * timestamp of the last sync, if any, as they are still current as of then.
+	 */
+	void follow() {
+		this.following = true;
+	}
+
+	/**
+	 * Called when everything the primary had sent by {@code time} has been
+	 * applied.
+	 */
+	void synced(long time) {
+		this.syncedAt = time;
+	}
+
+	/**
+	 * Called on promotion, after which the wallets are always current.
+	 */
+	void stop() {
+		this.following = false;
+	}
+}
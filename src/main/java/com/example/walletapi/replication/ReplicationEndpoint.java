@@ -0,0 +1,56 @@
+package com.example.walletapi.replication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.service.WalletServiceInterface;
+
+/**
+ * Exposes replication at /actuator/replication. GET describes the standbys
+ * connected to this instance, or the primary it follows, and POST promotes a
+ * standby to primary.
+ */
+@Component
+@Endpoint(id = "replication")
+public class ReplicationEndpoint {
+
+	private final ReplicationPrimary primary;
+	private final ReplicationStandby standby;
+	private final WalletServiceInterface walletService;
+
+	public ReplicationEndpoint(ReplicationPrimary primary, ReplicationStandby standby,
+			WalletServiceInterface walletService) {
+		this.primary = primary;
+		this.standby = standby;
+		this.walletService = walletService;
+	}
+
+	@ReadOperation
+	public Map<String, Object> status() {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("readOnly", this.walletService.isReadOnly());
+		if (this.standby.isFollowing() || this.standby.isPromoted()) {
+			response.put("standby", this.standby.getStatus());
+		}
+		if (this.primary.isListening()) {
+			Map<String, Object> primary = new LinkedHashMap<>();
+			primary.put("port", this.primary.getPort());
+			primary.put("standbys", this.primary.getStandbys());
+			response.put("primary", primary);
+		}
+		return response;
+	}
+
+	@WriteOperation
+	public Map<String, Object> promote() {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("promoted", this.standby.promote());
+		response.putAll(this.status());
+		return response;
+	}
+}
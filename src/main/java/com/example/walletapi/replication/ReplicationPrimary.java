@@ -0,0 +1,570 @@
+package com.example.walletapi.replication;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.replication.ReplicationProtocol.Ack;
+import com.example.walletapi.replication.ReplicationProtocol.Delta;
+import com.example.walletapi.replication.ReplicationProtocol.Frame;
+import com.example.walletapi.replication.ReplicationProtocol.Hello;
+import com.example.walletapi.replication.ReplicationProtocol.Sync;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.example.walletapi.store.WalletStoreInterface;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Ships every change to the wallets to standbys (see
+ * {@link ReplicationStandby}) over a socket, so a standby can take over right
+ * away when this instance dies.
+ *
+ * Every save of a wallet marks it as dirty for each connected standby, which is
+ * all the saving thread does. A sender thread per standby then sends the
+ * entries appended to each dirty wallet's ledger since it last sent that
+ * wallet, so a wallet saved many times in a row is sent once. A new standby
+ * first gets every wallet, the ones in memory and the ones only in the store.
+ *
+ * Shipping is asynchronous, so a standby taking over may have missed the last
+ * moments. With wallet.api.replication.sync every save waits (for at most
+ * sync-timeout) until the standbys which have caught up have acknowledged it.
+ * With the transfer pipeline that holds the replies too, while the default path
+ * replies before it saves.
+ */
+@Component
+public class ReplicationPrimary {
+
+	/**
+	 * The maximum number of ledger entries sent in one delta.
+	 */
+	private static final int CHUNK = 512;
+
+	/**
+	 * How often (ms) a sync is sent even if nothing has changed, so the standby
+	 * knows this instance is still alive.
+	 */
+	private static final long HEARTBEAT = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final WalletServiceInterface walletService;
+	private final TransferFactoryInterface transferFactory;
+	private final WalletStoreInterface store;
+
+	private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Counts saves, see {@link Sync}.
+	 */
+	private final AtomicLong marks = new AtomicLong();
+
+	private final AtomicInteger connectionNumber = new AtomicInteger();
+
+	/**
+	 * "primary" listens for standbys right away, "standby" only once promoted.
+	 */
+	@Value("${wallet.api.replication.role:}")
+	private String role;
+
+	/**
+	 * The port standbys connect to, 0 for any free port.
+	 */
+	@Value("${wallet.api.replication.port:7070}")
+	private int port;
+
+	@Value("${wallet.api.replication.bind-address:127.0.0.1}")
+	private String bindAddress;
+
+	@Value("${wallet.api.replication.secret:}")
+	private String secret;
+
+	@Value("${wallet.api.replication.sync:false}")
+	private boolean sync;
+
+	@Value("${wallet.api.replication.sync-timeout:1000}")
+	private long syncTimeout;
+
+	private volatile ServerSocket serverSocket;
+
+	@Autowired
+	public ReplicationPrimary(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			WalletStoreInterface store) {
+		this.walletService = walletService;
+		this.transferFactory = transferFactory;
+		this.store = store;
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). Doesn't listen until
+	 * {@link #start()} is called.
+	 */
+	public ReplicationPrimary(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			int port, String secret, boolean sync, long syncTimeout, WalletStoreInterface store) {
+		this(walletService, transferFactory, store);
+		this.port = port;
+		this.bindAddress = "127.0.0.1";
+		this.secret = secret;
+		this.sync = sync;
+		this.syncTimeout = syncTimeout;
+		this.walletService.addSaveListener(this::onSaved);
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		this.walletService.addSaveListener(this::onSaved);
+		if ("primary".equalsIgnoreCase(this.role)) {
+			this.start();
+		}
+	}
+
+	/**
+	 * Starts listening for standbys, unless already listening.
+	 * 
+	 * @throws IllegalStateException if there's no secret, as anyone who could
+	 *                               connect could then read every wallet
+	 */
+	public synchronized void start() throws IOException {
+		if (this.serverSocket != null) {
+			return;
+		}
+		if (this.secret == null || this.secret.isEmpty()) {
+			throw new IllegalStateException("wallet.api.replication.secret is required to replicate");
+		}
+		ServerSocket socket = new ServerSocket();
+		socket.bind(new InetSocketAddress(InetAddress.getByName(this.bindAddress), this.port));
+		this.serverSocket = socket;
+		Thread acceptor = new Thread(this::accept, "replication-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		this.logger.info("Listening for standbys on {}:{}{}", this.bindAddress, socket.getLocalPort(),
+				this.sync ? ", replicating synchronously" : "");
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (this.serverSocket != null) {
+			this.close(this.serverSocket);
+			this.serverSocket = null;
+		}
+		for (Connection connection : this.connections) {
+			connection.close();
+		}
+	}
+
+	public boolean isListening() {
+		return this.serverSocket != null;
+	}
+
+	/**
+	 * Gets the port standbys connect to, or -1 if not listening.
+	 */
+	public int getPort() {
+		ServerSocket socket = this.serverSocket;
+		return socket == null ? -1 : socket.getLocalPort();
+	}
+
+	/**
+	 * Describes the connected standbys, for {@link ReplicationEndpoint}.
+	 */
+	public List<Map<String, Object>> getStandbys() {
+		List<Map<String, Object>> standbys = new ArrayList<>();
+		for (Connection connection : this.connections) {
+			Map<String, Object> standby = new LinkedHashMap<>();
+			standby.put("address", connection.socket.getRemoteSocketAddress().toString());
+			standby.put("sentFrames", connection.sent);
+			standby.put("ackedFrames", connection.acked);
+			standby.put("dirtyWallets", connection.dirty.size());
+			standby.put("caughtUp", connection.caughtUp);
+			standbys.add(standby);
+		}
+		return standbys;
+	}
+
+	/**
+	 * Marks a wallet as dirty for every standby, and with sync waits until they
+	 * have it.
+	 */
+	void onSaved(WalletInterface wallet) {
+		if (this.connections.isEmpty()) {
+			return;
+		}
+		for (Connection connection : this.connections) {
+			connection.mark(wallet);
+		}
+		// Counted after marking, so a sync covering this mark also covers the wallet
+		long mark = this.marks.incrementAndGet();
+		if (this.sync) {
+			for (Connection connection : this.connections) {
+				connection.await(mark, this.syncTimeout);
+			}
+		}
+	}
+
+	private void accept() {
+		ServerSocket server;
+		while ((server = this.serverSocket) != null) {
+			try {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				Thread sender = new Thread(() -> this.serve(socket),
+						"replication-sender-" + this.connectionNumber.incrementAndGet());
+				sender.setDaemon(true);
+				sender.start();
+			} catch (IOException e) {
+				if (this.serverSocket != null) {
+					this.logger.warn("Failed to accept a standby", e);
+				}
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		Connection connection = null;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			socket.setSoTimeout(10000);
+			Frame hello = ReplicationProtocol.read(in);
+			if (!(hello instanceof Hello) || !this.isTrusted(((Hello) hello).secret())) {
+				this.logger.warn("Rejected standby {}, check wallet.api.replication.secret",
+						socket.getRemoteSocketAddress());
+				this.close(socket);
+				return;
+			}
+			socket.setSoTimeout(0);
+			connection = new Connection(socket, in);
+			this.connections.add(connection);
+			this.logger.info("Standby {} connected, sending all wallets", socket.getRemoteSocketAddress());
+			connection.run();
+		} catch (IOException e) {
+			this.logger.warn("Lost standby {}: {}", socket.getRemoteSocketAddress(), e.toString());
+		} catch (Exception e) {
+			this.logger.error("Stopped replicating to standby {}", socket.getRemoteSocketAddress(), e);
+		} finally {
+			if (connection != null) {
+				this.connections.remove(connection);
+				connection.close();
+			}
+		}
+	}
+
+	private boolean isTrusted(String secret) {
+		return secret != null && MessageDigest.isEqual(this.secret.getBytes(StandardCharsets.UTF_8),
+				secret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void close(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+	}
+
+	/**
+	 * A connected standby.
+	 */
+	private class Connection {
+		private final Socket socket;
+		private final BufferedReader in;
+		private final BufferedWriter out;
+
+		/**
+		 * Wallets saved since they were last sent.
+		 */
+		private final ConcurrentMap<UUID, WalletInterface> dirty = new ConcurrentHashMap<>();
+
+		/**
+		 * How far each wallet's ledger has been sent. Only used by the sender thread.
+		 */
+		private final Map<UUID, Long> shipped = new HashMap<>();
+
+		/**
+		 * The marks covered by syncs which haven't been acknowledged yet, by frame
+		 * number.
+		 */
+		private final ConcurrentSkipListMap<Long, Long> syncs = new ConcurrentSkipListMap<>();
+
+		private volatile long sent;
+		private volatile long acked;
+		private volatile long syncedMarks;
+
+		/**
+		 * Set once the standby has acknowledged everything up to a moment when
+		 * nothing was dirty. Only standbys which have caught up are waited for.
+		 */
+		private volatile boolean caughtUp;
+		private volatile boolean closed;
+
+		/**
+		 * Set while the sender has taken wallets off the dirty list but not yet sent
+		 * the sync after them.
+		 */
+		private volatile boolean sending;
+
+		private Connection(Socket socket, BufferedReader in) throws IOException {
+			this.socket = socket;
+			this.in = in;
+			this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8));
+		}
+
+		private void mark(WalletInterface wallet) {
+			this.dirty.put(wallet.getId(), wallet);
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+
+		private void await(long mark, long timeout) {
+			if (!this.caughtUp || this.closed) {
+				return;
+			}
+			long deadline = System.currentTimeMillis() + timeout;
+			synchronized (this) {
+				while (this.syncedMarks < mark && !this.closed) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						this.caughtUp = false;
+						ReplicationPrimary.this.logger.warn(
+								"Standby {} didn't acknowledge within {} ms, replicating asynchronously until it catches up",
+								this.socket.getRemoteSocketAddress(), timeout);
+						return;
+					}
+					try {
+						this.wait(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+
+		private void run() throws IOException {
+			Thread acks = new Thread(this::readAcks, Thread.currentThread().getName() + "-acks");
+			acks.setDaemon(true);
+			acks.start();
+
+			// Everything in memory gets sent by the loop below, but what's only in the
+			// store has to be sent from there
+			Set<UUID> cached = new HashSet<>();
+			for (WalletInterface wallet : ReplicationPrimary.this.walletService.getCachedWallets()) {
+				cached.add(wallet.getId());
+				this.dirty.putIfAbsent(wallet.getId(), wallet);
+			}
+			this.sendStored(cached);
+
+			long lastSync = 0;
+			while (!this.closed) {
+				long time = System.currentTimeMillis();
+				long covered = ReplicationPrimary.this.marks.get();
+				boolean wasDirty = !this.dirty.isEmpty();
+				this.sending = wasDirty;
+				Iterator<Map.Entry<UUID, WalletInterface>> dirtyWallets = this.dirty.entrySet().iterator();
+				while (dirtyWallets.hasNext()) {
+					WalletInterface wallet = dirtyWallets.next().getValue();
+					dirtyWallets.remove();
+					this.send(wallet);
+				}
+				long now = System.currentTimeMillis();
+				if (wasDirty || now - lastSync >= HEARTBEAT) {
+					long number = ++this.sent;
+					this.syncs.put(number, covered);
+					ReplicationProtocol.write(this.out, new Sync(number, covered, time));
+					this.out.flush();
+					lastSync = now;
+				}
+				this.sending = false;
+				synchronized (this) {
+					if (this.dirty.isEmpty() && !this.closed) {
+						try {
+							this.wait(100);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Sends the entries of a wallet's ledger which haven't been sent yet.
+		 */
+		private void send(WalletInterface wallet) throws IOException {
+			Long shippedTo = this.shipped.get(wallet.getId());
+			long since = shippedTo == null ? 0 : shippedTo;
+			long end = wallet.getLedgerSequence();
+			if (shippedTo != null && since >= end) {
+				return;
+			}
+			String password = shippedTo == null ? wallet.getPassword() : null;
+			boolean incomplete = false;
+			do {
+				List<TransferInterface> entries = wallet.getLedger(since, CHUNK);
+				// A recipient appends before the transfer is validated, and an entry
+				// without a timestamp can't be stored, so it's sent next time
+				int validated = 0;
+				while (validated < entries.size() && entries.get(validated).getTimestamp() > 0) {
+					validated++;
+				}
+				if (validated < entries.size()) {
+					entries = entries.subList(0, validated);
+					incomplete = true;
+				}
+				ReplicationProtocol.write(this.out, new Delta(++this.sent, wallet.getId(), password, since, entries));
+				since += entries.size();
+				password = null;
+			} while (since < end && !incomplete);
+			this.shipped.put(wallet.getId(), since);
+			if (incomplete) {
+				this.dirty.putIfAbsent(wallet.getId(), wallet);
+			}
+		}
+
+		/**
+		 * Sends the wallets which are only in the store.
+		 */
+		private void sendStored(Set<UUID> cached) throws IOException {
+			WalletStoreInterface store = ReplicationPrimary.this.store;
+			int sentStored = 0;
+			try (Stream<UUID> walletIds = store.walletIds()) {
+				for (Iterator<UUID> it = walletIds.iterator(); it.hasNext() && !this.closed;) {
+					UUID walletId = it.next();
+					if (cached.contains(walletId) || this.shipped.containsKey(walletId)) {
+						continue;
+					}
+					Map<String, Serializable> data;
+					try {
+						data = store.load(walletId);
+					} catch (IOException e) {
+						// Being written right now (so it's in memory and will be sent anyway), or
+						// broken, in which case this instance can't load it either
+						ReplicationPrimary.this.logger.debug("Skipped unreadable wallet {}", walletId, e);
+						continue;
+					}
+					if (data == null) {
+						continue;
+					}
+					List<TransferInterface> ledger = new ArrayList<>();
+					Iterator<TransferInterface> entries = ReplicationPrimary.this.transferFactory
+							.getTransferIterator(data.get("ledger"));
+					if (entries != null) {
+						entries.forEachRemaining(ledger::add);
+					}
+					String password = (String) data.get("password");
+					for (int from = 0; from < ledger.size() || from == 0; from += CHUNK) {
+						List<TransferInterface> chunk = ledger.subList(from, Math.min(ledger.size(), from + CHUNK));
+						ReplicationProtocol.write(this.out, new Delta(++this.sent, walletId,
+								from == 0 ? password : null, from, chunk));
+					}
+					this.shipped.put(walletId, (long) ledger.size());
+					sentStored++;
+				}
+			}
+			this.out.flush();
+			ReplicationPrimary.this.logger.info("Sent {} wallets from {} to standby {}", sentStored,
+					store.getLocation(), this.socket.getRemoteSocketAddress());
+		}
+
+		private void readAcks() {
+			try {
+				while (!this.closed) {
+					Frame frame = ReplicationProtocol.read(this.in);
+					if (frame instanceof Ack ack) {
+						this.acked = ack.number();
+						Map<Long, Long> done = this.syncs.headMap(ack.number(), true);
+						if (!done.isEmpty()) {
+							long synced = 0;
+							for (long covered : done.values()) {
+								synced = Math.max(synced, covered);
+							}
+							done.clear();
+							synchronized (this) {
+								this.syncedMarks = Math.max(this.syncedMarks, synced);
+								if (this.dirty.isEmpty()) {
+									this.caughtUp = true;
+								}
+								this.notifyAll();
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				if (!this.closed) {
+					ReplicationPrimary.this.logger.debug("Stopped reading acks from {}: {}",
+							this.socket.getRemoteSocketAddress(), e.toString());
+				}
+			} finally {
+				this.close();
+			}
+		}
+
+		private void close() {
+			this.closed = true;
+			ReplicationPrimary.this.close(this.socket);
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until every standby has acknowledged everything saved so far (eg. in
+	 * tests, or before a planned switch-over).
+	 *
+	 * @return False if that didn't happen within the timeout
+	 */
+	public boolean awaitReplicated(long timeout, TimeUnit unit) throws InterruptedException {
+		long mark = this.marks.get();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Connection connection : this.connections) {
+			while (connection.syncedMarks < mark || !connection.dirty.isEmpty() || connection.sending
+					|| connection.acked < connection.sent) {
+				if (connection.closed || System.nanoTime() > deadline) {
+					return false;
+				}
+				Thread.sleep(10);
+			}
+		}
+		return true;
+	}
+}
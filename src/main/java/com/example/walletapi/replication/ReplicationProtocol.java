@@ -0,0 +1,97 @@
+package com.example.walletapi.replication;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The frames a primary and its standby exchange, one JSON object per line.
+ *
+ * The standby connects and sends a {@link Hello}. The primary then sends a
+ * {@link Delta} with the whole ledger of every wallet it has, and from then on
+ * a Delta with the new entries of every wallet which is saved. Every so often
+ * (and at least once a second) it sends a {@link Sync}. The standby answers
+ * with an {@link Ack} whenever it has applied everything it has received.
+ *
+ * Deltas say where in the ledger they start, so they can be applied more than
+ * once, which is what makes starting over on every new connection safe.
+ */
+final class ReplicationProtocol {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper()
+			.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+	private ReplicationProtocol() {
+	}
+
+	@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+	@JsonSubTypes({ @JsonSubTypes.Type(value = Hello.class, name = "hello"),
+			@JsonSubTypes.Type(value = Delta.class, name = "delta"),
+			@JsonSubTypes.Type(value = Sync.class, name = "sync"),
+			@JsonSubTypes.Type(value = Ack.class, name = "ack") })
+	sealed interface Frame permits Hello, Delta, Sync, Ack {
+	}
+
+	/**
+	 * Sent by the standby when it connects.
+	 *
+	 * @param secret Has to match the primary's wallet.api.replication.secret
+	 */
+	record Hello(String secret) implements Frame {
+	}
+
+	/**
+	 * Entries appended to the ledger of a wallet.
+	 *
+	 * @param number   Numbers the frames the primary sends, starting at 1 for
+	 *                 every connection
+	 * @param password The encoded password, only sent along with the first delta
+	 *                 of a wallet (which has {@code since} 0)
+	 * @param since    The sequence of the entry before the first one
+	 * @param entries  Transfers as they are stored in wallet files. Written as
+	 *                 transfers, read as maps.
+	 */
+	record Delta(long number, UUID walletId, String password, long since, List<?> entries) implements Frame {
+	}
+
+	/**
+	 * Tells the standby that every wallet saved before the primary's save counter
+	 * reached {@code marks} has been sent.
+	 *
+	 * @param time When (the primary's epoch ms) it started sending what this sync
+	 *             covers, ie. what the standby's wallets are current as of once
+	 *             it gets here
+	 */
+	record Sync(long number, long marks, long time) implements Frame {
+	}
+
+	/**
+	 * Sent by the standby once it has applied every frame up to {@code number}.
+	 */
+	record Ack(long number) implements Frame {
+	}
+
+	static void write(Writer out, Frame frame) throws IOException {
+		out.write(objectMapper.writeValueAsString(frame));
+		out.write('\n');
+	}
+
+	/**
+	 * @throws EOFException if the other side closed the connection
+	 */
+	static Frame read(BufferedReader in) throws IOException {
+		String line = in.readLine();
+		if (line == null) {
+			throw new EOFException("Connection closed");
+		}
+		return objectMapper.readValue(line, Frame.class);
+	}
+}
@@ -0,0 +1,340 @@
+package com.example.walletapi.replication;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.replication.ReplicationProtocol.Ack;
+import com.example.walletapi.replication.ReplicationProtocol.Delta;
+import com.example.walletapi.replication.ReplicationProtocol.Frame;
+import com.example.walletapi.replication.ReplicationProtocol.Hello;
+import com.example.walletapi.replication.ReplicationProtocol.Sync;
+import com.example.walletapi.service.WalletServiceInterface;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Follows a primary (see {@link ReplicationPrimary}) and applies every change
+ * it ships to the wallets of this instance, which is read-only meanwhile (see
+ * {@link WalletServiceInterface#setReadOnly(boolean)}). Everything is already
+ * in memory (and saved) when the primary goes away, so {@link #promote()} only
+ * has to stop following and allow writes.
+ *
+ * Promoted through /actuator/replication, or by itself if
+ * wallet.api.replication.auto-promote-after is set and the primary has been
+ * gone for that long. Once promoted it listens for standbys of its own on
+ * wallet.api.replication.port. Make sure the old primary stays down (or comes
+ * back as a standby of this one with an emptied data directory), nothing
+ * reconciles two primaries.
+ *
+ * Every new connection starts over with every wallet, so a standby which lost
+ * its primary for a moment catches up without special handling.
+ *
+ * With role "replica" it's only there to take reads off the primary, and is
+ * never promoted. Any number of replicas can follow the same primary. Both
+ * serve balances and ledgers dated to their last sync with the primary (see
+ * {@link ReplicaReadClock}).
+ */
+@Component
+public class ReplicationStandby {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final WalletServiceInterface walletService;
+	private final TransferFactoryInterface transferFactory;
+	private final ReplicationPrimary primary;
+	private final ReplicaReadClock readClock;
+
+	@Value("${wallet.api.replication.role:}")
+	private String role;
+
+	/**
+	 * The host:port of the primary to follow.
+	 */
+	@Value("${wallet.api.replication.primary:localhost:7070}")
+	private String primaryAddress;
+
+	@Value("${wallet.api.replication.secret:}")
+	private String secret;
+
+	/**
+	 * How long (ms) the primary may be gone before this standby promotes itself,
+	 * 0 to only promote through the endpoint.
+	 */
+	@Value("${wallet.api.replication.auto-promote-after:0}")
+	private long autoPromoteAfter;
+
+	@Value("${wallet.api.replication.reconnect-interval:1000}")
+	private long reconnectInterval;
+
+	/**
+	 * Set for a read replica, which can't be promoted.
+	 */
+	private boolean replica;
+
+	private volatile boolean following;
+	private volatile boolean promoted;
+	private volatile boolean connected;
+	private volatile Socket socket;
+	private Thread thread;
+
+	private volatile long appliedFrames;
+	private volatile long appliedDeltas;
+	/**
+	 * When the primary was last heard from (epoch ms).
+	 */
+	private volatile long lastContact;
+
+	@Autowired
+	public ReplicationStandby(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			ReplicationPrimary primary, ReplicaReadClock readClock) {
+		this.walletService = walletService;
+		this.transferFactory = transferFactory;
+		this.primary = primary;
+		this.readClock = readClock;
+	}
+
+	/**
+	 * Constructor for use outside of Spring (eg. in tests). Doesn't follow the
+	 * primary until {@link #start()} is called.
+	 *
+	 * @param primary Listens for standbys once promoted, null for a read replica
+	 */
+	public ReplicationStandby(WalletServiceInterface walletService, TransferFactoryInterface transferFactory,
+			ReplicationPrimary primary, ReplicaReadClock readClock, String primaryAddress, String secret,
+			long autoPromoteAfter) {
+		this(walletService, transferFactory, primary, readClock);
+		this.replica = primary == null;
+		this.primaryAddress = primaryAddress;
+		this.secret = secret;
+		this.autoPromoteAfter = autoPromoteAfter;
+		this.reconnectInterval = 100;
+	}
+
+	@PostConstruct
+	public void init() {
+		this.replica = "replica".equalsIgnoreCase(this.role);
+		if (this.replica || "standby".equalsIgnoreCase(this.role)) {
+			this.start();
+		}
+	}
+
+	/**
+	 * Makes the wallets read-only and starts following the primary.
+	 * 
+	 * @throws IllegalStateException if there's no secret to send the primary
+	 */
+	public synchronized void start() {
+		if (this.following || this.promoted) {
+			return;
+		}
+		if (this.secret == null || this.secret.isEmpty()) {
+			throw new IllegalStateException("wallet.api.replication.secret is required to replicate");
+		}
+		this.walletService.setReadOnly(true);
+		this.readClock.follow();
+		this.following = true;
+		this.lastContact = System.currentTimeMillis();
+		this.thread = new Thread(this::follow, "replication-standby");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		if (this.replica) {
+			this.logger.info("Serving reads as a replica of {}", this.primaryAddress);
+		} else {
+			this.logger.info("Standing by for {}{}", this.primaryAddress, this.autoPromoteAfter > 0
+					? ", taking over if it's gone for " + this.autoPromoteAfter + " ms" : "");
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.following = false;
+		this.disconnect();
+	}
+
+	/**
+	 * Stops following the primary and allows writes. Waits for the change being
+	 * applied (if any) to finish first. Does nothing if not a standby, or if a
+	 * read replica.
+	 *
+	 * @return True if this call promoted this instance
+	 */
+	public boolean promote() {
+		Thread follower;
+		synchronized (this) {
+			if (!this.following || this.replica) {
+				return false;
+			}
+			this.following = false;
+			this.promoted = true;
+			follower = this.thread;
+		}
+		this.disconnect();
+		if (follower != Thread.currentThread()) {
+			try {
+				follower.join(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.readClock.stop();
+		this.walletService.setReadOnly(false);
+		this.logger.warn("Promoted to primary after applying {} changes, last heard from {} {} ms ago",
+				this.appliedDeltas, this.primaryAddress, System.currentTimeMillis() - this.lastContact);
+		try {
+			this.primary.start();
+		} catch (IOException e) {
+			this.logger.error("Promoted, but failed to listen for standbys", e);
+		}
+		return true;
+	}
+
+	public boolean isFollowing() {
+		return this.following;
+	}
+
+	public boolean isPromoted() {
+		return this.promoted;
+	}
+
+	/**
+	 * Gets when the primary was last heard from (epoch ms), ie. how stale the
+	 * wallets may be. Until the first contact it's when following started.
+	 */
+	public long getLastContact() {
+		return this.lastContact;
+	}
+
+	/**
+	 * Describes the state of this standby, for {@link ReplicationEndpoint}.
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("primary", this.primaryAddress);
+		status.put("replica", this.replica);
+		status.put("following", this.following);
+		status.put("connected", this.connected);
+		status.put("promoted", this.promoted);
+		status.put("appliedFrames", this.appliedFrames);
+		status.put("appliedDeltas", this.appliedDeltas);
+		status.put("lastContact", this.lastContact);
+		status.put("staleness", this.readClock.getStaleness());
+		return status;
+	}
+
+	private void follow() {
+		while (this.following) {
+			try {
+				this.connectAndApply();
+			} catch (IOException e) {
+				if (this.following) {
+					this.logger.warn("Lost primary {}: {}", this.primaryAddress, e.toString());
+				}
+			} catch (RuntimeException e) {
+				// Eg. a gap in a ledger. Starting over sends everything again.
+				this.logger.error("Failed to apply a change from {}, reconnecting", this.primaryAddress, e);
+			} finally {
+				this.connected = false;
+				this.disconnect();
+			}
+			if (this.following && !this.replica && this.autoPromoteAfter > 0
+					&& System.currentTimeMillis() - this.lastContact >= this.autoPromoteAfter) {
+				this.promote();
+				return;
+			}
+			try {
+				Thread.sleep(this.reconnectInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void connectAndApply() throws IOException {
+		int colon = this.primaryAddress.lastIndexOf(':');
+		Socket _socket = new Socket();
+		this.socket = _socket;
+		_socket.connect(new InetSocketAddress(this.primaryAddress.substring(0, colon),
+				Integer.parseInt(this.primaryAddress.substring(colon + 1))), 5000);
+		_socket.setTcpNoDelay(true);
+		if (this.autoPromoteAfter > 0 && !this.replica) {
+			// The primary sends a sync at least every second, so silence means it's gone
+			// even if the connection isn't closed
+			_socket.setSoTimeout((int) Math.max(2000, this.autoPromoteAfter));
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(_socket.getInputStream(),
+				StandardCharsets.UTF_8));
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(_socket.getOutputStream(),
+				StandardCharsets.UTF_8));
+		ReplicationProtocol.write(out, new Hello(this.secret));
+		out.flush();
+		this.connected = true;
+		this.logger.info("Following primary {}", this.primaryAddress);
+
+		long applied = 0;
+		int unacknowledged = 0;
+		while (this.following) {
+			Frame frame = ReplicationProtocol.read(in);
+			this.lastContact = System.currentTimeMillis();
+			if (frame instanceof Delta delta) {
+				this.apply(delta);
+				applied = delta.number();
+			} else if (frame instanceof Sync sync) {
+				applied = sync.number();
+				this.readClock.synced(sync.time());
+			}
+			this.appliedFrames = applied;
+			// Acknowledge once everything received so far is applied, and now and then
+			// while busy
+			if (!in.ready() || ++unacknowledged >= 256) {
+				ReplicationProtocol.write(out, new Ack(applied));
+				out.flush();
+				unacknowledged = 0;
+			}
+		}
+	}
+
+	private void apply(Delta delta) {
+		List<TransferInterface> entries = new ArrayList<>();
+		if (delta.entries() != null && !delta.entries().isEmpty()) {
+			Iterator<TransferInterface> transfers = this.transferFactory
+					.getTransferIterator(new ArrayList<>(delta.entries()));
+			transfers.forEachRemaining(entries::add);
+			if (entries.size() != delta.entries().size()) {
+				throw new IllegalStateException("Got invalid ledger entries for wallet " + delta.walletId());
+			}
+		}
+		this.walletService.replicate(delta.walletId(), delta.password(), delta.since(), entries);
+		this.appliedDeltas++;
+	}
+
+	private void disconnect() {
+		Socket _socket = this.socket;
+		if (_socket != null) {
+			try {
+				_socket.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import org.springframework.security.access.AccessDeniedException; // Spring Security's AccessDeniedException
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.stereotype.Component;
 
 /**
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Component;
  * (403).</li>
  * </ul>
  */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Component
 public class AuthErrorResponse implements AuthenticationEntryPoint, AccessDeniedHandler {
 
@@ -41,8 +43,8 @@ public class AuthErrorResponse implements AuthenticationEntryPoint, AccessDenied
 			HttpServletRequest request, HttpServletResponse response, AuthenticationException authException)
 			throws IOException, ServletException {
 		// server side logging for debug
-		getLogger().warn("Handling an AuthenticationException and responding with: "
-				+ HttpServletResponse.SC_UNAUTHORIZED + " " + authException.getMessage(), authException);
+		getLogger().debug("Handling an AuthenticationException and responding with: {} {}",
+				HttpServletResponse.SC_UNAUTHORIZED, authException.getMessage(), authException);
 		// respond to client
 		response.sendError(HttpServletResponse.SC_UNAUTHORIZED, authException.getMessage());
 	}
@@ -52,8 +54,8 @@ public class AuthErrorResponse implements AuthenticationEntryPoint, AccessDenied
 			HttpServletRequest request, HttpServletResponse response, AccessDeniedException accessDeniedException)
 			throws IOException, ServletException {
 		// server side logging for debug
-		getLogger().warn("Handling an AccessDeniedException and responding with: "
-				+ HttpServletResponse.SC_FORBIDDEN + " " + accessDeniedException.getMessage(), accessDeniedException);
+		getLogger().debug("Handling an AccessDeniedException and responding with: {} {}",
+				HttpServletResponse.SC_FORBIDDEN, accessDeniedException.getMessage(), accessDeniedException);
 		// respond to client
 		response.sendError(HttpServletResponse.SC_FORBIDDEN, accessDeniedException.getMessage());
 	}
@@ -1,10 +1,15 @@
 package com.example.walletapi.security;
 
+import com.example.walletapi.monitoring.jfr.JwtVerificationEvent;
+
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -15,12 +20,17 @@ import org.springframework.web.server.ResponseStatusException;
 import java.io.IOException;
 import java.util.UUID;
 
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
 	@Autowired
 	private JwtUtil jwtUtil;
 
+	// Not "logger", which would hide the commons-logging logger of
+	// OncePerRequestFilter (which can't do parameterized messages)
+	private static final Logger log = LoggerFactory.getLogger(JwtAuthFilter.class);
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
@@ -29,13 +39,13 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 		// SecurityConfig
 		String uri = request.getRequestURI();
 		if (!uri.startsWith("/api/wallet/v1/protected")) {
-			logger.warn("TODO: Fix chain matching in SecurityConfig.Authorization filter run for public endpoint "
-					+ uri + " , skipping...");
+			log.trace("TODO: Fix chain matching in SecurityConfig. Authorization filter run for public "
+					+ "endpoint {}, skipping...", uri);
 			filterChain.doFilter(request, response);
 			return;
 		}
 
-		logger.info("PROCESSING REQUEST FOR AUTHORIZATION...");
+		log.trace("PROCESSING REQUEST FOR AUTHORIZATION...");
 
 		try {
 			// Now all endpoints require a JWT, so make sure one is set...
@@ -50,12 +60,17 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 			// ... and that is's valid (can be parsed with our secret key)...
 			JwtUtil.Jwt jwt;
 			UUID walletId;
+			JwtVerificationEvent event = new JwtVerificationEvent();
+			event.begin();
 			try {
 				jwt = jwtUtil.parseToken(token);
 				// ...and that it has a walletId which is a valid UUID.
 				walletId = jwt.getUserId(UUID.class);
+				event.success = true;
 			} catch (Exception e) {
 				throw new BadCredentialsException("The JWT wasn't valid", e);
+			} finally {
+				event.commit(); // ends the event and drops it if it's below the threshold
 			}
 
 			// ...and not expired
@@ -67,12 +82,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 			// so we can use it in the controller
 			jwtUtil.setAuthenticatedUser(request, walletId);
 
-			logger.info("AUTHORIZATION SUCCESSFUL. CONTINUING TO THE NEXT FILTER...");
+			log.debug("Authorized request for wallet {}", walletId);
 			// Continue to the next filter (and eventually hit the controller...)
 			filterChain.doFilter(request, response);
 
 		} catch (Exception e) {
-			logger.error(e);
+			// Rejected requests are answered by FilterChainExceptionHandler, so this is
+			// only of interest when debugging
+			log.debug("Authorization failed for {}: {}", uri, e.getMessage());
 			throw e;
 		}
 	}
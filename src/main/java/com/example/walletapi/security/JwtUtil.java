@@ -164,13 +164,13 @@ public class JwtUtil {
 		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 		if (authentication != null) {
 			if ("anonymousUser".equals(authentication.getPrincipal())) {
-				logger.info("Replacing anonymous user with authenticated user: " + user);
+				logger.debug("Replacing anonymous user with authenticated user: {}", user);
 			} else {
-				logger.warn("Overriding security context with new authenticated user: "
-						+ authentication.getPrincipal().toString() + " --> " + user);
+				logger.warn("Overriding security context with new authenticated user: {} --> {}",
+						authentication.getPrincipal(), user);
 			}
 		} else {
-			logger.info("Setting security context to authenticated user: " + user);
+			logger.debug("Setting security context to authenticated user: {}", user);
 		}
 		UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
 				user, null,
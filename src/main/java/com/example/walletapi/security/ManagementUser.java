@@ -0,0 +1,35 @@
+package com.example.walletapi.security;
+
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+
+/**
+ * The user allowed to call the actuator endpoints other than health and info,
+ * with HTTP basic auth (see {@link SecurityConfig#actuatorFilterChain} and
+ * {@link ReactiveSecurityConfig#actuatorSecurityFilterChain}). Configured with
+ * wallet.api.management.username and wallet.api.management.password.
+ */
+final class ManagementUser {
+
+	static final String ROLE = "ACTUATOR";
+
+	// Private constructor to prevent instantiation of this utility class
+	private ManagementUser() {
+		throw new UnsupportedOperationException("The utility class " + this.getClass().getName()
+				+ " cannot be instantiated");
+	}
+
+	/**
+	 * @return The user, or null if there's no password, in which case nobody can
+	 *         call the endpoints over HTTP
+	 */
+	static UserDetails of(String username, String password) {
+		if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+			return null;
+		}
+		return User.withUsername(username)
+				.password(PasswordEncoderFactories.createDelegatingPasswordEncoder().encode(password))
+				.roles(ROLE).build();
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.walletapi.security;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.example.walletapi.monitoring.jfr.JwtVerificationEvent;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux version of {@link JwtAuthFilter}, registered by
+ * {@link ReactiveSecurityConfig}.
+ *
+ * Verifying a JWT is only a HMAC over a short string, so it's done right on the
+ * event loop. A valid token puts the wallet ID in the reactive security context
+ * (as the principal, same as {@link JwtUtil#setAuthenticatedUser}). Requests
+ * without a valid token just continue unauthenticated and are rejected by the
+ * authorization filter, which answers with the reason stored here (see
+ * {@link #FAILURE_ATTRIBUTE}).
+ */
+public class ReactiveJwtAuthFilter implements WebFilter {
+
+	/**
+	 * The exchange attribute holding why a token was rejected.
+	 */
+	public static final String FAILURE_ATTRIBUTE = ReactiveJwtAuthFilter.class.getName() + ".failure";
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final JwtUtil jwtUtil;
+
+	public ReactiveJwtAuthFilter(JwtUtil jwtUtil) {
+		this.jwtUtil = jwtUtil;
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		String uri = exchange.getRequest().getPath().value();
+		if (!uri.startsWith("/api/wallet/v1/protected")) {
+			return chain.filter(exchange);
+		}
+
+		String authorizationHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+		if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+			return this.reject(exchange, chain, "No JWT found in the Authorization header");
+		}
+
+		JwtUtil.Jwt jwt;
+		UUID walletId;
+		JwtVerificationEvent event = new JwtVerificationEvent();
+		event.begin();
+		try {
+			jwt = this.jwtUtil.parseToken(authorizationHeader.substring(7));
+			walletId = jwt.getUserId(UUID.class);
+			event.success = true;
+		} catch (Exception e) {
+			return this.reject(exchange, chain, "The JWT wasn't valid");
+		} finally {
+			event.commit(); // ends the event and drops it if it's below the threshold
+		}
+		if (jwt.isExpired()) {
+			return this.reject(exchange, chain, "The JWT is expired");
+		}
+
+		this.logger.debug("Authorized request for wallet {}", walletId);
+		UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(walletId, null,
+				Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		return chain.filter(exchange)
+				.contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication));
+	}
+
+	private Mono<Void> reject(ServerWebExchange exchange, WebFilterChain chain, String reason) {
+		this.logger.debug("Authorization failed for {}: {}", exchange.getRequest().getPath(), reason);
+		exchange.getAttributes().put(FAILURE_ATTRIBUTE, reason);
+		return chain.filter(exchange);
+	}
+}
@@ -0,0 +1,120 @@
+package com.example.walletapi.security;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsConfigurationSource;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+
+import com.example.walletapi.exception.ReactiveExceptionHandler;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux version of {@link SecurityConfig}, used with the "reactive"
+ * profile. The actuator endpoints get a chain of their own, and a single chain
+ * does what the other two MVC chains do: everything under /protected requires a
+ * valid JWT (see {@link ReactiveJwtAuthFilter}) and everything else is open.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Configuration
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+	@Value("${wallet.api.cors-allowed-origins:localhost}")
+	private List<String> corsAllowedOrigins;
+
+	/**
+	 * Like {@link SecurityConfig#actuatorFilterChain}: health and info are open,
+	 * the rest need HTTP basic auth as the {@link ManagementUser}. Kept apart so
+	 * basic auth is never accepted for the wallet endpoints.
+	 */
+	@Bean
+	@Order(1)
+	public SecurityWebFilterChain actuatorSecurityFilterChain(ServerHttpSecurity http) {
+		http.securityMatcher(ServerWebExchangeMatchers.pathMatchers("/actuator/**"));
+		http.cors(Customizer.withDefaults());
+		http.csrf(csrf -> csrf.disable());
+		http.formLogin(form -> form.disable());
+		http.securityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+		http.authorizeExchange(exchanges -> exchanges
+				.pathMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
+				.anyExchange().hasRole(ManagementUser.ROLE));
+		http.httpBasic(Customizer.withDefaults());
+		return http.build();
+	}
+
+	/**
+	 * The users the actuator chain authenticates, see
+	 * {@link SecurityConfig#managementUsers}.
+	 */
+	@Bean
+	public ReactiveUserDetailsService managementUsers(
+			@Value("${wallet.api.management.username:admin}") String username,
+			@Value("${wallet.api.management.password:}") String password) {
+		UserDetails user = ManagementUser.of(username, password);
+		if (user == null) {
+			return name -> Mono.empty();
+		}
+		return new MapReactiveUserDetailsService(user);
+	}
+
+	@Bean
+	@Order(2)
+	public SecurityWebFilterChain reactiveSecurityFilterChain(ServerHttpSecurity http,
+			JwtUtil jwtUtil, ReactiveExceptionHandler errors) {
+		http.cors(Customizer.withDefaults());
+		// See SecurityConfig for why CSRF is disabled
+		http.csrf(csrf -> csrf.disable());
+		http.httpBasic(basic -> basic.disable());
+		http.formLogin(form -> form.disable());
+		// Stateless, the JWT is checked on every request
+		http.securityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+
+		http.exceptionHandling(exceptions -> exceptions
+				.authenticationEntryPoint((exchange, e) -> {
+					String reason = exchange.getAttribute(ReactiveJwtAuthFilter.FAILURE_ATTRIBUTE);
+					return errors.respond(exchange, HttpStatus.UNAUTHORIZED, reason != null ? reason : e.getMessage());
+				})
+				.accessDeniedHandler(
+						(exchange, e) -> errors.respond(exchange, HttpStatus.FORBIDDEN, e.getMessage())));
+
+		http.authorizeExchange(exchanges -> exchanges
+				.pathMatchers("/api/wallet/v1/protected/**").authenticated()
+				.anyExchange().permitAll());
+
+		// Not a bean, since WebFilter beans are also added to the global chain
+		http.addFilterAt(new ReactiveJwtAuthFilter(jwtUtil), SecurityWebFiltersOrder.AUTHENTICATION);
+
+		return http.build();
+	}
+
+	@Bean
+	public CorsConfigurationSource reactiveCorsConfigurationSource() {
+		CorsConfiguration configuration = new CorsConfiguration();
+		configuration.setAllowedOrigins(corsAllowedOrigins);
+		configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
+		configuration.setAllowedHeaders(Arrays.asList("authorization", "content-type", "x-auth-token"));
+		configuration.setAllowCredentials(true);
+		UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+		source.registerCorsConfiguration("/**", configuration);
+		return source;
+	}
+}
@@ -4,12 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.intercept.AuthorizationFilter;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -17,8 +21,12 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.security.config.Customizer;
+import com.example.walletapi.cluster.Cluster;
+import com.example.walletapi.cluster.ClusterRoutingFilter;
 import com.example.walletapi.exception.FilterChainExceptionHandler;
 
+import jakarta.servlet.DispatcherType;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -29,8 +37,9 @@ import java.util.List;
  * Each request only matches a single security chain, and they order they're
  * evaluated is determined by the @Order annotation.
  * 
- * 
+ * With the "reactive" profile {@link ReactiveSecurityConfig} is used instead.
  */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
@@ -41,6 +50,12 @@ public class SecurityConfig {
 	@Autowired
 	private AuthErrorResponse authErrorResponse;
 
+	@Autowired
+	private Cluster cluster;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	// Helper method to apply common configurations
@@ -106,15 +121,63 @@ public class SecurityConfig {
 		// "AuthorizationFilter" to run later in the chain and check for a valid
 		// "Authentication" object (see JwtUtil#setAuthenticatedUser), else it will
 		// throw errors which are caught by ^
-		http.authorizeHttpRequests(auth -> auth.anyRequest().authenticated());
+		//
+		// Endpoints returning a CompletableFuture (or SseEmitter) are dispatched a
+		// second time to write the result. The JWT filter doesn't run for that
+		// dispatch and the context isn't kept since we're stateless, so it's let
+		// through. The original request was already authorized.
+		http.authorizeHttpRequests(auth -> auth
+				.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+				.anyRequest().authenticated());
 
 		// Now register our JWT filter to run before AuthorizationFilter so it can check
 		// for a valid JWT and set it as the security context.
 		http.addFilterBefore(jwtAuthFilter(), AuthorizationFilter.class);
 
+		// Once we know the wallet, forward the request if it's on another node. Not a
+		// bean, since filter beans also run outside the chains.
+		http.addFilterBefore(new ClusterRoutingFilter(cluster, jwtUtil), AuthorizationFilter.class);
+
 		return http.build();
 	}
 
+	/**
+	 * Security chain for the actuator endpoints. Health and info are open, the
+	 * rest (metrics, hot wallets, audits, replication) need HTTP basic auth as the
+	 * {@link ManagementUser}.
+	 */
+	@Bean
+	@Order(2)
+	public SecurityFilterChain actuatorFilterChain(HttpSecurity http) throws Exception {
+		logger.info("SecurityConfig: Configuring the ACTUATOR chain...");
+		http.securityMatcher("/actuator/**");
+
+		configureCommonHttpSecurity(http);
+
+		http.authorizeHttpRequests(auth -> auth
+				.requestMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
+				.anyRequest().hasRole(ManagementUser.ROLE));
+
+		http.httpBasic(Customizer.withDefaults());
+
+		return http.build();
+	}
+
+	/**
+	 * The users the actuator chain authenticates, ie. the {@link ManagementUser}
+	 * if it has a password. Also keeps Spring Boot from generating a default user.
+	 */
+	@Bean
+	public UserDetailsService managementUsers(@Value("${wallet.api.management.username:admin}") String username,
+			@Value("${wallet.api.management.password:}") String password) {
+		UserDetails user = ManagementUser.of(username, password);
+		if (user == null) {
+			logger.info("No wallet.api.management.password, the actuator endpoints besides health and info are closed");
+			return new InMemoryUserDetailsManager();
+		}
+		return new InMemoryUserDetailsManager(user);
+	}
+
 	/**
 	 * Default security chain for any requests which havn't matched another chain
 	 * yet.
@@ -134,7 +197,8 @@ public class SecurityConfig {
 				.anyRequest().permitAll() // All other requests are permitted (as per user's last change)
 		);
 
-		// No JWT filter here
+		// No JWT filter here, but /access is forwarded to the wallet's node
+		http.addFilterBefore(new ClusterRoutingFilter(cluster, jwtUtil), AuthorizationFilter.class);
 
 		return http.build();
 	}
@@ -0,0 +1,181 @@
+package com.example.walletapi.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Caches ledgers as pre-serialized JSON, in blocks of a fixed number of
+ * entries.
+ * 
+ * Block k of a wallet holds the entries with sequence k*blockSize+1 to
+ * (k+1)*blockSize, serialized and separated by commas, ie. ready to be written
+ * straight into a JSON array. A block is only cached once it's "sealed", meaning
+ * all of its entries exist and have been validated. Since the ledger is
+ * append-only and validated transfers never change, a sealed block never
+ * changes either, so the cache never has to be invalidated.
+ * 
+ * The total size of the cache is bounded, when it's exceeded the wallets which
+ * were least recently used are evicted.
+ */
+@Component
+public class LedgerChunkCache {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * The number of ledger entries in each cached block.
+	 */
+	@Value("${wallet.api.ledger-cache.block-size:256}")
+	private int blockSize;
+
+	/**
+	 * The maximum number of bytes to keep cached across all wallets.
+	 */
+	@Value("${wallet.api.ledger-cache.max-bytes:67108864}")
+	private long maxBytes;
+
+	private final ConcurrentMap<UUID, WalletBlocks> wallets = new ConcurrentHashMap<>();
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	/**
+	 * Gets a sealed block from the cache, serializing and caching it first if
+	 * needed.
+	 * 
+	 * @param walletId The wallet the ledger belongs to
+	 * @param block    The index of the block
+	 * @param entries  Exactly the entries of the block, in order
+	 * @param writer   Used to serialize the entries if the block isn't cached
+	 * @return The serialized block, or null if it isn't sealed (in which case the
+	 *         caller has to serialize the entries itself)
+	 */
+	public byte[] getBlock(UUID walletId, int block, List<TransferInterface> entries, ObjectWriter writer)
+			throws IOException {
+		if (entries.size() != this.blockSize) {
+			return null;
+		}
+		WalletBlocks blocks = this.wallets.get(walletId);
+		if (blocks != null) {
+			blocks.lastUsed = System.nanoTime();
+			byte[] cached = blocks.get(block);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		for (TransferInterface transfer : entries) {
+			if (transfer.getTimestamp() <= 0) {
+				return null; // not validated yet, so it's not sealed
+			}
+		}
+		byte[] serialized = this.serialize(entries, writer);
+		// The total is only changed along with the map, so it always counts the blocks
+		// which are actually in it, even if the wallet is being evicted meanwhile
+		this.wallets.compute(walletId, (id, _blocks) -> {
+			WalletBlocks cached = _blocks != null ? _blocks : new WalletBlocks();
+			if (cached.put(block, serialized)) {
+				this.totalBytes.addAndGet(serialized.length);
+			}
+			return cached;
+		});
+		if (this.totalBytes.get() > this.maxBytes) {
+			this.evict();
+		}
+		return serialized;
+	}
+
+	private byte[] serialize(List<TransferInterface> entries, ObjectWriter writer) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(entries.size() * 160);
+		for (int i = 0; i < entries.size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			out.write(writer.writeValueAsBytes(entries.get(i)));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Removes the least recently used wallets until we're below the limit.
+	 * Overflowing is rare and scanning the map is cheap compared to keeping an
+	 * LRU list up to date on every read.
+	 */
+	private synchronized void evict() {
+		while (this.totalBytes.get() > this.maxBytes && !this.wallets.isEmpty()) {
+			Map.Entry<UUID, WalletBlocks> oldest = null;
+			Iterator<Map.Entry<UUID, WalletBlocks>> it = this.wallets.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<UUID, WalletBlocks> entry = it.next();
+				if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) {
+					oldest = entry;
+				}
+			}
+			WalletBlocks evicted = oldest.getValue();
+			this.wallets.computeIfPresent(oldest.getKey(), (id, blocks) -> {
+				if (blocks != evicted) {
+					return blocks;
+				}
+				this.totalBytes.addAndGet(-blocks.bytes.get());
+				this.logger.debug("Evicted cached ledger of wallet {}", id);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * The cached blocks of a single wallet.
+	 */
+	private static class WalletBlocks {
+		private volatile AtomicReferenceArray<byte[]> blocks = new AtomicReferenceArray<>(16);
+		private final AtomicLong bytes = new AtomicLong();
+		private volatile long lastUsed = System.nanoTime();
+
+		byte[] get(int block) {
+			AtomicReferenceArray<byte[]> _blocks = this.blocks;
+			return block < _blocks.length() ? _blocks.get(block) : null;
+		}
+
+		/**
+		 * Only called from compute() on the wallet's entry in the map, so never
+		 * concurrently. Reads don't lock.
+		 * 
+		 * @return True if the block was added, false if it was already there
+		 */
+		boolean put(int block, byte[] serialized) {
+			AtomicReferenceArray<byte[]> _blocks = this.blocks;
+			if (block >= _blocks.length()) {
+				AtomicReferenceArray<byte[]> grown = new AtomicReferenceArray<>(
+						Math.max(block + 1, _blocks.length() * 2));
+				for (int i = 0; i < _blocks.length(); i++) {
+					grown.set(i, _blocks.get(i));
+				}
+				this.blocks = grown;
+				_blocks = grown;
+			}
+			if (_blocks.get(block) != null) {
+				return false;
+			}
+			_blocks.set(block, serialized);
+			this.bytes.addAndGet(serialized.length);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.walletapi.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.example.walletapi.dto.responses.LedgerResponseDto;
+import com.example.walletapi.model.TransferInterface;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes {@link LedgerResponseDto} as JSON using the pre-serialized blocks from
+ * {@link LedgerChunkCache}, so only the entries which aren't in a sealed block
+ * yet (the open tail) have to be serialized.
+ * 
+ * The output is the same JSON Jackson would produce for the DTO. DTOs which
+ * don't say which wallet they belong to are left to the regular Jackson
+ * converter.
+ */
+public class LedgerResponseHttpMessageConverter extends AbstractHttpMessageConverter<LedgerResponseDto> {
+
+	private static final byte[] TRANSFERS_FIELD = ",\"transfers\":[".getBytes(StandardCharsets.UTF_8);
+
+	private final ObjectMapper objectMapper;
+	private final ObjectWriter transferWriter;
+	private final LedgerChunkCache cache;
+
+	public LedgerResponseHttpMessageConverter(ObjectMapper objectMapper, LedgerChunkCache cache) {
+		super(MediaType.APPLICATION_JSON);
+		this.objectMapper = objectMapper;
+		// Jackson closes the stream it writes to by default, we write several values
+		this.transferWriter = objectMapper.writerFor(TransferInterface.class)
+				.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.cache = cache;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return LedgerResponseDto.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	protected boolean canRead(MediaType mediaType) {
+		return false; // only ever used for responses
+	}
+
+	@Override
+	protected LedgerResponseDto readInternal(Class<? extends LedgerResponseDto> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		throw new HttpMessageNotReadableException("Reading ledgers is not supported", inputMessage);
+	}
+
+	@Override
+	protected void writeInternal(LedgerResponseDto dto, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+		OutputStream out = outputMessage.getBody();
+		if (dto.getWalletId() == null) {
+			this.objectMapper.writeValue(out, dto);
+			return;
+		}
+		UUID walletId = UUID.fromString(dto.getWalletId());
+		List<TransferInterface> transfers = dto.getTransfers();
+		int blockSize = this.cache.getBlockSize();
+		long firstSequence = dto.getSequence() - transfers.size() + 1;
+
+		out.write("{\"walletId\":".getBytes(StandardCharsets.UTF_8));
+		out.write(this.objectMapper.writeValueAsBytes(dto.getWalletId()));
+		out.write(TRANSFERS_FIELD);
+		int i = 0;
+		while (i < transfers.size()) {
+			long sequence = firstSequence + i;
+			// Entries at the start of a block, with the whole block in the list, can
+			// come from the cache...
+			if ((sequence - 1) % blockSize == 0 && i + blockSize <= transfers.size()) {
+				int block = (int) ((sequence - 1) / blockSize);
+				byte[] cached = this.cache.getBlock(walletId, block, transfers.subList(i, i + blockSize),
+						this.transferWriter);
+				if (cached != null) {
+					if (i > 0) {
+						out.write(',');
+					}
+					out.write(cached);
+					i += blockSize;
+					continue;
+				}
+			}
+			// ...everything else we serialize one by one
+			if (i > 0) {
+				out.write(',');
+			}
+			this.transferWriter.writeValue(out, transfers.get(i));
+			i++;
+		}
+		out.write(("],\"timestamp\":" + dto.getTimestamp() + ",\"sequence\":" + dto.getSequence() + "}")
+				.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+}
@@ -0,0 +1,53 @@
+package com.example.walletapi.service;
+
+import java.io.IOException;
+
+import com.example.walletapi.dto.responses.WalletEventDto;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.WalletInterface;
+
+/**
+ * Fans out changes to wallets to subscribers (eg. SSE connections) so clients
+ * don't have to poll.
+ */
+public interface WalletEventHubInterface {
+
+	/**
+	 * Subscribes to changes of a wallet. The subscriber immediately gets an event
+	 * with the current state of the wallet.
+	 * 
+	 * @param wallet     The wallet to subscribe to
+	 * @param subscriber Receives the events
+	 * @return A subscription which should be cancelled when the subscriber goes
+	 *         away
+	 * @throws ServiceUnavailableException if there are already too many
+	 *                                     subscribers
+	 */
+	Subscription subscribe(WalletInterface wallet, Subscriber subscriber) throws ServiceUnavailableException;
+
+	/**
+	 * Receives events. Only one event at a time is delivered to each subscriber.
+	 */
+	public interface Subscriber {
+		/**
+		 * Delivers an event. May block, but a subscriber which keeps blocking while
+		 * new events are waiting gets dropped.
+		 * 
+		 * @throws IOException if the event could not be delivered, in which case the
+		 *                     subscriber is dropped
+		 */
+		void send(WalletEventDto event) throws IOException;
+
+		/**
+		 * Called when the hub drops the subscriber.
+		 */
+		void close();
+	}
+
+	public interface Subscription {
+		/**
+		 * Stops delivering events to the subscriber. Safe to call multiple times.
+		 */
+		void cancel();
+	}
+}
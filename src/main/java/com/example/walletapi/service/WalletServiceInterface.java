@@ -1,12 +1,18 @@
 package com.example.walletapi.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.springframework.security.access.AccessDeniedException;
 
 import com.example.walletapi.exception.InsufficientFundsException;
 import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.model.TransferInterface;
 import com.example.walletapi.model.WalletInterface;
 import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
@@ -33,13 +39,94 @@ public interface WalletServiceInterface {
 	 * @param walletId The ID of the wallet to retrieve
 	 * 
 	 * @return The wallet
-	 * @throws NotFoundException if the wallet doesn't exist
+	 * @throws NotFoundException    if the wallet doesn't exist
+	 * @throws ServerErrorException if the wallet exists but can't be read
 	 */
-	WalletInterface getWalletUnathenticated(UUID walletId) throws NotFoundException;
+	WalletInterface getWalletUnathenticated(UUID walletId) throws NotFoundException, ServerErrorException;
+
+	/**
+	 * Gets all wallets currently held in memory. The returned view is live and
+	 * safe to iterate while wallets are being added.
+	 */
+	Collection<WalletInterface> getCachedWallets();
 
 	TransferResponseDto sendMoney(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount)
 			throws InsufficientFundsException, NotFoundException;
 
 	BalanceResponseDto depositMoney(UUID walletId, BigDecimal amount, String token)
 			throws NotFoundException, AccessDeniedException;
+
+	/**
+	 * Credits a wallet with a transfer sent from a wallet on another node (see
+	 * {@link com.example.walletapi.cluster.ClusterTransfers}), and saves it.
+	 * 
+	 * @param walletId The ID of the receiving wallet
+	 * @param transfer The transfer, not yet validated
+	 * @throws NotFoundException if the wallet doesn't exist
+	 */
+	void receiveMoney(UUID walletId, TransferInterface transfer) throws NotFoundException;
+
+	/**
+	 * Registers a callback which gets every wallet right after it has been saved,
+	 * on the thread which saved it (eg. to ship the change to a standby).
+	 */
+	void addSaveListener(Consumer<WalletInterface> listener);
+
+	/**
+	 * Applies a change to a wallet which was made by another instance (see
+	 * {@link com.example.walletapi.replication.ReplicationStandby}), creating the
+	 * wallet if it's new, and saves it. Works while read-only.
+	 * 
+	 * @param walletId The ID of the wallet
+	 * @param password The encoded password, only needed if the wallet is new
+	 * @param since    The sequence of the entry before the first one given
+	 * @param entries  The entries appended to the wallet's ledger
+	 * @throws IllegalStateException if the wallet is new but no password is given,
+	 *                               or entries before {@code since} are missing
+	 */
+	void replicate(UUID walletId, String password, long since, List<TransferInterface> entries)
+			throws IllegalStateException;
+
+	/**
+	 * While read-only, everything which would change a wallet fails with a
+	 * ServiceUnavailableException, except {@link #replicate}.
+	 */
+	void setReadOnly(boolean readOnly);
+
+	boolean isReadOnly();
+
+	/*
+	 * The async variants below do the same as the methods above, but on a bounded
+	 * pool of service threads so the calling (request) thread is free to go while
+	 * passwords are hashed, wallets are loaded from disk and transfers retry.
+	 * Failures complete the future exceptionally with the same exceptions the
+	 * synchronous methods throw. If the pool is saturated the future fails with a
+	 * ServiceUnavailableException.
+	 */
+
+	/**
+	 * @see #createWallet(String)
+	 */
+	CompletableFuture<WalletInterface> createWalletAsync(String password);
+
+	/**
+	 * @see #getWallet(UUID, String)
+	 */
+	CompletableFuture<WalletInterface> getWalletAsync(UUID walletId, String password);
+
+	/**
+	 * @see #getWalletUnathenticated(UUID)
+	 */
+	CompletableFuture<WalletInterface> getWalletUnathenticatedAsync(UUID walletId);
+
+	/**
+	 * @see #sendMoney(UUID, UUID, BigDecimal)
+	 */
+	CompletableFuture<TransferResponseDto> sendMoneyAsync(UUID sourceWalletId, UUID destinationWalletId,
+			BigDecimal amount);
+
+	/**
+	 * @see #depositMoney(UUID, BigDecimal, String)
+	 */
+	CompletableFuture<BalanceResponseDto> depositMoneyAsync(UUID walletId, BigDecimal amount, String token);
 }
@@ -0,0 +1,365 @@
+package com.example.walletapi.service.impl;
+
+import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.WalletInterface;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes transfers through a ring buffer instead of on the request threads.
+ *
+ * Request threads claim a slot in a pre-allocated ring, fill it in and publish
+ * it. Three stages, each on its own thread, then process the slots strictly in
+ * order:
+ * <ol>
+ * <li>apply: makes the transfer. Balances can still be changed by other
+ * threads at the same time (transfers to and from other nodes, replication), so
+ * this never waits: it doesn't take locks, and retries a lost race for a
+ * balance right away (see {@link WalletInterface#sendMoneyWithoutWaiting}).</li>
+ * <li>journal: saves every wallet changed by a batch once, no matter how many
+ * transfers in the batch touched it.</li>
+ * <li>reply: hands the batch to the completer, which runs on another executor
+ * so whatever the callers chained to the futures doesn't hold up the pipeline.
+ * It frees the slots, and completes the futures the request threads are
+ * waiting on. There's only ever one completer scheduled, which takes every
+ * batch handed over until it's done, so nothing is allocated per batch.</li>
+ * </ol>
+ * Each stage only processes slots the previous stage is done with, and takes
+ * everything available in one go, so batches grow with the load. When the ring
+ * is full request threads wait for the reply stage to free a slot. If a stage
+ * fails anyway (which is a bug, or an Error) the transfers of the batch are
+ * failed rather than left waiting.
+ *
+ * Replies are only sent once the wallets are saved (unlike the default path,
+ * which replies first and saves in the background).
+ */
+public class TransferPipeline {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private static final class Slot {
+		WalletInterface source;
+		WalletInterface destination;
+		BigDecimal amount;
+		CompletableFuture<TransferResponseDto> reply;
+		TransferResponseDto response;
+		RuntimeException error;
+	}
+
+	private final Slot[] slots;
+	private final int mask;
+	private final int shift;
+	/**
+	 * The lap each slot was last published in, so the apply stage can tell a
+	 * published slot from one which was only claimed.
+	 */
+	private final AtomicIntegerArray published;
+	/**
+	 * The last claimed sequence.
+	 */
+	private final AtomicLong cursor = new AtomicLong(-1);
+	private final AtomicLong applied = new AtomicLong(-1);
+	private final AtomicLong journaled = new AtomicLong(-1);
+	/**
+	 * The last sequence handed to the completer.
+	 */
+	private final AtomicLong dispatched = new AtomicLong(-1);
+	private final AtomicLong replied = new AtomicLong(-1);
+
+	private final Consumer<WalletInterface> journal;
+	private final Executor replies;
+	/**
+	 * Whether the completer is scheduled or running.
+	 */
+	private final AtomicBoolean completing = new AtomicBoolean();
+	private final Runnable completer = this::complete;
+	/**
+	 * The wallets changed by the batch being journaled (only used by the journal
+	 * stage).
+	 */
+	private final Set<WalletInterface> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Thread[] threads;
+	private volatile boolean running = true;
+
+	/**
+	 * @param size    The number of slots, rounded up to a power of two
+	 * @param journal Saves a wallet. It must not throw.
+	 * @param replies Runs the completer. If it rejects it the futures are
+	 *                completed on the pipeline thread instead.
+	 */
+	public TransferPipeline(int size, Consumer<WalletInterface> journal, Executor replies) {
+		int capacity = Math.max(2, Integer.highestOneBit(Math.max(2, size) - 1) << 1);
+		this.slots = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.slots[i] = new Slot();
+		}
+		this.mask = capacity - 1;
+		this.shift = Integer.numberOfTrailingZeros(capacity);
+		this.published = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.published.set(i, -1);
+		}
+		this.journal = journal;
+		this.replies = replies;
+		this.threads = new Thread[] {
+				this.stage("apply", this::getPublished, this.applied, this::apply, this::failUnapplied),
+				this.stage("journal", this.applied::get, this.journaled, this::journal, this::failUnsaved),
+				this.stage("reply", this.journaled::get, this.dispatched, this::reply, this::failUnreplied) };
+		for (Thread thread : this.threads) {
+			thread.start();
+		}
+	}
+
+	public int getSize() {
+		return this.slots.length;
+	}
+
+	/**
+	 * The number of transfers claimed but not replied to yet.
+	 */
+	public long getBacklog() {
+		return this.cursor.get() - this.replied.get();
+	}
+
+	/**
+	 * Queues a transfer. Waits if the ring is full.
+	 *
+	 * @return A future completed once the transfer is made and both wallets are
+	 *         saved, or completed exceptionally with whatever
+	 *         {@link WalletInterface#sendMoneyWithoutWaiting} threw
+	 * @throws ServiceUnavailableException if the pipeline is stopped
+	 */
+	public CompletableFuture<TransferResponseDto> submit(WalletInterface source, WalletInterface destination,
+			BigDecimal amount) throws ServiceUnavailableException {
+		if (!this.running) {
+			throw new ServiceUnavailableException("Transfers are not being accepted right now");
+		}
+		long sequence = this.cursor.incrementAndGet();
+		int idle = 0;
+		while (sequence - this.slots.length > this.replied.get()) {
+			if (!this.running) {
+				throw new ServiceUnavailableException("Transfers are not being accepted right now");
+			}
+			idle = idle(idle);
+		}
+		Slot slot = this.slots[(int) sequence & this.mask];
+		CompletableFuture<TransferResponseDto> reply = new CompletableFuture<>();
+		slot.source = source;
+		slot.destination = destination;
+		slot.amount = amount;
+		slot.reply = reply;
+		this.published.set((int) sequence & this.mask, (int) (sequence >>> this.shift));
+		return reply;
+	}
+
+	/**
+	 * Stops the stages, failing any transfers which haven't been replied to.
+	 */
+	public void stop() {
+		this.running = false;
+		for (Thread thread : this.threads) {
+			thread.interrupt();
+		}
+		for (Thread thread : this.threads) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		for (Slot slot : this.slots) {
+			CompletableFuture<TransferResponseDto> reply = slot.reply;
+			if (reply != null) {
+				reply.completeExceptionally(new ServiceUnavailableException("Transfer pipeline stopped"));
+			}
+		}
+	}
+
+	private interface Handler {
+		void onBatch(long from, long to);
+	}
+
+	/**
+	 * The apply stage doesn't follow another stage but the request threads, which
+	 * may publish out of order, so it only goes as far as the slots are
+	 * contiguously published.
+	 */
+	private long getPublished() {
+		long next = this.applied.get() + 1;
+		long claimed = this.cursor.get();
+		while (next <= claimed && this.isPublished(next)) {
+			next++;
+		}
+		return next - 1;
+	}
+
+	private boolean isPublished(long sequence) {
+		return this.published.get((int) sequence & this.mask) == (int) (sequence >>> this.shift);
+	}
+
+	/**
+	 * @param failure Called with the batch if the handler throws
+	 */
+	private Thread stage(String name, LongSupplier previous, AtomicLong done, Handler handler, Handler failure) {
+		Thread thread = new Thread(() -> {
+			int idle = 0;
+			while (this.running) {
+				long from = done.get() + 1;
+				long to = previous.getAsLong();
+				if (to < from) {
+					idle = idle(idle);
+					continue;
+				}
+				idle = 0;
+				try {
+					handler.onBatch(from, to);
+				} catch (Throwable e) {
+					// Handlers deal with their own failures, so this is a bug (or an Error). Fail
+					// the batch rather than leave its callers waiting, and keep going so the
+					// ring doesn't stall.
+					this.logger.error("Transfer pipeline stage {} failed on {}..{}", name, from, to, e);
+					failure.onBatch(from, to);
+				}
+				done.set(to);
+			}
+		}, "transfer-pipeline-" + name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Spins, then yields, then sleeps briefly, so an idle pipeline costs next to
+	 * nothing while a busy one reacts immediately.
+	 */
+	private static int idle(int counter) {
+		if (counter < 100) {
+			Thread.onSpinWait();
+		} else if (counter < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(50_000);
+		}
+		return counter + 1;
+	}
+
+	private void apply(long from, long to) {
+		for (long sequence = from; sequence <= to; sequence++) {
+			Slot slot = this.slots[(int) sequence & this.mask];
+			try {
+				slot.response = slot.source.sendMoneyWithoutWaiting(slot.destination, slot.amount);
+			} catch (RuntimeException e) {
+				slot.error = e;
+			}
+		}
+	}
+
+	private void journal(long from, long to) {
+		for (long sequence = from; sequence <= to; sequence++) {
+			Slot slot = this.slots[(int) sequence & this.mask];
+			if (slot.error == null) {
+				this.changed.add(slot.source);
+				this.changed.add(slot.destination);
+			}
+		}
+		for (WalletInterface wallet : this.changed) {
+			this.journal.accept(wallet);
+		}
+		this.changed.clear();
+	}
+
+	private void reply(long from, long to) {
+		this.dispatched.set(to);
+		// If the completer is already scheduled or running it'll get to this batch
+		if (this.completing.compareAndSet(false, true)) {
+			try {
+				this.replies.execute(this.completer);
+			} catch (RejectedExecutionException e) {
+				this.completer.run();
+			}
+		}
+	}
+
+	/**
+	 * Frees the slots handed over by the reply stage and completes their futures,
+	 * until it runs out of them.
+	 */
+	private void complete() {
+		do {
+			long to = this.dispatched.get();
+			for (long sequence = this.replied.get() + 1; sequence <= to; sequence++) {
+				Slot slot = this.slots[(int) sequence & this.mask];
+				CompletableFuture<TransferResponseDto> reply = slot.reply;
+				TransferResponseDto response = slot.response;
+				RuntimeException error = slot.error;
+				slot.source = null;
+				slot.destination = null;
+				slot.amount = null;
+				slot.reply = null;
+				slot.response = null;
+				slot.error = null;
+				// Free the slot before completing, so the caller can reuse it right away
+				this.replied.set(sequence);
+				if (error != null) {
+					reply.completeExceptionally(error);
+				} else {
+					reply.complete(response);
+				}
+			}
+			this.completing.set(false);
+			// A batch handed over after the last check but before the flag was cleared
+			// would be left waiting
+		} while (this.replied.get() < this.dispatched.get() && this.completing.compareAndSet(false, true));
+	}
+
+	/**
+	 * Fails the transfers of a batch the apply stage didn't get to.
+	 */
+	private void failUnapplied(long from, long to) {
+		for (long sequence = from; sequence <= to; sequence++) {
+			Slot slot = this.slots[(int) sequence & this.mask];
+			if (slot.response == null && slot.error == null) {
+				slot.error = new ServerErrorException("Transfer failed");
+			}
+		}
+	}
+
+	/**
+	 * Fails the transfers of a batch which were made, but maybe not saved.
+	 */
+	private void failUnsaved(long from, long to) {
+		for (long sequence = from; sequence <= to; sequence++) {
+			Slot slot = this.slots[(int) sequence & this.mask];
+			if (slot.error == null) {
+				slot.error = new ServerErrorException(
+						"Transfer made but maybe not saved, please check the balance before trying again");
+			}
+		}
+	}
+
+	/**
+	 * Completes the batch on the pipeline thread if the completer couldn't be
+	 * handed to the executor. The reply stage had claimed the completer then, so
+	 * it isn't running anywhere else.
+	 */
+	private void failUnreplied(long from, long to) {
+		this.dispatched.set(to);
+		this.complete();
+	}
+}
@@ -0,0 +1,282 @@
+package com.example.walletapi.service.impl;
+
+import com.example.walletapi.dto.responses.WalletEventDto;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.WalletListenerInterface;
+import com.example.walletapi.service.WalletEventHubInterface;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pushes changes of wallets to subscribers.
+ *
+ * Wallets only mark themselves as dirty when they change (which is cheap and
+ * only done if someone is subscribed), and once every "coalesce interval" a
+ * single event with the latest state is sent for every dirty wallet. That way a
+ * burst of transfers on a busy wallet results in one event, not hundreds.
+ *
+ * Each subscriber has at most one send in flight, on a virtual thread of its
+ * own, so a subscriber blocked on a slow connection holds up nobody else and the
+ * ticker never waits for anyone. If a subscriber is still busy sending when new
+ * events arrive, the new events replace each other until the subscriber is
+ * ready again, and if that happens too many times in a row the subscriber is
+ * considered too slow and is dropped.
+ */
+@Service
+public class WalletEventHub implements WalletEventHubInterface, WalletListenerInterface {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * The maximum number of subscribers across all wallets.
+	 */
+	@Value("${wallet.api.events.max-subscribers:10000}")
+	private int maxSubscribers;
+
+	/**
+	 * The maximum number of subscribers for a single wallet.
+	 */
+	@Value("${wallet.api.events.max-subscribers-per-wallet:8}")
+	private int maxSubscribersPerWallet;
+
+	/**
+	 * How often (in milliseconds) events for dirty wallets are sent.
+	 */
+	@Value("${wallet.api.events.coalesce-interval:100}")
+	private long coalesceInterval;
+
+	/**
+	 * How many events in a row a subscriber may miss because it's still busy
+	 * before it's dropped.
+	 */
+	@Value("${wallet.api.events.max-missed-events:50}")
+	private int maxMissedEvents;
+
+	private final ConcurrentMap<UUID, CopyOnWriteArrayList<Sub>> subscribers = new ConcurrentHashMap<>();
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	/**
+	 * Wallets which have changed since the last tick.
+	 */
+	private final ConcurrentMap<UUID, WalletInterface> dirty = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService ticker;
+	private ExecutorService senders;
+
+	@PostConstruct
+	public void start() {
+		this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "wallet-events-ticker");
+			t.setDaemon(true);
+			return t;
+		});
+		this.senders = Executors
+				.newThreadPerTaskExecutor(Thread.ofVirtual().name("wallet-events-sender-", 1).factory());
+		this.ticker.scheduleWithFixedDelay(this::tick, this.coalesceInterval, this.coalesceInterval,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.ticker.shutdownNow();
+		this.senders.shutdownNow();
+		for (CopyOnWriteArrayList<Sub> subs : this.subscribers.values()) {
+			for (Sub sub : subs) {
+				sub.drop();
+			}
+		}
+	}
+
+	@Override
+	public Subscription subscribe(WalletInterface wallet, Subscriber subscriber) throws ServiceUnavailableException {
+		Sub sub = new Sub(wallet.getId(), subscriber);
+		// Checking the limits and adding the subscriber in compute() makes it atomic
+		// for the wallet, if the limits are exceeded the exception leaves the map as
+		// it was
+		this.subscribers.compute(wallet.getId(), (id, subs) -> {
+			if (subs == null) {
+				subs = new CopyOnWriteArrayList<>();
+			}
+			if (subs.size() >= this.maxSubscribersPerWallet) {
+				throw new ServiceUnavailableException("Too many subscribers for wallet " + id);
+			}
+			if (this.subscriberCount.getAndUpdate(n -> n < this.maxSubscribers ? n + 1 : n) >= this.maxSubscribers) {
+				throw new ServiceUnavailableException(
+						"Too many subscribers, please try again later or fall back to polling");
+			}
+			subs.add(sub);
+			return subs;
+		});
+		// Start them off with the current state
+		sub.offer(this.createEvent(wallet));
+		return sub;
+	}
+
+	@Override
+	public void onTransferAppended(WalletInterface wallet, TransferInterface transfer, long sequence,
+			BigDecimal balance) {
+		this.markDirty(wallet);
+	}
+
+	@Override
+	public void onBalanceChanged(WalletInterface wallet, BigDecimal balance) {
+		this.markDirty(wallet);
+	}
+
+	private void markDirty(WalletInterface wallet) {
+		// Most wallets have no subscribers, so check that first to keep this cheap
+		if (this.subscribers.containsKey(wallet.getId())) {
+			this.dirty.put(wallet.getId(), wallet);
+		}
+	}
+
+	private WalletEventDto createEvent(WalletInterface wallet) {
+		return new WalletEventDto(wallet.getId(), wallet.getBalance(), wallet.getLedgerSequence(),
+				System.currentTimeMillis());
+	}
+
+	/**
+	 * Sends one event for every wallet which changed since the last tick.
+	 */
+	private void tick() {
+		try {
+			Iterator<WalletInterface> it = this.dirty.values().iterator();
+			while (it.hasNext()) {
+				WalletInterface wallet = it.next();
+				it.remove(); // before reading the state so we don't miss later changes
+				CopyOnWriteArrayList<Sub> subs = this.subscribers.get(wallet.getId());
+				if (subs == null || subs.isEmpty()) {
+					continue;
+				}
+				WalletEventDto event = this.createEvent(wallet);
+				for (Sub sub : subs) {
+					sub.offer(event);
+				}
+			}
+		} catch (Exception e) {
+			// Never let an exception kill the scheduled task
+			this.logger.error("Failed to dispatch wallet events", e);
+		}
+	}
+
+	private void remove(Sub sub) {
+		this.subscribers.computeIfPresent(sub.walletId, (id, subs) -> {
+			if (subs.remove(sub)) {
+				this.subscriberCount.decrementAndGet();
+			}
+			return subs.isEmpty() ? null : subs;
+		});
+	}
+
+	/**
+	 * A single subscriber along with its delivery state.
+	 */
+	private class Sub implements Subscription {
+		private final UUID walletId;
+		private final Subscriber subscriber;
+
+		/**
+		 * The latest event which hasn't been sent yet. Newer events replace older.
+		 */
+		private final AtomicReference<WalletEventDto> pending = new AtomicReference<>();
+		private final AtomicBoolean sending = new AtomicBoolean();
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+		private final AtomicInteger missed = new AtomicInteger();
+
+		Sub(UUID walletId, Subscriber subscriber) {
+			this.walletId = walletId;
+			this.subscriber = subscriber;
+		}
+
+		void offer(WalletEventDto event) {
+			if (this.cancelled.get()) {
+				return;
+			}
+			this.pending.set(event);
+			if (this.sending.compareAndSet(false, true)) {
+				this.missed.set(0);
+				try {
+					WalletEventHub.this.senders.execute(this::drain);
+				} catch (RejectedExecutionException e) {
+					this.drop();
+				}
+			} else if (this.missed.incrementAndGet() > WalletEventHub.this.maxMissedEvents) {
+				WalletEventHub.this.logger.info("Dropping slow subscriber for wallet {}", this.walletId);
+				this.drop();
+			}
+		}
+
+		private void drain() {
+			while (!this.cancelled.get()) {
+				WalletEventDto event = this.pending.getAndSet(null);
+				if (event == null) {
+					this.sending.set(false);
+					// Something may have been offered after we checked but before we
+					// cleared the flag, in which case nobody else will pick it up
+					if (this.pending.get() == null || !this.sending.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+				try {
+					this.subscriber.send(event);
+				} catch (Exception e) {
+					WalletEventHub.this.logger.debug("Failed to send event to subscriber for wallet {}, dropping it",
+							this.walletId, e);
+					this.drop();
+				}
+			}
+		}
+
+		/**
+		 * Cancels the subscription and closes the subscriber. Closing may block (eg.
+		 * flushing the response), so it's done on a sender thread.
+		 */
+		void drop() {
+			this.cancel();
+			try {
+				WalletEventHub.this.senders.execute(this::close);
+			} catch (RejectedExecutionException e) {
+				this.close(); // stopping
+			}
+		}
+
+		private void close() {
+			try {
+				this.subscriber.close();
+			} catch (Exception e) {
+				WalletEventHub.this.logger.debug("Failed to close subscriber for wallet {}", this.walletId, e);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			if (this.cancelled.compareAndSet(false, true)) {
+				WalletEventHub.this.remove(this);
+			}
+		}
+	}
+}
@@ -1,34 +1,58 @@
 package com.example.walletapi.service.impl;
 
+import com.example.walletapi.cluster.Cluster;
+import com.example.walletapi.cluster.RemoteRecipient;
 import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
 import com.example.walletapi.exception.InsufficientFundsException;
 import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.TransferInterface;
 import com.example.walletapi.model.WalletInterface.WalletFactoryInterface;
 import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.monitoring.WalletMetrics;
+import com.example.walletapi.monitoring.jfr.JfrSupport;
+import com.example.walletapi.monitoring.jfr.WalletLoadEvent;
+import com.example.walletapi.monitoring.jfr.WalletSaveEvent;
 import com.example.walletapi.service.WalletServiceInterface;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.walletapi.store.WalletStoreInterface;
 
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
-import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
 import java.util.concurrent.ConcurrentMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +69,9 @@ public class WalletService implements WalletServiceInterface {
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 	private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 	private final WalletFactoryInterface walletFactory;
+	private final WalletMetrics metrics;
+	private final Cluster cluster;
+	private final WalletStoreInterface store;
 
 	@Value("${bank.wallet.id:00000000-0000-0000-0000-000000000000}")
 	private UUID bankWalletId;
@@ -55,77 +82,158 @@ public class WalletService implements WalletServiceInterface {
 	@Value("${wallet.data.file:wallet-data.ser}")
 	private String walletDataFile;
 
-	@Value("${wallet.data.dir:./test_data}")
-	private String walletDataDir;
+	/**
+	 * If enabled, transfers are made through a {@link TransferPipeline} with this
+	 * many slots.
+	 */
+	@Value("${wallet.api.pipeline.enabled:false}")
+	private boolean pipelineEnabled;
+
+	@Value("${wallet.api.pipeline.ring-size:8192}")
+	private int pipelineRingSize;
+
+	/**
+	 * How long (ms) to wait for the pipeline to make a transfer before giving up
+	 * with a 503, 0 to wait as long as it takes. The transfer may still be made
+	 * afterwards.
+	 */
+	@Value("${wallet.api.pipeline.timeout:10000}")
+	private long pipelineTimeout;
+
+	private TransferPipeline pipeline;
+
+	/**
+	 * The number of threads running the async methods, and how many calls may
+	 * queue up for them before new calls are rejected.
+	 */
+	@Value("${wallet.api.async.threads:32}")
+	private int asyncThreads;
+
+	@Value("${wallet.api.async.queue-size:1000}")
+	private int asyncQueueSize;
+
+	private ExecutorService asyncExecutor;
+
+	/**
+	 * Saves wallets in the background, writing each at most once every max-delay
+	 * ms with as many threads.
+	 */
+	@Value("${wallet.api.store.write-behind.max-delay:100}")
+	private long writeBehindMaxDelay;
+
+	@Value("${wallet.api.store.write-behind.threads:4}")
+	private int writeBehindThreads;
+
+	private WriteBehind writeBehind;
+
+	/**
+	 * How many of the latest ledger entries of a wallet stay in memory, the older
+	 * ones are evicted once stored and paged back in from the store when read. 0
+	 * keeps whole ledgers in memory. Only stores which can page ledgers back in
+	 * (mvstore) evict anything.
+	 */
+	@Value("${wallet.api.ledger.hot-size:0}")
+	private long hotLedgerSize;
+
+	/**
+	 * Get every wallet right after it's been saved, see
+	 * {@link #addSaveListener(Consumer)}.
+	 */
+	private final List<Consumer<WalletInterface>> saveListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Set while this instance is a standby, see {@link #setReadOnly(boolean)}.
+	 */
+	private volatile boolean readOnly;
+
+	/**
+	 * Constructor for a single node owning every wallet.
+	 */
+	public WalletService(WalletFactoryInterface walletFactory, WalletMetrics metrics, WalletStoreInterface store) {
+		this(walletFactory, metrics, new Cluster(List.of(), "", ""), store);
+	}
 
 	@Autowired
-	public WalletService(WalletFactoryInterface walletFactory) {
+	public WalletService(WalletFactoryInterface walletFactory, WalletMetrics metrics, Cluster cluster,
+			WalletStoreInterface store) {
 		this.walletFactory = walletFactory;
+		this.metrics = metrics;
+		this.cluster = cluster;
+		this.store = store;
+		this.metrics.gaugeCachedWallets(this.wallets);
 	}
 
 	// @PostConstruct //trying to load wallets on request instead
-	public void loadWalletDataFromJsonFiles() {
-		File dataDir = new File(walletDataDir);
-		if (!dataDir.exists()) {
-			logger.info("Wallet data directory not found at " + walletDataDir + ", creating...");
-			try {
-				dataDir.mkdirs();
-			} catch (Exception e) {
-				logger.warn("Failed to create wallet data directory. Nothing will be stored.", e);
-			}
-		} else {
-			File[] jsonFiles = dataDir.listFiles((dir, name) -> name.endsWith(".json"));
-			if (jsonFiles == null || jsonFiles.length == 0) {
-				logger.info("No JSON files found in " + walletDataDir);
-			} else {
-				logger.info("Found " + jsonFiles.length + " wallets in " + walletDataDir);
-				for (File jsonFile : jsonFiles) {
-					try {
-						Map<String, Serializable> data = new ObjectMapper()
-								.readValue(jsonFile, new TypeReference<Map<String, Serializable>>() {
-								});
-						WalletInterface wallet = this.walletFactory.fromMap(data);
-						wallets.put(wallet.getId(), wallet);
-					} catch (Exception e) {
-						logger.warn("Failed to load wallet data from file " + jsonFile.getName(), e);
-					}
+	public void loadAllWallets() {
+		try (Stream<UUID> walletIds = this.store.walletIds()) {
+			walletIds.parallel().forEach(walletId -> {
+				try {
+					this.loadWallet(walletId);
+				} catch (NotFoundException | ServerErrorException e) {
+					// already logged
 				}
-			}
+			});
+		} catch (IOException e) {
+			logger.warn("Failed to list the wallets in {}", this.store.getLocation(), e);
 		}
-	}
-
-	private String getWalletDataFilePath(UUID walletId) {
-		return walletDataDir + "/" + walletId.toString() + ".json";
+		logger.info("Loaded {} wallets from {}", this.wallets.size(), this.store.getLocation());
 	}
 
 	/**
-	 * Loads a wallet from a JSON file, stores it in the wallets map and returns it.
+	 * Loads a wallet from the store, stores it in the wallets map and returns it.
 	 * 
 	 * @param walletId The ID of the wallet to load
 	 * @return The wallet
-	 * @throws NotFoundException if the wallet file doesn't exist OR if the file has
-	 *                           a bad format
+	 * @throws NotFoundException    if the wallet isn't stored
+	 * @throws ServerErrorException if it's stored but can't be read. Never a
+	 *                              NotFoundException, or a damaged wallet would be
+	 *                              treated as a new one (eg. the bank wallet would
+	 *                              be recreated with its initial deposit).
 	 */
-	private WalletInterface loadWalletFromJsonFile(UUID walletId) throws NotFoundException {
-		File jsonFile = new File(getWalletDataFilePath(walletId));
-		if (!jsonFile.exists()) {
-			throw new NotFoundException("No wallet file found at: " + jsonFile.getAbsolutePath());
-		}
+	private WalletInterface loadWallet(UUID walletId) throws NotFoundException, ServerErrorException {
+		WalletLoadEvent event = new WalletLoadEvent();
+		event.begin();
 		try {
-			logger.info("Loading wallet data from file " + jsonFile.getName());
-			Map<String, Serializable> data = new ObjectMapper()
-					.readValue(jsonFile, new TypeReference<Map<String, Serializable>>() {
-					});
+			logger.debug("Loading wallet {} from {}", walletId, this.store.getLocation());
+			// With a hot size only the end of the ledger is read, the store pages the rest
+			// in when it's asked for, so loading takes the same however long the history
+			Map<String, Serializable> data = this.hotLedgerSize > 0 ? this.store.load(walletId, this.hotLedgerSize)
+					: this.store.load(walletId);
+			if (data == null) {
+				throw new NotFoundException("No wallet " + walletId + " found");
+			}
 			WalletInterface wallet = this.walletFactory.fromMap(data);
 			if (!wallet.getId().equals(walletId)) {
-				throw new NotFoundException("Wallet ID in filename and in file data didn't match:" +
-						"filename: " + walletId + ", file data: " + wallet.getId());
+				throw new IOException("Wallet ID in the store and in the wallet data didn't match:" +
+						"stored as: " + walletId + ", wallet data: " + wallet.getId());
 			}
 			this.wallets.put(wallet.getId(), wallet);
+			event.ledgerSize = wallet.getLedgerSequence();
+			event.success = true;
 			return wallet;
+		} catch (NotFoundException e) {
+			throw e;
 		} catch (Exception e) {
-			logger.warn("Failed to load wallet data from file " + jsonFile.getName(), e);
-			throw new NotFoundException("Failed to load wallet data from file " + jsonFile.getName());
+			logger.error("Failed to load wallet {} from {}", walletId, this.store.getLocation(), e);
+			throw new ServerErrorException("Wallet " + walletId + " is stored but can't be read");
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.wallet = JfrSupport.hashWalletId(walletId);
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Evicts the stored ledger entries of a wallet from memory, except for the
+	 * latest hot-size ones.
+	 * 
+	 * @param stored How far the ledger can be paged back in from the store
+	 */
+	private void evictLedger(WalletInterface wallet, long stored) {
+		if (this.hotLedgerSize > 0 && stored > 0) {
+			wallet.evictLedger(Math.min(stored, wallet.getLedgerSequence() - this.hotLedgerSize));
 		}
 	}
 
@@ -138,49 +246,123 @@ public class WalletService implements WalletServiceInterface {
 		}
 	}
 
+	@PostConstruct
+	public void start() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.asyncExecutor = new ThreadPoolExecutor(Math.max(1, this.asyncThreads), Math.max(1, this.asyncThreads),
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(Math.max(1, this.asyncQueueSize)), r -> {
+					Thread t = new Thread(r, "wallet-service-" + threadNumber.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		this.writeBehind = new WriteBehind(this::writeWallet, this.writeBehindMaxDelay, this.writeBehindThreads);
+		this.metrics.gaugeWriteBehind(this.writeBehind);
+		if (this.pipelineEnabled) {
+			this.pipeline = new TransferPipeline(this.pipelineRingSize, this::writeWallet, this.asyncExecutor);
+			this.metrics.gaugePipelineBacklog(this.pipeline);
+			this.logger.info("Making transfers through a pipeline with {} slots", this.pipeline.getSize());
+		}
+	}
+
 	/**
-	 * Register shutdown hook to ensure data is saved.
-	 * 
-	 * In reality this is NOT enough persistence, but for this demo we're not
-	 * focusing on persistence.
+	 * Stops the executors and saves every wallet changed since it was last saved,
+	 * before the store is closed.
 	 */
-	@PostConstruct
-	public void registerShutdownHook() {
-		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-			logger.info("Shutdown hook triggered, saving wallet data...");
-			saveWalletDataToJsonFiles();
-		}));
+	@PreDestroy
+	public void stop() {
+		this.asyncExecutor.shutdownNow();
+		if (this.pipeline != null) {
+			this.pipeline.stop();
+		}
+		this.writeBehind.stop();
+	}
+
+	/**
+	 * Runs a call on the async executor.
+	 */
+	private <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+		try {
+			return CompletableFuture.supplyAsync(call, this.asyncExecutor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(
+					new ServiceUnavailableException("Too many requests right now, please try again later"));
+		}
 	}
 
 	/**
-	 * Saves all wallets' data to individual JSON files.
+	 * Saves all wallets in memory to the store in the background.
 	 */
-	public void saveWalletDataToJsonFiles() {
+	public void saveWallets() {
 		for (WalletInterface wallet : this.wallets.values()) {
-			saveWalletDataToJsonFile(wallet);
+			saveWallet(wallet);
 		}
 	}
 
 	/**
-	 * Saves a wallet's data to a JSON file.
+	 * Saves a wallet to the store in the background, together with any other
+	 * changes made to it in the meantime (see {@link WriteBehind}).
+	 * 
+	 * @param wallet The wallet to save
+	 */
+	public void saveWallet(WalletInterface wallet) {
+		this.writeBehind.markDirty(wallet);
+	}
+
+	/**
+	 * Saves a wallet to the store on the calling thread. Failures are logged and
+	 * counted, not thrown.
 	 * 
-	 * @param wallet       The wallet to save
-	 * @param objectMapper The ObjectMapper to use
-	 * @return True if the save was successful, false otherwise
+	 * @param wallet The wallet to save
 	 */
-	public void saveWalletDataToJsonFile(WalletInterface wallet) {
-		CompletableFuture.runAsync(() -> {
-			String filename = walletDataDir + "/????.json"; // so we have something to log
+	private void writeWallet(WalletInterface wallet) {
+		long started = System.nanoTime();
+		WalletSaveEvent event = new WalletSaveEvent();
+		event.begin();
+		try {
+			long stored = this.store.save(wallet);
+			this.metrics.recordPersist(System.nanoTime() - started);
+			this.evictLedger(wallet, stored);
+			event.success = true;
+			logger.debug("Saved wallet {} to {}", wallet.getId(), this.store.getLocation());
+		} catch (Exception e) {
+			this.metrics.recordSaveFailure();
+			logger.warn("Failed to save wallet {} to {}", wallet.getId(), this.store.getLocation(), e);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.wallet = JfrSupport.hashWalletId(wallet.getId());
+				event.ledgerSize = wallet.getLedgerSequence();
+				event.commit();
+			}
+		}
+		for (Consumer<WalletInterface> listener : this.saveListeners) {
 			try {
-				filename = getWalletDataFilePath(wallet.getId());
-				File jsonFile = new File(filename);
-				new ObjectMapper().writeValue(jsonFile, wallet);
-				// FIXME: Seems this writes a JSON object without the closing }
-				logger.info("ASYNC: Saved wallet data to " + filename);
+				listener.accept(wallet);
 			} catch (Exception e) {
-				logger.warn("ASYNC: Failed to save wallet data to " + filename, e);
+				logger.warn("Save listener failed for wallet {}", wallet.getId(), e);
 			}
-		});
+		}
+	}
+
+	public void addSaveListener(Consumer<WalletInterface> listener) {
+		this.saveListeners.add(listener);
+	}
+
+	public void setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+	}
+
+	public boolean isReadOnly() {
+		return this.readOnly;
+	}
+
+	/**
+	 * @throws ServiceUnavailableException if wallets can't be changed right now
+	 */
+	private void checkWritable() throws ServiceUnavailableException {
+		if (this.readOnly) {
+			throw new ServiceUnavailableException("This instance only serves reads, please use the primary");
+		}
 	}
 
 	/**
@@ -200,8 +382,7 @@ public class WalletService implements WalletServiceInterface {
 			if (passwordEncoder.matches(password, wallet.getPassword())) {
 				return wallet;
 			} else {
-				this.logger.warn("Password mismatch for wallet " + walletId
-						+ ". Throwing a NotFoundException.");
+				this.logger.warn("Password mismatch for wallet {}. Throwing a NotFoundException.", walletId);
 				throw new NotFoundException("");
 			}
 		} catch (NotFoundException e) {
@@ -216,21 +397,28 @@ public class WalletService implements WalletServiceInterface {
 	 * 
 	 * @param walletId The ID of the wallet to retrieve
 	 * @return The wallet
-	 * @throws NotFoundException if the wallet doesn't exist
+	 * @throws NotFoundException    if the wallet doesn't exist
+	 * @throws ServerErrorException if the wallet exists but can't be read
 	 */
-	public WalletInterface getWalletUnathenticated(UUID walletId) throws NotFoundException {
+	public WalletInterface getWalletUnathenticated(UUID walletId) throws NotFoundException, ServerErrorException {
 		WalletInterface wallet = this.wallets.get(walletId);
 		if (wallet == null) {
-			wallet = loadWalletFromJsonFile(walletId); // also stores it for next time
+			wallet = loadWallet(walletId); // also stores it for next time
 		}
 		if (wallet == null) {
-			logger.warn("No wallet with id " + walletId + " found. These are the available wallets: "
-					+ this.wallets.keySet());
+			logger.warn("No wallet with id {} found among the {} wallets in memory", walletId, this.wallets.size());
 			throw new NotFoundException("No wallet with id " + walletId + " found. Please check the id and try again.");
 		}
 		return wallet;
 	}
 
+	/**
+	 * Gets all wallets currently held in memory, as a live, read-only view.
+	 */
+	public Collection<WalletInterface> getCachedWallets() {
+		return Collections.unmodifiableCollection(this.wallets.values());
+	}
+
 	/**
 	 * Creates a new wallet with an initial balance of zero.
 	 * 
@@ -242,18 +430,26 @@ public class WalletService implements WalletServiceInterface {
 		if (clearTextPassword == null || clearTextPassword.isEmpty()) {
 			throw new IllegalArgumentException("Password is required to create a wallet");
 		}
+		this.checkWritable();
 		String encodedPassword = this.passwordEncoder.encode(clearTextPassword);
-		WalletInterface wallet = this.walletFactory.generateNew(encodedPassword);
+		WalletInterface wallet;
+		// The wallet is created here, so it has to belong here. With N nodes that's
+		// every Nth ID, and generating an ID is cheap.
+		do {
+			wallet = this.walletFactory.generateNew(encodedPassword);
+		} while (!this.cluster.isLocal(wallet.getId()));
 		this.wallets.put(wallet.getId(), wallet);
-		saveWalletDataToJsonFile(wallet);
+		saveWallet(wallet);
 		return wallet;
 	}
 
 	private WalletInterface createBankWallet() {
+		// Same format as a stored ledger entry. Without a sender it's a deposit, ie.
+		// it's where all the money in the system comes from.
 		Map<String, Serializable> initialDeposit = new HashMap<>();
-		initialDeposit.put("id", UUID.randomUUID());
-		initialDeposit.put("sender", this.bankWalletId);
-		initialDeposit.put("recipient", this.bankWalletId);
+		initialDeposit.put("id", UUID.randomUUID().toString());
+		initialDeposit.put("sender", null);
+		initialDeposit.put("recipient", this.bankWalletId.toString());
 		initialDeposit.put("amount", bankWealth);
 		initialDeposit.put("timestamp", System.currentTimeMillis());
 
@@ -284,23 +480,124 @@ public class WalletService implements WalletServiceInterface {
 	 */
 	public TransferResponseDto sendMoney(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount)
 			throws InsufficientFundsException, NotFoundException {
+		this.checkWritable();
+		if (destinationWalletId != null && !this.cluster.isLocal(destinationWalletId)) {
+			return this.sendMoneyToNode(sourceWalletId, destinationWalletId, amount);
+		}
+		TransferWallets parties = this.getTransferWallets(sourceWalletId, destinationWalletId, amount);
+		WalletInterface sourceWallet = parties.source();
+		WalletInterface destinationWallet = parties.destination();
+		if (this.pipeline != null) {
+			// The pipeline saves both wallets before replying
+			return this.sendMoneyThroughPipeline(sourceWallet, destinationWallet, amount);
+		}
+		TransferResponseDto response;
+		try {
+			response = sourceWallet.sendMoney(destinationWallet, amount);
+		} catch (ResourceConflictException e) {
+			this.metrics.recordConflict();
+			throw e;
+		}
+
+		// Since this is just a demo and we're not taking persistence serious we save
+		// the changes async while returning the data to the user. This of course means
+		// the save can fail...
+		saveWallet(sourceWallet); // doesn't throw
+		saveWallet(destinationWallet); // doesn't throw
+
+		return response;
+	}
+
+	/**
+	 * Sends money to a wallet on another node. See
+	 * {@link com.example.walletapi.cluster.ClusterTransfers} for how.
+	 */
+	private TransferResponseDto sendMoneyToNode(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount)
+			throws InsufficientFundsException, NotFoundException {
+		this.checkTransferArguments(sourceWalletId, destinationWalletId, amount);
+		WalletInterface sourceWallet = this.getWalletUnathenticated(sourceWalletId);
+		RemoteRecipient destinationWallet = new RemoteRecipient(this.cluster, this.cluster.getOwner(destinationWalletId),
+				destinationWalletId);
+		TransferResponseDto response;
+		try {
+			response = sourceWallet.sendMoney(destinationWallet, amount);
+		} catch (ResourceConflictException e) {
+			this.metrics.recordConflict();
+			throw e;
+		}
+		saveWallet(sourceWallet); // doesn't throw
+		destinationWallet.commit(); // doesn't throw either
+		return response;
+	}
+
+	private record TransferWallets(WalletInterface source, WalletInterface destination) {
+	}
+
+	private void checkTransferArguments(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount) {
 		if (sourceWalletId == null || destinationWalletId == null || amount == null) {
 			throw new IllegalArgumentException("Invalid arguments");
 		}
 		if (amount.compareTo(BigDecimal.ZERO) <= 0) {
 			throw new IllegalArgumentException("Amount must be greater than zero");
 		}
+	}
+
+	/**
+	 * Validates the arguments of a transfer and looks up both wallets.
+	 */
+	private TransferWallets getTransferWallets(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount)
+			throws NotFoundException {
+		this.checkTransferArguments(sourceWalletId, destinationWalletId, amount);
+		long started = System.nanoTime();
 		WalletInterface sourceWallet = this.getWalletUnathenticated(sourceWalletId);
 		WalletInterface destinationWallet = this.getWalletUnathenticated(destinationWalletId);
-		TransferResponseDto response = sourceWallet.sendMoney(destinationWallet, amount);
+		this.metrics.recordLookup(System.nanoTime() - started);
+		return new TransferWallets(sourceWallet, destinationWallet);
+	}
 
-		// Since this is just a demo and we're not taking persistence serious we save
-		// the changes async while returning the data to the user. This of course means
-		// the save can fail...
-		saveWalletDataToJsonFile(sourceWallet); // doesn't throw
-		saveWalletDataToJsonFile(destinationWallet); // doesn't throw
+	/**
+	 * Queues a transfer in the pipeline, failing with a
+	 * {@link ServiceUnavailableException} if it isn't made within the timeout.
+	 */
+	private CompletableFuture<TransferResponseDto> submitToPipeline(WalletInterface sourceWallet,
+			WalletInterface destinationWallet, BigDecimal amount) {
+		CompletableFuture<TransferResponseDto> reply = this.pipeline.submit(sourceWallet, destinationWallet, amount);
+		if (this.pipelineTimeout <= 0) {
+			return reply;
+		}
+		return reply.orTimeout(this.pipelineTimeout, TimeUnit.MILLISECONDS)
+				.exceptionallyCompose(e -> CompletableFuture
+						.failedFuture(e instanceof TimeoutException ? pipelineTimedOut() : e));
+	}
 
-		return response;
+	private static ServiceUnavailableException pipelineTimedOut() {
+		return new ServiceUnavailableException(
+				"The transfer is taking too long, please check the balance before trying again");
+	}
+
+	private TransferResponseDto sendMoneyThroughPipeline(WalletInterface sourceWallet,
+			WalletInterface destinationWallet, BigDecimal amount) {
+		CompletableFuture<TransferResponseDto> reply = this.pipeline.submit(sourceWallet, destinationWallet, amount);
+		try {
+			// Waiting here rather than chaining a timeout to the future saves the stages
+			// (and the timer task) orTimeout creates for every transfer
+			return this.pipelineTimeout > 0 ? reply.get(this.pipelineTimeout, TimeUnit.MILLISECONDS) : reply.get();
+		} catch (TimeoutException e) {
+			throw pipelineTimedOut();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerErrorException("Interrupted while waiting for the transfer, please check the balance");
+		} catch (ExecutionException e) {
+			// Rethrow what the wallet threw, so it's handled like on the direct path
+			if (e.getCause() instanceof ResourceConflictException conflict) {
+				this.metrics.recordConflict();
+				throw conflict;
+			}
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw new ServerErrorException("Transfer failed: " + e.getMessage());
+		}
 	}
 
 	/**
@@ -312,12 +609,8 @@ public class WalletService implements WalletServiceInterface {
 	 */
 	public BalanceResponseDto depositMoney(UUID walletId, BigDecimal amount, String token)
 			throws NotFoundException, AccessDeniedException {
-		// Check that the token is valid for that amount
-		if (token == null || token.isEmpty() || token.equals("TEST-INVALID-TOKEN")) {
-			throw new AccessDeniedException("Invalid token");
-		}
-
-		// ****** PERFORM SUPER SECURE CHECK OF TOKEN HERE ******//
+		this.checkWritable();
+		this.checkDepositToken(token);
 
 		// Make sure the bank wallet exists...
 		this.getBankWallet();
@@ -329,4 +622,95 @@ public class WalletService implements WalletServiceInterface {
 		return this.getWalletUnathenticated(walletId).getBalanceDto();
 	}
 
-}
\ No newline at end of file
+	public void receiveMoney(UUID walletId, TransferInterface transfer) throws NotFoundException {
+		this.checkWritable();
+		WalletInterface wallet = this.getWalletUnathenticated(walletId);
+		wallet.receiveMoney(transfer);
+		saveWallet(wallet); // doesn't throw
+	}
+
+	public void replicate(UUID walletId, String password, long since, List<TransferInterface> entries)
+			throws IllegalStateException {
+		WalletInterface wallet = this.wallets.get(walletId);
+		if (wallet == null && this.store.contains(walletId)) {
+			// Replicated before this instance was (re)started
+			wallet = this.loadWallet(walletId);
+		}
+		if (wallet == null) {
+			if (password == null) {
+				throw new IllegalStateException("Wallet " + walletId + " is new but its password is missing");
+			}
+			Map<String, Serializable> data = new HashMap<>();
+			data.put("id", walletId);
+			data.put("password", password);
+			wallet = this.walletFactory.fromMap(data);
+			WalletInterface existing = this.wallets.putIfAbsent(walletId, wallet);
+			wallet = existing != null ? existing : wallet;
+		}
+		wallet.replayLedger(since, entries);
+		saveWallet(wallet); // doesn't throw
+	}
+
+	/**
+	 * Checks that a deposit token is valid.
+	 * 
+	 * @throws AccessDeniedException if it isn't
+	 */
+	private void checkDepositToken(String token) throws AccessDeniedException {
+		// Check that the token is valid for that amount
+		if (token == null || token.isEmpty() || token.equals("TEST-INVALID-TOKEN")) {
+			throw new AccessDeniedException("Invalid token");
+		}
+
+		// ****** PERFORM SUPER SECURE CHECK OF TOKEN HERE ******//
+	}
+
+	public CompletableFuture<WalletInterface> createWalletAsync(String clearTextPassword) {
+		return this.supplyAsync(() -> this.createWallet(clearTextPassword));
+	}
+
+	public CompletableFuture<WalletInterface> getWalletAsync(UUID walletId, String password) {
+		return this.supplyAsync(() -> this.getWallet(walletId, password));
+	}
+
+	public CompletableFuture<WalletInterface> getWalletUnathenticatedAsync(UUID walletId) {
+		WalletInterface wallet = this.wallets.get(walletId);
+		if (wallet != null) {
+			// No need to bother the executor if nothing has to be loaded
+			return CompletableFuture.completedFuture(wallet);
+		}
+		return this.supplyAsync(() -> this.getWalletUnathenticated(walletId));
+	}
+
+	public CompletableFuture<TransferResponseDto> sendMoneyAsync(UUID sourceWalletId, UUID destinationWalletId,
+			BigDecimal amount) {
+		if (this.readOnly) {
+			return CompletableFuture.failedFuture(
+					new ServiceUnavailableException("This instance only serves reads, please use the primary"));
+		}
+		if (this.pipeline == null
+				|| (destinationWalletId != null && !this.cluster.isLocal(destinationWalletId))) {
+			return this.supplyAsync(() -> this.sendMoney(sourceWalletId, destinationWalletId, amount));
+		}
+		// The pipeline never blocks once the wallets are loaded, so neither thread has
+		// to wait for the transfer
+		return this.supplyAsync(() -> this.getTransferWallets(sourceWalletId, destinationWalletId, amount))
+				.thenCompose(parties -> this.submitToPipeline(parties.source(), parties.destination(), amount))
+				.whenComplete((response, e) -> {
+					if (e instanceof ResourceConflictException
+							|| (e != null && e.getCause() instanceof ResourceConflictException)) {
+						this.metrics.recordConflict();
+					}
+				});
+	}
+
+	public CompletableFuture<BalanceResponseDto> depositMoneyAsync(UUID walletId, BigDecimal amount, String token) {
+		return this.supplyAsync(() -> {
+			this.checkWritable();
+			this.checkDepositToken(token);
+			return this.getBankWallet();
+		}).thenCompose(bank -> this.sendMoneyAsync(this.bankWalletId, walletId, amount))
+				.thenApply(response -> this.getWalletUnathenticated(walletId).getBalanceDto());
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.example.walletapi.service.impl;
+
+import com.example.walletapi.model.WalletInterface;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves wallets in the background, coalescing the saves of the same wallet.
+ *
+ * Marking a wallet dirty schedules one write of it, max-delay later. Marking it
+ * dirty again before that write starts changes nothing, since the write saves
+ * the wallet as it is then, so a wallet changed 500 times a second is written
+ * at most every max-delay instead of 500 times. Only one write per wallet runs
+ * at a time: a wallet marked dirty while being written is written again once
+ * that's done (and max-delay has passed), so the last write always has the
+ * latest state and a stored wallet is never more than about max-delay plus one
+ * write behind.
+ */
+public class WriteBehind {
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * A wallet with a write pending or running. Guarded by its own monitor.
+	 */
+	private static final class Entry {
+		final WalletInterface wallet;
+		/**
+		 * Changed since the running write (if any) started.
+		 */
+		boolean dirty;
+		boolean writing;
+		/**
+		 * No longer in the map, a new entry has to be made for the wallet.
+		 */
+		boolean removed;
+
+		Entry(WalletInterface wallet) {
+			this.wallet = wallet;
+		}
+	}
+
+	private final ConcurrentMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+	private final Consumer<WalletInterface> writer;
+	private final long maxDelay;
+	private final ScheduledThreadPoolExecutor executor;
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * @param writer   Saves a wallet. It must not throw.
+	 * @param maxDelay How long (ms) a wallet may wait to be written after it was
+	 *                 marked dirty
+	 * @param threads  The number of threads writing wallets
+	 */
+	public WriteBehind(Consumer<WalletInterface> writer, long maxDelay, int threads) {
+		this.writer = writer;
+		this.maxDelay = Math.max(0, maxDelay);
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+			Thread t = new Thread(r, "wallet-write-behind-" + threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Schedules a write of the wallet, unless one is already pending.
+	 */
+	public void markDirty(WalletInterface wallet) {
+		while (true) {
+			Entry entry = this.entries.computeIfAbsent(wallet.getId(), id -> new Entry(wallet));
+			synchronized (entry) {
+				if (entry.removed) {
+					continue;
+				}
+				if (entry.dirty) {
+					this.coalesced.incrementAndGet();
+					return;
+				}
+				entry.dirty = true;
+				if (entry.writing) {
+					return; // rescheduled once written
+				}
+			}
+			this.schedule(entry);
+			return;
+		}
+	}
+
+	private void schedule(Entry entry) {
+		try {
+			this.executor.schedule(() -> this.write(entry), this.maxDelay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Stopped, stop() writes it
+		}
+	}
+
+	private void write(Entry entry) {
+		synchronized (entry) {
+			if (!entry.dirty || entry.writing) {
+				return;
+			}
+			entry.dirty = false;
+			entry.writing = true;
+		}
+		boolean again;
+		try {
+			this.writer.accept(entry.wallet);
+		} finally {
+			synchronized (entry) {
+				entry.writing = false;
+				again = entry.dirty;
+				if (!again) {
+					entry.removed = true;
+					this.entries.remove(entry.wallet.getId(), entry);
+				}
+			}
+		}
+		if (again) {
+			this.schedule(entry);
+		}
+	}
+
+	/**
+	 * The number of wallets waiting to be written, or being written.
+	 */
+	public int getPending() {
+		return this.entries.size();
+	}
+
+	/**
+	 * The number of times a wallet was marked dirty while it already was.
+	 */
+	public long getCoalesced() {
+		return this.coalesced.get();
+	}
+
+	/**
+	 * Stops scheduling writes, waits for the running ones (without interrupting
+	 * them) and then writes every wallet still dirty on the calling thread.
+	 */
+	public void stop() {
+		this.executor.shutdown();
+		try {
+			if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				this.logger.warn("Wallets still being written after 10s, writing the dirty ones anyway");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		int flushed = 0;
+		for (Entry entry : this.entries.values()) {
+			synchronized (entry) {
+				if (!entry.dirty) {
+					continue;
+				}
+				entry.dirty = false;
+			}
+			this.writer.accept(entry.wallet);
+			flushed++;
+		}
+		this.entries.clear();
+		this.logger.info("Wrote {} dirty wallets", flushed);
+	}
+}
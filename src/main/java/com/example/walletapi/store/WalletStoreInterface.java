@@ -0,0 +1,101 @@
+package com.example.walletapi.store;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.WalletFactoryInterface;
+
+/**
+ * Where wallets are persisted. Everything which reads or writes wallets
+ * outside of memory goes through this, so the storage engine can be picked
+ * with wallet.api.store.type (see
+ * {@link com.example.walletapi.config.WalletStoreConfig}).
+ *
+ * Wallets are read back as maps, in the form
+ * {@link WalletFactoryInterface#fromMap(Map)} takes, with "id", "password",
+ * "balance" and "ledger" (a list of transfers in the form
+ * {@link TransferFactoryInterface#fromMap(Map)} takes). Implementations must be
+ * thread-safe.
+ */
+public interface WalletStoreInterface {
+
+	/**
+	 * Loads a wallet.
+	 *
+	 * @return The wallet's data, or null if it isn't stored
+	 * @throws IOException if it's stored but can't be read
+	 */
+	Map<String, Serializable> load(UUID walletId) throws IOException;
+
+	/**
+	 * Loads a wallet with only the latest {@code hotSize} entries of its ledger,
+	 * if the older ones can be paged back in with
+	 * {@link #loadLedger(UUID, long, int)}. The data then has "ledgerSince", the
+	 * position the given ledger starts after, and the wallet's balance is
+	 * "balance" as it can't be summed from the ledger. Stores which can't page
+	 * ledgers back in load the whole ledger.
+	 *
+	 * @return The wallet's data, or null if it isn't stored
+	 * @throws IOException if it's stored but can't be read
+	 */
+	default Map<String, Serializable> load(UUID walletId, long hotSize) throws IOException {
+		return this.load(walletId);
+	}
+
+	/**
+	 * Loads a range of a stored ledger, ie. at most {@code limit} entries
+	 * appended after position {@code since}, in order.
+	 *
+	 * @return The entries, empty if there are none or the wallet isn't stored
+	 * @throws IOException if the wallet can't be read
+	 */
+	List<Map<String, Serializable>> loadLedger(UUID walletId, long since, int limit) throws IOException;
+
+	boolean contains(UUID walletId);
+
+	/**
+	 * Stores the current state of a wallet, replacing what was stored before.
+	 * May be called for the same wallet from several threads at once.
+	 *
+	 * @return How far the wallet's ledger is stored such that
+	 *         {@link #loadLedger(UUID, long, int)} can page it back in, ie. the
+	 *         entries up to this sequence may be evicted from memory (see
+	 *         {@link WalletInterface#evictLedger(long)}). 0 if none.
+	 * @throws IOException if it couldn't be stored
+	 */
+	long save(WalletInterface wallet) throws IOException;
+
+	/**
+	 * How far a stored wallet's ledger can be paged back in, like the value
+	 * {@link #save(WalletInterface)} returns.
+	 *
+	 * @return 0 if none of it can, or the wallet isn't stored
+	 * @throws IOException if the wallet can't be read
+	 */
+	default long getPageableSequence(UUID walletId) throws IOException {
+		return 0;
+	}
+
+	/**
+	 * Lists the IDs of all stored wallets, in no particular order. The stream
+	 * has to be closed.
+	 */
+	Stream<UUID> walletIds() throws IOException;
+
+	/**
+	 * Describes where the wallets are stored, for logging.
+	 */
+	String getLocation();
+
+	/**
+	 * Writes out anything pending and releases the store. Called on shutdown.
+	 */
+	default void close() {
+	}
+}
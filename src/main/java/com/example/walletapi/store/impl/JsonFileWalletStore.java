@@ -0,0 +1,426 @@
+package com.example.walletapi.store.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.store.WalletStoreInterface;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stores every wallet as a JSON file named after its ID. Simple to inspect, but
+ * every save rewrites the whole ledger.
+ *
+ * Files are spread over two levels of directories named after the first four
+ * hex digits of the wallet ID, eg. {@code 3f/a2/3fa2...json}, so no directory
+ * holds more than a few hundred files even with tens of millions of wallets,
+ * and finding a wallet's file never scans a directory. Listing all wallets
+ * walks the 65536 leaf directories, which can be done in parallel (see
+ * {@link #walletIds()}).
+ *
+ * Files are replaced atomically and end with a checksum, and the previous
+ * version of each is kept, so a crash while saving never leaves a half-written
+ * wallet behind, and a damaged file is detected and its previous version
+ * loaded instead.
+ *
+ * Data directories from before this layout, with all files in the top
+ * directory, are migrated in the background once the store is opened. Until
+ * that's done, wallets are looked up in both places, and a save moves the
+ * wallet to the new layout.
+ */
+public class JsonFileWalletStore implements WalletStoreInterface {
+
+	private static final TypeReference<Map<String, Serializable>> MAP_TYPE = new TypeReference<>() {
+	};
+
+	private static final String EXTENSION = ".json";
+
+	/**
+	 * A file is saved as this while being written.
+	 */
+	private static final String TEMP = ".tmp";
+
+	/**
+	 * The previous generation of a file (see {@link #save(WalletInterface)}).
+	 */
+	private static final String PREVIOUS = ".prev";
+
+	/**
+	 * Ends every file saved, followed by the CRC32C of the JSON before it as 8 hex
+	 * digits and a newline.
+	 */
+	private static final byte[] TRAILER = "\n#crc32c:".getBytes(StandardCharsets.US_ASCII);
+	private static final int TRAILER_LENGTH = TRAILER.length + 9;
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * Reads decimals as BigDecimal so amounts come back exactly as they were saved.
+	 */
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+	private final Path dir;
+
+	/**
+	 * Saving and migrating the same wallet are serialized, so a migration can't
+	 * move an old file over one just saved.
+	 */
+	private final Object[] locks = new Object[256];
+
+	/**
+	 * True while there may be wallet files left in the top directory.
+	 */
+	private volatile boolean flatFiles;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates the directory if it doesn't exist, and starts migrating wallet files
+	 * from the top directory if there are any.
+	 */
+	public JsonFileWalletStore(Path dir) {
+		this.dir = dir;
+		for (int i = 0; i < this.locks.length; i++) {
+			this.locks[i] = new Object();
+		}
+		if (!Files.isDirectory(dir)) {
+			this.logger.info("Wallet data directory not found at {}, creating...", dir);
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				this.logger.warn("Failed to create wallet data directory. Nothing will be stored.", e);
+			}
+		}
+		try (Stream<UUID> flat = this.listFlat()) {
+			this.flatFiles = flat.findAny().isPresent();
+		} catch (IOException | UncheckedIOException e) {
+			this.flatFiles = true; // look everywhere
+		}
+		if (this.flatFiles) {
+			Thread migration = new Thread(this::migrate, "wallet-store-migration");
+			migration.setDaemon(true);
+			migration.start();
+		}
+	}
+
+	private Object lock(UUID walletId) {
+		return this.locks[(walletId.hashCode() & 0x7fffffff) % this.locks.length];
+	}
+
+	/**
+	 * Gets the path of a wallet's file in the sharded layout.
+	 */
+	Path getPath(UUID walletId) {
+		String name = walletId.toString();
+		return this.dir.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name + EXTENSION);
+	}
+
+	private Path getFlatPath(UUID walletId) {
+		return this.dir.resolve(walletId + EXTENSION);
+	}
+
+	private static Path sibling(Path path, String suffix) {
+		return path.resolveSibling(path.getFileName() + suffix);
+	}
+
+	/**
+	 * Loads a wallet, from the previous generation of its file if the current one
+	 * is damaged.
+	 */
+	@Override
+	public Map<String, Serializable> load(UUID walletId) throws IOException {
+		Path path = this.getPath(walletId);
+		if (this.flatFiles && !Files.exists(path)) {
+			try {
+				return this.read(this.getFlatPath(walletId));
+			} catch (NoSuchFileException e) {
+				// Not stored, or moved to the sharded layout in the meantime
+			}
+		}
+		IOException damaged;
+		try {
+			return this.read(path);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			damaged = e;
+		}
+		try {
+			Map<String, Serializable> data = this.read(sibling(path, PREVIOUS));
+			this.logger.warn("Wallet file {} is damaged ({}), loaded the previous one instead", path,
+					damaged.getMessage());
+			return data;
+		} catch (IOException e) {
+			damaged.addSuppressed(e);
+			throw damaged;
+		}
+	}
+
+	/**
+	 * Reads a wallet file, verifying its checksum. Files without one (saved
+	 * before checksums were added) are only parsed.
+	 *
+	 * @throws NoSuchFileException if the file doesn't exist
+	 * @throws IOException         if it's damaged
+	 */
+	private Map<String, Serializable> read(Path path) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		int length = bytes.length;
+		int trailer = length - TRAILER_LENGTH;
+		if (trailer >= 0 && Arrays.equals(bytes, trailer, trailer + TRAILER.length, TRAILER, 0, TRAILER.length)) {
+			long expected;
+			try {
+				expected = Long.parseLong(new String(bytes, trailer + TRAILER.length, 8, StandardCharsets.US_ASCII),
+						16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid checksum in " + path);
+			}
+			CRC32C crc = new CRC32C();
+			crc.update(bytes, 0, trailer);
+			if (crc.getValue() != expected) {
+				throw new IOException("Checksum mismatch in " + path);
+			}
+			length = trailer;
+		}
+		return this.objectMapper.readValue(bytes, 0, length, MAP_TYPE);
+	}
+
+	@Override
+	public List<Map<String, Serializable>> loadLedger(UUID walletId, long since, int limit) throws IOException {
+		Map<String, Serializable> data = this.load(walletId);
+		List<Map<String, Serializable>> entries = new ArrayList<>();
+		if (data != null && data.get("ledger") instanceof List<?> ledger) {
+			for (int i = (int) Math.min(since, ledger.size()); i < ledger.size() && entries.size() < limit; i++) {
+				@SuppressWarnings("unchecked")
+				Map<String, Serializable> entry = (Map<String, Serializable>) ledger.get(i);
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	@Override
+	public boolean contains(UUID walletId) {
+		return Files.exists(this.getPath(walletId))
+				|| (this.flatFiles && Files.exists(this.getFlatPath(walletId)));
+	}
+
+	/**
+	 * Writes the wallet with a checksum to a temporary file, flushes it to disk
+	 * and renames it over the wallet's file, so the file is always either the old
+	 * or the new version. The old version is kept as the previous generation.
+	 * 
+	 * @return 0, as every save rewrites the whole ledger it can't be evicted from
+	 *         memory
+	 */
+	@Override
+	public long save(WalletInterface wallet) throws IOException {
+		Path path = this.getPath(wallet.getId());
+		synchronized (this.lock(wallet.getId())) {
+			byte[] json = this.objectMapper.writeValueAsBytes(wallet);
+			CRC32C crc = new CRC32C();
+			crc.update(json);
+			String checksum = String.format("%08x\n", crc.getValue());
+			Files.createDirectories(path.getParent());
+			Path temp = sibling(path, TEMP);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.wrap(json), ByteBuffer.wrap(TRAILER),
+						ByteBuffer.wrap(checksum.getBytes(StandardCharsets.US_ASCII)) }) {
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				channel.force(true);
+			}
+			if (Files.exists(path)) {
+				this.keepPrevious(path);
+			}
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory(path.getParent());
+			if (this.flatFiles) {
+				Files.deleteIfExists(this.getFlatPath(wallet.getId()));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Keeps the current version of a file as its previous generation, as a hard
+	 * link if possible.
+	 */
+	private void keepPrevious(Path path) throws IOException {
+		Path previous = sibling(path, PREVIOUS);
+		Files.deleteIfExists(previous);
+		try {
+			Files.createLink(previous, path);
+		} catch (UnsupportedOperationException | IOException e) {
+			Files.copy(path, previous, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Flushes a directory to disk, so a rename in it survives a crash. Not
+	 * possible on every platform, in which case it's left to the OS.
+	 */
+	private static void syncDirectory(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported
+		}
+	}
+
+	/**
+	 * Moves the wallet files in the top directory to the sharded layout. Files
+	 * whose wallet has been saved since are deleted instead. Safe to call while
+	 * wallets are being loaded and saved.
+	 *
+	 * @return The number of files moved
+	 */
+	public int migrate() {
+		int moved = 0;
+		try (Stream<UUID> flat = this.listFlat()) {
+			this.logger.info("Moving wallet files in {} into subdirectories...", this.dir);
+			for (Iterator<UUID> it = flat.iterator(); it.hasNext() && !this.closed;) {
+				UUID walletId = it.next();
+				Path from = this.getFlatPath(walletId);
+				Path to = this.getPath(walletId);
+				synchronized (this.lock(walletId)) {
+					if (Files.exists(to)) {
+						Files.deleteIfExists(from);
+						continue;
+					}
+					Files.createDirectories(to.getParent());
+					try {
+						Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+						moved++;
+					} catch (NoSuchFileException e) {
+						// moved by another migration
+					}
+				}
+				if (moved > 0 && moved % 100000 == 0) {
+					this.logger.info("Moved {} wallet files so far", moved);
+				}
+			}
+			if (!this.closed) {
+				this.flatFiles = false;
+				this.logger.info("Moved {} wallet files in {} into subdirectories", moved, this.dir);
+			}
+		} catch (IOException | UncheckedIOException e) {
+			this.logger.warn("Failed to move the wallet files in {} into subdirectories, will look for them in both",
+					this.dir, e);
+		}
+		return moved;
+	}
+
+	/**
+	 * Lists the wallets in the sharded layout, and while migrating also those in
+	 * the top directory. The stream walks one leaf directory per element of a list
+	 * of them, so it splits well when made parallel.
+	 */
+	@Override
+	public Stream<UUID> walletIds() throws IOException {
+		if (!Files.isDirectory(this.dir)) {
+			return Stream.empty();
+		}
+		// The flat files first, before looking for shard directories, so one moved
+		// while listing is seen in both rather than in neither. Only the files still
+		// flat are remembered to leave those out of the sharded listing, which is
+		// nothing once migrated.
+		Set<UUID> flat;
+		if (this.flatFiles) {
+			flat = ConcurrentHashMap.newKeySet();
+			try (Stream<UUID> ids = this.listFlat()) {
+				ids.forEach(flat::add);
+			}
+		} else {
+			flat = null;
+		}
+		List<Path> firsts;
+		try (Stream<Path> top = Files.list(this.dir)) {
+			firsts = top.filter(JsonFileWalletStore::isShard).toList();
+		}
+		List<Path> leaves = new ArrayList<>();
+		for (Path first : firsts) {
+			try (Stream<Path> second = Files.list(first)) {
+				second.filter(JsonFileWalletStore::isShard).forEach(leaves::add);
+			}
+		}
+		Stream<UUID> sharded = leaves.stream().flatMap(leaf -> {
+			try {
+				return this.listWallets(leaf);
+			} catch (NoSuchFileException e) {
+				return Stream.empty();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		if (flat == null || flat.isEmpty()) {
+			return sharded;
+		}
+		return Stream.concat(flat.stream(), sharded.filter(id -> !flat.contains(id)));
+	}
+
+	private static boolean isShard(Path path) {
+		return path.getFileName().toString().length() == 2 && Files.isDirectory(path);
+	}
+
+	private Stream<UUID> listFlat() throws IOException {
+		return this.listWallets(this.dir);
+	}
+
+	private Stream<UUID> listWallets(Path dir) throws IOException {
+		return Files.list(dir).map(path -> {
+			String name = path.getFileName().toString();
+			if (!name.endsWith(EXTENSION)) {
+				return null;
+			}
+			try {
+				return UUID.fromString(name.substring(0, name.length() - EXTENSION.length()));
+			} catch (IllegalArgumentException e) {
+				return null; // not a wallet
+			}
+		}).filter(Objects::nonNull);
+	}
+
+	@Override
+	public String getLocation() {
+		return this.dir.toString();
+	}
+
+	/**
+	 * Stops migrating, which carries on from where it was the next time the store
+	 * is opened.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+	}
+}
@@ -0,0 +1,253 @@
+package com.example.walletapi.store.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.store.WalletStoreInterface;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Stores wallets in a single file with H2's MVStore, an embedded log-structured
+ * B-tree store. Every wallet has a small header (password, balance and how far
+ * its ledger is stored) and every ledger entry is a record of its own, keyed by
+ * wallet and sequence, so:
+ * <ul>
+ * <li>saving a wallet only writes the header and the entries appended since
+ * the last save, instead of the whole ledger</li>
+ * <li>a range of a ledger is read with a sorted scan (see
+ * {@link #loadLedger(UUID, long, int)})</li>
+ * <li>there is one file however many wallets there are</li>
+ * </ul>
+ *
+ * Records are encoded with Smile and pages are compressed. Changes are
+ * committed in groups every commit-delay ms (or on every save if 0), and a
+ * crash loses at most the changes since the last commit, never leaving a
+ * half-written wallet behind.
+ */
+public class MVStoreWalletStore implements WalletStoreInterface {
+
+	private static final TypeReference<Map<String, Serializable>> MAP_TYPE = new TypeReference<>() {
+	};
+
+	/**
+	 * Separates the wallet ID from the sequence in ledger keys.
+	 */
+	private static final char KEY_SEPARATOR = '/';
+
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * Writes UUIDs as strings, as Smile would otherwise write them as binary and
+	 * they'd be read back as byte arrays.
+	 */
+	private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory())
+			.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+			.registerModule(new SimpleModule().addSerializer(UUID.class, ToStringSerializer.instance));
+
+	private final Path file;
+	private final MVStore store;
+	private final boolean commitEverySave;
+
+	/**
+	 * Wallet ID -> header.
+	 */
+	private final MVMap<String, byte[]> headers;
+
+	/**
+	 * Wallet ID + sequence (see {@link #key(UUID, long)}) -> ledger entry.
+	 */
+	private final MVMap<String, byte[]> ledgers;
+
+	/**
+	 * Saves of the same wallet are serialized, so a slow save can't overwrite the
+	 * header written by a later one.
+	 */
+	private final Object[] locks = new Object[256];
+
+	/**
+	 * Opens the store, creating the file (and its directory) if needed.
+	 *
+	 * @param file        The file to store wallets in
+	 * @param cacheSize   The size of the read cache, in MB
+	 * @param compress    Whether to compress pages
+	 * @param commitDelay How long (ms) changes may wait to be committed, 0 to
+	 *                    commit on every save
+	 */
+	public MVStoreWalletStore(Path file, int cacheSize, boolean compress, int commitDelay) throws IOException {
+		this.file = file;
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		MVStore.Builder builder = new MVStore.Builder().fileName(file.toString()).cacheSize(cacheSize);
+		if (compress) {
+			builder.compress();
+		}
+		try {
+			this.store = builder.open();
+		} catch (MVStoreException e) {
+			throw new IOException("Failed to open wallet store " + file + ": " + e.getMessage(), e);
+		}
+		this.commitEverySave = commitDelay <= 0;
+		this.store.setAutoCommitDelay(Math.max(0, commitDelay));
+		this.headers = this.store.openMap("wallets");
+		this.ledgers = this.store.openMap("ledgers");
+		for (int i = 0; i < this.locks.length; i++) {
+			this.locks[i] = new Object();
+		}
+		this.logger.info("Storing wallets in {} ({} wallets)", file, this.headers.size());
+	}
+
+	/**
+	 * Creates the key of a ledger entry. The sequence is zero-padded hex, so keys
+	 * sort by wallet and then by sequence.
+	 */
+	private static String key(UUID walletId, long sequence) {
+		String hex = Long.toHexString(sequence);
+		return walletId.toString() + KEY_SEPARATOR + "0".repeat(16 - hex.length()) + hex;
+	}
+
+	private Map<String, Serializable> decode(byte[] bytes) throws IOException {
+		return this.objectMapper.readValue(bytes, MAP_TYPE);
+	}
+
+	@Override
+	public Map<String, Serializable> load(UUID walletId) throws IOException {
+		return this.load(walletId, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Only reads (and decodes) the header and the latest entries, however long
+	 * the ledger is.
+	 */
+	@Override
+	public Map<String, Serializable> load(UUID walletId, long hotSize) throws IOException {
+		Map<String, Serializable> header = this.loadHeader(walletId);
+		if (header == null) {
+			return null;
+		}
+		Map<String, Serializable> data = new HashMap<>(header);
+		long sequence = ((Number) header.get("ledgerSequence")).longValue();
+		long since = Math.max(0, sequence - hotSize);
+		if (since > 0) {
+			data.put("ledgerSince", since);
+		}
+		data.put("ledger",
+				(Serializable) this.loadLedger(walletId, since, (int) Math.min(sequence - since, Integer.MAX_VALUE)));
+		return data;
+	}
+
+	private Map<String, Serializable> loadHeader(UUID walletId) throws IOException {
+		byte[] bytes = this.headers.get(walletId.toString());
+		return bytes == null ? null : this.decode(bytes);
+	}
+
+	@Override
+	public List<Map<String, Serializable>> loadLedger(UUID walletId, long since, int limit) throws IOException {
+		List<Map<String, Serializable>> entries = new ArrayList<>();
+		Cursor<String, byte[]> cursor = this.ledgers.cursor(key(walletId, since + 1), key(walletId, -1L), false);
+		while (entries.size() < limit && cursor.hasNext()) {
+			cursor.next();
+			entries.add(this.decode(cursor.getValue()));
+		}
+		return entries;
+	}
+
+	@Override
+	public long getPageableSequence(UUID walletId) throws IOException {
+		Map<String, Serializable> header = this.loadHeader(walletId);
+		return header == null ? 0 : ((Number) header.get("ledgerSequence")).longValue();
+	}
+
+	@Override
+	public boolean contains(UUID walletId) {
+		return this.headers.containsKey(walletId.toString());
+	}
+
+	/**
+	 * Only stores ledger entries which have been validated, ie. up to the first
+	 * one which hasn't (and which will be stored by a later save), as stored
+	 * entries are never written again. The stored balance is the sum of the
+	 * stored entries, so header and ledger always agree.
+	 * 
+	 * @return The sequence of the last stored entry
+	 */
+	@Override
+	public long save(WalletInterface wallet) throws IOException {
+		UUID walletId = wallet.getId();
+		long stored;
+		synchronized (this.locks[(walletId.hashCode() & 0x7fffffff) % this.locks.length]) {
+			Map<String, Serializable> header = this.loadHeader(walletId);
+			stored = header == null ? 0 : ((Number) header.get("ledgerSequence")).longValue();
+			BigDecimal balance = header == null ? BigDecimal.ZERO
+					: new BigDecimal(header.get("balance").toString());
+			long sequence = wallet.getLedgerSequence();
+			if (header != null && sequence <= stored) {
+				return stored;
+			}
+			List<TransferInterface> entries = sequence > stored
+					? wallet.getLedger(stored, (int) Math.min(sequence - stored, Integer.MAX_VALUE))
+					: List.of();
+			try {
+				for (TransferInterface entry : entries) {
+					if (entry.getTimestamp() == 0) {
+						break;
+					}
+					this.ledgers.put(key(walletId, ++stored), this.objectMapper.writeValueAsBytes(entry));
+					balance = balance.add(entry.getAmount(walletId));
+				}
+				Map<String, Serializable> _header = new HashMap<>();
+				_header.put("id", walletId.toString());
+				_header.put("password", wallet.getPassword());
+				_header.put("balance", balance);
+				_header.put("ledgerSequence", stored);
+				this.headers.put(walletId.toString(), this.objectMapper.writeValueAsBytes(_header));
+			} catch (MVStoreException e) {
+				throw new IOException("Failed to store wallet " + walletId + ": " + e.getMessage(), e);
+			}
+		}
+		if (this.commitEverySave) {
+			this.store.commit();
+		}
+		return stored;
+	}
+
+	@Override
+	public Stream<UUID> walletIds() {
+		return this.headers.keySet().stream().map(UUID::fromString);
+	}
+
+	@Override
+	public String getLocation() {
+		return this.file.toString();
+	}
+
+	@Override
+	public void close() {
+		if (!this.store.isClosed()) {
+			this.store.close();
+		}
+	}
+}
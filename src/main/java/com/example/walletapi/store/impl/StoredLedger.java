@@ -0,0 +1,43 @@
+package com.example.walletapi.store.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.stereotype.Component;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.ColdLedgerInterface;
+import com.example.walletapi.store.WalletStoreInterface;
+
+/**
+ * Pages evicted ledger entries back in from the wallet store. Entries are only
+ * evicted once the store says it can page them back in (see
+ * {@link WalletStoreInterface#save(WalletInterface)}).
+ */
+@Component
+public class StoredLedger implements ColdLedgerInterface {
+
+	private final WalletStoreInterface store;
+	private final TransferFactoryInterface transferFactory;
+
+	public StoredLedger(WalletStoreInterface store, TransferFactoryInterface transferFactory) {
+		this.store = store;
+		this.transferFactory = transferFactory;
+	}
+
+	@Override
+	public List<TransferInterface> loadLedger(UUID walletId, long since, int limit) throws IOException {
+		List<Map<String, Serializable>> stored = this.store.loadLedger(walletId, since, limit);
+		List<TransferInterface> entries = new ArrayList<>(stored.size());
+		for (Map<String, Serializable> entry : stored) {
+			entries.add(this.transferFactory.fromMap(entry));
+		}
+		return entries;
+	}
+}
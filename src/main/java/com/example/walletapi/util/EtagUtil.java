@@ -0,0 +1,43 @@
+package com.example.walletapi.util;
+
+import com.example.walletapi.model.WalletInterface;
+
+/**
+ * Creates the ETags of the protected endpoints, for both the servlet and the
+ * reactive stack.
+ */
+public final class EtagUtil {
+
+	/**
+	 * Part of all ETags so that tags handed out before a restart (when the wallet
+	 * versions start over) never match.
+	 */
+	private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+	// Private constructor to prevent instantiation of this utility class
+	private EtagUtil() {
+		throw new UnsupportedOperationException("The utility class " + this.getClass().getName()
+				+ " cannot be instantiated");
+	}
+
+	/**
+	 * Creates an ETag for a representation of the current state of a wallet. Must
+	 * be called BEFORE reading the state so the body is never older than the tag.
+	 *
+	 * Everything the body depends on is part of the tag: the resource, the ledger
+	 * position the body starts after (so a tag for one "since" is never taken for
+	 * another), and the Accept header (the same state can be sent as JSON, CBOR or
+	 * Smile). The tag is weak since the body may also be gzipped or not, which
+	 * Tomcat won't do for strong tags.
+	 *
+	 * @param resource The resource, eg. "balance"
+	 * @param since    The ledger position the body starts after, or null if it
+	 *                 doesn't have one
+	 * @param accept   The Accept header, or null
+	 */
+	public static String walletEtag(WalletInterface wallet, String resource, Long since, String accept) {
+		return "W/\"" + wallet.getId() + "-" + EPOCH + "-" + wallet.getVersion() + "-" + resource
+				+ (since == null ? "" : "-" + since)
+				+ (accept == null ? "" : "-" + Integer.toHexString(accept.hashCode())) + "\"";
+	}
+}
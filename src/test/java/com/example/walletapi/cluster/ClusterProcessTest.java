@@ -0,0 +1,191 @@
+package com.example.walletapi.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.example.walletapi.WalletApiApplication;
+import com.example.walletapi.load.WalletApiClient;
+import com.example.walletapi.load.WalletApiClient.WalletAccess;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Starts a cluster of separate processes on this machine, each with its own
+ * port and data directory, and sends requests and transfers across it.
+ *
+ * Not run by default. Run with:
+ *
+ * <pre>
+ * mvn test -Pcluster
+ * </pre>
+ *
+ * Output of the nodes goes to target/cluster-test/node*.log.
+ */
+@Tag("cluster")
+public class ClusterProcessTest {
+
+	private static final int NODES = 3;
+	private static final BigDecimal DEPOSIT = new BigDecimal("1000");
+
+	private static final List<Process> processes = new ArrayList<>();
+	private static final List<String> urls = new ArrayList<>();
+	private static final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5)).build();
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	@BeforeAll
+	public static void startNodes() throws Exception {
+		for (int i = 0; i < NODES; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				urls.add("http://localhost:" + socket.getLocalPort());
+			}
+		}
+		Path workDir = Files.createDirectories(Path.of("target", "cluster-test"));
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		for (int i = 0; i < NODES; i++) {
+			Path dataDir = Files.createTempDirectory("wallet-cluster-node" + i);
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					WalletApiApplication.class.getName(),
+					"--server.port=" + URI.create(urls.get(i)).getPort(),
+					"--wallet.data.dir=" + dataDir,
+					"--wallet.api.cluster.nodes=" + String.join(",", urls),
+					"--wallet.api.cluster.self=" + urls.get(i),
+					"--wallet.api.cluster.secret=cluster-test",
+					"--spring.devtools.restart.enabled=false",
+					"--logging.level.com.example.walletapi=INFO");
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(workDir.resolve("node" + i + ".log").toFile());
+			processes.add(builder.start());
+		}
+		for (int i = 0; i < NODES; i++) {
+			awaitHealthy(i);
+		}
+	}
+
+	@AfterAll
+	public static void stopNodes() throws Exception {
+		for (Process process : processes) {
+			process.destroy();
+		}
+		for (Process process : processes) {
+			process.waitFor();
+		}
+	}
+
+	private static void awaitHealthy(int node) throws Exception {
+		long deadline = System.currentTimeMillis() + 120000;
+		while (System.currentTimeMillis() < deadline) {
+			if (!processes.get(node).isAlive()) {
+				fail("Node " + node + " exited, see target/cluster-test" + File.separator + "node" + node + ".log");
+			}
+			try {
+				HttpResponse<String> response = http.send(HttpRequest
+						.newBuilder(URI.create(urls.get(node) + "/actuator/health")).GET().build(),
+						HttpResponse.BodyHandlers.ofString());
+				if (response.statusCode() == 200) {
+					return;
+				}
+			} catch (IOException e) {
+				// Not listening yet
+			}
+			Thread.sleep(500);
+		}
+		fail("Node " + node + " didn't start in time");
+	}
+
+	private static BigDecimal getBalance(String url, WalletAccess wallet) throws Exception {
+		HttpResponse<String> response = http.send(HttpRequest
+				.newBuilder(URI.create(url + "/api/wallet/v1/protected/balance"))
+				.header("Authorization", "Bearer " + wallet.token())
+				.header("Accept", "application/json")
+				.GET().build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, response.statusCode(), response.body());
+		return objectMapper.readTree(response.body()).get("balance").decimalValue();
+	}
+
+	@Test
+	public void testTransfersAcrossNodes() throws Exception {
+		// Arrange (wallets are created on the node asked, so they end up on all nodes)
+		ConsistentHashRing ring = new ConsistentHashRing(urls, 128);
+		List<WalletAccess> wallets = new ArrayList<>();
+		Set<String> owners = new HashSet<>();
+		for (int i = 0; i < 4 * NODES; i++) {
+			WalletAccess wallet = new WalletApiClient(urls.get(i % NODES)).createWallet("password" + i);
+			wallets.add(wallet);
+			owners.add(ring.getOwner(wallet.walletId()));
+		}
+		assertEquals(NODES, owners.size());
+		// Deposits through any node are forwarded to the wallet's node
+		WalletApiClient first = new WalletApiClient(urls.get(0));
+		for (WalletAccess wallet : wallets) {
+			assertEquals(200, first.deposit(wallet, DEPOSIT));
+		}
+
+		// Act (random transfers, sent to random nodes)
+		Random random = new Random(7);
+		int transfers = 0;
+		for (int i = 0; i < 200; i++) {
+			WalletAccess from = wallets.get(random.nextInt(wallets.size()));
+			WalletAccess to = wallets.get(random.nextInt(wallets.size()));
+			if (from == to) {
+				continue;
+			}
+			int status = new WalletApiClient(urls.get(random.nextInt(NODES))).transfer(from, to.walletId(),
+					new BigDecimal(1 + random.nextInt(50)));
+			assertTrue(status == 200 || status == 402, "Transfer answered " + status);
+			transfers++;
+		}
+
+		// Assert (no money created or lost, whichever node is asked)
+		assertTrue(transfers > 100);
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < wallets.size(); i++) {
+			BigDecimal balance = getBalance(urls.get(i % NODES), wallets.get(i));
+			assertEquals(0, balance.compareTo(getBalance(urls.get((i + 1) % NODES), wallets.get(i))));
+			total = total.add(balance);
+		}
+		assertEquals(0, DEPOSIT.multiply(new BigDecimal(wallets.size())).compareTo(total),
+				"Total was " + total);
+	}
+
+	@Test
+	public void testTransferToUnknownRemoteWallet() throws Exception {
+		// Arrange
+		ConsistentHashRing ring = new ConsistentHashRing(urls, 128);
+		WalletApiClient client = new WalletApiClient(urls.get(0));
+		WalletAccess wallet = client.createWallet("password");
+		assertEquals(200, client.deposit(wallet, DEPOSIT));
+		UUID unknown;
+		do {
+			unknown = UUID.randomUUID();
+		} while (ring.getOwner(unknown).equals(ring.getOwner(wallet.walletId())));
+
+		// Act
+		int status = client.transfer(wallet, unknown, BigDecimal.TEN);
+
+		// Assert (and the reserved funds are back)
+		assertEquals(404, status);
+		assertEquals(0, DEPOSIT.compareTo(getBalance(urls.get(1), wallet)));
+	}
+}
@@ -0,0 +1,347 @@
+package com.example.walletapi.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.walletapi.cluster.ClusterTransfers.Status;
+import com.example.walletapi.cluster.ClusterTransfers.TransferMessage;
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.sun.net.httpserver.HttpServer;
+
+public class ClusterTransfersTest {
+
+	private static final String SELF = "http://localhost:1";
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+	private final WalletServiceInterface walletService = mock(WalletServiceInterface.class);
+
+	@TempDir
+	Path dataDir;
+
+	private HttpServer coordinator;
+
+	@AfterEach
+	public void tearDown() {
+		if (this.coordinator != null) {
+			this.coordinator.stop(0);
+		}
+	}
+
+	/**
+	 * Starts a fake coordinator answering every status request with the given
+	 * status, and returns its base URL.
+	 */
+	private String startCoordinator(Status status) throws Exception {
+		this.coordinator = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.coordinator.createContext(Cluster.INTERNAL_PATH + "/transfers/", exchange -> {
+			byte[] body = ("{\"id\":\"" + UUID.randomUUID() + "\",\"status\":\"" + status + "\"}")
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		this.coordinator.start();
+		return "http://localhost:" + this.coordinator.getAddress().getPort();
+	}
+
+	private Cluster cluster(String other) {
+		return new Cluster(List.of(SELF, other), SELF, "secret");
+	}
+
+	/**
+	 * Creates a wallet owned by this node, which the mocked service serves and
+	 * credits.
+	 */
+	private WalletInterface localWallet(Cluster cluster) {
+		WalletInterface wallet;
+		do {
+			wallet = this.walletFactory.generateNew("password");
+		} while (!cluster.isLocal(wallet.getId()));
+		WalletInterface _wallet = wallet;
+		when(this.walletService.getWalletUnathenticated(wallet.getId())).thenReturn(wallet);
+		doAnswer(invocation -> {
+			_wallet.receiveMoney(invocation.getArgument(1));
+			return null;
+		}).when(this.walletService).receiveMoney(eq(wallet.getId()), any(TransferInterface.class));
+		return wallet;
+	}
+
+	private static TransferMessage message(WalletInterface recipient, String coordinator) {
+		return new TransferMessage(UUID.randomUUID(), UUID.randomUUID(), recipient.getId(), new BigDecimal("10"),
+				coordinator);
+	}
+
+	@Test
+	public void testPrepareThenCommitCreditsOnce() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, "http://localhost:2");
+
+		// Act
+		transfers.prepare(message);
+		transfers.prepare(message);
+		transfers.commit(message);
+		transfers.commit(message);
+
+		// Assert
+		assertEquals(0, new BigDecimal("10").compareTo(recipient.getBalance()));
+		assertEquals(1, recipient.getLedgerSequence());
+		assertEquals(message.id(), recipient.getLedger().get(0).getId());
+		assertEquals(0, transfers.getPrepared());
+	}
+
+	@Test
+	public void testCommitWithoutPrepareIsIdempotent() {
+		// Arrange (as if this node restarted after crediting)
+		Cluster cluster = this.cluster("http://localhost:2");
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, "http://localhost:2");
+		new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000, 600000).commit(message);
+		ClusterTransfers restarted = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+
+		// Act
+		restarted.commit(message);
+
+		// Assert
+		assertEquals(0, new BigDecimal("10").compareTo(recipient.getBalance()));
+		assertEquals(1, recipient.getLedgerSequence());
+	}
+
+	@Test
+	public void testAbortedTransferIsNeverCommitted() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, "http://localhost:2");
+		transfers.prepare(message);
+
+		// Act
+		transfers.abort(message.id());
+
+		// Assert
+		assertThrows(ResourceConflictException.class, () -> transfers.commit(message));
+		assertThrows(ResourceConflictException.class, () -> transfers.prepare(message));
+		assertEquals(0, BigDecimal.ZERO.compareTo(recipient.getBalance()));
+	}
+
+	@Test
+	public void testAbortAfterCommitConflicts() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, "http://localhost:2");
+		transfers.prepare(message);
+		transfers.commit(message);
+
+		// Act & Assert
+		assertThrows(ResourceConflictException.class, () -> transfers.abort(message.id()));
+	}
+
+	@Test
+	public void testPrepareUnknownRecipient() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		when(this.walletService.getWalletUnathenticated(recipient.getId()))
+				.thenThrow(new NotFoundException("Wallet not found"));
+
+		// Act & Assert
+		assertThrows(NotFoundException.class, () -> transfers.prepare(message(recipient, "http://localhost:2")));
+		assertEquals(0, transfers.getPrepared());
+	}
+
+	@Test
+	public void testStatusFollowsSenderLedger() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface sender = this.localWallet(cluster);
+		TransferInterface sent = this.transferFactory.fromSendRequest(sender.getId(), UUID.randomUUID(),
+				BigDecimal.ONE);
+		sender.receiveMoney(sent);
+
+		// Act & Assert
+		assertEquals(Status.COMMITTED, transfers.getStatus(sent.getId(), sender.getId(), 0));
+		assertEquals(Status.UNKNOWN, transfers.getStatus(UUID.randomUUID(), sender.getId(), 0));
+	}
+
+	@Test
+	public void testStatusOnlyLooksBackToWhenTheTransferWasPrepared() {
+		// Arrange (a long history, all of it well before the transfer was prepared)
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000);
+		WalletInterface sender = spy(this.localWallet(cluster));
+		when(this.walletService.getWalletUnathenticated(sender.getId())).thenReturn(sender);
+		for (int i = 0; i < 2000; i++) {
+			sender.receiveMoney(this.transferFactory.fromSendRequest(UUID.randomUUID(), sender.getId(),
+					BigDecimal.ONE));
+		}
+		long prepared = System.currentTimeMillis() + 3600000;
+
+		// Act
+		Status status = transfers.getStatus(UUID.randomUUID(), sender.getId(), prepared);
+
+		// Assert
+		assertEquals(Status.UNKNOWN, status);
+		verify(sender, times(1)).getLedger(anyLong(), anyInt());
+	}
+
+	@Test
+	public void testResolveCommitsWhenCoordinatorCommitted() throws Exception {
+		// Arrange
+		String coordinator = this.startCoordinator(Status.COMMITTED);
+		Cluster cluster = this.cluster(coordinator);
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		transfers.prepare(message(recipient, coordinator));
+		Thread.sleep(5);
+
+		// Act
+		transfers.resolve();
+
+		// Assert
+		assertEquals(0, transfers.getPrepared());
+		assertEquals(0, new BigDecimal("10").compareTo(recipient.getBalance()));
+	}
+
+	@Test
+	public void testResolveAbortsWhenCoordinatorDoesntKnow() throws Exception {
+		// Arrange
+		String coordinator = this.startCoordinator(Status.UNKNOWN);
+		Cluster cluster = this.cluster(coordinator);
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, coordinator);
+		transfers.prepare(message);
+		Thread.sleep(5);
+
+		// Act
+		transfers.resolve();
+
+		// Assert
+		assertEquals(0, transfers.getPrepared());
+		assertEquals(0, BigDecimal.ZERO.compareTo(recipient.getBalance()));
+		assertThrows(ResourceConflictException.class, () -> transfers.commit(message));
+	}
+
+	@Test
+	public void testResolveKeepsTransferWhenCoordinatorIsDown() throws Exception {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000);
+		WalletInterface recipient = this.localWallet(cluster);
+		transfers.prepare(message(recipient, "http://localhost:2"));
+		Thread.sleep(5);
+
+		// Act
+		transfers.resolve();
+
+		// Assert
+		assertEquals(1, transfers.getPrepared());
+	}
+
+	@Test
+	public void testCommitLostWhileRecipientRestarted() throws Exception {
+		// Arrange (prepared, then this node went down and missed the commit)
+		String coordinator = this.startCoordinator(Status.COMMITTED);
+		Cluster cluster = this.cluster(coordinator);
+		WalletInterface recipient = this.localWallet(cluster);
+		new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0, 600000, this.dataDir)
+				.prepare(message(recipient, coordinator));
+		ClusterTransfers restarted = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000, this.dataDir);
+
+		// Act
+		restarted.recover();
+		int recovered = restarted.getPrepared();
+		Thread.sleep(5);
+		restarted.resolve();
+
+		// Assert
+		assertEquals(1, recovered);
+		assertEquals(0, restarted.getPrepared());
+		assertEquals(0, new BigDecimal("10").compareTo(recipient.getBalance()));
+		assertEquals(1, recipient.getLedgerSequence());
+	}
+
+	@Test
+	public void testCommittedTransferIsNotCreditedAgainAfterRestart() throws Exception {
+		// Arrange
+		String coordinator = this.startCoordinator(Status.COMMITTED);
+		Cluster cluster = this.cluster(coordinator);
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, coordinator);
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000, this.dataDir);
+		transfers.prepare(message);
+		transfers.commit(message);
+		ClusterTransfers restarted = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 0,
+				600000, this.dataDir);
+
+		// Act
+		restarted.recover();
+		Thread.sleep(5);
+		restarted.resolve();
+		restarted.commit(message);
+
+		// Assert
+		assertEquals(0, restarted.getPrepared());
+		assertEquals(0, new BigDecimal("10").compareTo(recipient.getBalance()));
+		assertEquals(1, recipient.getLedgerSequence());
+	}
+
+	@Test
+	public void testAbortedTransferIsNotRecovered() {
+		// Arrange
+		Cluster cluster = this.cluster("http://localhost:2");
+		WalletInterface recipient = this.localWallet(cluster);
+		TransferMessage message = message(recipient, "http://localhost:2");
+		ClusterTransfers transfers = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000, this.dataDir);
+		transfers.prepare(message);
+		transfers.abort(message.id());
+		ClusterTransfers restarted = new ClusterTransfers(cluster, this.walletService, this.transferFactory, 30000,
+				600000, this.dataDir);
+
+		// Act
+		restarted.recover();
+
+		// Assert
+		assertEquals(0, restarted.getPrepared());
+	}
+}
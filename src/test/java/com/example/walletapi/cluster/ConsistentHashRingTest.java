@@ -0,0 +1,87 @@
+package com.example.walletapi.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+	private static final List<String> NODES = List.of("http://node1:8080", "http://node2:8080",
+			"http://node3:8080");
+
+	private static UUID[] wallets(int count) {
+		Random random = new Random(42);
+		UUID[] wallets = new UUID[count];
+		for (int i = 0; i < count; i++) {
+			wallets[i] = new UUID(random.nextLong(), random.nextLong());
+		}
+		return wallets;
+	}
+
+	@Test
+	public void testOwnerIsStable() {
+		// Arrange
+		ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+		ConsistentHashRing reordered = new ConsistentHashRing(List.of(NODES.get(2), NODES.get(0), NODES.get(1)),
+				128);
+
+		// Act & Assert
+		for (UUID wallet : wallets(1000)) {
+			assertEquals(ring.getOwner(wallet), reordered.getOwner(wallet));
+		}
+	}
+
+	@Test
+	public void testWalletsAreSpreadEvenly() {
+		// Arrange
+		ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+		Map<String, Integer> counts = new HashMap<>();
+
+		// Act
+		for (UUID wallet : wallets(30000)) {
+			counts.merge(ring.getOwner(wallet), 1, Integer::sum);
+		}
+
+		// Assert (10000 each if perfectly even)
+		assertEquals(3, counts.size());
+		for (int count : counts.values()) {
+			assertTrue(count > 8000 && count < 12000, "Uneven spread " + counts);
+		}
+	}
+
+	@Test
+	public void testAddingNodeOnlyMovesItsShare() {
+		// Arrange
+		ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+		ConsistentHashRing grown = new ConsistentHashRing(
+				List.of(NODES.get(0), NODES.get(1), NODES.get(2), "http://node4:8080"), 128);
+		UUID[] wallets = wallets(20000);
+
+		// Act
+		int moved = 0;
+		for (UUID wallet : wallets) {
+			String before = ring.getOwner(wallet);
+			String after = grown.getOwner(wallet);
+			if (!before.equals(after)) {
+				// Wallets only ever move to the new node
+				assertEquals("http://node4:8080", after);
+				moved++;
+			}
+		}
+
+		// Assert (about a quarter should move to the new node)
+		assertTrue(moved > 4000 && moved < 6000, moved + " of 20000 wallets moved");
+	}
+
+	@Test
+	public void testNeedsNodes() {
+		assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), 128));
+		assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(NODES, 0));
+	}
+}
@@ -2,13 +2,17 @@ package com.example.walletapi.controller;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.math.BigDecimal;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,7 +20,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.example.walletapi.dto.requests.DepositRequestDto;
 import com.example.walletapi.dto.requests.TransferRequestDto;
@@ -29,11 +35,14 @@ import com.example.walletapi.model.TransferInterface;
 import com.example.walletapi.model.WalletInterface;
 import com.example.walletapi.model.impl.Wallet;
 import com.example.walletapi.security.JwtUtil;
+import com.example.walletapi.service.WalletEventHubInterface;
 import com.example.walletapi.service.WalletServiceInterface;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.mockito.Mockito;
 
+// The wallet comes from the mocked JwtUtil, the user only gets past security
 @WebMvcTest(controllers = WalletControllerProtected.class)
+@WithMockUser
 public class WalletControllerProtectedTest {
 
 	@Autowired
@@ -45,6 +54,9 @@ public class WalletControllerProtectedTest {
 	@MockBean
 	private WalletServiceInterface walletService;
 
+	@MockBean
+	private WalletEventHubInterface eventHub;
+
 	@MockBean
 	private JwtUtil jwtUtil;
 
@@ -60,7 +72,12 @@ public class WalletControllerProtectedTest {
 		mockWallet = Mockito.mock(WalletInterface.class);
 		when(mockWallet.getId()).thenReturn(testWalletId);
 
-		// Mock JWT authentication for protected endpoints
+		// Mock JWT authentication for protected endpoints: JwtAuthFilter lets the token
+		// through...
+		JwtUtil.Jwt jwt = Mockito.mock(JwtUtil.Jwt.class);
+		when(jwt.getUserId(UUID.class)).thenReturn(testWalletId);
+		when(jwtUtil.parseToken(jwtToken)).thenReturn(jwt);
+		// ...and the controller gets the wallet from it
 		when(jwtUtil.getAuthenticatedUser(UUID.class)).thenReturn(testWalletId);
 		// This line is crucial for WalletControllerProtected.getWallet()
 		when(walletService.getWalletUnathenticated(testWalletId)).thenReturn(mockWallet);
@@ -114,16 +131,20 @@ public class WalletControllerProtectedTest {
 
 		TransferResponseDto transferResponse = new TransferResponseDto(mockTransfer, new BigDecimal("50.00"));
 
-		when(walletService.sendMoney(
+		when(walletService.sendMoneyAsync(
 				testWalletId, // Sender is the authenticated wallet
 				destinationWalletId,
-				new BigDecimal("50.00"))).thenReturn(transferResponse);
+				new BigDecimal("50.00"))).thenReturn(CompletableFuture.completedFuture(transferResponse));
 
 		// Act & Assert
-		mockMvc.perform(post("/api/wallet/v1/protected/transfer") // Corrected path
+		MvcResult result = mockMvc.perform(post("/api/wallet/v1/protected/transfer") // Corrected path
 				.header("Authorization", "Bearer " + jwtToken)
+				.with(csrf())
 				.contentType(MediaType.APPLICATION_JSON)
 				.content(objectMapper.writeValueAsString(transferRequest)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.recipientWalletId").value(destinationWalletId.toString()))
 				.andExpect(jsonPath("$.amount").value(50.00));
@@ -141,14 +162,18 @@ public class WalletControllerProtectedTest {
 				new BigDecimal("100.00"),
 				System.currentTimeMillis());
 
-		when(walletService.depositMoney(testWalletId, new BigDecimal("100.00"), "VALID-DEPOSIT-TOKEN"))
-				.thenReturn(balanceResponse);
+		when(walletService.depositMoneyAsync(testWalletId, new BigDecimal("100.00"), "VALID-DEPOSIT-TOKEN"))
+				.thenReturn(CompletableFuture.completedFuture(balanceResponse));
 
 		// Act & Assert
-		mockMvc.perform(post("/api/wallet/v1/protected/deposit") // Corrected path
+		MvcResult result = mockMvc.perform(post("/api/wallet/v1/protected/deposit") // Corrected path
 				.header("Authorization", "Bearer " + jwtToken)
+				.with(csrf())
 				.contentType(MediaType.APPLICATION_JSON)
 				.content(objectMapper.writeValueAsString(depositRequest)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.walletId").value(testWalletId.toString()))
 				.andExpect(jsonPath("$.balance").value(100.00));
@@ -162,18 +187,22 @@ public class WalletControllerProtectedTest {
 		transferRequest.setDestinationWalletId(destinationWalletId.toString());
 		transferRequest.setAmount(new BigDecimal("1000.00"));
 
-		when(walletService.sendMoney(
+		when(walletService.sendMoneyAsync(
 				testWalletId,
 				destinationWalletId,
 				new BigDecimal("1000.00")))
-				.thenThrow(new InsufficientFundsException("Insufficient funds"));
+				.thenReturn(CompletableFuture.failedFuture(new InsufficientFundsException("Insufficient funds")));
 
 		// Act & Assert
-		mockMvc.perform(post("/api/wallet/v1/protected/transfer") // Corrected path
+		MvcResult result = mockMvc.perform(post("/api/wallet/v1/protected/transfer") // Corrected path
 				.header("Authorization", "Bearer " + jwtToken)
+				.with(csrf())
 				.contentType(MediaType.APPLICATION_JSON)
 				.content(objectMapper.writeValueAsString(transferRequest)))
-				.andExpect(status().isBadRequest());
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isPaymentRequired()); // InsufficientFundsException is a 402
 	}
 
 	@Test
@@ -7,6 +7,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -56,7 +57,7 @@ public class WalletControllerPublicTest {
 		CreateWalletRequestDto requestDto = new CreateWalletRequestDto();
 		requestDto.setPassword(testPassword);
 
-		when(walletService.createWallet(testPassword)).thenReturn(testWallet);
+		when(walletService.createWalletAsync(testPassword)).thenReturn(CompletableFuture.completedFuture(testWallet));
 		when(jwtUtil.generateToken(testWalletId.toString())).thenReturn(jwtToken);
 
 		// Act & Assert
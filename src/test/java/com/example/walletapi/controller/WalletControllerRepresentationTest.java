@@ -0,0 +1,158 @@
+package com.example.walletapi.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.security.JwtUtil;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Checks the representations of the protected endpoints against a running
+ * server, since compression is done by Tomcat. The ledger is made long enough
+ * (over server.compression.min-response-size) to be compressed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WalletControllerRepresentationTest {
+
+	private static final int DEPOSITS = 30;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private WalletServiceInterface walletService;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+	private WalletInterface wallet;
+	private String token;
+
+	@BeforeEach
+	public void setUp() {
+		this.wallet = this.walletService.createWallet("password");
+		for (int i = 0; i < DEPOSITS; i++) {
+			this.walletService.depositMoney(this.wallet.getId(), BigDecimal.ONE, "VALID-DEPOSIT-TOKEN");
+		}
+		this.token = this.jwtUtil.generateToken(this.wallet.getId().toString());
+	}
+
+	private HttpResponse<byte[]> getTransactions(String accept, String acceptEncoding, String ifNoneMatch)
+			throws IOException, InterruptedException {
+		return this.get("/transactions", accept, acceptEncoding, ifNoneMatch);
+	}
+
+	private HttpResponse<byte[]> get(String path, String accept, String acceptEncoding, String ifNoneMatch)
+			throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest
+				.newBuilder(URI.create("http://localhost:" + this.port + "/api/wallet/v1/protected" + path))
+				.header("Authorization", "Bearer " + this.token).header("Accept", accept);
+		if (acceptEncoding != null) {
+			request.header("Accept-Encoding", acceptEncoding);
+		}
+		if (ifNoneMatch != null) {
+			request.header("If-None-Match", ifNoneMatch);
+		}
+		return this.client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	private void assertLedger(JsonNode ledger) {
+		assertEquals(this.wallet.getId().toString(), ledger.get("walletId").asText());
+		assertEquals(DEPOSITS, ledger.get("transfers").size());
+		assertEquals(DEPOSITS, ledger.get("sequence").asLong());
+	}
+
+	@Test
+	public void testCborAndSmileAreNegotiated() throws Exception {
+		// Act
+		HttpResponse<byte[]> cbor = this.getTransactions("application/cbor", null, null);
+		HttpResponse<byte[]> smile = this.getTransactions("application/x-jackson-smile", null, null);
+
+		// Assert
+		assertEquals(200, cbor.statusCode());
+		assertEquals("application/cbor", cbor.headers().firstValue("Content-Type").orElse(null));
+		this.assertLedger(new ObjectMapper(new CBORFactory()).readTree(cbor.body()));
+		assertEquals(200, smile.statusCode());
+		assertEquals("application/x-jackson-smile", smile.headers().firstValue("Content-Type").orElse(null));
+		this.assertLedger(new ObjectMapper(new SmileFactory()).readTree(smile.body()));
+	}
+
+	@Test
+	public void testLargeResponsesAreGzipped() throws Exception {
+		// Act
+		HttpResponse<byte[]> gzipped = this.getTransactions("application/json", "gzip", null);
+		HttpResponse<byte[]> plain = this.getTransactions("application/json", null, null);
+
+		// Assert
+		assertEquals(200, gzipped.statusCode());
+		assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+		byte[] body;
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+			body = in.readAllBytes();
+		}
+		this.assertLedger(new ObjectMapper().readTree(body));
+		assertTrue(gzipped.body().length < plain.body().length);
+		assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+	}
+
+	@Test
+	public void testEachRepresentationHasItsOwnEtag() throws Exception {
+		// Arrange
+		HttpResponse<byte[]> json = this.getTransactions("application/json", null, null);
+		String etag = json.headers().firstValue("ETag").orElseThrow();
+
+		// Act
+		HttpResponse<byte[]> cbor = this.getTransactions("application/cbor", null, etag);
+		HttpResponse<byte[]> notModified = this.getTransactions("application/json", null, etag);
+
+		// Assert
+		// Tomcat merges the Vary headers into one when it may compress
+		assertTrue(json.headers().allValues("Vary").stream().flatMap(vary -> Arrays.stream(vary.split(",")))
+				.anyMatch(vary -> vary.trim().equalsIgnoreCase("Accept")));
+		assertEquals(200, cbor.statusCode());
+		assertNotEquals(etag, cbor.headers().firstValue("ETag").orElseThrow());
+		assertEquals(304, notModified.statusCode());
+	}
+
+	@Test
+	public void testEachPositionHasItsOwnEtag() throws Exception {
+		// Arrange
+		String etag = this.getTransactions("application/json", null, null).headers().firstValue("ETag")
+				.orElseThrow();
+
+		// Act
+		HttpResponse<byte[]> delta = this.get("/transactions?since=" + (DEPOSITS - 1), "application/json", null,
+				etag);
+		HttpResponse<byte[]> fromStart = this.get("/transactions?since=0", "application/json", null, etag);
+		HttpResponse<byte[]> balance = this.get("/balance", "application/json", null, etag);
+
+		// Assert
+		assertEquals(200, delta.statusCode());
+		assertEquals(1, new ObjectMapper().readTree(delta.body()).get("transfers").size());
+		assertNotEquals(etag, delta.headers().firstValue("ETag").orElseThrow());
+		assertEquals(200, fromStart.statusCode());
+		assertNotEquals(etag, fromStart.headers().firstValue("ETag").orElseThrow());
+		assertEquals(200, balance.statusCode());
+	}
+}
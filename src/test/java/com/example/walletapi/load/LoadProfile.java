@@ -0,0 +1,64 @@
+package com.example.walletapi.load;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * What load to generate, read from system properties so it can be set from the
+ * command line, eg:
+ * 
+ * <pre>
+ * mvn test -Pload -Dload.rate=2000 -Dload.duration=60 -Dload.mix=transfer:80,balance:20
+ * </pre>
+ * 
+ * @param wallets      Number of wallets to create before starting
+ * @param rate         Requests per second (across all operations)
+ * @param warmup       Time to run before measuring
+ * @param duration     Time to measure
+ * @param mix          Relative weight of each operation
+ * @param concurrency  Max requests in flight. Requests which are due while all
+ *                     are busy wait, and the wait counts towards their latency
+ * @param seed         Seed for arrivals, operations and wallets, so runs with
+ *                     the same profile issue the same requests
+ * @param maxErrorRate Fail if more than this fraction of requests fail
+ * @param maxP99       Fail if the 99th percentile of any operation is higher,
+ *                     or null to not gate on latency
+ */
+public record LoadProfile(int wallets, double rate, Duration warmup, Duration duration,
+		Map<Operation, Integer> mix, int concurrency, long seed, double maxErrorRate, Duration maxP99) {
+
+	public enum Operation {
+		TRANSFER, BALANCE, LEDGER
+	}
+
+	public static LoadProfile fromSystemProperties() {
+		long maxP99 = Long.getLong("load.max-p99-ms", 0);
+		return new LoadProfile(
+				Integer.getInteger("load.wallets", 100),
+				Double.parseDouble(System.getProperty("load.rate", "500")),
+				Duration.ofSeconds(Long.getLong("load.warmup", 5)),
+				Duration.ofSeconds(Long.getLong("load.duration", 20)),
+				parseMix(System.getProperty("load.mix", "transfer:60,balance:30,ledger:10")),
+				Integer.getInteger("load.concurrency", 64),
+				Long.getLong("load.seed", 42),
+				Double.parseDouble(System.getProperty("load.max-error-rate", "0.01")),
+				maxP99 > 0 ? Duration.ofMillis(maxP99) : null);
+	}
+
+	/**
+	 * Parses eg. "transfer:60,balance:30,ledger:10". Operations which aren't
+	 * mentioned aren't run.
+	 */
+	static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String part : mix.split(",")) {
+			String[] kv = part.trim().split(":");
+			if (kv.length != 2) {
+				throw new IllegalArgumentException("Invalid load.mix entry '" + part + "', expected op:weight");
+			}
+			weights.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,232 @@
+package com.example.walletapi.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.walletapi.load.LoadProfile.Operation;
+import com.example.walletapi.load.WalletApiClient.WalletAccess;
+
+/**
+ * Issues requests on a fixed schedule (an "open model"), regardless of how long
+ * earlier requests take, like real users would.
+ *
+ * Arrivals are Poisson distributed at the profile's rate. Each request's latency
+ * is measured from when it was SUPPOSED to start, not from when a worker got
+ * around to sending it, so time spent waiting behind slow requests is counted
+ * (ie. it's corrected for coordinated omission). The uncorrected service time is
+ * recorded as well, since the difference between the two shows how much queueing
+ * there was.
+ */
+public class OpenModelLoadGenerator {
+
+	private static final Logger logger = LoggerFactory.getLogger(OpenModelLoadGenerator.class);
+
+	private static final BigDecimal TRANSFER_AMOUNT = new BigDecimal("1.00");
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+	private final WalletApiClient client;
+	private final LoadProfile profile;
+
+	private final Map<Operation, Histogram> latency = new EnumMap<>(Operation.class);
+	private final Map<Operation, Histogram> serviceTime = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> rejected = new EnumMap<>(Operation.class);
+
+	public OpenModelLoadGenerator(WalletApiClient client, LoadProfile profile) {
+		this.client = client;
+		this.profile = profile;
+		for (Operation op : Operation.values()) {
+			this.latency.put(op, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+			this.serviceTime.put(op, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+			this.errors.put(op, new LongAdder());
+			this.rejected.put(op, new LongAdder());
+		}
+	}
+
+	/**
+	 * Runs the warmup and the measured period, and returns when all requests have
+	 * completed.
+	 */
+	public void run(List<WalletAccess> wallets) throws InterruptedException {
+		if (wallets.size() < 2) {
+			throw new IllegalArgumentException("Transfers need at least 2 wallets, got " + wallets.size());
+		}
+		Random random = new Random(this.profile.seed());
+		Operation[] ops = this.profile.mix().keySet().toArray(new Operation[0]);
+		int[] cumulativeWeights = new int[ops.length];
+		int totalWeight = 0;
+		for (int i = 0; i < ops.length; i++) {
+			totalWeight += this.profile.mix().get(ops[i]);
+			cumulativeWeights[i] = totalWeight;
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(this.profile.concurrency(), r -> {
+			Thread t = new Thread(r, "load-worker");
+			t.setDaemon(true);
+			return t;
+		});
+		double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / this.profile.rate();
+		long start = System.nanoTime();
+		long measureFrom = start + this.profile.warmup().toNanos();
+		long end = measureFrom + this.profile.duration().toNanos();
+		long intended = start;
+		try {
+			while (true) {
+				// Exponential inter-arrival times give a Poisson process
+				intended += (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+				if (intended >= end) {
+					break;
+				}
+				int pick = random.nextInt(totalWeight);
+				int opIndex = 0;
+				while (cumulativeWeights[opIndex] <= pick) {
+					opIndex++;
+				}
+				Operation op = ops[opIndex];
+				int walletIndex = random.nextInt(wallets.size());
+				int otherIndex;
+				do {
+					// Transfers to the same wallet are rejected, which isn't what we measure
+					otherIndex = random.nextInt(wallets.size());
+				} while (otherIndex == walletIndex);
+				WalletAccess wallet = wallets.get(walletIndex);
+				WalletAccess other = wallets.get(otherIndex);
+				boolean measured = intended >= measureFrom;
+				long due = intended;
+
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				workers.execute(() -> this.execute(op, wallet, other, due, measured));
+			}
+		} finally {
+			workers.shutdown();
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	private void execute(Operation op, WalletAccess wallet, WalletAccess other, long intended, boolean measured) {
+		long started = System.nanoTime();
+		int status;
+		try {
+			status = switch (op) {
+				case TRANSFER -> this.client.transfer(wallet, other.walletId(), TRANSFER_AMOUNT);
+				case BALANCE -> this.client.getBalance(wallet);
+				case LEDGER -> this.client.getLedger(wallet);
+			};
+		} catch (IOException | InterruptedException e) {
+			status = -1;
+		}
+		long finished = System.nanoTime();
+		if (!measured) {
+			return;
+		}
+		this.record(this.latency.get(op), finished - intended);
+		this.record(this.serviceTime.get(op), finished - started);
+		if (status == 402 || status == 409) {
+			// The API doing its job (insufficient funds, too much contention)
+			this.rejected.get(op).increment();
+		} else if (status < 200 || status >= 300) {
+			this.errors.get(op).increment();
+		}
+	}
+
+	private void record(Histogram histogram, long nanos) {
+		histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+	}
+
+	public Histogram getLatency(Operation op) {
+		return this.latency.get(op);
+	}
+
+	public long getRequests() {
+		return this.latency.values().stream().mapToLong(Histogram::getTotalCount).sum();
+	}
+
+	public long getErrors() {
+		return this.errors.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	/**
+	 * Prints a summary table (in milliseconds) and writes the full percentile
+	 * distribution of every operation to {@code dir} as .hgrm files, which can be
+	 * plotted with HdrHistogram's plotter.
+	 */
+	public void report(PrintStream out, Path dir) throws IOException {
+		out.printf("%nLoad: %.0f req/s for %ds (after %ds warmup), %d wallets, mix %s, seed %d%n",
+				this.profile.rate(), this.profile.duration().toSeconds(), this.profile.warmup().toSeconds(),
+				this.profile.wallets(), this.profile.mix(), this.profile.seed());
+		out.printf("%-10s %9s %7s %7s %9s %9s %9s %9s %9s %12s%n", "operation", "requests", "errors",
+				"reject", "p50", "p90", "p99", "p99.9", "max", "svc p99");
+		Files.createDirectories(dir);
+		for (Operation op : this.profile.mix().keySet()) {
+			Histogram h = this.latency.get(op);
+			Histogram s = this.serviceTime.get(op);
+			out.printf("%-10s %9d %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %12.2f%n", op.name().toLowerCase(),
+					h.getTotalCount(), this.errors.get(op).sum(), this.rejected.get(op).sum(),
+					ms(h, 50), ms(h, 90), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0, ms(s, 99));
+			try (PrintStream file = new PrintStream(Files.newOutputStream(dir.resolve(op.name().toLowerCase()
+					+ ".hgrm")))) {
+				h.outputPercentileDistribution(file, 1000.0);
+			}
+		}
+		out.printf("Latency is measured from the intended start (corrected for coordinated omission). "
+				+ "'svc p99' is the uncorrected service time.%nFull distributions written to %s%n", dir);
+	}
+
+	private static double ms(Histogram histogram, double percentile) {
+		return histogram.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	/**
+	 * Creates and funds wallets in parallel, since creating a wallet hashes its
+	 * password which is slow on purpose.
+	 */
+	public static List<WalletAccess> createWallets(WalletApiClient client, int count, BigDecimal funds,
+			int parallelism) throws InterruptedException {
+		WalletAccess[] wallets = new WalletAccess[count];
+		AtomicInteger failures = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		for (int i = 0; i < count; i++) {
+			int index = i;
+			executor.execute(() -> {
+				try {
+					WalletAccess wallet = client.createWallet("load-test-" + index);
+					int status = client.deposit(wallet, funds);
+					if (status != 200) {
+						throw new IOException("Failed to deposit into wallet " + wallet.walletId() + ": " + status);
+					}
+					wallets[index] = wallet;
+				} catch (Exception e) {
+					failures.incrementAndGet();
+					logger.error("Failed to set up wallet {}", index, e);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.MINUTES);
+		if (failures.get() > 0) {
+			throw new IllegalStateException("Failed to set up " + failures.get() + " of " + count + " wallets");
+		}
+		return List.of(wallets);
+	}
+}
@@ -0,0 +1,26 @@
+package com.example.walletapi.load;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * {@link WalletApiLoadTest} against the "reactive" profile (WebFlux on Netty),
+ * so both stacks can be compared with the same load. Run only this one with:
+ *
+ * <pre>
+ * mvn test -Pload -Dtest=ReactiveWalletApiLoadTest [-Dload.rate=1000 ...]
+ * </pre>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		// Has to be set here, Spring Boot decides the type of a test server before reading the profile
+		properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles("reactive")
+public class ReactiveWalletApiLoadTest extends WalletApiLoadTest {
+
+	@Override
+	protected Path reportDir() {
+		return Path.of("target", "load-report-reactive");
+	}
+}
@@ -0,0 +1,85 @@
+package com.example.walletapi.load;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A minimal blocking client for the wallet API. Returns status codes rather
+ * than throwing on errors, since the load generator counts them.
+ */
+public class WalletApiClient {
+
+	/**
+	 * A wallet along with the token to access it.
+	 */
+	public record WalletAccess(UUID walletId, String token) {
+	}
+
+	private final HttpClient http;
+	private final String baseUrl;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	public WalletApiClient(String baseUrl) {
+		this.baseUrl = baseUrl + "/api/wallet/v1";
+		this.http = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(5))
+				.build();
+	}
+
+	public WalletAccess createWallet(String password) throws IOException, InterruptedException {
+		HttpResponse<String> response = this.send(this.json("/public/create", null)
+				.POST(HttpRequest.BodyPublishers.ofString("{\"password\":\"" + password + "\"}")).build());
+		if (response.statusCode() != 201) {
+			throw new IOException("Failed to create wallet: " + response.statusCode() + " " + response.body());
+		}
+		JsonNode body = this.objectMapper.readTree(response.body());
+		return new WalletAccess(UUID.fromString(body.get("walletId").asText()), body.get("token").asText());
+	}
+
+	public int deposit(WalletAccess wallet, BigDecimal amount) throws IOException, InterruptedException {
+		return this.send(this.json("/protected/deposit", wallet)
+				.POST(HttpRequest.BodyPublishers
+						.ofString("{\"amount\":" + amount + ",\"token\":\"LOAD-TEST\"}"))
+				.build()).statusCode();
+	}
+
+	public int transfer(WalletAccess from, UUID to, BigDecimal amount) throws IOException, InterruptedException {
+		return this.send(this.json("/protected/transfer", from)
+				.POST(HttpRequest.BodyPublishers
+						.ofString("{\"destinationWalletId\":\"" + to + "\",\"amount\":" + amount + "}"))
+				.build()).statusCode();
+	}
+
+	public int getBalance(WalletAccess wallet) throws IOException, InterruptedException {
+		return this.send(this.json("/protected/balance", wallet).GET().build()).statusCode();
+	}
+
+	public int getLedger(WalletAccess wallet) throws IOException, InterruptedException {
+		return this.send(this.json("/protected/transactions", wallet).GET().build()).statusCode();
+	}
+
+	private HttpRequest.Builder json(String path, WalletAccess wallet) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(this.baseUrl + path))
+				.timeout(Duration.ofSeconds(30))
+				.header("Content-Type", "application/json")
+				.header("Accept", "application/json");
+		if (wallet != null) {
+			builder.header("Authorization", "Bearer " + wallet.token());
+		}
+		return builder;
+	}
+
+	private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		return this.http.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.walletapi.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.example.walletapi.load.LoadProfile.Operation;
+import com.example.walletapi.load.WalletApiClient.WalletAccess;
+
+/**
+ * Drives the whole application (HTTP, security, controllers, service, wallets)
+ * over real sockets and reports latency percentiles per operation.
+ *
+ * Not run by default. Run with:
+ *
+ * <pre>
+ * mvn test -Pload [-Dload.rate=1000 -Dload.duration=60 -Dload.max-p99-ms=50 ...]
+ * </pre>
+ *
+ * See {@link LoadProfile} for all settings. Everything runs in-process against a
+ * throwaway data directory, so runs don't depend on the network or on earlier
+ * runs, and the same profile always issues the same requests.
+ *
+ * This runs against Spring MVC, see {@link ReactiveWalletApiLoadTest} for the
+ * same load against the "reactive" profile.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WalletApiLoadTest {
+
+	@LocalServerPort
+	private int port;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry registry) throws Exception {
+		Path dataDir = Files.createTempDirectory("wallet-load-test");
+		registry.add("wallet.data.dir", dataDir::toString);
+		// Measure the API, not the console
+		registry.add("logging.level.com.example.walletapi", () -> "WARN");
+	}
+
+	/**
+	 * Where the full latency distributions are written.
+	 */
+	protected Path reportDir() {
+		return Path.of("target", "load-report");
+	}
+
+	@Test
+	public void testOpenModelLoad() throws Exception {
+		// Arrange
+		LoadProfile profile = LoadProfile.fromSystemProperties();
+		WalletApiClient client = new WalletApiClient("http://localhost:" + this.port);
+		List<WalletAccess> wallets = OpenModelLoadGenerator.createWallets(client, profile.wallets(),
+				new BigDecimal("1000000"), 16);
+		OpenModelLoadGenerator generator = new OpenModelLoadGenerator(client, profile);
+
+		// Act
+		generator.run(wallets);
+		generator.report(System.out, this.reportDir());
+
+		// Assert
+		assertTrue(generator.getRequests() > 0, "No requests were measured");
+		double errorRate = (double) generator.getErrors() / generator.getRequests();
+		assertTrue(errorRate <= profile.maxErrorRate(),
+				"Error rate " + errorRate + " is above " + profile.maxErrorRate());
+		if (profile.maxP99() != null) {
+			for (Operation op : profile.mix().keySet()) {
+				Histogram latency = generator.getLatency(op);
+				long p99Millis = latency.getValueAtPercentile(99) / 1000;
+				assertTrue(p99Millis <= profile.maxP99().toMillis(),
+						"p99 of " + op + " is " + p99Millis + "ms, above " + profile.maxP99().toMillis() + "ms");
+			}
+		}
+	}
+}
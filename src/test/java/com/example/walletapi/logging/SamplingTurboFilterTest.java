@@ -0,0 +1,74 @@
+package com.example.walletapi.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+
+public class SamplingTurboFilterTest {
+
+	private final LoggerContext context = new LoggerContext();
+	private final Logger logger = this.context.getLogger("com.example.walletapi.security.JwtAuthFilter");
+
+	@AfterEach
+	public void tearDown() {
+		MDC.clear();
+	}
+
+	private SamplingTurboFilter filter(int rate) {
+		SamplingTurboFilter filter = new SamplingTurboFilter();
+		filter.setLoggers("com.example.walletapi.security");
+		filter.setRate(rate);
+		filter.start();
+		return filter;
+	}
+
+	@Test
+	public void testRequestIsLoggedCompletelyOrNotAtAll() {
+		// Arrange
+		SamplingTurboFilter filter = this.filter(2);
+		List<FilterReply> sampled = new ArrayList<>();
+		List<FilterReply> notSampled = new ArrayList<>();
+
+		// Act
+		for (int i = 0; i < 100; i++) {
+			MDC.put(SamplingTurboFilter.MDC_KEY, "true");
+			sampled.add(filter.decide(null, this.logger, Level.DEBUG, "event", null, null));
+			MDC.put(SamplingTurboFilter.MDC_KEY, "false");
+			notSampled.add(filter.decide(null, this.logger, Level.DEBUG, "event", null, null));
+		}
+		FilterReply warning = filter.decide(null, this.logger, Level.WARN, "event", null, null);
+
+		// Assert
+		assertTrue(sampled.stream().allMatch(reply -> reply == FilterReply.NEUTRAL));
+		assertTrue(notSampled.stream().allMatch(reply -> reply == FilterReply.DENY));
+		assertEquals(FilterReply.NEUTRAL, warning);
+	}
+
+	@Test
+	public void testFilterPutsItsDecisionInTheMdcDuringTheRequest() throws Exception {
+		// Arrange
+		LogSamplingFilter filter = new LogSamplingFilter(1);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/wallet/v1/protected/balance");
+		List<String> seen = new ArrayList<>();
+
+		// Act
+		filter.doFilter(request, new MockHttpServletResponse(),
+				(req, res) -> seen.add(MDC.get(SamplingTurboFilter.MDC_KEY)));
+
+		// Assert
+		assertEquals(List.of("true"), seen);
+		assertNull(MDC.get(SamplingTurboFilter.MDC_KEY));
+	}
+}
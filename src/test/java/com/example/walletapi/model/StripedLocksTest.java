@@ -0,0 +1,101 @@
+package com.example.walletapi.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.walletapi.model.impl.StripedLocks;
+
+public class StripedLocksTest {
+
+	@Test
+	public void testRoundsUpToPowerOfTwo() {
+		assertEquals(1, new StripedLocks(0).getStripes());
+		assertEquals(1, new StripedLocks(1).getStripes());
+		assertEquals(1024, new StripedLocks(1000).getStripes());
+		assertEquals(1024, new StripedLocks(1024).getStripes());
+	}
+
+	@Test
+	public void testOppositeTransfersNeverDeadlock() throws Exception {
+		// Arrange (few stripes, so wallets often share one)
+		StripedLocks locks = new StripedLocks(4);
+		UUID[] wallets = new UUID[16];
+		for (int i = 0; i < wallets.length; i++) {
+			wallets[i] = UUID.randomUUID();
+		}
+		AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+
+		// Act (every thread locks pairs in the opposite order of its neighbour)
+		for (int t = 0; t < threads.length; t++) {
+			boolean reversed = t % 2 == 0;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 20000; i++) {
+					UUID a = wallets[i % wallets.length];
+					UUID b = wallets[(i * 7 + 3) % wallets.length];
+					UUID first = reversed ? b : a;
+					UUID second = reversed ? a : b;
+					try {
+						if (!locks.lock(first, second, System.currentTimeMillis() + 5000)) {
+							failures.incrementAndGet();
+							continue;
+						}
+						locks.unlock(first, second);
+					} catch (InterruptedException e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join(30000);
+		}
+
+		// Assert
+		for (Thread thread : threads) {
+			assertFalse(thread.isAlive(), "Deadlocked");
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void testGivesUpAtTimeout() throws Exception {
+		// Arrange
+		StripedLocks locks = new StripedLocks(1);
+		UUID a = UUID.randomUUID();
+		UUID b = UUID.randomUUID();
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			try {
+				locks.lock(a, b, System.currentTimeMillis() + 1000);
+				held.countDown();
+				release.await();
+				locks.unlock(a, b);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		holder.start();
+		held.await();
+
+		// Act
+		long started = System.currentTimeMillis();
+		boolean locked = locks.lock(b, a, started + 100);
+		long waited = System.currentTimeMillis() - started;
+		release.countDown();
+		holder.join();
+
+		// Assert
+		assertFalse(locked);
+		assertTrue(waited >= 90, "Waited " + waited + " ms");
+		assertTrue(locks.lock(b, a, System.currentTimeMillis() + 100));
+		locks.unlock(b, a);
+	}
+}
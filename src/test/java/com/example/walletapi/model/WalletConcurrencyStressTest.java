@@ -0,0 +1,296 @@
+package com.example.walletapi.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.example.walletapi.exception.BadRequestException;
+import com.example.walletapi.exception.InsufficientFundsException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.impl.StripedLocks;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+
+/**
+ * Hammers real wallets from many threads and checks the invariants the
+ * transfer protocol is supposed to guarantee, no matter how the threads
+ * interleave:
+ *
+ * <ul>
+ * <li>No money is created or destroyed</li>
+ * <li>No balance is ever negative, not even momentarily</li>
+ * <li>Every balance is the sum of its ledger once things have settled, and
+ * while they haven't, the balance is never ahead of the ledger (debits are
+ * reserved before they're appended, credits are appended before they're
+ * spendable)</li>
+ * <li>Ledgers are append-only with dense sequences, and every transfer is in
+ * exactly the sender's and the recipient's ledger, validated</li>
+ * </ul>
+ *
+ * Every test runs with optimistic (retrying) and serialized (locked)
+ * reservations, and with the locking engine (both wallets locked). Rounds start all threads on a barrier to maximize overlap, and
+ * each round uses a new seed. Set -Dstress.rounds to run longer.
+ */
+public class WalletConcurrencyStressTest {
+
+	private static final int ROUNDS = Integer.getInteger("stress.rounds", 5);
+	private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+
+	private WalletFactory walletFactory(String engine) {
+		if ("locking".equals(engine)) {
+			return new WalletFactory(this.transferFactory, List.of(), List.of(), new StripedLocks(64));
+		}
+		boolean serialized = "serialized".equals(engine);
+		return new WalletFactory(this.transferFactory, List.of(), List.of(walletId -> serialized));
+	}
+
+	private WalletInterface fundedWallet(WalletFactory factory, BigDecimal funds) {
+		WalletInterface wallet = factory.generateNew("stress");
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), funds));
+		return wallet;
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@ValueSource(strings = { "optimistic", "serialized", "locking" })
+	public void testRandomTransfersPreserveInvariants(String engine) throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			// Arrange
+			long seed = System.nanoTime();
+			WalletFactory factory = this.walletFactory(engine);
+			List<WalletInterface> wallets = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				wallets.add(this.fundedWallet(factory, new BigDecimal("100.00")));
+			}
+			BigDecimal total = new BigDecimal("800.00");
+			// Receiving into this one always fails, which exercises the revert path
+			WalletInterface broken = mock(WalletInterface.class);
+			when(broken.getId()).thenReturn(UUID.randomUUID());
+			doThrow(new IllegalStateException("Broken wallet")).when(broken).receiveMoney(any());
+
+			AtomicBoolean running = new AtomicBoolean(true);
+			ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+			Thread observer = new Thread(() -> {
+				while (running.get()) {
+					for (WalletInterface wallet : wallets) {
+						if (wallet.getBalance().signum() < 0) {
+							violations.add("Negative balance " + wallet.getBalance() + " in " + wallet.getId());
+						}
+					}
+				}
+			});
+
+			// Act
+			observer.start();
+			runConcurrently(THREADS, thread -> {
+				Random random = new Random(seed + thread);
+				for (int i = 0; i < 500; i++) {
+					WalletInterface from = wallets.get(random.nextInt(wallets.size()));
+					WalletInterface to = random.nextInt(50) == 0 ? broken
+							: wallets.get(random.nextInt(wallets.size()));
+					// Sometimes more than any wallet has
+					BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(random.nextInt(10) == 0 ? 1000 : 30),
+							2);
+					try {
+						from.sendMoney(to, amount);
+					} catch (InsufficientFundsException | ResourceConflictException e) {
+						// Both are fine, as long as nothing leaked
+					} catch (BadRequestException e) {
+						assertSame(from, to, "Only transfers to self are bad requests");
+					}
+				}
+			});
+			running.set(false);
+			observer.join();
+
+			// Assert
+			assertTrue(violations.isEmpty(), "Seed " + seed + ": " + violations.peek());
+			assertSettled(wallets, total, "Seed " + seed);
+		}
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@ValueSource(strings = { "optimistic", "serialized", "locking" })
+	public void testConcurrentSendsNeverDoubleSpend(String engine) throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			// Arrange
+			WalletFactory factory = this.walletFactory(engine);
+			WalletInterface source = this.fundedWallet(factory, new BigDecimal("50"));
+			WalletInterface destination = this.fundedWallet(factory, BigDecimal.ZERO);
+			AtomicInteger sent = new AtomicInteger();
+			AtomicInteger refused = new AtomicInteger();
+
+			// Act (each thread tries to send 1 more times than the wallet can afford)
+			int attemptsPerThread = 60 / THREADS + 1;
+			runConcurrently(THREADS, thread -> {
+				for (int i = 0; i < attemptsPerThread; i++) {
+					try {
+						source.sendMoney(destination, BigDecimal.ONE);
+						sent.incrementAndGet();
+					} catch (InsufficientFundsException | ResourceConflictException e) {
+						refused.incrementAndGet();
+					}
+				}
+			});
+
+			// Assert
+			assertEquals(THREADS * attemptsPerThread, sent.get() + refused.get());
+			assertTrue(sent.get() <= 50, "Sent " + sent.get() + " but only 50 were available");
+			assertEquals(new BigDecimal(50 - sent.get()), source.getBalance());
+			assertEquals(new BigDecimal(sent.get()), destination.getBalance());
+			assertSettled(List.of(source, destination), new BigDecimal("50"), "Round " + round);
+		}
+	}
+
+	/**
+	 * Reads a balance and a ledger in the order where the protocol guarantees the
+	 * balance is never ahead of the ledger, while transfers are in flight:
+	 *
+	 * <ul>
+	 * <li>A wallet which only receives: balance first (credits only happen after
+	 * the entry is appended, and the ledger only grows)</li>
+	 * <li>A wallet which only sends: ledger first (debits are reserved before the
+	 * entry is appended, and the balance only shrinks, except for reverts which
+	 * only give back what was reserved)</li>
+	 * </ul>
+	 */
+	@ParameterizedTest(name = "{0}")
+	@ValueSource(strings = { "optimistic", "serialized", "locking" })
+	public void testBalanceNeverAheadOfLedger(String engine) throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			// Arrange
+			WalletFactory factory = this.walletFactory(engine);
+			List<WalletInterface> senders = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				senders.add(this.fundedWallet(factory, new BigDecimal("1000")));
+			}
+			WalletInterface receiver = this.fundedWallet(factory, BigDecimal.ZERO);
+			WalletInterface sender = senders.get(0);
+			AtomicBoolean running = new AtomicBoolean(true);
+			ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+			Thread observer = new Thread(() -> {
+				while (running.get()) {
+					BigDecimal received = receiver.getBalance();
+					BigDecimal receivedInLedger = sum(receiver);
+					if (received.compareTo(receivedInLedger) > 0) {
+						violations.add("Receiver balance " + received + " ahead of ledger " + receivedInLedger);
+					}
+					BigDecimal sentInLedger = sum(sender);
+					BigDecimal remaining = sender.getBalance();
+					if (remaining.compareTo(sentInLedger) > 0) {
+						violations.add("Sender balance " + remaining + " ahead of ledger " + sentInLedger);
+					}
+				}
+			});
+
+			// Act (every thread sends from its own wallet, the first one is observed)
+			observer.start();
+			runConcurrently(THREADS, thread -> {
+				WalletInterface from = senders.get(thread);
+				for (int i = 0; i < 200; i++) {
+					from.sendMoney(receiver, BigDecimal.ONE);
+				}
+			});
+			running.set(false);
+			observer.join();
+
+			// Assert
+			assertTrue(violations.isEmpty(), violations.peek());
+			List<WalletInterface> all = new ArrayList<>(senders);
+			all.add(receiver);
+			assertSettled(all, new BigDecimal(1000 * THREADS), "Round " + round);
+		}
+	}
+
+	/**
+	 * Checks the invariants which must hold once no transfers are in flight.
+	 */
+	private static void assertSettled(List<WalletInterface> wallets, BigDecimal total, String context) {
+		BigDecimal sum = BigDecimal.ZERO;
+		Map<UUID, Set<UUID>> ledgerIds = new HashMap<>();
+		Map<UUID, TransferInterface> transfers = new HashMap<>();
+		for (WalletInterface wallet : wallets) {
+			List<TransferInterface> ledger = wallet.getLedger();
+			assertEquals(ledger.size(), wallet.getLedgerSequence(), context + ": sequence of " + wallet.getId());
+			assertTrue(wallet.getBalance().signum() >= 0, context + ": negative balance in " + wallet.getId());
+			assertEquals(0, sum(wallet).compareTo(wallet.getBalance()),
+					context + ": balance of " + wallet.getId() + " doesn't match its ledger");
+			Set<UUID> ids = new HashSet<>();
+			for (TransferInterface transfer : ledger) {
+				assertTrue(transfer.getTimestamp() > 0, context + ": unvalidated transfer " + transfer.getId());
+				assertTrue(ids.add(transfer.getId()), context + ": duplicate transfer " + transfer.getId());
+				transfers.put(transfer.getId(), transfer);
+			}
+			ledgerIds.put(wallet.getId(), ids);
+			sum = sum.add(wallet.getBalance());
+		}
+		assertEquals(0, total.compareTo(sum), context + ": money was created or destroyed");
+		for (TransferInterface transfer : transfers.values()) {
+			if (transfer.getSender() != null) {
+				assertTrue(ledgerIds.get(transfer.getSender()).contains(transfer.getId()),
+						context + ": transfer " + transfer.getId() + " missing from sender's ledger");
+			}
+			assertTrue(ledgerIds.get(transfer.getRecipient()).contains(transfer.getId()),
+					context + ": transfer " + transfer.getId() + " missing from recipient's ledger");
+		}
+	}
+
+	private static BigDecimal sum(WalletInterface wallet) {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (TransferInterface transfer : wallet.getLedger()) {
+			sum = sum.add(transfer.getAmount(wallet.getId()));
+		}
+		return sum;
+	}
+
+	private interface Worker {
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Runs the worker on a number of threads which all start at the same time,
+	 * and rethrows the first failure.
+	 */
+	private static void runConcurrently(int threads, Worker worker) throws Exception {
+		CyclicBarrier start = new CyclicBarrier(threads);
+		ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		List<Thread> running = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			Thread th = new Thread(() -> {
+				try {
+					start.await();
+					worker.run(thread);
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}, "stress-" + t);
+			th.start();
+			running.add(th);
+		}
+		for (Thread th : running) {
+			th.join();
+		}
+		if (!failures.isEmpty()) {
+			throw new AssertionError("Worker failed", failures.peek());
+		}
+	}
+}
@@ -9,6 +9,12 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import static org.mockito.Mockito.*;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -21,11 +27,16 @@ import com.example.walletapi.dto.responses.BalanceResponseDto;
 import com.example.walletapi.dto.responses.LedgerResponseDto;
 import com.example.walletapi.dto.responses.TransferResponseDto;
 import com.example.walletapi.exception.InsufficientFundsException;
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.model.impl.StripedLocks;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
 import com.example.walletapi.model.impl.Wallet;
 import com.example.walletapi.model.TransferInterface;
 import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
 import com.example.walletapi.model.WalletInterface;
 import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.monitoring.jfr.JfrSupport;
+import com.example.walletapi.monitoring.jfr.TransferEvent;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 
@@ -187,6 +198,78 @@ public class WalletTest {
 		assertTrue(ledgerDto.getTimestamp() > 0);
 	}
 
+	@Test
+	public void testGetLedgerDto_Since() {
+		// Arrange
+		when(mockTransfer.getAmount()).thenReturn(new BigDecimal("10.00"));
+		wallet.receiveMoney(mockTransfer);
+		wallet.receiveMoney(mockTransfer);
+		wallet.receiveMoney(mockTransfer);
+
+		// Act
+		LedgerResponseDto full = wallet.getLedgerDto();
+		LedgerResponseDto delta = wallet.getLedgerDto(2);
+		LedgerResponseDto upToDate = wallet.getLedgerDto(3);
+		LedgerResponseDto ahead = wallet.getLedgerDto(10);
+
+		// Assert
+		assertEquals(3, wallet.getLedgerSequence());
+		assertEquals(3, full.getTransfers().size());
+		assertEquals(3, full.getSequence());
+		assertEquals(1, delta.getTransfers().size());
+		assertEquals(3, delta.getSequence());
+		assertTrue(upToDate.getTransfers().isEmpty());
+		assertEquals(3, upToDate.getSequence());
+		assertTrue(ahead.getTransfers().isEmpty());
+		assertEquals(3, ahead.getSequence()); // lower than 'since' tells client to resync
+		assertThrows(IllegalArgumentException.class, () -> wallet.getLedgerDto(-1));
+	}
+
+	@Test
+	public void testVersionChangesWithLedger() {
+		// Arrange
+		long initialVersion = wallet.getVersion();
+		when(mockTransfer.getAmount()).thenReturn(new BigDecimal("10.00"));
+
+		// Act
+		wallet.getBalanceDto();
+		wallet.getLedgerDto();
+		long versionAfterReads = wallet.getVersion();
+		wallet.receiveMoney(mockTransfer);
+
+		// Assert
+		assertEquals(initialVersion, versionAfterReads);
+		assertTrue(wallet.getVersion() > versionAfterReads);
+	}
+
+	@Test
+	public void testSendMoney_RecordsJfrEvent() throws Exception {
+		// Arrange
+		Path file = Files.createTempFile("wallet-test", ".jfr");
+		List<RecordedEvent> events;
+
+		// Act
+		try (Recording recording = new Recording()) {
+			recording.enable(TransferEvent.class).withThreshold(Duration.ZERO);
+			recording.start();
+			assertThrows(InsufficientFundsException.class,
+					() -> wallet.sendMoney(destinationWallet, new BigDecimal("10.00")));
+			recording.stop();
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+
+		// Assert
+		assertEquals(1, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals(TransferEvent.INSUFFICIENT_FUNDS, event.getString("outcome"));
+		assertEquals(2, event.getInt("amountBucket"));
+		assertEquals(JfrSupport.hashWalletId(wallet.getId()), event.getLong("sender"));
+		assertNotEquals(wallet.getId().getLeastSignificantBits(), event.getLong("sender"));
+	}
+
 	@Test
 	public void testSendMoney_Success() throws InsufficientFundsException {
 		// Arrange
@@ -226,6 +309,73 @@ public class WalletTest {
 		assertEquals(1, destinationWallet.getLedger().size()); // transfer in
 	}
 
+	@Test
+	public void testSendMoney_LockingEngine() {
+		// Arrange
+		TransferFactoryInterface transferFactory = new TransferFactory();
+		WalletFactory lockingFactory = new WalletFactory(transferFactory, List.of(), List.of(), new StripedLocks(16));
+		WalletInterface source = lockingFactory.generateNew("source");
+		WalletInterface destination = lockingFactory.generateNew("destination");
+		source.receiveMoney(transferFactory.fromSendRequest(null, source.getId(), new BigDecimal("100.00")));
+		long destinationVersion = destination.getVersion();
+
+		// Act
+		TransferResponseDto result = source.sendMoney(destination, new BigDecimal("30.00"));
+
+		// Assert
+		assertEquals(new BigDecimal("70.00"), result.getRemainingBalance());
+		assertEquals(new BigDecimal("70.00"), source.getBalance());
+		assertEquals(new BigDecimal("30.00"), destination.getBalance());
+		assertEquals(2, source.getLedgerSequence());
+		assertEquals(1, destination.getLedgerSequence());
+		TransferInterface transfer = destination.getLedger().get(0);
+		assertSame(transfer, source.getLedger().get(1));
+		assertTrue(transfer.getTimestamp() > 0);
+		assertTrue(destination.getVersion() > destinationVersion);
+	}
+
+	@Test
+	public void testSendMoney_LockingEngine_InsufficientFundsChangesNothing() {
+		// Arrange
+		TransferFactoryInterface transferFactory = new TransferFactory();
+		WalletFactory lockingFactory = new WalletFactory(transferFactory, List.of(), List.of(), new StripedLocks(16));
+		WalletInterface source = lockingFactory.generateNew("source");
+		WalletInterface destination = lockingFactory.generateNew("destination");
+		source.receiveMoney(transferFactory.fromSendRequest(null, source.getId(), new BigDecimal("10.00")));
+		long sourceVersion = source.getVersion();
+
+		// Act & Assert
+		assertThrows(InsufficientFundsException.class,
+				() -> source.sendMoney(destination, new BigDecimal("10.01")));
+		assertEquals(new BigDecimal("10.00"), source.getBalance());
+		assertEquals(sourceVersion, source.getVersion());
+		assertEquals(BigDecimal.ZERO, destination.getBalance());
+		assertEquals(0, destination.getLedgerSequence());
+	}
+
+	@Test
+	public void testSendMoney_LockingEngine_FailedValidationChangesNothing() {
+		// Arrange (the transfer is already validated, so validating it again fails)
+		TransferFactoryInterface transferFactory = spy(new TransferFactory());
+		WalletFactory lockingFactory = new WalletFactory(transferFactory, List.of(), List.of(), new StripedLocks(16));
+		WalletInterface source = lockingFactory.generateNew("source");
+		WalletInterface destination = lockingFactory.generateNew("destination");
+		source.receiveMoney(transferFactory.fromSendRequest(null, source.getId(), new BigDecimal("100.00")));
+		BigDecimal amount = new BigDecimal("30.00");
+		TransferInterface validated = new TransferFactory().fromSendRequest(source.getId(), destination.getId(), amount)
+				.validate();
+		doReturn(validated).when(transferFactory).fromSendRequest(source.getId(), destination.getId(), amount);
+		long sourceVersion = source.getVersion();
+
+		// Act & Assert
+		assertThrows(ResourceConflictException.class, () -> source.sendMoney(destination, amount));
+		assertEquals(new BigDecimal("100.00"), source.getBalance());
+		assertEquals(sourceVersion, source.getVersion());
+		assertEquals(1, source.getLedgerSequence());
+		assertEquals(BigDecimal.ZERO, destination.getBalance());
+		assertEquals(0, destination.getLedgerSequence());
+	}
+
 	@Test
 	public void testSendMoney_InsufficientFunds() {
 		// Arrange
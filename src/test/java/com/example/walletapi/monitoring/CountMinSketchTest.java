@@ -0,0 +1,70 @@
+package com.example.walletapi.monitoring;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class CountMinSketchTest {
+
+	@Test
+	public void testEstimateNeverBelowActual() {
+		// Arrange
+		CountMinSketch sketch = new CountMinSketch(4, 64);
+		UUID[] wallets = new UUID[500];
+		for (int i = 0; i < wallets.length; i++) {
+			wallets[i] = UUID.randomUUID();
+		}
+
+		// Act
+		for (int i = 0; i < wallets.length; i++) {
+			sketch.add(wallets[i], i % 7 + 1);
+		}
+
+		// Assert
+		for (int i = 0; i < wallets.length; i++) {
+			assertTrue(sketch.estimate(wallets[i]) >= i % 7 + 1);
+		}
+	}
+
+	@Test
+	public void testHeavyHitterIsAccurate() {
+		// Arrange
+		CountMinSketch sketch = new CountMinSketch(4, 1024);
+		UUID hot = UUID.randomUUID();
+
+		// Act
+		for (int i = 0; i < 1000; i++) {
+			sketch.add(UUID.randomUUID(), 1);
+			sketch.add(hot, 10);
+		}
+
+		// Assert (total weight is 11000, so the error should be well below 2/1024 of it)
+		long estimate = sketch.estimate(hot);
+		assertTrue(estimate >= 10000);
+		assertTrue(estimate < 10100, "estimate was " + estimate);
+	}
+
+	@Test
+	public void testDecayHalves() {
+		// Arrange
+		CountMinSketch sketch = new CountMinSketch(2, 16);
+		UUID wallet = UUID.randomUUID();
+		sketch.add(wallet, 100);
+
+		// Act
+		sketch.decay();
+
+		// Assert
+		assertEquals(50, sketch.estimate(wallet));
+	}
+
+	@Test
+	public void testWidthRoundedToPowerOfTwo() {
+		assertEquals(2048, new CountMinSketch(1, 2000).getWidth());
+		assertEquals(2048, new CountMinSketch(1, 2048).getWidth());
+		assertEquals(1, new CountMinSketch(1, 1).getWidth());
+		assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 16));
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.walletapi.monitoring;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class HotWalletDetectorTest {
+
+	@Test
+	public void testFindsHottestWallets() {
+		// Arrange
+		HotWalletDetector detector = new HotWalletDetector(3, 4, 1024, 10, false, 1000);
+		UUID bank = UUID.randomUUID();
+		UUID merchant = UUID.randomUUID();
+
+		// Act
+		for (int i = 0; i < 2000; i++) {
+			detector.record(UUID.randomUUID(), 1);
+			if (i % 2 == 0) {
+				detector.record(bank, 10);
+			}
+			if (i % 4 == 0) {
+				detector.record(merchant, 1);
+			}
+		}
+
+		// Assert
+		List<HotWalletDetector.HotWallet> top = detector.getTop();
+		assertEquals(3, top.size());
+		assertEquals(bank, top.get(0).walletId());
+		assertEquals(merchant, top.get(1).walletId());
+		assertTrue(top.get(0).score() >= 10000);
+	}
+
+	@Test
+	public void testMitigatesOnlyWhenEnabledAndAboveThreshold() {
+		// Arrange
+		HotWalletDetector enabled = new HotWalletDetector(5, 4, 1024, 10, true, 1000);
+		HotWalletDetector disabled = new HotWalletDetector(5, 4, 1024, 10, false, 1000);
+		UUID hot = UUID.randomUUID();
+		UUID lukewarm = UUID.randomUUID();
+		for (int i = 0; i < 100; i++) {
+			enabled.record(hot, 10);
+			disabled.record(hot, 10);
+			enabled.record(lukewarm, 1);
+		}
+
+		// Act
+		enabled.decay();
+		disabled.decay();
+
+		// Assert
+		assertTrue(enabled.isHighContention(hot));
+		assertFalse(enabled.isHighContention(lukewarm));
+		assertFalse(disabled.isHighContention(hot));
+	}
+
+	@Test
+	public void testMitigationEndsWhenTrafficStops() {
+		// Arrange
+		HotWalletDetector detector = new HotWalletDetector(5, 4, 1024, 10, true, 1000);
+		UUID hot = UUID.randomUUID();
+		detector.record(hot, 1000);
+		detector.decay();
+		assertTrue(detector.isHighContention(hot));
+
+		// Act (500 -> stays, since it's not below half the threshold yet)
+		detector.decay();
+		boolean afterOneQuietInterval = detector.isHighContention(hot);
+		detector.decay();
+
+		// Assert
+		assertTrue(afterOneQuietInterval);
+		assertFalse(detector.isHighContention(hot));
+	}
+}
@@ -0,0 +1,205 @@
+package com.example.walletapi.monitoring;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.monitoring.LedgerAudit.AuditReport;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LedgerAuditTest {
+
+	private static final BigDecimal INITIAL_DEPOSIT = new BigDecimal("1000");
+
+	@TempDir
+	Path dataDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<WalletInterface> inMemory = new ArrayList<>();
+	private final WalletServiceInterface walletService = mock(WalletServiceInterface.class);
+
+	public LedgerAuditTest() {
+		when(this.walletService.getCachedWallets()).thenReturn(this.inMemory);
+	}
+
+	private LedgerAudit audit() {
+		return new LedgerAudit(this.walletService, this.transferFactory, new JsonFileWalletStore(this.dataDir),
+				INITIAL_DEPOSIT, 4, 0, 10);
+	}
+
+	private WalletInterface bank() {
+		WalletInterface bank = this.walletFactory.generateNew("bank");
+		bank.receiveMoney(this.transferFactory.fromSendRequest(null, bank.getId(), INITIAL_DEPOSIT));
+		return bank;
+	}
+
+	private File save(WalletInterface wallet) throws Exception {
+		File file = this.dataDir.resolve(wallet.getId() + ".json").toFile();
+		this.objectMapper.writeValue(file, wallet);
+		return file;
+	}
+
+	@Test
+	public void testConsistentWalletsPass() throws Exception {
+		// Arrange (bob is only on disk, alice is both in memory and on disk)
+		WalletInterface bank = this.bank();
+		WalletInterface alice = this.walletFactory.generateNew("alice");
+		WalletInterface bob = this.walletFactory.generateNew("bob");
+		bank.sendMoney(alice, new BigDecimal("300.50"));
+		alice.sendMoney(bob, new BigDecimal("100"));
+		bob.sendMoney(bank, new BigDecimal("0.10"));
+		this.save(alice);
+		this.save(bob);
+		this.inMemory.add(bank);
+		this.inMemory.add(alice);
+
+		// Act
+		AuditReport report = this.audit().runAudit();
+
+		// Assert
+		assertTrue(report.passed(), report.toString());
+		assertTrue(report.transfersMatched());
+		assertTrue(report.conserved());
+		assertTrue(report.settled());
+		assertEquals(3, report.wallets());
+		assertEquals(1, report.walletsOnDisk());
+		assertEquals(7, report.entries());
+		assertEquals(3, report.transfers());
+		assertEquals(0, INITIAL_DEPOSIT.compareTo(report.minted()));
+		assertEquals(0, INITIAL_DEPOSIT.compareTo(report.balanceTotal()));
+		assertTrue(report.problems().isEmpty());
+	}
+
+	@Test
+	public void testDetectsTransferMissingFromOneLedger() throws Exception {
+		// Arrange (alice's file was saved before she received anything)
+		WalletInterface bank = this.bank();
+		WalletInterface alice = this.walletFactory.generateNew("alice");
+		this.save(alice);
+		bank.sendMoney(alice, new BigDecimal("300"));
+		this.inMemory.add(bank);
+
+		// Act
+		AuditReport report = this.audit().runAudit();
+
+		// Assert
+		assertFalse(report.passed());
+		assertFalse(report.transfersMatched());
+		assertTrue(report.conserved());
+		assertFalse(report.settled());
+		assertEquals(0, new BigDecimal("700").compareTo(report.balanceTotal()));
+	}
+
+	@Test
+	public void testDetectsMoneyFromNowhere() throws Exception {
+		// Arrange
+		WalletInterface bank = this.bank();
+		WalletInterface alice = this.walletFactory.generateNew("alice");
+		alice.receiveMoney(this.transferFactory.fromSendRequest(null, alice.getId(), BigDecimal.TEN));
+		this.inMemory.add(bank);
+		this.inMemory.add(alice);
+
+		// Act
+		AuditReport report = this.audit().runAudit();
+
+		// Assert
+		assertFalse(report.passed());
+		assertTrue(report.transfersMatched());
+		assertFalse(report.conserved());
+		assertEquals(0, new BigDecimal("1010").compareTo(report.minted()));
+	}
+
+	@Test
+	public void testDetectsTamperedFiles() throws Exception {
+		// Arrange (alice's balance is bumped and bob has a transfer twice)
+		WalletInterface bank = this.bank();
+		WalletInterface alice = this.walletFactory.generateNew("alice");
+		WalletInterface bob = this.walletFactory.generateNew("bob");
+		bank.sendMoney(alice, new BigDecimal("300"));
+		bank.sendMoney(bob, new BigDecimal("5"));
+		this.inMemory.add(bank);
+		TypeReference<Map<String, Object>> type = new TypeReference<>() {
+		};
+		File aliceFile = this.save(alice);
+		Map<String, Object> aliceData = this.objectMapper.readValue(aliceFile, type);
+		aliceData.put("balance", 3000);
+		this.objectMapper.writeValue(aliceFile, aliceData);
+		File bobFile = this.save(bob);
+		Map<String, Object> bobData = this.objectMapper.readValue(bobFile, type);
+		@SuppressWarnings("unchecked")
+		List<Object> bobLedger = (List<Object>) bobData.get("ledger");
+		bobLedger.add(bobLedger.get(0));
+		bobData.put("balance", 10);
+		this.objectMapper.writeValue(bobFile, bobData);
+
+		// Act
+		AuditReport report = this.audit().runAudit();
+
+		// Assert
+		assertFalse(report.passed());
+		assertFalse(report.transfersMatched());
+		assertEquals(2, report.problemCount());
+		assertTrue(report.problems().stream().anyMatch(p -> p.contains("Balance of wallet " + alice.getId())),
+				report.problems().toString());
+		assertTrue(report.problems().stream().anyMatch(p -> p.contains("more than once")),
+				report.problems().toString());
+	}
+
+	@Test
+	public void testDetectsTransfersInTheWrongLedger() throws Exception {
+		// Arrange
+		WalletInterface bank = this.bank();
+		WalletInterface alice = this.walletFactory.generateNew("alice");
+		WalletInterface mallory = this.walletFactory.generateNew("mallory");
+		bank.sendMoney(alice, new BigDecimal("300"));
+		mallory.receiveMoney(this.transferFactory.fromSendRequest(bank.getId(), alice.getId(), BigDecimal.ONE));
+		this.inMemory.add(bank);
+		this.inMemory.add(alice);
+		this.inMemory.add(mallory);
+
+		// Act
+		AuditReport report = this.audit().runAudit();
+
+		// Assert
+		assertFalse(report.passed());
+		assertTrue(report.problems().stream().anyMatch(p -> p.contains("between other wallets")),
+				report.problems().toString());
+	}
+
+	@Test
+	public void testReportsOnlyOneAuditAtATime() throws Exception {
+		// Arrange
+		this.inMemory.add(this.bank());
+		LedgerAudit audit = this.audit();
+
+		// Act
+		boolean first = audit.start();
+		boolean second = audit.start();
+		while (audit.isRunning()) {
+			Thread.sleep(10);
+		}
+
+		// Assert
+		assertTrue(first);
+		assertFalse(second);
+		assertTrue(audit.getLastReport().passed());
+	}
+}
@@ -0,0 +1,214 @@
+package com.example.walletapi.monitoring;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.service.WalletServiceInterface;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LedgerReconcilerTest {
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+	private final List<WalletInterface> wallets = new ArrayList<>();
+	private final WalletServiceInterface walletService = mock(WalletServiceInterface.class);
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	public LedgerReconcilerTest() {
+		when(this.walletService.getCachedWallets()).thenReturn(this.wallets);
+	}
+
+	private WalletInterface fundedWallet(BigDecimal funds) {
+		WalletInterface wallet = this.walletFactory.generateNew("reconcile");
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), funds));
+		this.wallets.add(wallet);
+		return wallet;
+	}
+
+	/**
+	 * A wallet whose balance is whatever we say, regardless of its ledger.
+	 */
+	private WalletInterface driftingWallet(BigDecimal balance, BigDecimal... ledger) {
+		UUID id = UUID.randomUUID();
+		List<TransferInterface> transfers = new ArrayList<>();
+		for (BigDecimal amount : ledger) {
+			transfers.add(this.transferFactory.fromSendRequest(null, id, amount));
+		}
+		WalletInterface wallet = mock(WalletInterface.class);
+		when(wallet.getId()).thenReturn(id);
+		when(wallet.getVersion()).thenReturn(1L);
+		when(wallet.getLedgerSequence()).thenReturn((long) transfers.size());
+		when(wallet.getLedger(anyLong(), anyInt())).thenAnswer(invocation -> {
+			int since = ((Long) invocation.getArgument(0)).intValue();
+			int limit = invocation.getArgument(1);
+			return new ArrayList<>(transfers.subList(since, Math.min(transfers.size(), since + limit)));
+		});
+		when(wallet.getBalance()).thenReturn(balance);
+		this.wallets.add(wallet);
+		return wallet;
+	}
+
+	/**
+	 * Runs slices until a full pass has been completed.
+	 */
+	private void runPass(LedgerReconciler reconciler) {
+		for (int i = 0; i < 100; i++) {
+			long before = this.registry.get("wallet.reconciler.pass").timer().count();
+			reconciler.runSlice();
+			if (this.registry.get("wallet.reconciler.pass").timer().count() > before) {
+				return;
+			}
+		}
+		fail("Pass never completed");
+	}
+
+	@Test
+	public void testConsistentWalletsHaveNoDrift() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 1000);
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(new BigDecimal("10"));
+		alice.sendMoney(bob, new BigDecimal("30"));
+		bob.sendMoney(alice, new BigDecimal("5"));
+
+		// Act
+		this.runPass(reconciler);
+
+		// Assert
+		assertNull(reconciler.getDrift(alice.getId()));
+		assertNull(reconciler.getDrift(bob.getId()));
+		assertEquals(3, reconciler.getVerifiedSequence(alice.getId()));
+		assertEquals(3, reconciler.getVerifiedSequence(bob.getId()));
+		assertEquals(0, this.registry.get("wallet.reconciler.drifting").gauge().value());
+	}
+
+	@Test
+	public void testOnlySumsNewEntries() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 1000);
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+		for (int i = 0; i < 10; i++) {
+			alice.sendMoney(bob, BigDecimal.ONE);
+		}
+		this.runPass(reconciler);
+		double before = this.registry.get("wallet.reconciler.entries").counter().count();
+
+		// Act
+		alice.sendMoney(bob, BigDecimal.ONE);
+		this.runPass(reconciler);
+
+		// Assert (one new entry in each ledger)
+		assertEquals(before + 2, this.registry.get("wallet.reconciler.entries").counter().count());
+		assertEquals(12, reconciler.getVerifiedSequence(alice.getId()));
+		assertNull(reconciler.getDrift(alice.getId()));
+	}
+
+	@Test
+	public void testResumesLongLedgersAcrossSlices() {
+		// Arrange (no time per slice, so every slice sums one chunk)
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 2, 0, 1000);
+		WalletInterface wallet = this.driftingWallet(new BigDecimal("5"), BigDecimal.ONE, BigDecimal.ONE,
+				BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+
+		// Act
+		reconciler.runSlice();
+		long afterOne = reconciler.getVerifiedSequence(wallet.getId());
+		this.runPass(reconciler);
+
+		// Assert
+		assertEquals(2, afterOne);
+		assertEquals(5, reconciler.getVerifiedSequence(wallet.getId()));
+		assertNull(reconciler.getDrift(wallet.getId()));
+		verify(wallet).getLedger(0, 2);
+		verify(wallet).getLedger(2, 2);
+		verify(wallet).getLedger(4, 2);
+	}
+
+	@Test
+	public void testBalanceAheadOfLedgerIsDriftImmediately() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 60000);
+		WalletInterface wallet = this.driftingWallet(new BigDecimal("15"), BigDecimal.TEN);
+
+		// Act
+		this.runPass(reconciler);
+
+		// Assert
+		assertEquals(0, new BigDecimal("5").compareTo(reconciler.getDrift(wallet.getId())));
+		assertEquals(1, this.registry.get("wallet.reconciler.drifting").gauge().value());
+		assertEquals(5, this.registry.get("wallet.reconciler.drift.amount").gauge().value());
+		assertEquals(1, this.registry.get("wallet.reconciler.drift.detected").counter().count());
+	}
+
+	@Test
+	public void testBalanceBehindLedgerIsOnlyDriftIfItStaysBehind() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 0);
+		WalletInterface stuck = this.driftingWallet(new BigDecimal("7"), BigDecimal.TEN);
+		WalletInterface inFlight = this.driftingWallet(new BigDecimal("7"), BigDecimal.TEN);
+
+		// Act (the in-flight transfer completes between the passes)
+		this.runPass(reconciler);
+		boolean suspectedEarly = reconciler.getDrift(stuck.getId()) != null;
+		when(inFlight.getVersion()).thenReturn(2L);
+		when(inFlight.getBalance()).thenReturn(BigDecimal.TEN);
+		this.runPass(reconciler);
+
+		// Assert
+		assertFalse(suspectedEarly);
+		assertEquals(0, new BigDecimal("-3").compareTo(reconciler.getDrift(stuck.getId())));
+		assertNull(reconciler.getDrift(inFlight.getId()));
+	}
+
+	@Test
+	public void testSkipsWalletsChangingWhileRead() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 0);
+		WalletInterface wallet = this.driftingWallet(new BigDecimal("15"), BigDecimal.TEN);
+		when(wallet.getVersion()).thenReturn(1L, 2L, 3L, 4L);
+
+		// Act
+		this.runPass(reconciler);
+
+		// Assert
+		assertNull(reconciler.getDrift(wallet.getId()));
+		assertEquals(1, this.registry.get("wallet.reconciler.busy").counter().count());
+	}
+
+	@Test
+	public void testDriftClearsWhenFixedOrGone() {
+		// Arrange
+		LedgerReconciler reconciler = new LedgerReconciler(this.walletService, this.registry, 512, 1000, 0);
+		WalletInterface fixed = this.driftingWallet(new BigDecimal("15"), BigDecimal.TEN);
+		WalletInterface gone = this.driftingWallet(new BigDecimal("15"), BigDecimal.TEN);
+		this.runPass(reconciler);
+		assertEquals(2, reconciler.getDrifting().size());
+
+		// Act
+		when(fixed.getVersion()).thenReturn(2L);
+		when(fixed.getBalance()).thenReturn(BigDecimal.TEN);
+		this.wallets.remove(gone);
+		this.runPass(reconciler);
+
+		// Assert
+		assertTrue(reconciler.getDrifting().isEmpty());
+		assertEquals(0, this.registry.get("wallet.reconciler.drifting").gauge().value());
+		assertEquals(0, this.registry.get("wallet.reconciler.drift.amount").gauge().value());
+	}
+}
@@ -0,0 +1,203 @@
+package com.example.walletapi.monitoring;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.exception.ResourceConflictException;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.service.impl.WalletService;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WalletMetricsTest {
+
+	@TempDir
+	Path dataDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final AtomicBoolean saveFails = new AtomicBoolean();
+	private WalletMetrics metrics;
+	private WalletService walletService;
+
+	@BeforeEach
+	public void setUp() {
+		HotWalletDetector hotWallets = new HotWalletDetector(10, 4, 1024, 10, false, 1000);
+		this.metrics = new WalletMetrics(this.registry, hotWallets);
+		ReflectionTestUtils.setField(this.metrics, "hotWalletRefreshInterval", 10L);
+		this.metrics.start();
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir) {
+			@Override
+			public long save(WalletInterface wallet) throws IOException {
+				if (WalletMetricsTest.this.saveFails.get()) {
+					throw new IOException("Disk full");
+				}
+				return super.save(wallet);
+			}
+		};
+		this.walletService = new WalletService(
+				new WalletFactory(this.transferFactory, List.of(this.metrics, hotWallets)), this.metrics, store);
+		ReflectionTestUtils.setField(this.walletService, "pipelineEnabled", true);
+		ReflectionTestUtils.setField(this.walletService, "pipelineRingSize", 16);
+		this.walletService.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.walletService.stop();
+		this.metrics.stop();
+	}
+
+	private WalletInterface fundedWallet(BigDecimal funds) {
+		WalletInterface wallet = this.walletService.createWallet("password");
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), funds));
+		return wallet;
+	}
+
+	/**
+	 * Replaces the balance of a wallet, to make it contended or fail without
+	 * having to race threads.
+	 */
+	private static void replaceBalance(WalletInterface wallet, AtomicReference<BigDecimal> balance) {
+		ReflectionTestUtils.setField(wallet, "balance", balance);
+	}
+
+	/**
+	 * A balance which is changed by "another thread" the first time it's checked,
+	 * so the sender has to retry the reservation.
+	 */
+	private static AtomicReference<BigDecimal> contendedBalance(BigDecimal funds) {
+		AtomicReference<BigDecimal> balance = new AtomicReference<>();
+		balance.set(new BigDecimal(funds.toString()) {
+			@Override
+			public int compareTo(BigDecimal other) {
+				balance.compareAndSet(this, new BigDecimal(funds.toString()));
+				return super.compareTo(other);
+			}
+		});
+		return balance;
+	}
+
+	private double count(String name) {
+		return this.registry.get(name).counter().count();
+	}
+
+	private long stageCount(String stage) {
+		return this.registry.get("wallet.transfer.stage").tag("stage", stage).timer().count();
+	}
+
+	/**
+	 * Waits for something done by a background thread to be reported.
+	 */
+	private static void await(Runnable assertion) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (true) {
+			try {
+				assertion.run();
+				return;
+			} catch (AssertionError | RuntimeException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	@Test
+	public void testTransferIsMeasured() throws Exception {
+		// Arrange (the first attempt to reserve the funds loses a race)
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+		replaceBalance(alice, contendedBalance(alice.getBalance()));
+
+		// Act
+		this.walletService.sendMoney(alice.getId(), bob.getId(), BigDecimal.TEN);
+
+		// Assert
+		assertEquals(1, this.count("wallet.transfers.completed"));
+		assertEquals(1, this.count("wallet.transfers.reservation.retries"));
+		assertEquals(0, this.count("wallet.transfers.reverts"));
+		assertEquals(0, this.count("wallet.transfers.conflicts"));
+		assertEquals(1, this.stageCount("lookup"));
+		assertEquals(1, this.stageCount("reserve"));
+		assertEquals(1, this.stageCount("receive"));
+		assertEquals(1, this.stageCount("append"));
+		// The pipeline saves both wallets before replying
+		assertTrue(this.stageCount("persist") >= 2);
+		assertEquals(2, this.registry.get("wallet.cached").gauge().value());
+		assertEquals(0, this.registry.get("wallet.pipeline.backlog").gauge().value());
+	}
+
+	@Test
+	public void testRevertedTransferIsMeasured() {
+		// Arrange (the recipient fails after the funds are reserved)
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+		replaceBalance(bob, new AtomicReference<>(new BigDecimal("0") {
+			@Override
+			public BigDecimal add(BigDecimal augend) {
+				throw new IllegalStateException("Recipient is broken");
+			}
+		}));
+
+		// Act & Assert
+		assertThrows(ResourceConflictException.class,
+				() -> this.walletService.sendMoney(alice.getId(), bob.getId(), BigDecimal.TEN));
+		assertEquals(0, this.count("wallet.transfers.completed"));
+		assertEquals(1, this.count("wallet.transfers.reverts"));
+		assertEquals(1, this.count("wallet.transfers.conflicts"));
+		assertEquals(0, new BigDecimal("100").compareTo(alice.getBalance()));
+	}
+
+	@Test
+	public void testFailedSaveIsMeasured() throws Exception {
+		// Arrange
+		WalletInterface alice = this.fundedWallet(BigDecimal.TEN);
+		await(() -> assertEquals(0, this.registry.get("wallet.persistence.pending").gauge().value()));
+		long persisted = this.stageCount("persist");
+		this.saveFails.set(true);
+
+		// Act
+		this.walletService.saveWallet(alice);
+
+		// Assert
+		await(() -> assertEquals(1, this.count("wallet.persistence.save.failures")));
+		await(() -> assertEquals(0, this.registry.get("wallet.persistence.pending").gauge().value()));
+		assertEquals(persisted, this.stageCount("persist"));
+		assertNotNull(this.registry.get("wallet.persistence.save.coalesced").functionCounter());
+	}
+
+	@Test
+	public void testHotWalletsAreTaggedWithTheirHash() throws Exception {
+		// Arrange
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		for (int i = 0; i < 5; i++) {
+			this.walletService.sendMoney(alice.getId(), bob.getId(), BigDecimal.ONE);
+		}
+
+		// Assert
+		await(() -> assertEquals(5, this.registry.get("wallet.hotspot.score")
+				.tag("wallet", WalletMetrics.walletTag(alice.getId())).gauge().value()));
+		assertNull(this.registry.find("wallet.hotspot.score").tag("wallet", alice.getId().toString()).gauge());
+	}
+}
@@ -0,0 +1,169 @@
+package com.example.walletapi.reactive;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+
+import com.example.walletapi.dto.responses.WalletAccessResponseDto;
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ReactiveExceptionHandler;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.security.JwtUtil;
+import com.example.walletapi.service.WalletEventHubInterface;
+import com.example.walletapi.service.WalletServiceInterface;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.Validation;
+
+public class WalletHandlerTest {
+
+	private WalletServiceInterface walletService;
+	private WalletInterface wallet;
+	private WebTestClient client;
+
+	@BeforeEach
+	public void setUp() {
+		walletService = mock(WalletServiceInterface.class);
+		wallet = new WalletFactory(new TransferFactory()).generateNew("password");
+
+		JwtUtil jwtUtil = new JwtUtil();
+		ReflectionTestUtils.setField(jwtUtil, "secret", "testSecretKeyWhichNeedsToBeAtLeast32CharactersLong");
+		ReflectionTestUtils.setField(jwtUtil, "jwtExpirationMs", 3600000L);
+
+		WalletHandler handler = new WalletHandler(walletService, mock(WalletEventHubInterface.class), jwtUtil,
+				Validation.buildDefaultValidatorFactory().getValidator());
+		UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+				wallet.getId(), null, Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		// The filter stands in for the security chain, every request is authenticated
+		// as the wallet. Starts empty since the defaults have their own exception handler.
+		HandlerStrategies strategies = HandlerStrategies.empty()
+				.codecs(codecs -> codecs.registerDefaults(true))
+				.webFilter((exchange, chain) -> chain.filter(exchange)
+						.contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication)))
+				.exceptionHandler(new ReactiveExceptionHandler(new ObjectMapper()))
+				.build();
+		client = WebTestClient.bindToRouterFunction(new WalletRouter().walletRoutes(handler))
+				.handlerStrategies(strategies).build();
+	}
+
+	@Test
+	public void testCreateWallet() {
+		// Arrange
+		when(walletService.createWalletAsync("password")).thenReturn(CompletableFuture.completedFuture(wallet));
+
+		// Act
+		WalletAccessResponseDto response = client.post().uri("/api/wallet/v1/public/create")
+				.contentType(MediaType.APPLICATION_JSON).bodyValue("{\"password\":\"password\"}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectBody(WalletAccessResponseDto.class).returnResult().getResponseBody();
+
+		// Assert
+		assertNotNull(response);
+		assertEquals(wallet.getId(), response.getWalletId());
+		assertNotNull(response.getToken());
+	}
+
+	@Test
+	public void testCreateWalletWithoutPassword() {
+		// Act & Assert
+		client.post().uri("/api/wallet/v1/public/create")
+				.contentType(MediaType.APPLICATION_JSON).bodyValue("{}")
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.status").isEqualTo(400)
+				.jsonPath("$.message").isEqualTo("Password is required to create a wallet");
+		verify(walletService, never()).createWalletAsync(any());
+	}
+
+	@Test
+	public void testGetBalanceNotModified() {
+		// Arrange
+		when(walletService.getWalletUnathenticatedAsync(wallet.getId()))
+				.thenReturn(CompletableFuture.completedFuture(wallet));
+		String etag = client.get().uri("/api/wallet/v1/protected/balance")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.walletId").isEqualTo(wallet.getId().toString())
+				.returnResult().getResponseHeaders().getETag();
+
+		// Act & Assert
+		assertNotNull(etag);
+		client.get().uri("/api/wallet/v1/protected/balance").header(HttpHeaders.IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+				.expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+	}
+
+	@Test
+	public void testEtagDependsOnResourceAndSince() {
+		// Arrange
+		wallet.receiveMoney(new TransferFactory().fromSendRequest(null, wallet.getId(), BigDecimal.TEN));
+		when(walletService.getWalletUnathenticatedAsync(wallet.getId()))
+				.thenReturn(CompletableFuture.completedFuture(wallet));
+		String ledger = client.get().uri("/api/wallet/v1/protected/transactions")
+				.exchange().expectStatus().isOk()
+				.expectBody().returnResult().getResponseHeaders().getETag();
+
+		// Act & Assert (a tag for one resource or position never matches another)
+		client.get().uri("/api/wallet/v1/protected/transactions?since=1").header(HttpHeaders.IF_NONE_MATCH, ledger)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.transfers.length()").isEqualTo(0);
+		client.get().uri("/api/wallet/v1/protected/transactions?since=0").header(HttpHeaders.IF_NONE_MATCH, ledger)
+				.exchange()
+				.expectStatus().isOk();
+		client.get().uri("/api/wallet/v1/protected/balance").header(HttpHeaders.IF_NONE_MATCH, ledger)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void testGetBalanceOfDeletedWallet() {
+		// Arrange
+		when(walletService.getWalletUnathenticatedAsync(any())).thenReturn(CompletableFuture.failedFuture(
+				new NotFoundException("No wallet file found")));
+
+		// Act & Assert
+		client.get().uri("/api/wallet/v1/protected/balance")
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/api/wallet/v1/protected/balance")
+				.jsonPath("$.message").value(message -> assertTrue(((String) message).startsWith("It seems you have")));
+	}
+
+	@Test
+	public void testDocumentationOnlyPromisesJson() {
+		// Act
+		String documentation = client.get().uri("/api/wallet/v1/protected/help")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class).returnResult().getResponseBody();
+
+		// Assert
+		assertNotNull(documentation);
+		assertFalse(documentation.contains("CBOR"));
+		assertTrue(documentation.contains("GET /api/wallet/v1/transactions"));
+	}
+}
@@ -0,0 +1,318 @@
+package com.example.walletapi.replication;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.monitoring.HotWalletDetector;
+import com.example.walletapi.monitoring.WalletMetrics;
+import com.example.walletapi.service.impl.WalletService;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ReplicationTest {
+
+	@TempDir
+	Path primaryDir;
+
+	@TempDir
+	Path standbyDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final List<WalletService> services = new ArrayList<>();
+	private final List<ReplicationPrimary> primaries = new ArrayList<>();
+	private final List<ReplicationStandby> standbys = new ArrayList<>();
+
+	@AfterEach
+	public void tearDown() {
+		this.standbys.forEach(ReplicationStandby::stop);
+		this.primaries.forEach(ReplicationPrimary::stop);
+		this.services.forEach(WalletService::stop);
+	}
+
+	private WalletService walletService(Path dataDir) {
+		return this.walletService(dataDir, new ReplicaReadClock(0));
+	}
+
+	private WalletService walletService(Path dataDir, ReplicaReadClock readClock) {
+		WalletService walletService = new WalletService(
+				new WalletFactory(this.transferFactory, List.of(), List.of(), List.of(readClock)),
+				new WalletMetrics(new SimpleMeterRegistry(), new HotWalletDetector()),
+				new JsonFileWalletStore(dataDir));
+		ReflectionTestUtils.setField(walletService, "bankWalletId", new UUID(0, 0));
+		ReflectionTestUtils.setField(walletService, "bankWealth", new BigDecimal("1000000"));
+		walletService.start();
+		this.services.add(walletService);
+		return walletService;
+	}
+
+	private ReplicationPrimary primary(WalletService walletService, Path dataDir, String secret) throws Exception {
+		ReplicationPrimary primary = new ReplicationPrimary(walletService, this.transferFactory, 0, secret, false,
+				1000, new JsonFileWalletStore(dataDir));
+		primary.start();
+		this.primaries.add(primary);
+		return primary;
+	}
+
+	private ReplicationStandby standby(WalletService walletService, ReplicationPrimary primary, String secret,
+			long autoPromoteAfter) {
+		// Listens on any free port once promoted
+		ReplicationPrimary own = new ReplicationPrimary(walletService, this.transferFactory, 0, secret, false, 1000,
+				new JsonFileWalletStore(this.standbyDir));
+		this.primaries.add(own);
+		ReplicationStandby standby = new ReplicationStandby(walletService, this.transferFactory, own,
+				new ReplicaReadClock(0), "localhost:" + primary.getPort(), secret, autoPromoteAfter);
+		this.standbys.add(standby);
+		standby.start();
+		return standby;
+	}
+
+	/**
+	 * Waits until the standby has the same ledgers as the primary.
+	 */
+	private static void awaitSame(WalletService primary, WalletService standby, List<UUID> walletIds)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (true) {
+			try {
+				for (UUID walletId : walletIds) {
+					WalletInterface expected = primary.getWalletUnathenticated(walletId);
+					WalletInterface actual = standby.getWalletUnathenticated(walletId);
+					assertEquals(expected.getLedgerSequence(), actual.getLedgerSequence());
+					assertEquals(0, expected.getBalance().compareTo(actual.getBalance()));
+					assertEquals(expected.getPassword(), actual.getPassword());
+					List<TransferInterface> expectedLedger = expected.getLedger();
+					List<TransferInterface> actualLedger = actual.getLedger();
+					for (int i = 0; i < expectedLedger.size(); i++) {
+						assertEquals(expectedLedger.get(i).getId(), actualLedger.get(i).getId());
+						assertEquals(expectedLedger.get(i).getTimestamp(), actualLedger.get(i).getTimestamp());
+					}
+				}
+				return;
+			} catch (AssertionError | RuntimeException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	@Test
+	public void testStandbyFollowsPrimary() throws Exception {
+		// Arrange (one wallet only on disk, as if the primary had restarted)
+		WalletService before = this.walletService(this.primaryDir);
+		WalletInterface onDisk = before.createWallet("password");
+		before.depositMoney(onDisk.getId(), new BigDecimal("100"), "TOKEN");
+		before.saveWallets();
+		Thread.sleep(200);
+		WalletService primaryService = this.walletService(this.primaryDir);
+		WalletInterface alice = primaryService.createWallet("alice");
+		primaryService.depositMoney(alice.getId(), new BigDecimal("500"), "TOKEN");
+		ReplicationPrimary primary = this.primary(primaryService, this.primaryDir, "secret");
+		WalletService standbyService = this.walletService(this.standbyDir);
+
+		// Act
+		ReplicationStandby standby = this.standby(standbyService, primary, "secret", 0);
+		WalletInterface bob = primaryService.createWallet("bob");
+		for (int i = 0; i < 50; i++) {
+			primaryService.sendMoney(alice.getId(), bob.getId(), BigDecimal.ONE);
+		}
+		primaryService.sendMoney(alice.getId(), onDisk.getId(), BigDecimal.TEN);
+
+		// Assert
+		awaitSame(primaryService, standbyService, List.of(alice.getId(), bob.getId(), onDisk.getId(),
+				new UUID(0, 0)));
+		assertTrue(primary.awaitReplicated(10, TimeUnit.SECONDS));
+		assertEquals(1, primary.getStandbys().size());
+		assertTrue(standby.isFollowing());
+		assertEquals(0, new BigDecimal("440").compareTo(standbyService.getWalletUnathenticated(alice.getId())
+				.getBalance()));
+		assertTrue(standbyService.isReadOnly());
+		assertThrows(ServiceUnavailableException.class,
+				() -> standbyService.sendMoney(bob.getId(), alice.getId(), BigDecimal.ONE));
+		assertThrows(ServiceUnavailableException.class, () -> standbyService.createWallet("carol"));
+	}
+
+	@Test
+	public void testPromotedStandbyTakesOver() throws Exception {
+		// Arrange
+		WalletService primaryService = this.walletService(this.primaryDir);
+		ReplicationPrimary primary = this.primary(primaryService, this.primaryDir, "secret");
+		WalletService standbyService = this.walletService(this.standbyDir);
+		ReplicationStandby standby = this.standby(standbyService, primary, "secret", 0);
+		WalletInterface alice = primaryService.createWallet("alice");
+		WalletInterface bob = primaryService.createWallet("bob");
+		primaryService.depositMoney(alice.getId(), new BigDecimal("100"), "TOKEN");
+		primaryService.sendMoney(alice.getId(), bob.getId(), new BigDecimal("30"));
+		awaitSame(primaryService, standbyService, List.of(alice.getId(), bob.getId()));
+		primary.stop();
+
+		// Act
+		boolean promoted = standby.promote();
+		standbyService.sendMoney(bob.getId(), alice.getId(), BigDecimal.TEN);
+
+		// Assert
+		assertTrue(promoted);
+		assertFalse(standby.promote());
+		assertFalse(standbyService.isReadOnly());
+		assertEquals(0, new BigDecimal("80").compareTo(standbyService.getWalletUnathenticated(alice.getId())
+				.getBalance()));
+		assertEquals(0, new BigDecimal("20").compareTo(standbyService.getWalletUnathenticated(bob.getId())
+				.getBalance()));
+		assertNotNull(standbyService.getWallet(bob.getId(), "bob"));
+	}
+
+	@Test
+	public void testStandbyPromotesItselfWhenPrimaryIsGone() throws Exception {
+		// Arrange
+		WalletService primaryService = this.walletService(this.primaryDir);
+		ReplicationPrimary primary = this.primary(primaryService, this.primaryDir, "secret");
+		WalletService standbyService = this.walletService(this.standbyDir);
+		ReplicationStandby standby = this.standby(standbyService, primary, "secret", 500);
+		WalletInterface alice = primaryService.createWallet("alice");
+		awaitSame(primaryService, standbyService, List.of(alice.getId()));
+
+		// Act
+		primary.stop();
+
+		// Assert
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!standby.isPromoted() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertTrue(standby.isPromoted());
+		Thread.sleep(100);
+		assertFalse(standbyService.isReadOnly());
+	}
+
+	@Test
+	public void testWrongSecretIsRejected() throws Exception {
+		// Arrange
+		WalletService primaryService = this.walletService(this.primaryDir);
+		ReplicationPrimary primary = this.primary(primaryService, this.primaryDir, "secret");
+		WalletService standbyService = this.walletService(this.standbyDir);
+		WalletInterface alice = primaryService.createWallet("alice");
+
+		// Act
+		this.standby(standbyService, primary, "wrong", 0);
+		Thread.sleep(500);
+
+		// Assert
+		assertTrue(primary.getStandbys().isEmpty());
+		assertTrue(standbyService.getCachedWallets().stream().noneMatch(w -> w.getId().equals(alice.getId())));
+	}
+
+	@Test
+	public void testReplicaServesReadsAsOfLastSync() throws Exception {
+		// Arrange
+		WalletService primaryService = this.walletService(this.primaryDir);
+		ReplicationPrimary primary = this.primary(primaryService, this.primaryDir, "secret");
+		ReplicaReadClock readClock = new ReplicaReadClock(3000);
+		WalletService replicaService = this.walletService(this.standbyDir, readClock);
+		ReplicationStandby replica = new ReplicationStandby(replicaService, this.transferFactory, null, readClock,
+				"localhost:" + primary.getPort(), "secret", 500);
+		this.standbys.add(replica);
+		WalletInterface alice = primaryService.createWallet("alice");
+		primaryService.depositMoney(alice.getId(), new BigDecimal("100"), "TOKEN");
+
+		// Act
+		long before = System.currentTimeMillis();
+		replica.start();
+		awaitSame(primaryService, replicaService, List.of(alice.getId()));
+		Thread.sleep(1500); // at least one heartbeat
+		WalletInterface replicated = replicaService.getWalletUnathenticated(alice.getId());
+		long balanceTimestamp = replicated.getBalanceDto().getTimestamp();
+		long ledgerTimestamp = replicated.getLedgerDto().getTimestamp();
+		primary.stop();
+		Thread.sleep(3500);
+
+		// Assert (dated to the last sync, and refused once that's too long ago)
+		assertTrue(balanceTimestamp >= before && balanceTimestamp <= System.currentTimeMillis());
+		assertTrue(ledgerTimestamp >= before);
+		assertTrue(ledgerTimestamp < System.currentTimeMillis() - 3000);
+		assertThrows(ServiceUnavailableException.class, replicated::getBalanceDto);
+		assertThrows(ServiceUnavailableException.class, () -> replicated.getLedgerDto(0));
+		// Still saved as usual
+		String saved = new ObjectMapper().writeValueAsString(replicated);
+		assertTrue(saved.endsWith("}") && !saved.contains("balanceDto"), saved);
+		assertFalse(replica.promote());
+		assertFalse(replica.isPromoted());
+		assertTrue(replicaService.isReadOnly());
+	}
+
+	@Test
+	public void testReplicaRefusesReadsUntilInSync() {
+		// Arrange
+		ReplicaReadClock readClock = new ReplicaReadClock(1000);
+		long now = System.currentTimeMillis();
+
+		// Act
+		long primaryTimestamp = readClock.getReadTimestamp();
+		readClock.follow();
+
+		// Assert
+		assertTrue(primaryTimestamp >= now);
+		assertEquals(-1, readClock.getStaleness());
+		assertThrows(ServiceUnavailableException.class, readClock::getReadTimestamp);
+		readClock.synced(now);
+		assertEquals(now, readClock.getReadTimestamp());
+		readClock.stop();
+		assertTrue(readClock.getReadTimestamp() >= now);
+	}
+
+	@Test
+	public void testReplayLedgerSkipsKnownEntries() {
+		// Arrange
+		WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+		WalletInterface wallet = walletFactory.generateNew("password");
+		List<TransferInterface> entries = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			entries.add(this.transferFactory.fromSendRequest(null, wallet.getId(), BigDecimal.TEN).validate());
+		}
+
+		// Act
+		wallet.replayLedger(0, entries.subList(0, 2));
+		long sequence = wallet.replayLedger(1, entries.subList(1, 3));
+
+		// Assert
+		assertEquals(3, sequence);
+		assertEquals(0, new BigDecimal("30").compareTo(wallet.getBalance()));
+		assertThrows(IllegalStateException.class, () -> wallet.replayLedger(5, entries));
+	}
+
+	@Test
+	public void testNothingIsReplicatedWithoutSecret() throws Exception {
+		// Arrange
+		WalletService walletService = this.walletService(this.primaryDir);
+		ReplicationPrimary primary = new ReplicationPrimary(walletService, this.transferFactory, 0, "", false, 1000,
+				new JsonFileWalletStore(this.primaryDir));
+		this.primaries.add(primary);
+		ReplicationStandby standby = new ReplicationStandby(walletService, this.transferFactory, null,
+				new ReplicaReadClock(0), "localhost:7070", "", 0);
+
+		// Act & Assert
+		assertThrows(IllegalStateException.class, primary::start);
+		assertThrows(IllegalStateException.class, standby::start);
+		assertFalse(primary.isListening());
+		assertFalse(walletService.isReadOnly());
+	}
+}
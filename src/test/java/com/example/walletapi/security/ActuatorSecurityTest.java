@@ -0,0 +1,58 @@
+package com.example.walletapi.security;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(properties = { "wallet.api.management.username=ops", "wallet.api.management.password=secret" })
+@AutoConfigureMockMvc
+public class ActuatorSecurityTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	public void testHealthIsOpen() throws Exception {
+		// Act & Assert
+		this.mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+	}
+
+	@Test
+	public void testEndpointsNeedTheManagementUser() throws Exception {
+		// Act & Assert
+		this.mockMvc.perform(post("/actuator/replication")).andExpect(status().isUnauthorized());
+		this.mockMvc.perform(post("/actuator/audit")).andExpect(status().isUnauthorized());
+		this.mockMvc.perform(get("/actuator/hotwallets")).andExpect(status().isUnauthorized());
+		this.mockMvc.perform(get("/actuator/prometheus").with(httpBasic("ops", "wrong")))
+				.andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	public void testManagementUserIsLetIn() throws Exception {
+		// Act & Assert
+		this.mockMvc.perform(get("/actuator/hotwallets").with(httpBasic("ops", "secret")))
+				.andExpect(status().isOk());
+		this.mockMvc.perform(get("/actuator/replication").with(httpBasic("ops", "secret")))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	public void testMalformedWalletIdIsABadRequest() throws Exception {
+		// Act & Assert
+		this.mockMvc.perform(get("/actuator/hotwallets/not-a-wallet").with(httpBasic("ops", "secret")))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testAuditIsNotExposedByDefault() throws Exception {
+		// Act & Assert
+		this.mockMvc.perform(post("/actuator/audit").with(httpBasic("ops", "secret")))
+				.andExpect(status().isNotFound());
+	}
+}
@@ -0,0 +1,94 @@
+package com.example.walletapi.serialization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+public class LedgerChunkCacheTest {
+
+	private final ObjectWriter writer = new ObjectMapper().writer();
+	private LedgerChunkCache cache;
+	private List<TransferInterface> block;
+
+	@BeforeEach
+	public void setUp() {
+		cache = new LedgerChunkCache();
+		ReflectionTestUtils.setField(cache, "blockSize", 2);
+		TransferFactory transferFactory = new TransferFactory();
+		block = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			Map<String, Serializable> data = new HashMap<>();
+			data.put("id", UUID.randomUUID().toString());
+			data.put("sender", UUID.randomUUID().toString());
+			data.put("recipient", UUID.randomUUID().toString());
+			data.put("amount", new BigDecimal("1.5"));
+			data.put("timestamp", 1716153600000L + i);
+			block.add(transferFactory.fromMap(data));
+		}
+	}
+
+	/**
+	 * The bytes counted against the limit.
+	 */
+	private long totalBytes() {
+		return ((AtomicLong) ReflectionTestUtils.getField(cache, "totalBytes")).get();
+	}
+
+	/**
+	 * The bytes actually held by the cached wallets.
+	 */
+	private long cachedBytes() {
+		Map<?, ?> wallets = (Map<?, ?>) ReflectionTestUtils.getField(cache, "wallets");
+		return wallets.values().stream()
+				.mapToLong(blocks -> ((AtomicLong) ReflectionTestUtils.getField(blocks, "bytes")).get()).sum();
+	}
+
+	@Test
+	public void testSizeIsTrackedWhileEvicting() throws Exception {
+		// Arrange (room for a few blocks only, so nearly every put evicts)
+		long blockBytes = cache.getBlock(UUID.randomUUID(), 0, block, writer).length;
+		ReflectionTestUtils.setField(cache, "maxBytes", blockBytes * 4);
+		List<UUID> walletIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < 20000; i++) {
+						cache.getBlock(walletIds.get(i % walletIds.size()), i % 7, block, writer);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}));
+		}
+
+		// Act
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Assert
+		assertEquals(cachedBytes(), totalBytes());
+		assertTrue(totalBytes() <= blockBytes * 4);
+	}
+}
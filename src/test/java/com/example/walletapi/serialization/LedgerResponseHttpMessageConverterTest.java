@@ -0,0 +1,99 @@
+package com.example.walletapi.serialization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.dto.responses.LedgerResponseDto;
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LedgerResponseHttpMessageConverterTest {
+
+	private final UUID walletId = UUID.randomUUID();
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+	private LedgerChunkCache cache;
+	private LedgerResponseHttpMessageConverter converter;
+	private List<TransferInterface> ledger;
+
+	@BeforeEach
+	public void setUp() {
+		cache = new LedgerChunkCache();
+		ReflectionTestUtils.setField(cache, "blockSize", 2);
+		ReflectionTestUtils.setField(cache, "maxBytes", 1024L * 1024);
+		converter = new LedgerResponseHttpMessageConverter(objectMapper, cache);
+
+		TransferFactory transferFactory = new TransferFactory();
+		ledger = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Map<String, Serializable> data = new HashMap<>();
+			data.put("id", UUID.randomUUID().toString());
+			data.put("sender", UUID.randomUUID().toString());
+			data.put("recipient", walletId.toString());
+			data.put("amount", new BigDecimal("1.5" + i));
+			data.put("timestamp", 1716153600000L + i);
+			ledger.add(transferFactory.fromMap(data));
+		}
+	}
+
+	private String write(LedgerResponseDto dto) throws Exception {
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		converter.write(dto, MediaType.APPLICATION_JSON, message);
+		return message.getBodyAsString();
+	}
+
+	@Test
+	public void testFullLedgerMatchesJackson() throws Exception {
+		// Arrange
+		LedgerResponseDto dto = new LedgerResponseDto(walletId, ledger, 1234L, 5);
+		String expected = objectMapper.writeValueAsString(dto);
+
+		// Act
+		String first = write(dto);
+		String second = write(dto); // now served from the cache
+
+		// Assert
+		assertEquals(objectMapper.readTree(expected), objectMapper.readTree(first));
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void testDeltaMatchesJackson() throws Exception {
+		// Arrange (the last 2 entries, ie. since=3, which is not on a block boundary)
+		LedgerResponseDto dto = new LedgerResponseDto(walletId, ledger.subList(3, 5), 1234L, 5);
+		write(new LedgerResponseDto(walletId, ledger, 1234L, 5)); // warm up the cache
+
+		// Act
+		String actual = write(dto);
+
+		// Assert
+		assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(dto)), objectMapper.readTree(actual));
+	}
+
+	@Test
+	public void testEmptyLedger() throws Exception {
+		// Arrange
+		LedgerResponseDto dto = new LedgerResponseDto(walletId, new ArrayList<>(), 1234L, 0);
+
+		// Act
+		String actual = write(dto);
+
+		// Assert
+		assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(dto)), objectMapper.readTree(actual));
+	}
+}
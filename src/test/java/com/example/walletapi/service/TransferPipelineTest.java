@@ -0,0 +1,267 @@
+package com.example.walletapi.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.InsufficientFundsException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.service.impl.TransferPipeline;
+
+public class TransferPipelineTest {
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+	private final Map<WalletInterface, AtomicInteger> saves = new ConcurrentHashMap<>();
+	private final ExecutorService replies = Executors.newSingleThreadExecutor(r -> new Thread(r, "replies"));
+	private TransferPipeline pipeline;
+
+	@AfterEach
+	public void tearDown() {
+		if (this.pipeline != null) {
+			this.pipeline.stop();
+		}
+		this.replies.shutdownNow();
+	}
+
+	private TransferPipeline pipeline(int size) {
+		return this.pipeline(size,
+				wallet -> this.saves.computeIfAbsent(wallet, w -> new AtomicInteger()).incrementAndGet());
+	}
+
+	private TransferPipeline pipeline(int size, Consumer<WalletInterface> journal) {
+		this.pipeline = new TransferPipeline(size, journal, this.replies);
+		return this.pipeline;
+	}
+
+	private WalletInterface fundedWallet(BigDecimal funds) {
+		WalletInterface wallet = this.walletFactory.generateNew("pipeline");
+		if (funds.signum() > 0) {
+			wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), funds));
+		}
+		return wallet;
+	}
+
+	/**
+	 * A balance which "another thread" changes (to the same amount) the first
+	 * {@code races} times it's checked, so the sender loses that many races.
+	 */
+	private static BigDecimal contendedBalance(AtomicReference<BigDecimal> balance, BigDecimal funds,
+			AtomicInteger races) {
+		return new BigDecimal(funds.toString()) {
+			@Override
+			public int compareTo(BigDecimal other) {
+				if (races.getAndDecrement() > 0) {
+					balance.set(contendedBalance(balance, funds, races));
+				}
+				return super.compareTo(other);
+			}
+		};
+	}
+
+	@Test
+	public void testTransferIsMadeAndSavedBeforeReplying() {
+		// Arrange
+		TransferPipeline pipeline = this.pipeline(16);
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		TransferResponseDto response = pipeline.submit(alice, bob, new BigDecimal("40")).join();
+
+		// Assert
+		assertEquals(0, new BigDecimal("60").compareTo(response.getRemainingBalance()));
+		assertEquals(0, new BigDecimal("40").compareTo(bob.getBalance()));
+		assertEquals(1, this.saves.get(alice).get());
+		assertEquals(1, this.saves.get(bob).get());
+		assertEquals(0, pipeline.getBacklog());
+	}
+
+	@Test
+	public void testFailedTransferCompletesExceptionallyAndIsNotSaved() {
+		// Arrange
+		TransferPipeline pipeline = this.pipeline(16);
+		WalletInterface alice = this.fundedWallet(BigDecimal.ONE);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		CompletableFuture<TransferResponseDto> reply = pipeline.submit(alice, bob, BigDecimal.TEN);
+
+		// Assert
+		CompletionException e = assertThrows(CompletionException.class, reply::join);
+		assertInstanceOf(InsufficientFundsException.class, e.getCause());
+		assertTrue(this.saves.isEmpty());
+		assertEquals(0, BigDecimal.ONE.compareTo(alice.getBalance()));
+	}
+
+	@Test
+	public void testConcurrentTransfersThroughSmallRingConserveMoney() throws Exception {
+		// Arrange (a ring much smaller than the number of transfers, so request
+		// threads have to wait for free slots, and enough funds that none fail)
+		TransferPipeline pipeline = this.pipeline(8);
+		List<WalletInterface> wallets = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			wallets.add(this.fundedWallet(new BigDecimal("1000")));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<CompletableFuture<TransferResponseDto>> replies = new ArrayList<>();
+
+		// Act
+		List<CompletableFuture<CompletableFuture<TransferResponseDto>>> submitted = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			WalletInterface from = wallets.get(i % wallets.size());
+			WalletInterface to = wallets.get((i * 3 + 1) % wallets.size());
+			submitted.add(CompletableFuture.supplyAsync(() -> pipeline.submit(from, to, BigDecimal.ONE), executor));
+		}
+		for (CompletableFuture<CompletableFuture<TransferResponseDto>> s : submitted) {
+			replies.add(s.get(30, TimeUnit.SECONDS));
+		}
+		int failed = 0;
+		for (CompletableFuture<TransferResponseDto> reply : replies) {
+			try {
+				reply.get(30, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				failed++;
+			}
+		}
+		executor.shutdown();
+
+		// Assert
+		BigDecimal total = wallets.stream().map(WalletInterface::getBalance).reduce(BigDecimal.ZERO,
+				BigDecimal::add);
+		assertEquals(0, new BigDecimal("10000").compareTo(total));
+		assertEquals(0, failed);
+		assertEquals(0, pipeline.getBacklog());
+		int totalSaves = this.saves.values().stream().mapToInt(AtomicInteger::get).sum();
+		assertTrue(totalSaves <= 10000, "Saved " + totalSaves + " times");
+	}
+
+	@Test
+	public void testStoppedPipelineRejectsTransfers() {
+		// Arrange
+		TransferPipeline pipeline = this.pipeline(16);
+		WalletInterface alice = this.fundedWallet(BigDecimal.TEN);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		pipeline.stop();
+
+		// Assert
+		assertThrows(ServiceUnavailableException.class, () -> pipeline.submit(alice, bob, BigDecimal.ONE));
+	}
+
+	@Test
+	public void testRepliesAreCompletedOffThePipeline() throws Exception {
+		// Arrange (the journal waits until the caller has chained its continuation)
+		CountDownLatch chained = new CountDownLatch(1);
+		TransferPipeline pipeline = this.pipeline(16, wallet -> {
+			try {
+				chained.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		WalletInterface alice = this.fundedWallet(BigDecimal.TEN);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		CompletableFuture<String> thread = pipeline.submit(alice, bob, BigDecimal.ONE)
+				.thenApply(response -> Thread.currentThread().getName());
+		chained.countDown();
+
+		// Assert
+		assertEquals("replies", thread.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFailedStageFailsItsBatchAndKeepsGoing() throws Exception {
+		// Arrange (the first save throws an Error)
+		AtomicBoolean failed = new AtomicBoolean();
+		TransferPipeline pipeline = this.pipeline(16, wallet -> {
+			if (failed.compareAndSet(false, true)) {
+				throw new AssertionError("Failed to save");
+			}
+		});
+		WalletInterface alice = this.fundedWallet(BigDecimal.TEN);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		CompletableFuture<TransferResponseDto> first = pipeline.submit(alice, bob, BigDecimal.ONE);
+		CompletionException e = assertThrows(CompletionException.class, first::join);
+		TransferResponseDto second = pipeline.submit(alice, bob, BigDecimal.ONE).get(10, TimeUnit.SECONDS);
+
+		// Assert
+		assertInstanceOf(ServerErrorException.class, e.getCause());
+		assertEquals(0, new BigDecimal("8").compareTo(second.getRemainingBalance()));
+		assertEquals(0, pipeline.getBacklog());
+	}
+
+	@Test
+	public void testLostRacesAreRetriedWithoutBackingOff() throws Exception {
+		// Arrange (backing off after each lost race would take longer than the
+		// transfer is given)
+		TransferPipeline pipeline = this.pipeline(16);
+		WalletInterface alice = this.fundedWallet(BigDecimal.TEN);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+		AtomicInteger races = new AtomicInteger(50);
+		AtomicReference<BigDecimal> balance = new AtomicReference<>();
+		balance.set(contendedBalance(balance, alice.getBalance(), races));
+		ReflectionTestUtils.setField(alice, "balance", balance);
+
+		// Act
+		TransferResponseDto response = pipeline.submit(alice, bob, BigDecimal.ONE).get(10, TimeUnit.SECONDS);
+
+		// Assert
+		assertEquals(0, new BigDecimal("9").compareTo(response.getRemainingBalance()));
+		assertTrue(races.get() < 0);
+	}
+
+	@Test
+	public void testRepliesAreCompletedWhenTheExecutorRejects() throws Exception {
+		// Arrange
+		this.pipeline = new TransferPipeline(4, wallet -> {
+		}, command -> {
+			throw new RejectedExecutionException("Shutting down");
+		});
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act (more transfers than slots, so they only go through if slots are freed)
+		List<CompletableFuture<TransferResponseDto>> replies = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			replies.add(this.pipeline.submit(alice, bob, BigDecimal.ONE));
+		}
+
+		// Assert
+		for (CompletableFuture<TransferResponseDto> reply : replies) {
+			reply.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(0, new BigDecimal("20").compareTo(bob.getBalance()));
+		assertEquals(0, this.pipeline.getBacklog());
+	}
+}
@@ -0,0 +1,196 @@
+package com.example.walletapi.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.dto.responses.WalletEventDto;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.service.impl.WalletEventHub;
+
+public class WalletEventHubTest {
+
+	private WalletEventHub hub;
+	private WalletInterface wallet;
+
+	@BeforeEach
+	public void setUp() {
+		hub = new WalletEventHub();
+		ReflectionTestUtils.setField(hub, "maxSubscribers", 2);
+		ReflectionTestUtils.setField(hub, "maxSubscribersPerWallet", 2);
+		ReflectionTestUtils.setField(hub, "coalesceInterval", 50L);
+		ReflectionTestUtils.setField(hub, "maxMissedEvents", 2);
+		hub.start();
+
+		wallet = mock(WalletInterface.class);
+		when(wallet.getId()).thenReturn(UUID.randomUUID());
+		when(wallet.getBalance()).thenReturn(BigDecimal.TEN);
+		when(wallet.getLedgerSequence()).thenReturn(1L, 2L, 3L, 4L, 5L);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		hub.stop();
+	}
+
+	@Test
+	public void testBurstIsCoalesced() throws Exception {
+		// Arrange
+		List<WalletEventDto> received = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(2);
+		hub.subscribe(wallet, new WalletEventHubInterface.Subscriber() {
+			public void send(WalletEventDto event) {
+				received.add(event);
+				latch.countDown();
+			}
+
+			public void close() {
+			}
+		});
+
+		// Act
+		for (int i = 0; i < 100; i++) {
+			hub.onBalanceChanged(wallet, BigDecimal.TEN);
+		}
+
+		// Assert
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200); // give it a chance to send more than it should
+		// the initial state + one for the whole burst (or two if it spanned a tick)
+		assertTrue(received.size() <= 3, "Expected the burst to be coalesced, got " + received.size());
+		assertEquals(1L, received.get(0).getSequence());
+	}
+
+	@Test
+	public void testSlowSubscriberIsDropped() throws Exception {
+		// Arrange
+		CountDownLatch closed = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		WalletEventHubInterface.Subscription subscription = hub.subscribe(wallet,
+				new WalletEventHubInterface.Subscriber() {
+					public void send(WalletEventDto event) throws java.io.IOException {
+						try {
+							release.await(); // never gets done with the first event
+						} catch (InterruptedException e) {
+							throw new java.io.IOException(e);
+						}
+					}
+
+					public void close() {
+						closed.countDown();
+					}
+				});
+
+		// Act
+		for (int i = 0; i < 5; i++) {
+			hub.onBalanceChanged(wallet, BigDecimal.TEN);
+			Thread.sleep(100);
+		}
+
+		// Assert
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		subscription.cancel(); // safe to call again
+	}
+
+	@Test
+	public void testMaxSubscribers() {
+		// Arrange
+		WalletEventHubInterface.Subscriber subscriber = mock(WalletEventHubInterface.Subscriber.class);
+		hub.subscribe(wallet, subscriber);
+		WalletEventHubInterface.Subscription second = hub.subscribe(wallet, subscriber);
+
+		// Act & Assert
+		assertThrows(ServiceUnavailableException.class, () -> hub.subscribe(wallet, subscriber));
+		second.cancel();
+		assertNotNull(hub.subscribe(wallet, subscriber));
+	}
+
+	private static WalletInterface mockWallet() {
+		WalletInterface wallet = mock(WalletInterface.class);
+		when(wallet.getId()).thenReturn(UUID.randomUUID());
+		when(wallet.getBalance()).thenReturn(BigDecimal.TEN);
+		return wallet;
+	}
+
+	@Test
+	public void testMaxSubscribersPerWalletUnderConcurrency() throws Exception {
+		// Arrange
+		ReflectionTestUtils.setField(hub, "maxSubscribers", 100);
+		WalletEventHubInterface.Subscriber subscriber = mock(WalletEventHubInterface.Subscriber.class);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger subscribed = new AtomicInteger();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				try {
+					start.await();
+					hub.subscribe(wallet, subscriber);
+					subscribed.incrementAndGet();
+				} catch (InterruptedException | ServiceUnavailableException e) {
+					// expected for all but two
+				}
+			}));
+		}
+
+		// Act
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Assert
+		assertEquals(2, subscribed.get());
+		assertNotNull(hub.subscribe(mockWallet(), subscriber));
+	}
+
+	@Test
+	public void testBlockedSubscribersDontHoldUpOthers() throws Exception {
+		// Arrange (more subscribers stuck sending than there are CPUs)
+		ReflectionTestUtils.setField(hub, "maxSubscribers", 100);
+		CountDownLatch release = new CountDownLatch(1);
+		WalletEventHubInterface.Subscriber stuck = new WalletEventHubInterface.Subscriber() {
+			public void send(WalletEventDto event) throws java.io.IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new java.io.IOException(e);
+				}
+			}
+
+			public void close() {
+			}
+		};
+		for (int i = 0; i < Runtime.getRuntime().availableProcessors() + 4; i++) {
+			hub.subscribe(mockWallet(), stuck);
+		}
+		CountDownLatch received = new CountDownLatch(1);
+
+		// Act
+		hub.subscribe(wallet, new WalletEventHubInterface.Subscriber() {
+			public void send(WalletEventDto event) {
+				received.countDown();
+			}
+
+			public void close() {
+			}
+		});
+
+		// Assert
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+}
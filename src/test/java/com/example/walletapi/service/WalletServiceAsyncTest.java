@@ -0,0 +1,136 @@
+package com.example.walletapi.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.dto.responses.TransferResponseDto;
+import com.example.walletapi.exception.InsufficientFundsException;
+import com.example.walletapi.exception.ServiceUnavailableException;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.monitoring.HotWalletDetector;
+import com.example.walletapi.monitoring.WalletMetrics;
+import com.example.walletapi.service.impl.WalletService;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WalletServiceAsyncTest {
+
+	@TempDir
+	Path dataDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private WalletService walletService;
+
+	private WalletService walletService(int threads, int queueSize) {
+		this.walletService = new WalletService(new WalletFactory(this.transferFactory),
+				new WalletMetrics(new SimpleMeterRegistry(), new HotWalletDetector()),
+				new JsonFileWalletStore(this.dataDir));
+		ReflectionTestUtils.setField(this.walletService, "asyncThreads", threads);
+		ReflectionTestUtils.setField(this.walletService, "asyncQueueSize", queueSize);
+		this.walletService.start();
+		return this.walletService;
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.walletService.stop();
+	}
+
+	private WalletInterface fundedWallet(BigDecimal funds) {
+		WalletInterface wallet = this.walletService.createWallet("password");
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), funds));
+		return wallet;
+	}
+
+	@Test
+	public void testSendMoneyAsync() throws Exception {
+		// Arrange
+		WalletService walletService = this.walletService(2, 10);
+		WalletInterface alice = this.fundedWallet(new BigDecimal("100"));
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		TransferResponseDto response = walletService.sendMoneyAsync(alice.getId(), bob.getId(), BigDecimal.TEN)
+				.get(10, TimeUnit.SECONDS);
+
+		// Assert
+		assertEquals(0, new BigDecimal("90").compareTo(response.getRemainingBalance()));
+		assertEquals(0, BigDecimal.TEN.compareTo(bob.getBalance()));
+	}
+
+	@Test
+	public void testFailuresCompleteTheFutureExceptionally() {
+		// Arrange
+		WalletService walletService = this.walletService(2, 10);
+		WalletInterface alice = this.fundedWallet(BigDecimal.ONE);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+
+		// Act
+		CompletableFuture<TransferResponseDto> future = walletService.sendMoneyAsync(alice.getId(), bob.getId(),
+				BigDecimal.TEN);
+
+		// Assert
+		ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(InsufficientFundsException.class, e.getCause());
+	}
+
+	@Test
+	public void testSaturatedServiceRejectsCalls() throws Exception {
+		// Arrange (one thread, busy with a transfer which waits for us, and one queued call)
+		WalletService walletService = this.walletService(1, 1);
+		WalletInterface bob = this.fundedWallet(BigDecimal.ZERO);
+		WalletInterface slow = mock(WalletInterface.class);
+		UUID slowId = UUID.randomUUID();
+		when(slow.getId()).thenReturn(slowId);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<String> thread = new AtomicReference<>();
+		when(slow.sendMoney(any(), any())).thenAnswer(invocation -> {
+			thread.set(Thread.currentThread().getName());
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return null;
+		});
+		@SuppressWarnings("unchecked")
+		Map<UUID, WalletInterface> wallets = (Map<UUID, WalletInterface>) ReflectionTestUtils.getField(walletService,
+				"wallets");
+		wallets.put(slowId, slow);
+		CompletableFuture<TransferResponseDto> busy = walletService.sendMoneyAsync(slowId, bob.getId(),
+				BigDecimal.ONE);
+		started.await(10, TimeUnit.SECONDS);
+		CompletableFuture<TransferResponseDto> queued = walletService.sendMoneyAsync(slowId, bob.getId(),
+				BigDecimal.ONE);
+
+		// Act
+		CompletableFuture<TransferResponseDto> rejected = walletService.sendMoneyAsync(slowId, bob.getId(),
+				BigDecimal.ONE);
+		release.countDown();
+
+		// Assert
+		ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+		assertInstanceOf(ServiceUnavailableException.class, e.getCause());
+		assertTrue(thread.get().startsWith("wallet-service-"), thread.get());
+		busy.get(10, TimeUnit.SECONDS);
+		queued.get(10, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,74 @@
+package com.example.walletapi.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.walletapi.exception.NotFoundException;
+import com.example.walletapi.exception.ServerErrorException;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.monitoring.HotWalletDetector;
+import com.example.walletapi.monitoring.WalletMetrics;
+import com.example.walletapi.service.impl.WalletService;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WalletServiceLoadTest {
+
+	private static final UUID BANK_WALLET_ID = new UUID(0, 0);
+
+	@TempDir
+	Path dataDir;
+
+	private WalletService walletService() {
+		WalletService walletService = new WalletService(new WalletFactory(new TransferFactory()),
+				new WalletMetrics(new SimpleMeterRegistry(), new HotWalletDetector()),
+				new JsonFileWalletStore(this.dataDir));
+		ReflectionTestUtils.setField(walletService, "bankWalletId", BANK_WALLET_ID);
+		ReflectionTestUtils.setField(walletService, "bankWealth", new BigDecimal("1000"));
+		walletService.start();
+		return walletService;
+	}
+
+	private Path path(UUID walletId) {
+		String name = walletId.toString();
+		return this.dataDir.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name + ".json");
+	}
+
+	@Test
+	public void testDamagedBankWalletIsNotRecreated() throws Exception {
+		// Arrange (the bank wallet's file is damaged and there's no previous one)
+		WalletService walletService = this.walletService();
+		WalletInterface alice = walletService.createWallet("password");
+		walletService.depositMoney(alice.getId(), BigDecimal.TEN, "VALID-DEPOSIT-TOKEN");
+		walletService.stop();
+		Path bank = this.path(BANK_WALLET_ID);
+		Files.deleteIfExists(bank.resolveSibling(bank.getFileName() + ".prev"));
+		byte[] saved = Files.readAllBytes(bank);
+		byte[] damaged = Arrays.copyOf(saved, saved.length / 2);
+		Files.write(bank, damaged);
+		WalletService restarted = this.walletService();
+
+		// Act & Assert
+		try {
+			assertThrows(ServerErrorException.class,
+					() -> restarted.depositMoney(alice.getId(), BigDecimal.TEN, "VALID-DEPOSIT-TOKEN"));
+			assertThrows(NotFoundException.class, () -> restarted.getWalletUnathenticated(UUID.randomUUID()));
+		} finally {
+			restarted.stop();
+		}
+		assertArrayEquals(damaged, Files.readAllBytes(bank));
+		assertEquals(0, BigDecimal.TEN.compareTo(alice.getBalance()));
+	}
+}
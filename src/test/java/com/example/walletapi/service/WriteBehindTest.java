@@ -0,0 +1,135 @@
+package com.example.walletapi.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.service.impl.WriteBehind;
+
+public class WriteBehindTest {
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactory walletFactory = new WalletFactory(this.transferFactory);
+	private final Map<WalletInterface, AtomicInteger> writes = new ConcurrentHashMap<>();
+	/**
+	 * The ledger size of every write, in the order they were made.
+	 */
+	private final List<Long> written = new CopyOnWriteArrayList<>();
+	private WriteBehind writeBehind;
+
+	@AfterEach
+	public void tearDown() {
+		if (this.writeBehind != null) {
+			this.writeBehind.stop();
+		}
+	}
+
+	private void record(WalletInterface wallet) {
+		this.writes.computeIfAbsent(wallet, w -> new AtomicInteger()).incrementAndGet();
+		this.written.add(wallet.getLedgerSequence());
+	}
+
+	private void deposit(WalletInterface wallet) {
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), BigDecimal.ONE));
+	}
+
+	private int writes(WalletInterface wallet) {
+		AtomicInteger count = this.writes.get(wallet);
+		return count == null ? 0 : count.get();
+	}
+
+	private void awaitWritten() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.writeBehind.getPending() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testSavesOfTheSameWalletAreCoalesced() throws Exception {
+		// Arrange
+		this.writeBehind = new WriteBehind(this::record, 200, 2);
+		WalletInterface busy = this.walletFactory.generateNew("busy");
+		WalletInterface quiet = this.walletFactory.generateNew("quiet");
+
+		// Act
+		for (int i = 0; i < 100; i++) {
+			this.deposit(busy);
+			this.writeBehind.markDirty(busy);
+		}
+		this.writeBehind.markDirty(quiet);
+		this.awaitWritten();
+
+		// Assert
+		assertEquals(1, this.writes(busy));
+		assertEquals(1, this.writes(quiet));
+		assertEquals(99, this.writeBehind.getCoalesced());
+		assertTrue(this.written.contains(100L), this.written.toString());
+	}
+
+	@Test
+	public void testWalletChangedWhileBeingWrittenIsWrittenAgain() throws Exception {
+		// Arrange (the first write waits until the wallet has changed again)
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch changed = new CountDownLatch(1);
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		this.writeBehind = new WriteBehind(wallet -> {
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			writing.countDown();
+			try {
+				changed.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.record(wallet);
+			concurrent.decrementAndGet();
+		}, 0, 4);
+		WalletInterface wallet = this.walletFactory.generateNew("wallet");
+		this.deposit(wallet);
+		this.writeBehind.markDirty(wallet);
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+		// Act
+		this.deposit(wallet);
+		this.writeBehind.markDirty(wallet);
+		this.writeBehind.markDirty(wallet);
+		changed.countDown();
+		this.awaitWritten();
+
+		// Assert
+		assertEquals(2, this.writes(wallet));
+		assertEquals(1, maxConcurrent.get());
+		assertEquals(2L, this.written.get(this.written.size() - 1));
+	}
+
+	@Test
+	public void testStopWritesDirtyWallets() {
+		// Arrange
+		this.writeBehind = new WriteBehind(this::record, 60000, 1);
+		WalletInterface wallet = this.walletFactory.generateNew("wallet");
+		this.deposit(wallet);
+		this.writeBehind.markDirty(wallet);
+
+		// Act
+		this.writeBehind.stop();
+
+		// Assert
+		assertEquals(1, this.writes(wallet));
+		assertEquals(0, this.writeBehind.getPending());
+	}
+}
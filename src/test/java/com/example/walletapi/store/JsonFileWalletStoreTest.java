@@ -0,0 +1,157 @@
+package com.example.walletapi.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.WalletFactoryInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.store.impl.JsonFileWalletStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonFileWalletStoreTest {
+
+	@TempDir
+	Path dataDir;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactoryInterface walletFactory = new WalletFactory(this.transferFactory);
+
+	private WalletInterface wallet(String funds) {
+		WalletInterface wallet = this.walletFactory.generateNew("password");
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), new BigDecimal(funds)));
+		return wallet;
+	}
+
+	private Path shardedPath(UUID walletId) {
+		String name = walletId.toString();
+		return this.dataDir.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name + ".json");
+	}
+
+	private Path saveFlat(WalletInterface wallet) throws Exception {
+		Path path = this.dataDir.resolve(wallet.getId() + ".json");
+		this.objectMapper.writeValue(path.toFile(), wallet);
+		return path;
+	}
+
+	private List<UUID> walletIds(JsonFileWalletStore store) throws Exception {
+		try (Stream<UUID> ids = store.walletIds()) {
+			return ids.parallel().collect(Collectors.toList());
+		}
+	}
+
+	private BigDecimal balance(JsonFileWalletStore store, UUID walletId) throws Exception {
+		return this.walletFactory.fromMap(store.load(walletId)).getBalance();
+	}
+
+	@Test
+	public void testSavesIntoSubdirectories() throws Exception {
+		// Arrange
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir);
+		WalletInterface wallet = this.wallet("10");
+
+		// Act
+		store.save(wallet);
+
+		// Assert
+		assertTrue(Files.exists(this.shardedPath(wallet.getId())));
+		assertFalse(Files.exists(this.dataDir.resolve(wallet.getId() + ".json")));
+		assertTrue(store.contains(wallet.getId()));
+		assertEquals(0, BigDecimal.TEN.compareTo(this.balance(store, wallet.getId())));
+		assertEquals(List.of(wallet.getId()), this.walletIds(store));
+		assertNull(store.load(UUID.randomUUID()));
+	}
+
+	@Test
+	public void testDamagedFileFallsBackToPreviousGeneration() throws Exception {
+		// Arrange (the latest version still parses, but a balance was changed)
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir);
+		WalletInterface wallet = this.wallet("10");
+		store.save(wallet);
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), new BigDecimal("5")));
+		store.save(wallet);
+		Path path = this.shardedPath(wallet.getId());
+		String saved = Files.readString(path);
+		Files.writeString(path, saved.replace("\"balance\":15", "\"balance\":95"));
+
+		// Act
+		BigDecimal balance = this.balance(store, wallet.getId());
+
+		// Assert
+		assertNotEquals(saved, Files.readString(path));
+		assertEquals(0, BigDecimal.TEN.compareTo(balance));
+		assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+	}
+
+	@Test
+	public void testTruncatedFileWithoutPreviousGenerationFails() throws Exception {
+		// Arrange
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir);
+		WalletInterface wallet = this.wallet("10");
+		store.save(wallet);
+		Path path = this.shardedPath(wallet.getId());
+		byte[] saved = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(saved, saved.length / 2));
+
+		// Act & Assert
+		assertThrows(IOException.class, () -> store.load(wallet.getId()));
+	}
+
+	@Test
+	public void testMigratesFlatFiles() throws Exception {
+		// Arrange
+		WalletInterface alice = this.wallet("10");
+		WalletInterface bob = this.wallet("20");
+		Path aliceFlat = this.saveFlat(alice);
+		Path bobFlat = this.saveFlat(bob);
+		Files.writeString(this.dataDir.resolve("notes.json"), "{}");
+
+		// Act (also started in the background)
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir);
+		store.migrate();
+
+		// Assert
+		assertFalse(Files.exists(aliceFlat));
+		assertFalse(Files.exists(bobFlat));
+		assertTrue(Files.exists(this.shardedPath(alice.getId())));
+		assertTrue(Files.exists(this.shardedPath(bob.getId())));
+		assertTrue(Files.exists(this.dataDir.resolve("notes.json")));
+		List<UUID> walletIds = this.walletIds(store);
+		assertEquals(2, walletIds.size());
+		assertTrue(walletIds.containsAll(List.of(alice.getId(), bob.getId())));
+		assertEquals(0, new BigDecimal("20").compareTo(this.balance(store, bob.getId())));
+	}
+
+	@Test
+	public void testSavedWalletIsNotOverwrittenByMigration() throws Exception {
+		// Arrange
+		WalletInterface wallet = this.wallet("10");
+		Path flat = this.saveFlat(wallet);
+		JsonFileWalletStore store = new JsonFileWalletStore(this.dataDir);
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), new BigDecimal("5")));
+
+		// Act
+		store.save(wallet);
+		store.migrate();
+
+		// Assert
+		assertFalse(Files.exists(flat));
+		assertEquals(0, new BigDecimal("15").compareTo(this.balance(store, wallet.getId())));
+		assertEquals(List.of(wallet.getId()), this.walletIds(store));
+	}
+}
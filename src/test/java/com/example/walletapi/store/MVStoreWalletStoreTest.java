@@ -0,0 +1,152 @@
+package com.example.walletapi.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.WalletFactoryInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.store.impl.MVStoreWalletStore;
+
+public class MVStoreWalletStoreTest {
+
+	@TempDir
+	Path dataDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private final WalletFactoryInterface walletFactory = new WalletFactory(this.transferFactory);
+	private MVStoreWalletStore store;
+
+	private MVStoreWalletStore open() throws Exception {
+		this.store = new MVStoreWalletStore(this.dataDir.resolve("wallets.mv.db"), 1, true, 0);
+		return this.store;
+	}
+
+	@AfterEach
+	public void tearDown() {
+		if (this.store != null) {
+			this.store.close();
+		}
+	}
+
+	private WalletInterface walletWithDeposits(String... amounts) {
+		WalletInterface wallet = this.walletFactory.generateNew("password");
+		for (String amount : amounts) {
+			this.deposit(wallet, amount);
+		}
+		return wallet;
+	}
+
+	private void deposit(WalletInterface wallet, String amount) {
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), new BigDecimal(amount)));
+	}
+
+	@Test
+	public void testSavedWalletLoadsBack() throws Exception {
+		// Arrange
+		MVStoreWalletStore store = this.open();
+		WalletInterface wallet = this.walletWithDeposits("10", "2.50");
+
+		// Act
+		store.save(wallet);
+		WalletInterface loaded = this.walletFactory.fromMap(store.load(wallet.getId()));
+
+		// Assert
+		assertEquals(wallet.getId(), loaded.getId());
+		assertEquals(wallet.getPassword(), loaded.getPassword());
+		assertEquals(0, new BigDecimal("12.50").compareTo(loaded.getBalance()));
+		assertEquals(2, loaded.getLedgerSequence());
+		assertTrue(store.contains(wallet.getId()));
+	}
+
+	@Test
+	public void testUnknownWalletIsNotStored() throws Exception {
+		// Arrange
+		MVStoreWalletStore store = this.open();
+		UUID walletId = UUID.randomUUID();
+
+		// Act
+		Map<String, Serializable> data = store.load(walletId);
+
+		// Assert
+		assertNull(data);
+		assertFalse(store.contains(walletId));
+		assertTrue(store.loadLedger(walletId, 0, 10).isEmpty());
+	}
+
+	@Test
+	public void testLaterSavesOnlyAppendNewEntries() throws Exception {
+		// Arrange
+		MVStoreWalletStore store = this.open();
+		WalletInterface wallet = this.walletWithDeposits("10");
+		store.save(wallet);
+
+		// Act
+		this.deposit(wallet, "5");
+		this.deposit(wallet, "1");
+		store.save(wallet);
+		store.save(wallet); // nothing new
+
+		// Assert
+		Map<String, Serializable> data = store.load(wallet.getId());
+		assertEquals(3L, ((Number) data.get("ledgerSequence")).longValue());
+		assertEquals(0, new BigDecimal("16").compareTo(new BigDecimal(data.get("balance").toString())));
+		assertEquals(3, ((List<?>) data.get("ledger")).size());
+	}
+
+	@Test
+	public void testLoadLedgerReturnsRange() throws Exception {
+		// Arrange
+		MVStoreWalletStore store = this.open();
+		WalletInterface wallet = this.walletWithDeposits("1", "2", "3", "4", "5");
+		store.save(wallet);
+		WalletInterface other = this.walletWithDeposits("100");
+		store.save(other);
+
+		// Act
+		List<Map<String, Serializable>> range = store.loadLedger(wallet.getId(), 1, 3);
+		List<Map<String, Serializable>> tail = store.loadLedger(wallet.getId(), 4, 10);
+
+		// Assert
+		assertEquals(List.of("2", "3", "4"), range.stream().map(e -> e.get("amount").toString()).toList());
+		assertEquals(List.of("5"), tail.stream().map(e -> e.get("amount").toString()).toList());
+	}
+
+	@Test
+	public void testWalletsSurviveReopening() throws Exception {
+		// Arrange
+		MVStoreWalletStore store = this.open();
+		WalletInterface alice = this.walletWithDeposits("10");
+		WalletInterface bob = this.walletWithDeposits("20", "30");
+		store.save(alice);
+		store.save(bob);
+		store.close();
+
+		// Act
+		MVStoreWalletStore reopened = this.open();
+		Map<String, Serializable> data = reopened.load(bob.getId());
+		List<UUID> walletIds;
+		try (Stream<UUID> ids = reopened.walletIds()) {
+			walletIds = ids.collect(Collectors.toList());
+		}
+
+		// Assert
+		assertEquals(2, walletIds.size());
+		assertTrue(walletIds.containsAll(List.of(alice.getId(), bob.getId())));
+		assertEquals(0, new BigDecimal("50").compareTo(this.walletFactory.fromMap(data).getBalance()));
+	}
+}
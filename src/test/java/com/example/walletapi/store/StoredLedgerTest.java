@@ -0,0 +1,174 @@
+package com.example.walletapi.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.walletapi.model.TransferInterface;
+import com.example.walletapi.model.TransferInterface.TransferFactoryInterface;
+import com.example.walletapi.model.WalletInterface;
+import com.example.walletapi.model.WalletInterface.ColdLedgerInterface;
+import com.example.walletapi.model.impl.Transfer.TransferFactory;
+import com.example.walletapi.model.impl.Wallet.WalletFactory;
+import com.example.walletapi.store.impl.MVStoreWalletStore;
+import com.example.walletapi.store.impl.StoredLedger;
+
+public class StoredLedgerTest {
+
+	@TempDir
+	Path dataDir;
+
+	private final TransferFactoryInterface transferFactory = new TransferFactory();
+	private MVStoreWalletStore store;
+	private WalletFactory walletFactory;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		this.store = new MVStoreWalletStore(this.dataDir.resolve("wallets.mv.db"), 1, true, 0);
+		this.walletFactory = new WalletFactory(this.transferFactory, List.of(), List.of(), List.of(), null,
+				new StoredLedger(this.store, this.transferFactory));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.store.close();
+	}
+
+	private WalletInterface walletWithDeposits(int deposits) {
+		WalletInterface wallet = this.walletFactory.generateNew("password");
+		for (int i = 1; i <= deposits; i++) {
+			wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), new BigDecimal(i)));
+		}
+		return wallet;
+	}
+
+	private static List<UUID> ids(List<TransferInterface> entries) {
+		return entries.stream().map(TransferInterface::getId).toList();
+	}
+
+	@Test
+	public void testEvictedEntriesArePagedBackIn() throws Exception {
+		// Arrange
+		WalletInterface wallet = this.walletWithDeposits(5);
+		List<UUID> all = ids(wallet.getLedger());
+		long stored = this.store.save(wallet);
+
+		// Act
+		long evicted = wallet.evictLedger(3);
+
+		// Assert
+		assertEquals(5, stored);
+		assertEquals(3, evicted);
+		assertEquals(all, ids(wallet.getLedger()));
+		assertEquals(all.subList(1, 4), ids(wallet.getLedger(1, 3)));
+		assertEquals(all.subList(3, 5), ids(wallet.getLedger(3, 10)));
+		assertEquals(all, ids(wallet.getLedgerDto(0).getTransfers()));
+		assertEquals(all.subList(2, 5), ids(wallet.getLedgerDto(2).getTransfers()));
+		assertEquals(0, new BigDecimal("15").compareTo(wallet.getBalance()));
+	}
+
+	@Test
+	public void testUnvalidatedEntriesStayInMemory() throws Exception {
+		// Arrange (the third entry is appended but not validated yet)
+		WalletInterface wallet = this.walletWithDeposits(2);
+		wallet.replayLedger(2, List.of(this.transferFactory.fromSendRequest(null, wallet.getId(), BigDecimal.TEN)));
+		wallet.receiveMoney(this.transferFactory.fromSendRequest(null, wallet.getId(), BigDecimal.ONE));
+		long stored = this.store.save(wallet);
+
+		// Act
+		long evicted = wallet.evictLedger(4);
+
+		// Assert
+		assertEquals(2, stored);
+		assertEquals(2, evicted);
+		assertEquals(4, wallet.getLedger().size());
+	}
+
+	@Test
+	public void testNothingIsEvictedWithoutColdLedger() {
+		// Arrange
+		this.walletFactory = new WalletFactory(this.transferFactory);
+		WalletInterface wallet = this.walletWithDeposits(3);
+
+		// Act
+		long evicted = wallet.evictLedger(3);
+
+		// Assert
+		assertEquals(0, evicted);
+		assertEquals(3, wallet.getLedger().size());
+	}
+
+	@Test
+	public void testEvictedEntriesArePagedInAsTheyAreRead() throws Exception {
+		// Arrange (counts what's paged in)
+		StoredLedger storedLedger = new StoredLedger(this.store, this.transferFactory);
+		AtomicInteger loads = new AtomicInteger();
+		AtomicInteger largest = new AtomicInteger();
+		ColdLedgerInterface coldLedger = (walletId, since, limit) -> {
+			loads.incrementAndGet();
+			largest.accumulateAndGet(limit, Math::max);
+			return storedLedger.loadLedger(walletId, since, limit);
+		};
+		this.walletFactory = new WalletFactory(this.transferFactory, List.of(), List.of(), List.of(), null,
+				coldLedger);
+		WalletInterface wallet = this.walletWithDeposits(1200);
+		List<UUID> all = ids(wallet.getLedger());
+		this.store.save(wallet);
+		wallet.evictLedger(1200);
+
+		// Act
+		List<TransferInterface> ledger = wallet.getLedger();
+		int loadsBeforeReading = loads.get();
+		List<UUID> read = ids(ledger);
+
+		// Assert
+		assertEquals(0, loadsBeforeReading);
+		assertEquals(all, read);
+		assertTrue(loads.get() > 1);
+		assertTrue(largest.get() < 1200);
+	}
+
+	@Test
+	public void testWalletLoadsWithOnlyItsHotEntries() throws Exception {
+		// Arrange
+		WalletInterface wallet = this.walletWithDeposits(1000);
+		List<UUID> all = ids(wallet.getLedger());
+		this.store.save(wallet);
+
+		// Act
+		Map<String, Serializable> data = this.store.load(wallet.getId(), 10);
+		WalletInterface loaded = this.walletFactory.fromMap(data);
+
+		// Assert
+		assertEquals(10, ((List<?>) data.get("ledger")).size());
+		assertEquals(990L, ((Number) data.get("ledgerSince")).longValue());
+		assertEquals(0, new BigDecimal("500500").compareTo(loaded.getBalance()));
+		assertEquals(1000, loaded.getLedgerSequence());
+		assertEquals(990, loaded.evictLedger(0));
+		assertEquals(all, ids(loaded.getLedger()));
+		assertEquals(all.subList(995, 1000), ids(loaded.getLedger(995, 10)));
+	}
+
+	@Test
+	public void testWalletLoadedWithoutItsWholeLedgerNeedsColdLedger() throws Exception {
+		// Arrange
+		WalletInterface wallet = this.walletWithDeposits(20);
+		this.store.save(wallet);
+		Map<String, Serializable> data = this.store.load(wallet.getId(), 10);
+
+		// Act & Assert
+		assertThrows(IllegalArgumentException.class,
+				() -> new WalletFactory(this.transferFactory).fromMap(data));
+	}
+}